@@ -75,4 +75,53 @@ public class ZooConstants {
 	 */
 	public static final String PROPERTY_FAIL_ON_CLOSED_QUERIES = "zoodb.failOnClosedQueries";
 	
+	
+	/**
+	 * Property that defines when a commit returns. Possible values are:
+	 * <ul>
+	 * <li>{@link #DURABILITY_SYNC}: The commit returns after all data has been forced to disk.
+	 * </li>
+	 * <li>{@link #DURABILITY_ASYNC_FSYNC}: The commit returns after all data has been written. 
+	 * A background thread forces the data to disk. A crash may lose the most recent commits,
+	 * but the database remains consistent.</li>
+	 * <li>{@link #DURABILITY_NO_FSYNC}: Forcing the data to disk is left to the operating 
+	 * system. This is only safe against crashes of the application. It is meant for caches 
+	 * and other data that can be rebuilt.</li>
+	 * </ul>
+	 * Default is {@link #DURABILITY_SYNC}.
+	 */
+	public static final String PROPERTY_DURABILITY = "zoodb.durability";
+	
+	public static final String DURABILITY_SYNC = "SYNC";
+	public static final String DURABILITY_ASYNC_FSYNC = "ASYNC_FSYNC";
+	public static final String DURABILITY_NO_FSYNC = "NO_FSYNC";
+	
+	
+	/**
+	 * Property that defines whether query results should be evaluated lazily while they are 
+	 * iterated, instead of being evaluated completely during {@code execute()}. This bounds
+	 * memory consumption and the time to the first result, especially in combination with 
+	 * {@code setRange()}. 
+	 * Streaming is only used for queries without ordering, result settings and uniqueness. 
+	 * Executing the same query object again invalidates the previous streaming result.
+	 * The property can also be used as extension for individual queries, see 
+	 * {@code Query.addExtension()}.
+	 * Default is {@code false}.
+	 */
+	public static final String PROPERTY_STREAMING_QUERIES = "zoodb.streamingQueries";
+	
+	
+	/**
+	 * Property that defines whether new objects that are referenced by persistent objects 
+	 * are made persistent automatically during commit and before queries 
+	 * (persistence by reachability). Applications that call {@code makePersistent()} for all
+	 * new objects can disable it to avoid the traversal of dirty objects. Referencing a 
+	 * non-persistent object then causes the commit to fail.
+	 * For individual PersistenceManagers it can also be set with 
+	 * {@code ZooJdoHelper.setPersistenceByReachability()}.
+	 * Default is {@code true}.
+	 */
+	public static final String PROPERTY_PERSISTENCE_BY_REACHABILITY = 
+			"zoodb.persistenceByReachability";
+	
 }
@@ -28,6 +28,7 @@ import org.zoodb.internal.GenericObject;
 import org.zoodb.internal.Node;
 import org.zoodb.internal.Session;
 import org.zoodb.internal.ZooClassDef;
+import org.zoodb.internal.ZooFieldDef;
 import org.zoodb.internal.client.PCContext;
 import org.zoodb.internal.util.DBLogger;
 import org.zoodb.internal.util.DBTracer;
@@ -83,6 +84,12 @@ public abstract class ZooPC {
 	//as unique as the string itself. So this is only required for collisions in unique
 	//string indexes. See Issue #55 in Test_091.
 	private transient Pair<long[], Object[]> prevValues = null;
+	//Set if the object is dirty, but so far only non-indexed fields have been written. The
+	//backup of the indexed fields is then created by the first write to an indexed field.
+	private transient boolean isBackupPending = false;
+	//Set if the object graph traverser has traversed this object since it was made dirty or
+	//since a field that may reference other objects was last written.
+	private transient boolean isTraversed = false;
 	
 	private transient long txTimestamp = Session.TIMESTAMP_NOT_ASSIGNED;
 	
@@ -147,12 +154,15 @@ public abstract class ZooPC {
 	private final void setTransient() {
 		status = ObjectState.TRANSIENT; //TODO other transient states?
 		stateFlags = 0;
+		isTraversed = false;
 		jdoZooOid = Session.OID_NOT_ASSIGNED;
 	}
 	public final void jdoZooMarkClean() {
 		//TODO is that all?
 		setPersClean();
 		prevValues = null;
+		isBackupPending = false;
+		isTraversed = false;
 	}
 //	public final void jdoZooMarkNew() {
 //		ObjectState statusO = status;
@@ -166,25 +176,42 @@ public abstract class ZooPC {
 //		}
 //	}
 	public final void jdoZooMarkDirty() {
-		jdoZooGetContext().getSession().internalGetCache().flagOGTraversalRequired();
+		markDirty(null);
+	}
+
+	/**
+	 * @param field The field that is about to be written or {@code null} if any field may be 
+	 * written.
+	 */
+	private void markDirty(String field) {
 		switch (status) {
 		case DETACHED_DIRTY:
 			//is already dirty
+			if (isBackupPending && isBackupRequired(field)) {
+				getPrevValues();
+			}
+			return;
+		case PERSISTENT_DIRTY:
+			//is already dirty
+			if (isBackupPending && isBackupRequired(field)) {
+				getPrevValues();
+			}
+			flagTraversalRequired(field);
 			return;
 		case DETACHED_CLEAN:
 			context.notifyEvent(this, ZooInstanceEvent.PRE_DIRTY);
 			setDetachedDirty();
-			getPrevValues();
+			getPrevValues(field);
 			break;
 		case PERSISTENT_NEW:
-		case PERSISTENT_DIRTY:
 			//is already dirty
 			//status = ObjectState.PERSISTENT_DIRTY;
+			flagTraversalRequired(field);
 			return;
 		case PERSISTENT_CLEAN:
 			context.notifyEvent(this, ZooInstanceEvent.PRE_DIRTY);
 			setPersDirty();
-			getPrevValues();
+			getPrevValues(field);
 			break;
 		case HOLLOW_PERSISTENT_NONTRANSACTIONAL:
 			context.notifyEvent(this, ZooInstanceEvent.PRE_DIRTY);
@@ -194,7 +221,7 @@ public abstract class ZooPC {
 			} else {
 				zooActivateRead();
 			}
-			jdoZooMarkDirty();
+			markDirty(field);
 			break;
 		default:
 			throw new IllegalStateException("Illegal state transition: " + status + "->Dirty: " + 
@@ -246,6 +273,8 @@ public abstract class ZooPC {
 		//TODO is that all?
 		setHollow();
 		prevValues = null;
+		isBackupPending = false;
+		isTraversed = false;
 	}
 
 	public final void jdoZooMarkTransient() {
@@ -337,6 +366,56 @@ public abstract class ZooPC {
 			throw new IllegalStateException();
 		}
 		prevValues = context.getIndexer().getBackup(this);
+		isBackupPending = false;
+	}
+	
+	private final void getPrevValues(String field) {
+		if (isBackupRequired(field)) {
+			getPrevValues();
+		} else {
+			isBackupPending = true;
+		}
+	}
+	
+	/**
+	 * @param field A field name or {@code null} for any field.
+	 * @return Whether writing the field requires a backup of the indexed fields.
+	 */
+	private final boolean isBackupRequired(String field) {
+		return field == null || context.getIndexer().isIndexed(field);
+	}
+	
+	/**
+	 * Tells the object graph traverser to traverse this object again if it has already been 
+	 * traversed and if the field may reference other objects.
+	 * @param field A field name or {@code null} for any field.
+	 */
+	private final void flagTraversalRequired(String field) {
+		if (!isTraversed) {
+			return;
+		}
+		if (field != null) {
+			ZooFieldDef f = context.getClassDef().getAllFieldsAsMap().get(field);
+			if (f != null) {
+				switch (f.getJdoType()) {
+				case REFERENCE:
+				case ARRAY:
+				case SCO:
+					break;
+				default:
+					return;
+				}
+			}
+		}
+		isTraversed = false;
+		context.getSession().internalGetCache().flagOGTraversalRequired(this);
+	}
+	
+	/**
+	 * Called by the object graph traverser when it traverses this object.
+	 */
+	public final void jdoZooMarkTraversed() {
+		isTraversed = true;
 	}
 	
 	public Pair<long[], Object[]> jdoZooGetBackup() {
@@ -405,6 +484,10 @@ public abstract class ZooPC {
 	 * from other instances.
 	 */
 	public final void zooActivateWrite() {
+		activateWrite(null);
+	}
+	
+	private void activateWrite(String field) {
 		if (DBTracer.TRACE) DBTracer.logCall(this);
 		switch (status) {
 		case HOLLOW_PERSISTENT_NONTRANSACTIONAL:
@@ -412,7 +495,7 @@ public abstract class ZooPC {
 				context.getSession().lock();
 				checkActiveForWrite();
 				jdoZooGetNode().refreshObject(this);
-				jdoZooMarkDirty();
+				markDirty(field);
 				return;
 			} finally {
 				context.getSession().unlock();
@@ -425,16 +508,25 @@ public abstract class ZooPC {
 		case TRANSIENT_DIRTY:
 			//not persistent yet
 			return;
-		case PERSISTENT_DIRTY:
 		case PERSISTENT_NEW:
+		case PERSISTENT_DIRTY:
 		case DETACHED_DIRTY:
-			//nothing to do
-			return;
+			if (!isBackupPending && !isTraversed) {
+				//nothing to do
+				return;
+			}
+			try {
+				context.getSession().lock();
+				markDirty(field);
+				return;
+			} finally {
+				context.getSession().unlock();
+			}
 		case PERSISTENT_CLEAN:
 			try {
 				context.getSession().lock();
 				checkActiveForWrite();
-				jdoZooMarkDirty();
+				markDirty(field);
 				return;
 			} finally {
 				context.getSession().unlock();
@@ -442,7 +534,7 @@ public abstract class ZooPC {
 		case DETACHED_CLEAN:
 			try {
 				context.getSession().lock();
-				jdoZooMarkDirty();
+				markDirty(field);
 				return;
 			} finally {
 				context.getSession().unlock();
@@ -462,9 +554,20 @@ public abstract class ZooPC {
 		}
 	}
 	
+	/**
+	 * This method ensures that the specified object is in the cache and then flags it as dirty.
+	 * It is equivalent to {@link #zooActivateWrite()}, except that the backup of the indexed
+	 * fields is only created if the field is indexed. Objects in which only non-indexed fields
+	 * have been written are skipped during index maintenance at commit time.
+	 * 
+	 * It should be called before writing a persistent field. It is called automatically by
+	 * classes that have been enhanced with {@link org.zoodb.tools.ZooEnhancer}.
+	 * 
+	 * @param field The name of the field that is about to be written.
+	 */
 	public final void zooActivateWrite(String field) {
 		//Here we cannot skip loading the field to be loaded, because it may be read beforehand
-		zooActivateWrite();
+		activateWrite(field);
 	}
 	
 	//	private long jdoZooFlags = 0;
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.internal;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import org.zoodb.internal.util.DBLogger;
+
+/**
+ * Accessor for the persistent fields and the default constructor of a Java class. It is
+ * used by the {@link DataSerializer} and the {@link DataDeSerializer} instead of reflection.
+ *
+ * The accessor is created once per {@link ZooClassDef}. Each field gets an accessor with
+ * {@link MethodHandle}s for the type of the field, without boxing, type switches or the 
+ * access checks of {@link Field}.
+ * 
+ * Consecutive primitive fields are read and written with a single method handle that 
+ * combines the handles of the fields. After a few calls the JVM compiles such a 
+ * handle into straight-line code for the class. Calling the handles of the single fields 
+ * instead is not faster than reflection, because the JVM cannot inline them.
+ *
+ * Accessors are not available for {@link GenericObject}s, for outdated schema versions and
+ * for classes whose fields do not match the schema or cannot be accessed via method handles,
+ * for example final fields. These are (de-)serialized with reflection.
+ */
+public final class ClassAccessor {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+	private static final MethodType WRITER_TYPE = 
+			MethodType.methodType(void.class, Object.class, SerialOutput.class);
+	private static final MethodType READER_TYPE = 
+			MethodType.methodType(void.class, Object.class, SerialInput.class);
+
+	private final FieldAccessor[] fields;
+	private final MethodHandle constructor;
+	//For the first field of each run of primitive fields: The handles for the whole run
+	private final MethodHandle[] runWriters;
+	private final MethodHandle[] runReaders;
+	//For the first field of each run of primitive fields: The position after the run
+	private final int[] runEnds;
+
+	private ClassAccessor(FieldAccessor[] fields, MethodHandle constructor) {
+		this.fields = fields;
+		this.constructor = constructor;
+		int n = fields.length;
+		runWriters = new MethodHandle[n];
+		runReaders = new MethodHandle[n];
+		runEnds = new int[n];
+		int end = n;
+		MethodHandle w = null;
+		MethodHandle r = null;
+		//The handles are combined from the last field backwards, so that the fields are 
+		//written and read in the order of the schema.
+		for (int i = n - 1; i >= 0; i--) {
+			FieldAccessor fa = fields[i];
+			if (!(fa instanceof PrimitiveAccessor)) {
+				end = i;
+				w = null;
+				r = null;
+				continue;
+			}
+			PrimitiveAccessor pa = (PrimitiveAccessor) fa;
+			w = w == null ? pa.writer : MethodHandles.foldArguments(w, pa.writer);
+			r = r == null ? pa.reader : MethodHandles.foldArguments(r, pa.reader);
+			if (i == 0 || !(fields[i - 1] instanceof PrimitiveAccessor)) {
+				runWriters[i] = w;
+				runReaders[i] = r;
+				runEnds[i] = end;
+			}
+		}
+	}
+
+	/**
+	 * @param def The class definition
+	 * @return The accessor or {@code null} if the class has to be accessed via reflection.
+	 */
+	static ClassAccessor create(ZooClassDef def) {
+		Class<?> cls = def.getJavaClass();
+		if (cls == null || def.getNextVersion() != null ||
+				GenericObject.class.isAssignableFrom(cls) ||
+				Modifier.isAbstract(cls.getModifiers())) {
+			return null;
+		}
+		ZooFieldDef[] fieldDefs = def.getAllFields();
+		FieldAccessor[] fields = new FieldAccessor[fieldDefs.length];
+		try {
+			for (int i = 0; i < fieldDefs.length; i++) {
+				Field f = fieldDefs[i].getJavaField();
+				if (f == null || Modifier.isFinal(f.getModifiers())) {
+					return null;
+				}
+				fields[i] = createFieldAccessor(f);
+			}
+			Constructor<?> c = cls.getDeclaredConstructor((Class[])null);
+			c.setAccessible(true);
+			MethodHandle constructor = LOOKUP.unreflectConstructor(c).asType(CONSTRUCTOR_TYPE);
+			return new ClassAccessor(fields, constructor);
+		} catch (NoSuchMethodException e) {
+			//the reflective path reports the missing constructor
+			return null;
+		} catch (IllegalAccessException e) {
+			DBLogger.debugPrintln(1, "Using reflection for class: " + cls.getName());
+			return null;
+		} catch (SecurityException e) {
+			DBLogger.debugPrintln(1, "Using reflection for class: " + cls.getName());
+			return null;
+		}
+	}
+
+	private static FieldAccessor createFieldAccessor(Field f) 
+			throws IllegalAccessException, NoSuchMethodException {
+		Class<?> type = f.getType();
+		MethodHandle getter = LOOKUP.unreflectGetter(f);
+		MethodHandle setter = LOOKUP.unreflectSetter(f);
+		if (!type.isPrimitive()) {
+			return new RefAccessor(f,
+					getter.asType(MethodType.methodType(Object.class, Object.class)),
+					setter.asType(MethodType.methodType(void.class, Object.class, Object.class)));
+		}
+		//e.g. SerialOutput.writeInt(int) and SerialInput.readInt()
+		String name = type.getName();
+		name = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		MethodHandle write = LOOKUP.findVirtual(SerialOutput.class, "write" + name, 
+				MethodType.methodType(void.class, type));
+		MethodHandle read = LOOKUP.findVirtual(SerialInput.class, "read" + name, 
+				MethodType.methodType(type));
+		//out.writeX(o.f)
+		getter = getter.asType(MethodType.methodType(type, Object.class));
+		MethodHandle writer = MethodHandles.permuteArguments(
+				MethodHandles.filterArguments(write, 1, getter), WRITER_TYPE, 1, 0);
+		//o.f = in.readX()
+		setter = setter.asType(MethodType.methodType(void.class, Object.class, type));
+		MethodHandle reader = MethodHandles.collectArguments(setter, 1, read);
+		return new PrimitiveAccessor(f, writer, reader);
+	}
+
+	/**
+	 * @return The field accessors, in the order of {@link ZooClassDef#getAllFields()}.
+	 */
+	public FieldAccessor[] getFields() {
+		return fields;
+	}
+
+	/**
+	 * Writes a primitive field and all primitive fields that directly follow it.
+	 * @param first The position of the first field, the previous field must not be primitive
+	 * @param o The object
+	 * @param out The output stream
+	 * @return The position of the first field after the primitive fields
+	 */
+	public int writePrimitives(int first, Object o, SerialOutput out) {
+		try {
+			runWriters[first].invokeExact(o, out);
+		} catch (Throwable t) {
+			throw wrap(t, fields[first].field);
+		}
+		return runEnds[first];
+	}
+
+	/**
+	 * Reads a primitive field and all primitive fields that directly follow it.
+	 * @param first The position of the first field, the previous field must not be primitive
+	 * @param o The object
+	 * @param in The input stream
+	 * @return The position of the first field after the primitive fields
+	 */
+	public int readPrimitives(int first, Object o, SerialInput in) {
+		try {
+			runReaders[first].invokeExact(o, in);
+		} catch (Throwable t) {
+			throw wrap(t, fields[first].field);
+		}
+		return runEnds[first];
+	}
+
+	/**
+	 * @return A new instance created with the default constructor.
+	 */
+	public Object newInstance() {
+		try {
+			return (Object) constructor.invokeExact();
+		} catch (Throwable t) {
+			throw wrap(t, null);
+		}
+	}
+
+	private static RuntimeException wrap(Throwable t, Field f) {
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+		if (t instanceof RuntimeException) {
+			return (RuntimeException) t;
+		}
+		return new RuntimeException(f == null ? "Constructor failed" : "Field: " + f, t);
+	}
+
+	/**
+	 * Accessor for a single field. Primitive fields are read and written directly from and
+	 * to the stream, references are returned and set as objects.
+	 */
+	public abstract static class FieldAccessor {
+		final Field field;
+
+		FieldAccessor(Field field) {
+			this.field = field;
+		}
+
+		/**
+		 * Writes the value of a primitive field.
+		 * @param o The object
+		 * @param out The output stream
+		 */
+		public void write(Object o, SerialOutput out) {
+			throw new UnsupportedOperationException(field.toString());
+		}
+
+		/**
+		 * Reads the value of a primitive field.
+		 * @param o The object
+		 * @param in The input stream
+		 */
+		public void read(Object o, SerialInput in) {
+			throw new UnsupportedOperationException(field.toString());
+		}
+
+		/**
+		 * @param o The object
+		 * @return The value of a reference field.
+		 */
+		public Object get(Object o) {
+			throw new UnsupportedOperationException(field.toString());
+		}
+
+		/**
+		 * Sets the value of a reference field.
+		 * @param o The object
+		 * @param v The value
+		 */
+		public void set(Object o, Object v) {
+			throw new UnsupportedOperationException(field.toString());
+		}
+	}
+
+	private static final class RefAccessor extends FieldAccessor {
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+
+		RefAccessor(Field f, MethodHandle getter, MethodHandle setter) {
+			super(f);
+			this.getter = getter;
+			this.setter = setter;
+		}
+		@Override
+		public Object get(Object o) {
+			try {
+				return (Object) getter.invokeExact(o);
+			} catch (Throwable t) {
+				throw wrap(t, field);
+			}
+		}
+		@Override
+		public void set(Object o, Object v) {
+			try {
+				setter.invokeExact(o, v);
+			} catch (Throwable t) {
+				throw wrap(t, field);
+			}
+		}
+	}
+
+	private static final class PrimitiveAccessor extends FieldAccessor {
+		private final MethodHandle writer;
+		private final MethodHandle reader;
+
+		PrimitiveAccessor(Field f, MethodHandle writer, MethodHandle reader) {
+			super(f);
+			this.writer = writer;
+			this.reader = reader;
+		}
+		@Override
+		public void write(Object o, SerialOutput out) {
+			try {
+				writer.invokeExact(o, out);
+			} catch (Throwable t) {
+				throw wrap(t, field);
+			}
+		}
+		@Override
+		public void read(Object o, SerialInput in) {
+			try {
+				reader.invokeExact(o, in);
+			} catch (Throwable t) {
+				throw wrap(t, field);
+			}
+		}
+	}
+}
@@ -305,10 +305,15 @@ public class DataDeSerializer {
     
     private ZooPC readObjPrivate(ZooPC pObj, ZooClassDef clsDef) {
     	// read first object (FCO)
-    	//read fixed size part
-        deserializeFields1( pObj, clsDef );
-        //read variable size part
-        deserializeFields2( pObj, clsDef );
+    	ClassAccessor acc = clsDef.getAccessor();
+    	if (acc != null) {
+    		deserializeFields(pObj, clsDef, acc);
+    	} else {
+    		//read fixed size part
+    		deserializeFields1( pObj, clsDef );
+    		//read variable size part
+    		deserializeFields2( pObj, clsDef );
+    	}
         
         //read special classes
         if (pObj instanceof DBCollection) {
@@ -364,11 +369,50 @@ public class DataDeSerializer {
 		if (cls == null) {
 			throw DBLogger.newUser("Java class not found: " + clsDef.getClassName());
 		}
-    	ZooPC obj = (ZooPC) createInstance(cls);
+    	ZooPC obj = (ZooPC) createInstance(cls, clsDef);
     	prepareObject(obj, oid, false, clsDef);
         return obj;
     }
 
+    /**
+     * Reads the fixed size part and the variable size part of an object with the accessor
+     * of the class instead of reflection.
+     */
+    private final void deserializeFields(Object obj, ZooClassDef clsDef, ClassAccessor acc) {
+    	ZooFieldDef[] fds = clsDef.getAllFields();
+    	ClassAccessor.FieldAccessor[] fas = acc.getFields();
+    	ZooFieldDef fd = null;
+    	try {
+    		int i = 0;
+    		while (i < fas.length) {
+    			fd = fds[i];
+    			if (fd.isPrimitiveType()) {
+    				i = acc.readPrimitives(i, obj, in);
+    				continue;
+    			}
+    			if (fd.isFixedSize()) {
+    				fas[i].set(obj, deserializeObjectNoSco(fd));
+    			}
+    			i++;
+    		}
+    		for (i = 0; i < fas.length; i++) {
+    			fd = fds[i];
+    			if (!fd.isFixedSize() || fd.isString()) {
+    				fas[i].set(obj, deserializeObjectSCO());
+    			}
+    		}
+    	} catch (ArrayIndexOutOfBoundsException e) {
+    		throw new BinaryDataCorruptedException("Unexpected class ID(?): oid=" +
+    				Util.getOidAsString(obj) + " " + clsDef + " F:" + fd, e);
+    	} catch (BinaryDataCorruptedException e) {
+    		throw new BinaryDataCorruptedException("Corrupted Object: oid=" +
+    				Util.getOidAsString(obj) + " " + clsDef + " F:" + fd, e);
+    	} catch (UnsupportedOperationException e) {
+    		throw new UnsupportedOperationException("Unsupported Object: " +
+    				Util.getOidAsString(obj) + " " + clsDef + " F:" + fd, e);
+    	}
+    }
+
     private final Object deserializeFields1(Object obj, ZooClassDef clsDef) {
         Field f1 = null;
         Object deObj = null;
@@ -984,6 +1028,14 @@ public class DataDeSerializer {
     	}
     }
     
+    private final Object createInstance(Class<?> cls, ZooClassDef clsDef) {
+    	ClassAccessor acc = clsDef.getAccessor();
+    	if (acc != null) {
+    		return acc.newInstance();
+    	}
+    	return createInstance(cls);
+    }
+    
     private final Object createInstance(Class<?> cls) {
         try {
             //find the constructor
@@ -1048,7 +1100,7 @@ public class DataDeSerializer {
         	if (c == null || GenericObject.class.isAssignableFrom(c)) {
 				obj = GenericObject.newInstance(clsDef, oid, false, cache);
         	} else {
-    	        obj = createInstance(clsDef.getJavaClass());
+    	        obj = createInstance(clsDef.getJavaClass(), clsDef);
     	        prepareObject((ZooPC) obj, oid, true, clsDef);
         	}
         } else {
@@ -1062,7 +1114,7 @@ public class DataDeSerializer {
 				throw DBLogger.newUser("Class has not been fully evolved (" + 
 						Util.oidToString(oid) + "): " + clsDef);
 			} 
- 	        obj = createInstance(clsDef.getJavaClass());
+ 	        obj = createInstance(clsDef.getJavaClass(), clsDef);
 	        prepareObject((ZooPC) obj, oid, true, clsDef);
         }
         return obj;
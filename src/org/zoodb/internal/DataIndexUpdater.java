@@ -32,6 +32,9 @@ import org.zoodb.internal.util.Pair;
 /**
  * This class provides a method to backup indexed fields for later removal from the according
  * field index. 
+ * 
+ * Fields that are part of a composite index of the class or of a super-class are also backed up.
+ * They are stored after the indexed fields, see {@link #getBackupPos(ZooFieldDef)}.
  *
  * @author Tilmann Zaeschke
  */
@@ -56,9 +59,85 @@ public final class DataIndexUpdater {
 				pfl.add(f);
 			}
 		}
+		for (ZooClassDef d = def; d != null; d = d.getSuperDef()) {
+			for (ZooCompositeIndexDef ci: d.getCompositeIndices()) {
+				for (ZooFieldDef f: ci.getFields()) {
+					if (!pfl.contains(f)) {
+						pfl.add(f);
+					}
+				}
+			}
+		}
 		indFields = pfl.toArray(new ZooFieldDef[pfl.size()]);
 	}
 	
+	/**
+	 * @param field A field
+	 * @return The position of the field in the backup or -1 if the field is not backed up.
+	 */
+	public int getBackupPos(ZooFieldDef field) {
+		for (int i = 0; i < indFields.length; i++) {
+			if (indFields[i] == field) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param co An object
+	 * @param fd A field of the object
+	 * @return The index key of the current value of the field.
+	 */
+	public static long getKey(ZooPC co, ZooFieldDef fd) {
+		try {
+			Field f = fd.getJavaField();
+			PRIMITIVE p = fd.getPrimitiveType();
+			if (p != null) {
+				return SerializerTools.primitiveFieldToLong(co, f, p);
+			} else if (fd.isPersistentType()){
+				return BitTools.toSortableLong((ZooPC)f.get(co));
+			} 
+			//must be String
+			return BitTools.toSortableLong((String)f.get(co));
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * @param co An object
+	 * @param fd A field of the object
+	 * @return The index key of the current value of the field.
+	 */
+	public static long getKey(GenericObject co, ZooFieldDef fd) {
+		Object raw = co.getFieldRaw(fd.getFieldPos());
+		PRIMITIVE p = fd.getPrimitiveType();
+		if (p != null) {
+			return SerializerTools.primitiveToLong(raw, p);
+		} else if (fd.isPersistentType()){
+			return raw == null ? BitTools.NULL : (long)raw;
+		}
+		//must be String (already hashed)
+		return (Long)raw;
+	}
+	
+	/**
+	 * @param co An object
+	 * @param fd A String field of the object
+	 * @return The current value of the field.
+	 */
+	public static String getString(ZooPC co, ZooFieldDef fd) {
+		if (co instanceof GenericObject) {
+			return (String) ((GenericObject) co).getField(fd);
+		}
+		try {
+			return (String) fd.getJavaField().get(co);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
 	
     public final Pair<long[], Object[]> getBackup(ZooPC co) {
     	if (co.getClass() == GenericObject.class) {
@@ -125,5 +204,19 @@ public final class DataIndexUpdater {
 	public boolean isIndexed() {
 		return indFields.length != 0;
 	}
+	
+	/**
+	 * @param fieldName The name of a field
+	 * @return Whether the field is part of the backup, i.e. whether it is indexed or part of a
+	 * composite index.
+	 */
+	public boolean isIndexed(String fieldName) {
+		for (int i = 0; i < indFields.length; i++) {
+			if (indFields[i].getName().equals(fieldName)) {
+				return true;
+			}
+		}
+		return false;
+	}
     
 }
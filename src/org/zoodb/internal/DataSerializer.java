@@ -188,6 +188,11 @@ public final class DataSerializer {
 
 
     private final void serializeFields1(Object o, ZooClassDef clsDef) {
+        ClassAccessor acc = clsDef.getAccessor();
+        if (acc != null) {
+            serializeFields1(o, clsDef, acc);
+            return;
+        }
         // Write fields
         try {
         	for (ZooFieldDef fd: clsDef.getAllFields()) {
@@ -208,6 +213,33 @@ public final class DataSerializer {
         }
     }
 
+    /**
+     * Writes the fields with the accessor of the class instead of reflection.
+     */
+    private final void serializeFields1(Object o, ZooClassDef clsDef, ClassAccessor acc) {
+        ZooFieldDef[] fds = clsDef.getAllFields();
+        ClassAccessor.FieldAccessor[] fas = acc.getFields();
+        try {
+        	int i = 0;
+        	while (i < fas.length) {
+        		ZooFieldDef fd = fds[i];
+        		if (fd.isPrimitiveType()) {
+        			i = acc.writePrimitives(i, o, out);
+        			continue;
+        		}
+        		if (fd.isFixedSize()) {
+        			serializeObjectNoSCO(fas[i].get(o), fd);
+        		} else {
+        			scos.add(fas[i].get(o));
+        		}
+        		i++;
+        	}
+        } catch (UnsupportedOperationException e) {
+            throw new UnsupportedOperationException(
+            		"Class not supported: " + o.getClass().getName(), e);
+        }
+    }
+
     private final void serializeFields2() {
         // Write fields
        	for (Object o: scos) {
@@ -573,11 +605,11 @@ public final class DataSerializer {
     }
 
     private final void serializeOid(ZooPC obj) {
-        out.writeLong(((ZooPC)obj).jdoZooGetOid());
+        out.writeLong(obj.jdoZooGetOid());
     }
 
     private final void serializeOid(GenericObject obj) {
-        out.writeLong(((GenericObject)obj).getOid());
+        out.writeLong(obj.getOid());
     }
 
     private final void writeClassInfo(Class<?> cls, Object val) {
@@ -613,7 +645,13 @@ public final class DataSerializer {
         if (isPersistentCapable(cls)) {
             out.writeByte(SerializerTools.REF_PERS_ID);
             if (val != null) {
-            	long soid = ((ZooPC)val).jdoZooGetClassDef().getOid();
+            	ZooPC pc = (ZooPC) val;
+            	if (pc.jdoZooGetOid() == Session.OID_NOT_ASSIGNED) {
+            		//This can happen if persistence by reachability is disabled
+            		throw DBLogger.newUser("Referenced object is not persistent: " + 
+            				cls.getName(), pc);
+            	}
+            	long soid = pc.jdoZooGetClassDef().getOid();
             	out.writeLong(soid);
             } else {
             	long soid = cache.getSchema(cls, node).getOid();
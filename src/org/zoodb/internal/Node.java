@@ -22,10 +22,13 @@ package org.zoodb.internal;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import org.zoodb.api.impl.ZooPC;
 import org.zoodb.internal.server.OptimisticTransactionResult;
 import org.zoodb.internal.server.TxObjInfo;
+import org.zoodb.internal.server.index.IndexStatistics;
+import org.zoodb.internal.server.index.LongLongIndex.LLEntry;
 import org.zoodb.internal.util.CloseableIterator;
 import org.zoodb.tools.DBStatistics.STATS;
 
@@ -56,8 +59,16 @@ public abstract class Node {
 
 	public abstract void defineIndex(ZooClassDef def, ZooFieldDef f, boolean isUnique);
 
+	public abstract void rebuildIndex(ZooClassDef def, ZooFieldDef f);
+
 	public abstract boolean removeIndex(ZooClassDef def, ZooFieldDef f);
 
+	public abstract void defineCompositeIndex(ZooClassDef def, ZooCompositeIndexDef index);
+
+	public abstract void rebuildCompositeIndex(ZooClassDef def, ZooCompositeIndexDef index);
+
+	public abstract boolean removeCompositeIndex(ZooClassDef def, ZooCompositeIndexDef index);
+
 	public void connect() {
 		// TODO Auto-generated method stub
 		throw new UnsupportedOperationException();
@@ -65,7 +76,22 @@ public abstract class Node {
 	}
 
 	public abstract Iterator<ZooPC> readObjectFromIndex(ZooFieldDef field, 
-			long minValue, long maxValue, boolean loadFromCache);
+			long minValue, long maxValue, boolean loadFromCache, boolean descending);
+
+	public abstract long[] readOidsFromIndex(ZooFieldDef field, long minValue, long maxValue);
+
+	public abstract CloseableIterator<LLEntry> readKeysFromIndex(ZooFieldDef field, 
+			long minValue, long maxValue);
+
+	public abstract long[] readOidsFromCompositeIndex(ZooCompositeIndexDef index, 
+			long minValue, long maxValue);
+
+	public abstract long[] readOidsFromStringIndex(ZooFieldDef field, 
+			String minValue, String maxValueExcl);
+
+	public abstract Iterator<ZooPC> readObjectFromOids(long[] oids, boolean loadFromCache);
+
+	public abstract IndexStatistics getIndexStatistics(ZooFieldDef field);
 
 	public abstract long getStats(STATS stats);
 
@@ -83,6 +109,19 @@ public abstract class Node {
 
 	public abstract void refreshObject(ZooPC pc);
 
+	/**
+	 * Load several hollow objects in one batch.
+	 * @param pcs Hollow objects of this node
+	 */
+	public abstract void refreshObjects(List<ZooPC> pcs);
+
+	/**
+	 * Load several objects in one batch.
+	 * @param oids The OIDs of the objects
+	 * @return The objects in the order of the OIDs, {@code null} for OIDs that were not found.
+	 */
+	public abstract ZooPC[] loadInstancesById(long[] oids);
+
 	public abstract void refreshSchema(ZooClassDef def);
 
 	public abstract long getSchemaForObject(long oid);
@@ -27,6 +27,7 @@ import java.math.BigInteger;
 import java.net.URI;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Dictionary;
 import java.util.Enumeration;
@@ -52,9 +53,18 @@ import org.zoodb.jdo.impl.PersistenceManagerFactoryImpl;
 import org.zoodb.jdo.impl.PersistenceManagerImpl;
 
 /**
- * This class traverses all objects in the Java cache. It looks for new 
+ * This class traverses the dirty objects in the Java cache. It looks for new 
  * objects that have not been made persistent and makes them persistent.
  * <p>
+ * The traversal is incremental. During a transaction, every dirty object is traversed only 
+ * once, unless a field that may reference other objects is written after the traversal. Such
+ * objects are reported via {@link #flagTraversalRequired(ZooPC)}. Fields that refer to 
+ * non-persistent objects, such as collections or arrays, are checked again in every traversal, 
+ * because their content may change without a write to the owning object. 
+ * <p>
+ * The fields of each class are determined once and split into fields of persistent types and 
+ * other fields.
+ * <p>
  * This class is only public so it can be accessed by the test harness. 
  * Please do not use.
  * <p>
@@ -69,16 +79,38 @@ public class ObjectGraphTraverser {
 
     private final Session session;
     private final ClientSessionCache cache;
-    private boolean traversalRequired = true;
 
-    private final IdentityHashMap<Class<? extends Object>, Field[]> SEEN_CLASSES = 
-        new IdentityHashMap<Class<? extends Object>, Field[]>();
+    private final IdentityHashMap<Class<? extends Object>, ClassFields> SEEN_CLASSES = 
+        new IdentityHashMap<Class<? extends Object>, ClassFields>();
 
     private final ObjectIdentitySet<Object> seenObjects;
     private final ArrayList<Object> workList;
-    private boolean isTraversingCache = false;
     private int mpCount = 0;
-    private final ArrayList<ZooPC> toBecomePersistent;
+    /** The number of dirty objects in the cache that have been traversed */
+    private int nTraversed = 0;
+    /** Traversed objects that have to be traversed again */
+    private final ArrayList<ZooPC> toTraverseAgain;
+    /** Traversed objects with fields that may refer to non-persistent objects */
+    private final ArrayList<ZooPC> withOtherFields;
+
+    /**
+     * The fields of a class that may reference other objects.
+     */
+    private static final class ClassFields {
+    	/** Fields whose type is persistent capable */
+    	final Field[] pcFields;
+    	/** Fields that may refer to non-persistent objects, such as collections or arrays */
+    	final Field[] otherFields;
+    	/** All fields */
+    	final Field[] allFields;
+    	ClassFields(List<Field> pcFields, List<Field> otherFields) {
+    		this.pcFields = pcFields.toArray(new Field[pcFields.size()]);
+    		this.otherFields = otherFields.toArray(new Field[otherFields.size()]);
+    		ArrayList<Field> all = new ArrayList<Field>(pcFields);
+    		all.addAll(otherFields);
+    		this.allFields = all.toArray(new Field[all.size()]);
+    	}
+    }
 
     /**
      * This HashSet contains types that are not persistent and that
@@ -143,32 +175,45 @@ public class ObjectGraphTraverser {
         this.cache = cache;
         this.session = cache.getSession();
         
-        //We need to copy the cache to a local list, because the cache we might make additional
-        //objects persistent while iterating. We need to ensure that these new objects are covered
-        //as well. And we have the problem of concurrent updates in the cache.
-        
         workList = new ArrayList<Object>();
         seenObjects = new ObjectIdentitySet<Object>();
-        //TODO ObjIdentSet? -> ArrayList might be faster in most cases
-        toBecomePersistent = new ArrayList<ZooPC>(); 
+        toTraverseAgain = new ArrayList<ZooPC>();
+        withOtherFields = new ArrayList<ZooPC>();
     }
 
 	/**
-	 * Tell the OGT that the object graph has changed and that a new traversal is required.
+	 * Tell the OGT that a field of an object has been written after the object was traversed
+	 * and that the object has to be traversed again.
+	 * @param pc The object
 	 */
-	public void flagTraversalRequired() {
-        traversalRequired = true;
+	public void flagTraversalRequired(ZooPC pc) {
+		toTraverseAgain.add(pc);
 	}
 
+	/**
+	 * Called at the end of a transaction, when the dirty objects are removed from the cache.
+	 */
+	public void reset() {
+		nTraversed = 0;
+		toTraverseAgain.clear();
+		withOtherFields.clear();
+	}
+	
 	/**
      * This class is only public so it can be accessed by the test harness. 
      * Please do not use.
      */
     public final void traverse() {
-    	//We have to check for && because 'traversalRequired' is not triggered by new objects,
-    	//but new objects may have new objects referenced that are not marked as persistent.
-    	//See issue #57.
-    	if (!traversalRequired && !cache.hasDirtyPojos()) {
+    	if (!session.getConfig().getPersistenceByReachability()) {
+    		return;
+    	}
+    	ArrayList<ZooPC> dirtyObjects = cache.getDirtyObjects();
+    	if (nTraversed > dirtyObjects.size()) {
+    		//should not happen, start again
+    		reset();
+    	}
+    	if (nTraversed == dirtyObjects.size() && toTraverseAgain.isEmpty() && 
+    			withOtherFields.isEmpty()) {
     		//shortcut
     		return;
     	}
@@ -176,49 +221,55 @@ public class ObjectGraphTraverser {
         //through reachability.
         //For this, we have to check objects that are DIRTY or NEW (by 
         //makePersistent()). 
-//    	DBLogger.debugPrintln(1, "Starting OGT: " + workList.size());
-//        long t1 = System.currentTimeMillis();
-//        long nObjects = 0;
-//
-//        nObjects += traverseCache();
-//        nObjects += traverseWorkList();
-//                
-//        long t2 = System.currentTimeMillis();
-//        DBLogger.debugPrintln(1, "Finished OGT: " + nObjects + " (seen="
-//                + seenObjects.size() + " ) / " + (t2-t1)/1000.0
-//                + " MP=" + mpCount);
-    	traverseCache();
-        traverseWorkList();
+    	
+    	//Objects that have been written since they were traversed
+    	for (int i = 0; i < toTraverseAgain.size(); i++) {
+    		ZooPC co = toTraverseAgain.get(i);
+        	if (co.jdoZooIsDirty() & !co.jdoZooIsDeleted()) {
+        		traversePC(co, false);
+        	}
+    	}
+    	toTraverseAgain.clear();
+    	
+    	//The content of collections, arrays and other non-persistent objects may have changed
+    	//without the owning object being written.
+    	int nOther = withOtherFields.size();
+    	for (int i = 0; i < nOther; i++) {
+    		ZooPC co = withOtherFields.get(i);
+        	if (co.jdoZooIsDirty() & !co.jdoZooIsDeleted()) {
+        		doFields(co, getFields(co.getClass()).otherFields);
+        	}
+    	}
+    	
+    	//New dirty objects, including the ones that are made persistent during traversal.
+    	//The list is not iterated with an iterator, because it grows during traversal.
+    	do {
+    		while (nTraversed < dirtyObjects.size()) {
+    			ZooPC co = dirtyObjects.get(nTraversed++);
+    			//ignore clean objects. Ignore hollow objects? Don't follow deleted objects.
+    			//we require objects that are dirty or new (=dirty and not deleted?)
+    			if (co.jdoZooIsDirty() & !co.jdoZooIsDeleted()) {
+    				traversePC(co, true);
+    			}
+    		}
+    		traverseWorkList();
+    	} while (nTraversed < dirtyObjects.size());
         //We have to clear the seenObjects here, see also issue #58.
         seenObjects.clear();
-        traversalRequired = false;
     }
     
-    private int traverseCache() {
-    	isTraversingCache = true;
-    	int nObjects = 0;
-    	//TODO is this really necessary? Looks VERY ugly.
-    	//Profiling FlatObject.commit(): ~7% spent in next()!
-    	for (ZooPC co: cache.getDirtyObjects()) {
-        	//ignore clean objects. Ignore hollow objects? Don't follow deleted objects.
-        	//we require objects that are dirty or new (=dirty and not deleted?)
-        	if (co.jdoZooIsDirty() & !co.jdoZooIsDeleted()) {
-        		traverseObject(co);
-        		nObjects++;
-        	}
-        }
-        isTraversingCache = false;
-
-        //make objects persistent. This has to be delayed after traversing the cache to avoid
-        //concurrent modification on the cache.
-        for (ZooPC pc: toBecomePersistent) {
-        	if (!pc.jdoZooIsPersistent()) {
-        		cache.getSession().makePersistent(pc);
-        	}
-        }
-        mpCount += toBecomePersistent.size();
-        
-        return nObjects;
+    private void traversePC(ZooPC co, boolean isNew) {
+    	co.jdoZooMarkTraversed();
+    	if (co instanceof DBCollection || co instanceof GenericObject) {
+    		traverseObject(co);
+    		return;
+    	}
+    	ClassFields fields = getFields(co.getClass());
+    	doFields(co, fields.pcFields);
+    	doFields(co, fields.otherFields);
+    	if (isNew && fields.otherFields.length > 0) {
+    		withOtherFields.add(co);
+    	}
     }
     
     private int traverseWorkList() {
@@ -226,10 +277,8 @@ public class ObjectGraphTraverser {
         while (!workList.isEmpty()) {
             nObjects++;
             Object object = workList.remove(workList.size()-1);
-            //Objects in the work-list are always already made persistent:
-            //Objects in the work-list are either added by the constructor 
-            //(already made  persistent).
-            //or have been added by addToWorkList (which uses makePersistent() first).
+            //Objects in the work-list are never persistent. Persistent objects are 
+            //traversed via the list of dirty objects.
             traverseObject(object);
         }
         return nObjects;
@@ -237,12 +286,6 @@ public class ObjectGraphTraverser {
 
     @SuppressWarnings("rawtypes")
 	private void traverseObject(Object object) {
-    	//TODO optimisations:
-    	//- Check first for ZooPC
-    	//  -> Implement separate doObject(ZooPC, which uses ZooCLassDef-fields i.o. Class-fields
-    	//     This avoid SEEN_CLASSES lookup
-    	//  -> What about persistent collections (also if 3rd party?)?
-    	//- Remove static modifier for SEEN_CLASSES -> make OGT final field in Session
         if (object instanceof DBCollection) {
             doPersistentContainer(object);
         } else if (object instanceof Object[]) {
@@ -260,7 +303,7 @@ public class ObjectGraphTraverser {
         } else if (object instanceof GenericObject){
         	//Ignore for now
         } else {
-            doObject(object);
+            doFields(object, getFields(object.getClass()).allFields);
         }
     }
     
@@ -282,20 +325,13 @@ public class ObjectGraphTraverser {
         	ZooPC pc = (ZooPC) object;
         	//This can happen if e.g. a LinkedList contains new persistent capable objects.
             if (!pc.jdoZooIsPersistent()) {
-                //Make object persistent, if necessary
-            	if (isTraversingCache) {
-            		//during cache traversal:
-            		toBecomePersistent.add(pc);
-            	} else {
-            		//during work list traversal:
-            		session.makePersistent(pc);
-            		mpCount++;
-            	}
-            } else {
-            	//This object is already persistent. It is either in the worklist or it is 
-            	//uninteresting (not dirty).
-            	return;
+                //Make object persistent, it is then traversed via the list of dirty objects.
+           		session.makePersistent(pc);
+           		mpCount++;
             }
+            //This object is already persistent. It is either in the list of dirty objects or 
+            //it is uninteresting (not dirty).
+            return;
         }
 
         if (!seenObjects.contains(object)) {
@@ -323,8 +359,8 @@ public class ObjectGraphTraverser {
         }
     }
 
-    private final void doObject(Object parent) {			
-        for (Field field: getFields(parent.getClass())) {
+    private final void doFields(Object parent, Field[] fields) {			
+        for (Field field: fields) {
             try {
                 //add the value to the working list
                 addToWorkList(field.get(parent));
@@ -378,23 +414,28 @@ public class ObjectGraphTraverser {
     }
 
     /**
-     * Returns a List containing all of the Field objects for the given class.
+     * Returns the Field objects for the given class that may refer to other objects.
      * The fields include all public and private fields from the given class 
      * and its super classes.
      *
      * @param c Class object
-     * @return Returns list of interesting fields
+     * @return Returns the interesting fields
      */
-    private final Field[] getFields (Class<? extends Object> cls) {
-    	Field[] ret = SEEN_CLASSES.get(cls);
+    private final ClassFields getFields(Class<? extends Object> cls) {
+    	ClassFields ret = SEEN_CLASSES.get(cls);
         if (ret != null) {
             return ret;
         }
 
-        List<Field> retL = new ArrayList<Field>();
+        List<Field> pcFields = new ArrayList<Field>();
+        List<Field> otherFields = new ArrayList<Field>();
         for (Field f: cls.getDeclaredFields ()) {
         	if (!isSimpleType(f)) {
-        		retL.add(f);
+        		if (ZooPC.class.isAssignableFrom(f.getType())) {
+        			pcFields.add(f);
+        		} else {
+        			otherFields.add(f);
+        		}
         		f.setAccessible(true);
         	}
         }
@@ -402,11 +443,11 @@ public class ObjectGraphTraverser {
         //the 2nd case can occur if the incoming object is of type Object.class
         //--> See Test_084_SerailizationBugRefToPM.
         if (cls.getSuperclass() != Object.class && cls != Object.class) {
-        	for (Field f: getFields(cls.getSuperclass())) {
-        		retL.add(f);
-        	}
+        	ClassFields sup = getFields(cls.getSuperclass());
+        	pcFields.addAll(Arrays.asList(sup.pcFields));
+        	otherFields.addAll(Arrays.asList(sup.otherFields));
         }
-        ret = retL.toArray(new Field[retL.size()]);
+        ret = new ClassFields(pcFields, otherFields);
         SEEN_CLASSES.put(cls, ret);
         return ret;
     }
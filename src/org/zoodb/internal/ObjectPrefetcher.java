@@ -0,0 +1,207 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.internal;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.zoodb.api.DBArrayList;
+import org.zoodb.api.DBHashMap;
+import org.zoodb.api.impl.ZooPC;
+import org.zoodb.internal.ClassAccessor.FieldAccessor;
+import org.zoodb.internal.ZooFieldDef.JdoType;
+import org.zoodb.internal.util.DBLogger;
+
+/**
+ * Loads the objects that are referenced by a set of root objects, as defined by a
+ * {@link PrefetchPolicy}.
+ *
+ * The reference graph is loaded level by level. For every level, the hollow objects are
+ * collected and loaded in one batch via {@link Node#refreshObjects(java.util.List)}, which
+ * resolves the OIDs in ascending order and reads the objects in the order of their position
+ * in the database. This avoids loading every referenced object separately when the graph is
+ * navigated.
+ *
+ * Only fields of loaded objects are read, so the traversal itself never activates an
+ * object. The fields are read with the {@link ClassAccessor} of the class, or with reflection
+ * if the class has no accessor.
+ */
+final class ObjectPrefetcher {
+
+	private static final int[] NO_FIELDS = new int[0];
+
+	private final Session session;
+	private final PrefetchPolicy policy;
+	/** The positions of the fetched fields in {@link ZooClassDef#getAllFields()} */
+	private final IdentityHashMap<ZooClassDef, int[]> fields =
+			new IdentityHashMap<ZooClassDef, int[]>();
+	private final Set<ZooPC> seen =
+			Collections.newSetFromMap(new IdentityHashMap<ZooPC, Boolean>());
+
+	ObjectPrefetcher(Session session, PrefetchPolicy policy) {
+		this.session = session;
+		this.policy = policy;
+	}
+
+	/**
+	 * @param roots The root objects, these are loaded if they are hollow
+	 */
+	void prefetch(Collection<?> roots) {
+		ArrayList<ZooPC> level = new ArrayList<ZooPC>();
+		for (Object o: roots) {
+			add(o, level);
+		}
+		load(level);
+		if (!policy.isPrefetchEnabled()) {
+			return;
+		}
+		int maxDepth = policy.getMaxFetchDepth();
+		for (int depth = 0; (maxDepth < 0 || depth < maxDepth) && !level.isEmpty(); depth++) {
+			ArrayList<ZooPC> next = new ArrayList<ZooPC>();
+			for (ZooPC pc: level) {
+				addReferences(pc, next);
+			}
+			load(next);
+			level = next;
+		}
+	}
+
+	private void add(Object o, ArrayList<ZooPC> level) {
+		if (!(o instanceof ZooPC)) {
+			return;
+		}
+		ZooPC pc = (ZooPC) o;
+		if (!pc.jdoZooIsPersistent() || pc.jdoZooIsDeleted() ||
+				pc.jdoZooGetContext().getSession() != session) {
+			return;
+		}
+		if (seen.add(pc)) {
+			level.add(pc);
+		}
+	}
+
+	/**
+	 * Loads the hollow objects of the list, in one batch per node.
+	 * @param pcs Persistent objects
+	 */
+	static void load(List<ZooPC> pcs) {
+		ArrayList<ZooPC> hollow = new ArrayList<ZooPC>();
+		Node node = null;
+		for (ZooPC pc: pcs) {
+			if (!pc.jdoZooIsStateHollow()) {
+				continue;
+			}
+			if (node != null && pc.jdoZooGetNode() != node) {
+				//only one node per batch
+				node.refreshObjects(hollow);
+				hollow.clear();
+			}
+			node = pc.jdoZooGetNode();
+			hollow.add(pc);
+		}
+		if (!hollow.isEmpty()) {
+			node.refreshObjects(hollow);
+		}
+	}
+
+	private void addReferences(ZooPC pc, ArrayList<ZooPC> next) {
+		if (pc.jdoZooIsStateHollow()) {
+			//not found
+			return;
+		}
+		ZooClassDef def = pc.jdoZooGetClassDef();
+		int[] pos = getFields(def);
+		if (pos.length > 0) {
+			ClassAccessor acc = def.getAccessor();
+			if (acc != null) {
+				FieldAccessor[] fas = acc.getFields();
+				for (int i: pos) {
+					addValue(fas[i].get(pc), next);
+				}
+			} else {
+				ZooFieldDef[] fds = def.getAllFields();
+				for (int i: pos) {
+					Field f = fds[i].getJavaField();
+					try {
+						addValue(f.get(pc), next);
+					} catch (IllegalAccessException e) {
+						throw DBLogger.newFatal("Field: " + f, e);
+					}
+				}
+			}
+		}
+		if ((pc instanceof DBArrayList || pc instanceof DBHashMap) && 
+				policy.isContentFetched(def)) {
+			addValue(pc instanceof DBArrayList ? 
+					(Collection<?>) pc : ((DBHashMap<?, ?>) pc).entrySet(), next);
+		}
+	}
+
+	private void addValue(Object v, ArrayList<ZooPC> next) {
+		if (v == null) {
+			return;
+		}
+		if (v instanceof ZooPC) {
+			add(v, next);
+		} else if (v instanceof Collection) {
+			for (Object o: (Collection<?>) v) {
+				addValue(o, next);
+			}
+		} else if (v instanceof Map) {
+			addValue(((Map<?, ?>) v).entrySet(), next);
+		} else if (v instanceof Map.Entry) {
+			addValue(((Map.Entry<?, ?>) v).getKey(), next);
+			addValue(((Map.Entry<?, ?>) v).getValue(), next);
+		} else if (v instanceof Object[]) {
+			for (Object o: (Object[]) v) {
+				addValue(o, next);
+			}
+		}
+	}
+
+	private int[] getFields(ZooClassDef def) {
+		int[] ret = fields.get(def);
+		if (ret != null) {
+			return ret;
+		}
+		ZooFieldDef[] fds = def.getAllFields();
+		int[] pos = new int[fds.length];
+		int n = 0;
+		for (int i = 0; i < fds.length; i++) {
+			ZooFieldDef f = fds[i];
+			JdoType t = f.getJdoType();
+			if ((t == JdoType.REFERENCE || t == JdoType.ARRAY || t == JdoType.SCO) &&
+					f.getJavaField() != null && policy.isFetched(def, f)) {
+				pos[n++] = i;
+			}
+		}
+		ret = n == 0 ? NO_FIELDS : Arrays.copyOf(pos, n);
+		fields.put(def, ret);
+		return ret;
+	}
+}
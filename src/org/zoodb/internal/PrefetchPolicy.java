@@ -0,0 +1,51 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.internal;
+
+/**
+ * Defines which references of loaded objects are loaded as well, see
+ * {@link Session#prefetch(java.util.Collection, PrefetchPolicy)}.
+ */
+public interface PrefetchPolicy {
+
+	/**
+	 * @return The number of reference levels that are loaded, {@code -1} for no limit.
+	 */
+	int getMaxFetchDepth();
+
+	/**
+	 * @return Whether any references are loaded at all.
+	 */
+	boolean isPrefetchEnabled();
+
+	/**
+	 * @param def The class of the loaded object
+	 * @param field A reference, array or SCO field of the class
+	 * @return Whether the objects referenced by the field are loaded.
+	 */
+	boolean isFetched(ZooClassDef def, ZooFieldDef field);
+
+	/**
+	 * @param def The class of a loaded {@code DBArrayList} or {@code DBHashMap}
+	 * @return Whether the elements of the collection are loaded.
+	 */
+	boolean isContentFetched(ZooClassDef def);
+}
@@ -46,6 +46,7 @@ import org.zoodb.internal.util.ClientLock;
 import org.zoodb.internal.util.DBLogger;
 import org.zoodb.internal.util.IteratorRegistry;
 import org.zoodb.internal.util.MergingIterator;
+import org.zoodb.internal.util.PrimLongArrayList;
 import org.zoodb.internal.util.TransientField;
 import org.zoodb.internal.util.Util;
 import org.zoodb.schema.ZooSchema;
@@ -154,6 +155,10 @@ public class Session implements IteratorRegistry {
 			lock();
 			checkActive();
 
+			if (config.getReadOnly()) {
+				checkNoChangesReadOnly();
+			}
+			
 			//pre-commit: traverse object tree for transitive persistence
 			cache.persistReachableObjects();
 
@@ -410,6 +415,7 @@ public class Session implements IteratorRegistry {
 				//nothing to do, is already persistent
 				return; 
 			}
+			checkWritable();
 			primary.makePersistent(pc);
 		} finally {
 			unlock();
@@ -693,15 +699,87 @@ public class Session implements IteratorRegistry {
 		}
 	}
 	
+	/**
+	 * Load the given objects and the objects they reference, as defined by the policy.
+	 * Objects are loaded in batches, one batch per level of references.
+	 * @param roots Root objects, hollow roots are loaded as well
+	 * @param policy The prefetch policy
+	 */
+	public void prefetch(Collection<?> roots, PrefetchPolicy policy) {
+		try {
+			lock();
+			checkActiveRead();
+			new ObjectPrefetcher(this, policy).prefetch(roots);
+		} finally {
+			unlock();
+		}
+	}
+
+	/**
+	 * Returns several objects. Cached objects are returned directly, hollow objects and
+	 * objects that are not cached are loaded in one batch per node.
+	 * @param arg0 The OIDs
+	 * @return The objects in the order of the OIDs, {@code null} for OIDs that were not found.
+	 */
 	public Object[] getObjectsById(Collection<? extends Object> arg0) {
-		checkActiveRead();
-		Object[] res = new Object[arg0.size()];
-		int i = 0;
-		for ( Object obj: arg0 ) {
-			res[i] = getObjectById(obj);
-			i++;
+		try {
+			lock();
+			checkActiveRead();
+			Object[] res = new Object[arg0.size()];
+			PrimLongArrayList toLoad = new PrimLongArrayList();
+			ArrayList<ZooPC> hollow = new ArrayList<ZooPC>();
+			int i = 0;
+			for ( Object obj: arg0 ) {
+				long oid = (Long) obj;
+				ZooPC co = cache.findCoByOID(oid);
+				if (co != null) {
+					if (co.jdoZooIsStateHollow() && !co.jdoZooIsDeleted()) {
+						hollow.add(co);
+					}
+					res[i] = co;
+				} else {
+					toLoad.add(oid);
+				}
+				i++;
+			}
+			
+			if (!hollow.isEmpty()) {
+				ObjectPrefetcher.load(hollow);
+				for (ZooPC co: hollow) {
+					if (co.jdoZooIsStateHollow()) {
+						//not found, this reports the error
+						co.jdoZooGetNode().refreshObject(co);
+					}
+				}
+			}
+			
+			//find the remaining objects
+			for (Node n: nodes) {
+				if (toLoad.isEmpty()) {
+					break;
+				}
+				ZooPC[] pcs = n.loadInstancesById(toLoad.toArray());
+				PrimLongArrayList notFound = new PrimLongArrayList();
+				for (int j = 0; j < pcs.length; j++) {
+					if (pcs[j] == null) {
+						notFound.add(toLoad.get(j));
+					}
+				}
+				toLoad = notFound;
+			}
+
+			//fill in the loaded objects, they are in the cache now 
+			i = 0;
+			for ( Object obj: arg0 ) {
+				if (res[i] == null) {
+					res[i] = cache.findCoByOID((Long) obj);
+				}
+				i++;
+			}
+			return res;
+		} finally {
+			unlock();
 		}
-		return res;
 	}
 
 	/**
@@ -738,6 +816,7 @@ public class Session implements IteratorRegistry {
 		try {
 			lock();
 			checkActive();
+			checkWritable();
 			ZooPC co = checkObject(pc);
 			co.jdoZooMarkDeleted();
 		} finally {
@@ -928,6 +1007,19 @@ public class Session implements IteratorRegistry {
 		}
 	}
 
+	private void checkWritable() {
+		if (config.getReadOnly()) {
+			throw DBLogger.newUser("This session is read-only.");
+		}
+	}
+	
+	private void checkNoChangesReadOnly() {
+		if (!cache.getDirtyObjects().isEmpty() || !cache.getDeletedObjects().isEmpty() 
+				|| !cache.getDirtyGenericObjects().isEmpty() || schemaManager.hasChanges()) {
+			throw DBLogger.newUser("This session is read-only, changes cannot be committed.");
+		}
+	}
+	
 	private void checkActive() {
     	checkOpen();
     	if (!isActive) {
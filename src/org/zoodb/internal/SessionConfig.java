@@ -32,7 +32,11 @@ public class SessionConfig {
 	private boolean failOnClosedQueries = false;
 	private boolean isDetachAllOnCommit = false;
 	private boolean isNonTransactionalRead = false;
+	private boolean isReadOnly = false;
+	private boolean isStreamingQueries = false;
+	private boolean isPersistenceByReachability = true;
 	private CACHE_MODE cacheMode = CACHE_MODE.SOFT;
+	private DURABILITY durability = DURABILITY.SYNC;
 
 
 	/**
@@ -46,6 +50,25 @@ public class SessionConfig {
 		PIN
 	}
 	
+	/**
+	 * Specifies when the pages written by a commit are forced to disk. 
+	 * <ul>
+	 * <li>SYNC: The commit returns after all pages have been forced to disk.</li>
+	 * <li>ASYNC_FSYNC: The commit returns after all pages have been written. A background 
+	 * thread forces them to disk and then writes the root page. A crash may lose recent 
+	 * commits, but the database remains consistent.</li>
+	 * <li>NO_FSYNC: The commit returns after all pages have been written and forcing them is 
+	 * left to the operating system. This is only safe against crashes of the application,
+	 * not against crashes of the operating system or power failures.</li>
+	 * </ul>
+	 * @author Tilmann Zaeschke
+	 */
+	public enum DURABILITY {
+		SYNC,
+		ASYNC_FSYNC,
+		NO_FSYNC
+	}
+	
 	private void checkFrozen() {
 		if (isFrozen) {
 			throw DBLogger.newUser("Session configuration cannot be changed after at this point.");
@@ -96,6 +119,36 @@ public class SessionConfig {
 		this.cacheMode = cacheMode;
 	}
 
+	public boolean getStreamingQueries() {
+		return isStreamingQueries;
+	}
+
+	public void setStreamingQueries(boolean isStreamingQueries) {
+		checkFrozen();
+		this.isStreamingQueries = isStreamingQueries;
+	}
+
+	public boolean getPersistenceByReachability() {
+		return isPersistenceByReachability;
+	}
+
+	/**
+	 * This can be changed at any time, also during a transaction.
+	 * @param flag Whether new objects should be made persistent by reachability
+	 */
+	public void setPersistenceByReachability(boolean flag) {
+		this.isPersistenceByReachability = flag;
+	}
+
+	public DURABILITY getDurability() {
+		return durability;
+	}
+
+	public void setDurability(DURABILITY durability) {
+		checkFrozen();
+		this.durability = durability;
+	}
+
 	public boolean getNonTransactionalRead() {
 		return isNonTransactionalRead;
 	}
@@ -111,4 +164,19 @@ public class SessionConfig {
 			SessionFactory.FAIL_BECAUSE_OF_ACTIVE_NON_TX_READ = true;
 		}
 	}
+
+	public boolean getReadOnly() {
+		return isReadOnly;
+	}
+
+	/**
+	 * Read-only sessions execute all transactions on a snapshot of the last committed 
+	 * state of the database. They are neither blocked by nor do they block concurrent 
+	 * writers. Read-only sessions cannot commit any changes.
+	 * @param isReadOnly Whether the session is read-only
+	 */
+	public void setReadOnly(boolean isReadOnly) {
+		checkFrozen();
+		this.isReadOnly = isReadOnly;
+	}
 }
@@ -24,7 +24,9 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -65,12 +67,17 @@ public class ZooClassDef extends ZooPC {
 	private transient ZooFieldDef[] allFields = new ZooFieldDef[0];
 	private transient HashMap<String, ZooFieldDef> fieldBuffer = null;
 	private transient PCContext providedContext = null;
+	private transient ArrayList<ZooCompositeIndexDef> compositeIndices = null;
 	
 	private long prevVersionOid = 0;
 	private transient ZooClassDef nextVersion = null;
 	private transient ZooClassDef prevVersion = null;
 	//Indicates whether the class is schema-compatible with the Java class of the same name
 	private transient boolean isJavaCompatible = false;  
+	private transient ClassAccessor accessor = null;
+	//The Java class and fields for which the accessor was created
+	private transient Class<?> accessorCls = null;
+	private transient ZooFieldDef[] accessorFields = null;
 	
 	//List of operations that transform a previous version into the current version. 
 	private ArrayList<PersistentSchemaOperation> evolutionOperations = null;
@@ -222,6 +229,11 @@ public class ZooClassDef extends ZooPC {
 		}
 		newDef.associateFields();
 		
+		//composite indices
+		for (ZooCompositeIndexDef ci: getCompositeIndices()) {
+			newDef.addCompositeIndex(ci.newVersion(newDef));
+		}
+		
 		return newDef;
 	}
 
@@ -484,6 +496,63 @@ public class ZooClassDef extends ZooPC {
 		return allFields;
 	}
 
+	/**
+	 * @return The composite indices that are declared on this class. 
+	 */
+	public List<ZooCompositeIndexDef> getCompositeIndices() {
+		if (compositeIndices == null) {
+			return Collections.emptyList();
+		}
+		return compositeIndices;
+	}
+
+	/**
+	 * @param fieldNames Names of the indexed fields
+	 * @return The composite index on exactly these fields or {@code null} if there is no such
+	 * index.
+	 */
+	public ZooCompositeIndexDef getCompositeIndex(String ... fieldNames) {
+		for (ZooCompositeIndexDef ci: getCompositeIndices()) {
+			ZooFieldDef[] fields = ci.getFields();
+			if (fields.length != fieldNames.length) {
+				continue;
+			}
+			boolean match = true;
+			for (int i = 0; i < fields.length; i++) {
+				match &= fields[i].getName().equals(fieldNames[i]);
+			}
+			if (match) {
+				return ci;
+			}
+		}
+		return null;
+	}
+
+	public void addCompositeIndex(ZooCompositeIndexDef ci) {
+		if (ci == null) {
+			return;
+		}
+		if (compositeIndices == null) {
+			compositeIndices = new ArrayList<ZooCompositeIndexDef>();
+		}
+		compositeIndices.add(ci);
+	}
+
+	public void removeCompositeIndex(ZooCompositeIndexDef ci) {
+		if (compositeIndices != null) {
+			compositeIndices.remove(ci);
+		}
+	}
+
+	/**
+	 * Only to be used when the schema is loaded from the database.
+	 * @param indices The composite indices of this class
+	 */
+	public void setCompositeIndices(List<ZooCompositeIndexDef> indices) {
+		compositeIndices = indices.isEmpty() ? null : 
+			new ArrayList<ZooCompositeIndexDef>(indices);
+	}
+
 	public ZooClassProxy getVersionProxy() {
 		return versionProxy;
 	}
@@ -621,6 +690,15 @@ public class ZooClassDef extends ZooPC {
 		i = 0;
 		for (ZooFieldDef fd: allFields) {
 			if (fd.getName().equals(fieldDef.getName())) {
+				//composite indices with this field are dropped
+				if (compositeIndices != null) {
+					Iterator<ZooCompositeIndexDef> iter = compositeIndices.iterator();
+					while (iter.hasNext()) {
+						if (iter.next().containsField(fd)) {
+							iter.remove();
+						}
+					}
+				}
 				rebuildFieldsRecursive();
 				newEvolutionOperationRemove(i);
 				return;
@@ -634,6 +712,22 @@ public class ZooClassDef extends ZooPC {
 		return nextVersion;
 	}
 
+	/**
+	 * @return The accessor for the fields and the constructor of the Java class, or 
+	 * {@code null} if the class has to be accessed with reflection.
+	 */
+	public ClassAccessor getAccessor() {
+		if (nextVersion != null) {
+			return null;
+		}
+		if (accessorFields != allFields || accessorCls != cls) {
+			accessor = ClassAccessor.create(this);
+			accessorCls = cls;
+			accessorFields = allFields;
+		}
+		return accessor;
+	}
+
 	public ZooClassDef getPreviousVersion() {
 		return prevVersion;
 	}
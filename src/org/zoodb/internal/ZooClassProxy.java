@@ -147,6 +147,13 @@ public class ZooClassProxy implements ZooClass {
 		locateFieldOrFail(fieldName).createIndex(isUnique);
 	}
 	
+	@Override
+	public void createHashIndex(String fieldName) {
+		DBTracer.logCall(this, fieldName);
+		checkInvalidWrite();
+		locateFieldOrFail(fieldName).createHashIndex();
+	}
+	
 	@Override
 	public boolean removeIndex(String fieldName) {
 		DBTracer.logCall(this, fieldName);
@@ -154,6 +161,20 @@ public class ZooClassProxy implements ZooClass {
 		return locateFieldOrFail(fieldName).removeIndex();
 	}
 	
+	@Override
+	public void rebuildIndex(String fieldName) {
+		DBTracer.logCall(this, fieldName);
+		checkInvalidWrite();
+		locateFieldOrFail(fieldName).rebuildIndex();
+	}
+	
+	@Override
+	public void rebuildIndices() {
+		DBTracer.logCall(this);
+		checkInvalidWrite();
+		schemaManager.rebuildIndices(def);
+	}
+	
 	@Override
 	public boolean hasIndex(String fieldName) {
 		DBTracer.logCall(this, fieldName);
@@ -168,6 +189,34 @@ public class ZooClassProxy implements ZooClass {
 		return locateFieldOrFail(fieldName).isIndexUnique();
 	}
 	
+	@Override
+	public boolean isIndexHashed(String fieldName) {
+		DBTracer.logCall(this, fieldName);
+		checkInvalidRead();
+		return locateFieldOrFail(fieldName).isIndexHashed();
+	}
+	
+	@Override
+	public void createCompositeIndex(String ... fieldNames) {
+		DBTracer.logCall(this, (Object[]) fieldNames);
+		checkInvalidWrite();
+		schemaManager.defineCompositeIndex(def, fieldNames);
+	}
+	
+	@Override
+	public boolean removeCompositeIndex(String ... fieldNames) {
+		DBTracer.logCall(this, (Object[]) fieldNames);
+		checkInvalidWrite();
+		return schemaManager.removeCompositeIndex(def, fieldNames);
+	}
+	
+	@Override
+	public boolean hasCompositeIndex(String ... fieldNames) {
+		DBTracer.logCall(this, (Object[]) fieldNames);
+		checkInvalidRead();
+		return schemaManager.isCompositeIndexDefined(def, fieldNames);
+	}
+	
 	private ZooField locateFieldOrFail(String fieldName) {
 		ZooField f = getField(fieldName);
 		if (f == null) {
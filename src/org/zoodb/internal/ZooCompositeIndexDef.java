@@ -0,0 +1,203 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.internal;
+
+import java.util.Arrays;
+
+/**
+ * Definition of a composite index over several fields of a class. The index contains all
+ * instances of the class and its sub-classes.
+ *
+ * Composite indices are stored like field indices with one 64 bit key per object.
+ * The key is composed of the index keys of the fields (see BitTools): Every field gets an
+ * equal share of the 64 bits, the first field gets the highest bits. Each share contains the
+ * highest bits of the field key. The composite keys are therefore ordered by the first field,
+ * then by the second field and so on, such that an equality condition on the leading fields
+ * plus a range on the following field maps to a single range of composite keys.
+ *
+ * With two fields, keys of fields with at most 32 bit (int, short, char, byte, float) are
+ * stored without loss. Other keys are truncated to their highest bits. For example, an index
+ * on (int, long) keeps only the highest 32 bits of the long key, so all long values 
+ * between 0 and 2^32-1 share the same composite key and the index only narrows the 
+ * candidates by the int field. A query on such an index therefore returns candidates
+ * that may not match; the query evaluates every candidate on the actual field values,
+ * so the result is exact.
+ */
+public final class ZooCompositeIndexDef {
+
+	public static final int MAX_FIELDS = 4;
+
+	private final ZooClassDef declaringType;
+	private final ZooFieldDef[] fields;
+	private final int[] bits;
+	private final boolean[] is32Bit;
+
+	/**
+	 * @param declaringType The class that owns the index
+	 * @param fields The indexed fields, in order of significance
+	 */
+	public ZooCompositeIndexDef(ZooClassDef declaringType, ZooFieldDef[] fields) {
+		if (fields.length < 2 || fields.length > MAX_FIELDS) {
+			throw new IllegalArgumentException(
+					"Composite indices require 2 to " + MAX_FIELDS + " fields.");
+		}
+		this.declaringType = declaringType;
+		this.fields = fields.clone();
+		this.bits = new int[fields.length];
+		this.is32Bit = new boolean[fields.length];
+		int b = 64 / fields.length;
+		for (int i = 0; i < fields.length; i++) {
+			bits[i] = b;
+			is32Bit[i] = is32Bit(fields[i]);
+		}
+		bits[0] = 64 - (fields.length - 1) * b;
+	}
+
+	private static boolean is32Bit(ZooFieldDef f) {
+		if (!f.isPrimitiveType()) {
+			return false;
+		}
+		switch (f.getPrimitiveType()) {
+		case BOOLEAN:
+		case BYTE:
+		case CHAR:
+		case FLOAT:
+		case INT:
+		case SHORT:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Creates the definition for a new version of the declaring class.
+	 * @param newDef The new version of the class
+	 * @return The new definition or {@code null} if one of the fields does not exist anymore.
+	 */
+	ZooCompositeIndexDef newVersion(ZooClassDef newDef) {
+		ZooFieldDef[] newFields = new ZooFieldDef[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			for (ZooFieldDef f: newDef.getAllFields()) {
+				if (f.getFieldSchemaId() == fields[i].getFieldSchemaId()) {
+					newFields[i] = f;
+				}
+			}
+			if (newFields[i] == null) {
+				return null;
+			}
+		}
+		return new ZooCompositeIndexDef(newDef, newFields);
+	}
+
+	public ZooClassDef getDeclaringType() {
+		return declaringType;
+	}
+
+	public ZooFieldDef[] getFields() {
+		return fields;
+	}
+
+	/**
+	 * @return The schema IDs of the fields, these do not change with new schema versions.
+	 */
+	public long[] getFieldIds() {
+		long[] ids = new long[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			ids[i] = fields[i].getFieldSchemaId();
+		}
+		return ids;
+	}
+
+	public boolean containsField(ZooFieldDef field) {
+		for (ZooFieldDef f: fields) {
+			if (f == field) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param fieldIds Schema IDs of fields
+	 * @return Whether the index consists of exactly these fields in this order.
+	 */
+	public boolean matches(long[] fieldIds) {
+		return Arrays.equals(getFieldIds(), fieldIds);
+	}
+
+	/**
+	 * @param fieldKeys The index keys of all fields
+	 * @return The composite key
+	 */
+	public long toKey(long[] fieldKeys) {
+		return toKey(fieldKeys, fields.length, false);
+	}
+
+	/**
+	 * Create the lowest or highest composite key for the given keys of the leading fields.
+	 * @param fieldKeys The index keys of the leading fields
+	 * @param n The number of leading fields
+	 * @param max Whether the remaining fields should be filled with their highest possible
+	 * value or with their lowest possible value
+	 * @return The composite key
+	 */
+	public long toKey(long[] fieldKeys, int n, boolean max) {
+		long key = 0;
+		for (int i = 0; i < fields.length; i++) {
+			long part;
+			if (i < n) {
+				part = project(i, fieldKeys[i]);
+			} else {
+				part = max ? -1L >>> (64 - bits[i]) : 0;
+			}
+			key = (key << bits[i]) | part;
+		}
+		//unsigned ordering -> signed ordering
+		return key ^ Long.MIN_VALUE;
+	}
+
+	/**
+	 * Order preserving projection of a field key on the number of bits of the field.
+	 */
+	private long project(int i, long fieldKey) {
+		long u;
+		if (is32Bit[i]) {
+			fieldKey = Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, fieldKey));
+			u = (fieldKey ^ Integer.MIN_VALUE) << 32;
+		} else {
+			u = fieldKey ^ Long.MIN_VALUE;
+		}
+		return u >>> (64 - bits[i]);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("(");
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(fields[i].getName());
+		}
+		return sb.append(")").toString();
+	}
+}
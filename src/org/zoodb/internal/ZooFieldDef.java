@@ -73,6 +73,7 @@ public class ZooFieldDef {
 	
 	private boolean isIndexed = false;;
 	private boolean isIndexUnique;
+	private boolean isIndexHashed;
 	
 	private int offset = Integer.MIN_VALUE;
     private int fieldPos = -1;
@@ -139,6 +140,7 @@ public class ZooFieldDef {
 		jdoType = f.jdoType;
 		isIndexed = f.isIndexed;
 		isIndexUnique = f.isIndexUnique;
+		isIndexHashed = f.isIndexHashed;
 		offset = f.offset;
 		fieldPos = f.fieldPos;
 		proxy = f.proxy;
@@ -322,6 +324,14 @@ public class ZooFieldDef {
 		isIndexUnique = isUnique;
 	}
 	
+	public boolean isIndexHashed() {
+		return isIndexHashed;
+	}
+
+	public void setIndexHashed(boolean isHashed) {
+		isIndexHashed = isHashed;
+	}
+	
 	protected int getNextOffset() {
 		return offset + fieldLength; 
 	}
@@ -144,12 +144,24 @@ public class ZooFieldProxy implements ZooField {
 		schemaManager.defineIndex(fieldDef, isUnique);
 	}
 
+	@Override
+	public void createHashIndex() {
+		checkInvalidWrite();
+		schemaManager.defineIndex(fieldDef, true, true);
+	}
+
 	@Override
 	public boolean removeIndex() {
 		checkInvalidWrite();
 		return schemaManager.removeIndex(fieldDef);
 	}
 
+	@Override
+	public void rebuildIndex() {
+		checkInvalidWrite();
+		schemaManager.rebuildIndex(fieldDef);
+	}
+
 	@Override
 	public boolean hasIndex() {
 		checkInvalidRead();
@@ -162,6 +174,12 @@ public class ZooFieldProxy implements ZooField {
 		return schemaManager.isIndexUnique(fieldDef);
 	}
 
+	@Override
+	public boolean isIndexHashed() {
+		checkInvalidRead();
+		return schemaManager.isIndexHashed(fieldDef);
+	}
+
 	@Override
 	public int getArrayDim() {
 		return fieldDef.getArrayDim();
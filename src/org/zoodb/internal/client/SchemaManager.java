@@ -21,6 +21,7 @@
 package org.zoodb.internal.client;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
@@ -30,6 +31,7 @@ import org.zoodb.internal.GenericObject;
 import org.zoodb.internal.Node;
 import org.zoodb.internal.ZooClassDef;
 import org.zoodb.internal.ZooClassProxy;
+import org.zoodb.internal.ZooCompositeIndexDef;
 import org.zoodb.internal.ZooFieldDef;
 import org.zoodb.internal.client.session.ClientSessionCache;
 import org.zoodb.internal.server.index.SchemaIndex;
@@ -224,12 +226,21 @@ public class SchemaManager {
 	}
 
 	public void defineIndex(ZooFieldDef f, boolean isUnique) {
+		defineIndex(f, isUnique, false);
+	}
+
+	public void defineIndex(ZooFieldDef f, boolean isUnique, boolean isHashed) {
 		if (f.isIndexed()) {
 			throw DBLogger.newUser("Field is already indexed: " + f.getName());
 		}
 		//Is type indexable?
 		SchemaIndex.FTYPE.fromType(f);
-		ops.add(new SchemaOperation.IndexCreate(f, isUnique));
+		if (isHashed && (!isUnique || f.isString())) {
+			throw DBLogger.newUser(
+					"Hash indices are only supported as unique indices on non-String fields: " 
+					+ f.getName());
+		}
+		ops.add(new SchemaOperation.IndexCreate(f, isUnique, isHashed));
 	}
 
 	public boolean removeIndex(ZooFieldDef f) {
@@ -240,6 +251,66 @@ public class SchemaManager {
 		return true;
 	}
 
+	public void rebuildIndex(ZooFieldDef f) {
+		if (!f.isIndexed()) {
+			throw DBLogger.newUser("Field has no index: " + f.getName());
+		}
+		ops.add(new SchemaOperation.IndexRebuild(f));
+	}
+
+	/**
+	 * Rebuilds the indices of all fields that are declared in the class and all composite 
+	 * indices of the class.
+	 * @param def The class
+	 */
+	public void rebuildIndices(ZooClassDef def) {
+		for (ZooFieldDef f: def.getLocalFields()) {
+			if (f.isIndexed()) {
+				ops.add(new SchemaOperation.IndexRebuild(f));
+			}
+		}
+		for (ZooCompositeIndexDef ci: def.getCompositeIndices()) {
+			ops.add(new SchemaOperation.CompositeIndexRebuild(ci));
+		}
+	}
+
+	public void defineCompositeIndex(ZooClassDef def, String ... fieldNames) {
+		if (fieldNames.length < 2 || fieldNames.length > ZooCompositeIndexDef.MAX_FIELDS) {
+			throw DBLogger.newUser("Composite indices require 2 to " + 
+					ZooCompositeIndexDef.MAX_FIELDS + " fields: " + Arrays.toString(fieldNames));
+		}
+		if (def.getCompositeIndex(fieldNames) != null) {
+			throw DBLogger.newUser("Composite index is already defined: " + 
+					Arrays.toString(fieldNames));
+		}
+		ZooFieldDef[] fields = new ZooFieldDef[fieldNames.length];
+		for (int i = 0; i < fieldNames.length; i++) {
+			fields[i] = def.getField(fieldNames[i]);
+			for (int j = 0; j < i; j++) {
+				if (fields[j] == fields[i]) {
+					throw DBLogger.newUser("Duplicate field in composite index: " + 
+							fieldNames[i]);
+				}
+			}
+			//Is type indexable?
+			SchemaIndex.FTYPE.fromType(fields[i]);
+		}
+		ops.add(new SchemaOperation.CompositeIndexCreate(new ZooCompositeIndexDef(def, fields)));
+	}
+
+	public boolean removeCompositeIndex(ZooClassDef def, String ... fieldNames) {
+		ZooCompositeIndexDef ci = def.getCompositeIndex(fieldNames);
+		if (ci == null) {
+			return false;
+		}
+		ops.add(new SchemaOperation.CompositeIndexRemove(ci));
+		return true;
+	}
+
+	public boolean isCompositeIndexDefined(ZooClassDef def, String ... fieldNames) {
+		return def.getCompositeIndex(fieldNames) != null;
+	}
+
 	public boolean isIndexDefined(ZooFieldDef f) {
 		return f.isIndexed();
 	}
@@ -250,6 +321,13 @@ public class SchemaManager {
 		}
 		return f.isIndexUnique();
 	}
+
+	public boolean isIndexHashed(ZooFieldDef f) {
+		if (!f.isIndexed()) {
+			throw DBLogger.newUser("Field has no index: " + f.getName());
+		}
+		return f.isIndexHashed();
+	}
 	
 	public void commit() {
 		//If nothing changed, there is no need to verify anything!
@@ -23,6 +23,7 @@ package org.zoodb.internal.client;
 import org.zoodb.internal.Node;
 import org.zoodb.internal.ZooClassDef;
 import org.zoodb.internal.ZooClassProxy;
+import org.zoodb.internal.ZooCompositeIndexDef;
 import org.zoodb.internal.ZooFieldDef;
 import org.zoodb.internal.client.session.ClientSessionCache;
 
@@ -68,11 +69,13 @@ public abstract class SchemaOperation {
 	public static class IndexCreate extends SchemaOperation {
 		private final ZooFieldDef field;
 		private final boolean isUnique;
+		private final boolean isHashed;
 
-		public IndexCreate(ZooFieldDef field, boolean isUnique) {
+		public IndexCreate(ZooFieldDef field, boolean isUnique, boolean isHashed) {
 			super(field.getDeclaringType().jdoZooGetNode());
 			this.field = field;
 			this.isUnique = isUnique;
+			this.isHashed = isHashed;
 			initial();
 		}
 		
@@ -80,6 +83,7 @@ public abstract class SchemaOperation {
 		void initial() {
 			field.setIndexed(true);
 			field.setUnique(isUnique);
+			field.setIndexHashed(isHashed);
 			ZooClassDef def = field.getDeclaringType(); 
 			def.getProvidedContext().getIndexer().refreshWithSchema(def);
 		}
@@ -92,6 +96,7 @@ public abstract class SchemaOperation {
 		@Override
 		void rollback() {
 			field.setIndexed(false);
+			field.setIndexHashed(false);
 			ZooClassDef def = field.getDeclaringType(); 
 			def.getProvidedContext().getIndexer().refreshWithSchema(def);
 		}
@@ -103,17 +108,20 @@ public abstract class SchemaOperation {
 	public static class IndexRemove extends SchemaOperation {
 		private final ZooFieldDef field;
 		private final boolean isUnique;
+		private final boolean isHashed;
 
 		public IndexRemove(ZooFieldDef field) {
 			super(field.getDeclaringType().jdoZooGetNode());
 			this.field = field;
 			this.isUnique = field.isIndexUnique();
+			this.isHashed = field.isIndexHashed();
 			initial();
 		}
 		
 		@Override
 		void initial() {
 			field.setIndexed(false);
+			field.setIndexHashed(false);
 			ZooClassDef def = field.getDeclaringType(); 
 			def.getProvidedContext().getIndexer().refreshWithSchema(def);
 		}
@@ -127,11 +135,142 @@ public abstract class SchemaOperation {
 		void rollback() {
 			field.setIndexed(true);
 			field.setUnique(isUnique);
+			field.setIndexHashed(isHashed);
 			ZooClassDef def = field.getDeclaringType(); 
 			def.getProvidedContext().getIndexer().refreshWithSchema(def);
 		}
 	}
 
+	/**
+	 * Operation to rebuild an index.
+	 */
+	public static class IndexRebuild extends SchemaOperation {
+		private final ZooFieldDef field;
+
+		public IndexRebuild(ZooFieldDef field) {
+			super(field.getDeclaringType().jdoZooGetNode());
+			this.field = field;
+			initial();
+		}
+		
+		@Override
+		void initial() {
+			//nothing to do
+		}
+		
+		@Override
+		void commit() {
+			node.rebuildIndex(field.getDeclaringType(), field);
+		}
+		
+		@Override
+		void rollback() {
+			//nothing to do
+		}
+	}
+
+	/**
+	 * Operation to create a composite index.
+	 */
+	public static class CompositeIndexCreate extends SchemaOperation {
+		private final ZooCompositeIndexDef index;
+
+		public CompositeIndexCreate(ZooCompositeIndexDef index) {
+			super(index.getDeclaringType().jdoZooGetNode());
+			this.index = index;
+			initial();
+		}
+		
+		@Override
+		void initial() {
+			ZooClassDef def = index.getDeclaringType(); 
+			def.addCompositeIndex(index);
+			refreshIndexers(def);
+		}
+		
+		@Override
+		void commit() {
+			node.defineCompositeIndex(index.getDeclaringType(), index);
+		}
+		
+		@Override
+		void rollback() {
+			ZooClassDef def = index.getDeclaringType(); 
+			def.removeCompositeIndex(index);
+			refreshIndexers(def);
+		}
+	}
+	
+	/**
+	 * Operation to rebuild a composite index.
+	 */
+	public static class CompositeIndexRebuild extends SchemaOperation {
+		private final ZooCompositeIndexDef index;
+
+		public CompositeIndexRebuild(ZooCompositeIndexDef index) {
+			super(index.getDeclaringType().jdoZooGetNode());
+			this.index = index;
+			initial();
+		}
+		
+		@Override
+		void initial() {
+			//nothing to do
+		}
+		
+		@Override
+		void commit() {
+			node.rebuildCompositeIndex(index.getDeclaringType(), index);
+		}
+		
+		@Override
+		void rollback() {
+			//nothing to do
+		}
+	}
+	
+	/**
+	 * Operation to remove a composite index.
+	 */
+	public static class CompositeIndexRemove extends SchemaOperation {
+		private final ZooCompositeIndexDef index;
+
+		public CompositeIndexRemove(ZooCompositeIndexDef index) {
+			super(index.getDeclaringType().jdoZooGetNode());
+			this.index = index;
+			initial();
+		}
+		
+		@Override
+		void initial() {
+			ZooClassDef def = index.getDeclaringType(); 
+			def.removeCompositeIndex(index);
+			refreshIndexers(def);
+		}
+		
+		@Override
+		void commit() {
+			node.removeCompositeIndex(index.getDeclaringType(), index);
+		}
+		
+		@Override
+		void rollback() {
+			ZooClassDef def = index.getDeclaringType(); 
+			def.addCompositeIndex(index);
+			refreshIndexers(def);
+		}
+	}
+	
+	/**
+	 * Composite indices also contain instances of sub-classes, so their backups need updating.
+	 */
+	private static void refreshIndexers(ZooClassDef def) {
+		def.getProvidedContext().getIndexer().refreshWithSchema(def);
+		for (ZooClassProxy sub: def.getVersionProxy().getSubProxies()) {
+			refreshIndexers(sub.getSchemaDef());
+		}
+	}
+
 	public static class DropInstances extends SchemaOperation {
 		private final ZooClassProxy def;
 
@@ -157,6 +157,7 @@ public class ClientSessionCache implements AbstractCache {
 	    
 		dirtyObjects.clear();
 		deletedObjects.clear();
+		ogt.reset();
 		
         //generic objects
         for (GenericObject go: dirtyGenObjects) {
@@ -332,6 +333,7 @@ public class ClientSessionCache implements AbstractCache {
 		}
 		dirtyObjects.clear();
 		deletedObjects.clear();
+		ogt.reset();
 		
 		//generic objects
 		if (!dirtyGenObjects.isEmpty()) {
@@ -555,9 +557,11 @@ public class ClientSessionCache implements AbstractCache {
 	}
 
 	/**
-	 * Tell the OGT that the object graph has changed and that a new traversal is required.
+	 * Tell the OGT that an object has changed after it was traversed and that it has to be
+	 * traversed again.
+	 * @param pc The object
 	 */
-	public void flagOGTraversalRequired() {
-		ogt.flagTraversalRequired();
+	public void flagOGTraversalRequired(ZooPC pc) {
+		ogt.flagTraversalRequired(pc);
 	}
 }
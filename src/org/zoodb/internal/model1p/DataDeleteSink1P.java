@@ -25,14 +25,18 @@ import java.util.Arrays;
 
 import org.zoodb.api.impl.ZooPC;
 import org.zoodb.internal.DataDeleteSink;
+import org.zoodb.internal.DataIndexUpdater;
 import org.zoodb.internal.GenericObject;
 import org.zoodb.internal.SerializerTools;
 import org.zoodb.internal.ZooClassDef;
+import org.zoodb.internal.ZooCompositeIndexDef;
 import org.zoodb.internal.ZooFieldDef;
 import org.zoodb.internal.server.index.BitTools;
+import org.zoodb.internal.server.index.IndexStatistics;
 import org.zoodb.internal.server.index.LongLongIndex;
 import org.zoodb.internal.server.index.PagedOidIndex;
 import org.zoodb.internal.server.index.PagedPosIndex;
+import org.zoodb.internal.server.index.PagedStringIndex;
 import org.zoodb.internal.server.index.SchemaIndex.SchemaIndexEntry;
 import org.zoodb.internal.util.DBLogger;
 import org.zoodb.internal.util.Util;
@@ -137,15 +141,45 @@ public class DataDeleteSink1P implements DataDeleteSink {
     }
 
     private void flushBuffer() {
+        updateCompositeIndices(buffer, bufferCnt);
         updateFieldIndices();
         bufferCnt = 0;
         if (bufferGOCnt > 0) {
+	        updateCompositeIndices(bufferGO, bufferGOCnt);
 	        updateFieldIndicesGO();
 	        bufferGOCnt = 0;
         }
     }
 
 
+    /**
+     * Remove entries from composite indices of the class and its super-classes.
+     */
+    private void updateCompositeIndices(ZooPC[] buffer, int bufferCnt) {
+    	DataIndexUpdater indexer = cls.getProvidedContext().getIndexer();
+    	for (ZooClassDef def = cls; def != null; def = def.getSuperDef()) {
+    		for (ZooCompositeIndexDef ci: def.getCompositeIndices()) {
+    			LongLongIndex ind = node.getSchemaIE(def).getCompositeIndex(ci);
+    			ZooFieldDef[] fields = ci.getFields();
+    			long[] keys = new long[fields.length];
+    			for (int i = 0; i < bufferCnt; i++) {
+    				ZooPC co = buffer[i];
+    				for (int j = 0; j < fields.length; j++) {
+    					//The backup can be null for objects that have not been modified.
+    					if (co.jdoZooGetBackup() != null) {
+    						keys[j] = co.jdoZooGetBackup().getA()[indexer.getBackupPos(fields[j])];
+    					} else if (co.getClass() == GenericObject.class) {
+    						keys[j] = DataIndexUpdater.getKey((GenericObject) co, fields[j]);
+    					} else {
+    						keys[j] = DataIndexUpdater.getKey(co, fields[j]);
+    					}
+    				}
+    				ind.removeLong(ci.toKey(keys), co.jdoZooGetOid());
+    			}
+    		}
+    	}
+    }
+
     private void updateFieldIndices() {
         final ZooPC[] buffer = this.buffer;
         final int bufferCnt = this.bufferCnt;
@@ -162,6 +196,8 @@ public class DataDeleteSink1P implements DataDeleteSink {
             //a matching field. So there is only one index which is defined in the top-most class
             SchemaIndexEntry schemaTop = node.getSchemaIE(field.getDeclaringType()); 
             LongLongIndex fieldInd = (LongLongIndex) schemaTop.getIndex(field);
+            IndexStatistics stats = schemaTop.getIndexStatistics(field);
+            PagedStringIndex strInd = field.isString() ? schemaTop.getStringIndex(field) : null;
             try {
                 Field jField = field.getJavaField();
                 for (int i = 0; i < bufferCnt; i++) {
@@ -171,6 +207,8 @@ public class DataDeleteSink1P implements DataDeleteSink {
                     if (co.jdoZooGetBackup() != null) {
                     	long l = co.jdoZooGetBackup().getA()[iInd];
                     	fieldInd.removeLong(l, co.jdoZooGetOid());
+                    	stats.remove(l);
+                    	removeString(strInd, co.jdoZooGetBackup().getB()[iInd], co.jdoZooGetOid());
                     	continue;
                     }
                     long l;
@@ -179,6 +217,7 @@ public class DataDeleteSink1P implements DataDeleteSink {
                     	//If a hollow object gets deleted, it is automatically refreshed, zee ZooPC
                     	String str = (String)jField.get(co);
                         l = BitTools.toSortableLong(str);
+                        removeString(strInd, str, co.jdoZooGetOid());
                     } else if (field.isPersistentType()) {
                     	ZooPC pc = (ZooPC)jField.get(co);
                     	l = BitTools.toSortableLong(pc);
@@ -187,6 +226,7 @@ public class DataDeleteSink1P implements DataDeleteSink {
                     			field.getPrimitiveType());
                     }
                     fieldInd.removeLong(l, co.jdoZooGetOid());
+                    stats.remove(l);
                 }
             } catch (SecurityException e) {
                 throw DBLogger.newFatal("Error accessing field: " + field.getName(), e);
@@ -221,6 +261,8 @@ public class DataDeleteSink1P implements DataDeleteSink {
             //a matching field. So there is only one index which is defined in the top-most class
             SchemaIndexEntry schemaTop = node.getSchemaIE(field.getDeclaringType()); 
             LongLongIndex fieldInd = (LongLongIndex) schemaTop.getIndex(field);
+            IndexStatistics stats = schemaTop.getIndexStatistics(field);
+            PagedStringIndex strInd = field.isString() ? schemaTop.getStringIndex(field) : null;
             try {
                 for (int i = 0; i < bufferCnt; i++) {
                     GenericObject co = buffer[i];
@@ -229,6 +271,8 @@ public class DataDeleteSink1P implements DataDeleteSink {
                     if (co.jdoZooGetBackup() != null) {
                     	long l = co.jdoZooGetBackup().getA()[iInd];
                     	fieldInd.removeLong(l, co.getOid());
+                    	stats.remove(l);
+                    	removeString(strInd, co.jdoZooGetBackup().getB()[iInd], co.getOid());
                     	continue;
                     }
                 	long l;
@@ -241,6 +285,7 @@ public class DataDeleteSink1P implements DataDeleteSink {
                         	//co.getContext().getNode().refreshObject(co);
                         }
                     	l = (Long)co.getFieldRaw(field.getFieldPos());
+                    	removeString(strInd, co.getField(field), co.getOid());
                     } else if (field.isPersistentType()) {
                     	throw new UnsupportedOperationException();
                     	//TODO the following needs a test!
@@ -251,6 +296,7 @@ public class DataDeleteSink1P implements DataDeleteSink {
                     	l = SerializerTools.primitiveToLong(primO, field.getPrimitiveType());
                     }
                     fieldInd.removeLong(l, co.getOid());
+                    stats.remove(l);
                 }
             } catch (IllegalArgumentException e) {
                 throw DBLogger.newFatal(
@@ -266,6 +312,12 @@ public class DataDeleteSink1P implements DataDeleteSink {
         }
     }
     
+    private static void removeString(PagedStringIndex strInd, Object str, long oid) {
+    	if (strInd != null && str != null) {
+    		strInd.remove((String) str, oid);
+    	}
+    }
+
     private void delete(long oid, PagedPosIndex ois) {
     	long pos = oidIndex.removeOidNoFail(oid, -1); //value=long with 32=page + 32=offs
     	if (pos == -1) {
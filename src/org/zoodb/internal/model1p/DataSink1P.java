@@ -26,18 +26,23 @@ import java.util.Arrays;
 import java.util.Iterator;
 
 import org.zoodb.api.impl.ZooPC;
+import org.zoodb.internal.DataIndexUpdater;
 import org.zoodb.internal.DataSerializer;
 import org.zoodb.internal.DataSink;
 import org.zoodb.internal.GenericObject;
 import org.zoodb.internal.SerializerTools;
 import org.zoodb.internal.ZooClassDef;
+import org.zoodb.internal.ZooCompositeIndexDef;
 import org.zoodb.internal.ZooFieldDef;
 import org.zoodb.internal.client.AbstractCache;
 import org.zoodb.internal.server.ObjectWriter;
 import org.zoodb.internal.server.index.BitTools;
+import org.zoodb.internal.server.index.IndexStatistics;
 import org.zoodb.internal.server.index.LongLongIndex;
+import org.zoodb.internal.server.index.PagedStringIndex;
 import org.zoodb.internal.server.index.SchemaIndex.SchemaIndexEntry;
 import org.zoodb.internal.util.DBLogger;
+import org.zoodb.internal.util.PrimLongArrayList;
 import org.zoodb.internal.util.Util;
 
 
@@ -162,9 +167,11 @@ public class DataSink1P implements DataSink {
 
     private void flushBuffer() {
         updateFieldIndices();
+        updateCompositeIndices(buffer, bufferCnt);
         bufferCnt = 0;
         if (bufferGOCnt > 0) {
 	        updateFieldIndicesGO();
+	        updateCompositeIndices(bufferGO, bufferGOCnt);
 	        bufferGOCnt = 0;
         }
 
@@ -178,28 +185,27 @@ public class DataSink1P implements DataSink {
                 }
                 SchemaIndexEntry schemaTop = node.getSchemaIE(field.getDeclaringType()); 
                 LongLongIndex fieldInd = (LongLongIndex) schemaTop.getIndex(field);
+                IndexStatistics stats = schemaTop.getIndexStatistics(field);
+                PagedStringIndex strInd = field.isString() ? schemaTop.getStringIndex(field) : null;
         		for (Pair p: a) {
         			//This should now work, all objects have been removed
         			//Refreshing is also not an issue, we already have the index-value
         			if (field.isString()) {
         				//TODO this does not work for GOs... Actually, it might, because 
         				//GOs extend ZooPC...  for ZooPC see Test_091 -> Issue 55
-        				String str = getString(p.pc, field);
+        				String str = DataIndexUpdater.getString(p.pc, field);
         				//ignore 'null' ?!?!? Why? No reason, just a definition we make here...
         				if (str != null) {
-	        				Iterator<ZooPC> it = 
-	        						node.readObjectFromIndex(field, p.value, p.value, true);
-	        				while (it.hasNext()) {
-	        					ZooPC o2 = it.next();
-	        					String s2 = getString(o2, field);
-	        					if (str.equals(s2)) {
-	                        		long oid2 = o2.jdoZooGetOid();
-	                        		throw DBLogger.newUser("Unique index clash by value of field " 
-	                        				+ field.getName() + "=" + p.value +  " of new object "
-	                        				+ Util.oidToString(p.pc.jdoZooGetOid()) + " with "
-	                        				+ Util.oidToString(oid2));
-	        					}
-	        				}
+        					long oid2 = findString(strInd, field, str, p.value);
+        					if (oid2 != -1) {
+                        		throw DBLogger.newUser("Unique index clash by value of field " 
+                        				+ field.getName() + "=" + p.value +  " of new object "
+                        				+ Util.oidToString(p.pc.jdoZooGetOid()) + " with "
+                        				+ Util.oidToString(oid2));
+        					}
+        					if (strInd != null) {
+        						strInd.insert(str, p.pc.jdoZooGetOid());
+        					}
         				}
                     	fieldInd.insertLong(p.value, p.pc.jdoZooGetOid());
         			} else if (!fieldInd.insertLongIfNotSet(p.value, p.pc.jdoZooGetOid())) {
@@ -209,23 +215,31 @@ public class DataSink1P implements DataSink {
                 				+ Util.oidToString(p.pc.jdoZooGetOid()) + " with "
                 				+ Util.oidToString(oid2));
                 	}
+        			stats.insert(p.value);
         		}
         		fieldUpdateBuffer[i] = null;
         	}
         }
     }
 
-    private String getString(ZooPC pc, ZooFieldDef field) {
-		if (pc instanceof GenericObject) {
-			GenericObject go = (GenericObject) pc;
-			return (String) go.getField(field);
-		} else { 
-			try {
-				return (String) field.getJavaField().get(pc);
-			} catch (IllegalArgumentException | IllegalAccessException e) {
-				throw new RuntimeException(e);
-			}
-		}
+    /**
+     * Find an object with the given String value.
+     * @return The OID of the object or -1 if there is no such object.
+     */
+    private long findString(PagedStringIndex strInd, ZooFieldDef field, String str, long key) {
+    	if (strInd != null && strInd.isExact(str)) {
+    		//The full key index is exact, no need to load any objects
+    		PrimLongArrayList oids = strInd.getValues(str, PagedStringIndex.successor(str));
+    		return oids.size() > 0 ? oids.get(0) : -1;
+    	}
+    	Iterator<ZooPC> it = node.readObjectFromIndex(field, key, key, true, false);
+    	while (it.hasNext()) {
+    		ZooPC o2 = it.next();
+    		if (str.equals(DataIndexUpdater.getString(o2, field))) {
+    			return o2.jdoZooGetOid();
+    		}
+    	}
+    	return -1;
     }
 
     private void updateFieldIndices() {
@@ -249,10 +263,16 @@ public class DataSink1P implements DataSink {
             //a matching field. So there is only one index which is defined in the top-most class
             SchemaIndexEntry schemaTop = node.getSchemaIE(field.getDeclaringType()); 
             LongLongIndex fieldInd = (LongLongIndex) schemaTop.getIndex(field);
+            IndexStatistics stats = schemaTop.getIndexStatistics(field);
+            PagedStringIndex strInd = field.isString() ? schemaTop.getStringIndex(field) : null;
             try {
                 Field jField = field.getJavaField();
                 for (int i = 0; i < bufferCnt; i++) {
                     ZooPC co = buffer[i];
+                    if (!co.jdoZooIsNew() && co.jdoZooGetBackup() == null) {
+                    	//only non-indexed fields have been written
+                    	continue;
+                    }
                     final long l;
                     String str = null;
                     if (field.isString()) {
@@ -280,18 +300,24 @@ public class DataSink1P implements DataSink {
                         	}
                         }
                         fieldInd.removeLong(lOld, co.jdoZooGetOid());
+                        stats.remove(lOld);
+                        removeString(strInd, co.jdoZooGetBackup().getB()[iInd], co.jdoZooGetOid());
                     }
                     if (field.isIndexUnique()) {
                     	if (field.isString()) {
                     		//always buffer string updates, because verifying collisions is costly
                     		bufferIndexUpdate(iField, co, l);
                     	} else {
-	                    	if (!fieldInd.insertLongIfNotSet(l, co.jdoZooGetOid())) {
+	                    	if (fieldInd.insertLongIfNotSet(l, co.jdoZooGetOid())) {
+	                    		stats.insert(l);
+	                    	} else {
 	                        	bufferIndexUpdate(iField, co, l);
 	                    	}
                     	}
                      } else {
                     	fieldInd.insertLong(l, co.jdoZooGetOid());
+                    	stats.insert(l);
+                    	insertString(strInd, str, co.jdoZooGetOid());
                     }
                 }
             } catch (SecurityException e) {
@@ -304,6 +330,63 @@ public class DataSink1P implements DataSink {
         }
     }
 
+    /**
+     * Composite indices are defined in the class or in one of its super-classes. They are never 
+     * unique, so there are no collisions that require buffering.
+     */
+    private void updateCompositeIndices(ZooPC[] buffer, int bufferCnt) {
+    	DataIndexUpdater indexer = cls.getProvidedContext().getIndexer();
+    	for (ZooClassDef def = cls; def != null; def = def.getSuperDef()) {
+    		for (ZooCompositeIndexDef ci: def.getCompositeIndices()) {
+    			LongLongIndex ind = node.getSchemaIE(def).getCompositeIndex(ci);
+    			ZooFieldDef[] fields = ci.getFields();
+    			int[] backupPos = new int[fields.length];
+    			for (int j = 0; j < fields.length; j++) {
+    				backupPos[j] = indexer.getBackupPos(fields[j]);
+    			}
+    			long[] keys = new long[fields.length];
+    			for (int i = 0; i < bufferCnt; i++) {
+    				ZooPC co = buffer[i];
+    				if (!co.jdoZooIsNew() && co.jdoZooGetBackup() == null) {
+    					//only non-indexed fields have been written
+    					continue;
+    				}
+    				for (int j = 0; j < fields.length; j++) {
+    					keys[j] = co.getClass() == GenericObject.class ? 
+    							DataIndexUpdater.getKey((GenericObject) co, fields[j]) :
+    								DataIndexUpdater.getKey(co, fields[j]);
+    				}
+    				long key = ci.toKey(keys);
+    				if (!co.jdoZooIsNew()) {
+    					long[] backup = co.jdoZooGetBackup().getA();
+    					for (int j = 0; j < fields.length; j++) {
+    						keys[j] = backup[backupPos[j]];
+    					}
+    					long keyOld = ci.toKey(keys);
+    					if (keyOld == key) {
+    						//no update here...
+    						continue;
+    					}
+    					ind.removeLong(keyOld, co.jdoZooGetOid());
+    				}
+    				ind.insertLong(key, co.jdoZooGetOid());
+    			}
+    		}
+    	}
+    }
+
+    private static void insertString(PagedStringIndex strInd, String str, long oid) {
+    	if (strInd != null && str != null) {
+    		strInd.insert(str, oid);
+    	}
+    }
+
+    private static void removeString(PagedStringIndex strInd, Object str, long oid) {
+    	if (strInd != null && str != null) {
+    		strInd.remove((String) str, oid);
+    	}
+    }
+
     private void bufferIndexUpdate(int iField, ZooPC pc, long l) {
    		if (fieldUpdateBuffer[iField] == null) {
 			fieldUpdateBuffer[iField] = new ArrayList<Pair>();
@@ -332,6 +415,8 @@ public class DataSink1P implements DataSink {
             //a matching field. So there is only one index which is defined in the top-most class
             SchemaIndexEntry schemaTop = node.getSchemaIE(field.getDeclaringType()); 
             LongLongIndex fieldInd = (LongLongIndex) schemaTop.getIndex(field);
+            IndexStatistics stats = schemaTop.getIndexStatistics(field);
+            PagedStringIndex strInd = field.isString() ? schemaTop.getStringIndex(field) : null;
             try {
                 for (int i = 0; i < bufferCnt; i++) {
                     GenericObject co = buffer[i];
@@ -363,16 +448,22 @@ public class DataSink1P implements DataSink {
                         	}
                         }
                         fieldInd.removeLong(lOld, co.getOid());
+                        stats.remove(lOld);
+                        removeString(strInd, co.jdoZooGetBackup().getB()[iInd], co.getOid());
                     }
                     if (field.isIndexUnique()) {
-                    	if (!fieldInd.insertLongIfNotSet(l, co.getOid())) {
+                    	if (field.isString()) {
+                    		//always buffer string updates, because verifying collisions is costly
+                    		bufferIndexUpdate(iField, co, l);
+                    	} else if (fieldInd.insertLongIfNotSet(l, co.getOid())) {
+                    		stats.insert(l);
+                    	} else {
                     		bufferIndexUpdate(iField, co, l);
                     	}
-                    } else if (field.isString()) {
-                    	//always buffer string updates, because verifying collisions is costly
-                    	bufferIndexUpdate(iField, co, l);
                     } else {
                     	fieldInd.insertLong(l, co.getOid());
+                    	stats.insert(l);
+                    	insertString(strInd, str, co.getOid());
                     }
                 }
             } catch (IllegalArgumentException e) {
@@ -23,6 +23,7 @@ package org.zoodb.internal.model1p;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 import org.zoodb.api.impl.ZooPC;
 import org.zoodb.internal.DataDeleteSink;
@@ -33,6 +34,7 @@ import org.zoodb.internal.OidBuffer;
 import org.zoodb.internal.Session;
 import org.zoodb.internal.ZooClassDef;
 import org.zoodb.internal.ZooClassProxy;
+import org.zoodb.internal.ZooCompositeIndexDef;
 import org.zoodb.internal.ZooFieldDef;
 import org.zoodb.internal.ZooHandleImpl;
 import org.zoodb.internal.client.SchemaManager;
@@ -42,6 +44,8 @@ import org.zoodb.internal.server.OptimisticTransactionResult;
 import org.zoodb.internal.server.ServerResponse;
 import org.zoodb.internal.server.SessionFactory;
 import org.zoodb.internal.server.TxObjInfo;
+import org.zoodb.internal.server.index.IndexStatistics;
+import org.zoodb.internal.server.index.LongLongIndex.LLEntry;
 import org.zoodb.internal.server.index.PagedOidIndex;
 import org.zoodb.internal.server.index.SchemaIndex.SchemaIndexEntry;
 import org.zoodb.internal.util.CloseableIterator;
@@ -112,7 +116,7 @@ public class Node1P extends Node {
 
 	@Override
 	public long beginTransaction() {
-		return disk.beginTransaction();
+		return disk.beginTransaction(session.getConfig().getReadOnly());
 	}
 	
 	@Override
@@ -122,7 +126,7 @@ public class Node1P extends Node {
 	
 	@Override
 	public void commit() {
-		disk.commit();
+		disk.commit(session.getConfig().getDurability());
 	}
 
 	@Override
@@ -153,6 +157,21 @@ public class Node1P extends Node {
 		return pc;
 	}
 	
+	@Override
+	public ZooPC[] loadInstancesById(long[] oids) {
+		return disk.readObjects(oids);
+	}
+
+	@Override
+	public void refreshObjects(List<ZooPC> pcs) {
+		long[] oids = new long[pcs.size()];
+		for (int i = 0; i < oids.length; i++) {
+			oids[i] = pcs.get(i).jdoZooGetOid();
+		}
+		//Objects that are not found remain hollow and are reported by refreshObject()
+		disk.readObjects(oids);
+	}
+
 	@Override
 	public void refreshObject(ZooPC pc) {
 		if (pc.jdoZooIsNew() || (!pc.jdoZooIsStateHollow() && !pc.jdoZooIsTransactional())) {
@@ -216,15 +235,68 @@ public class Node1P extends Node {
 		disk.defineIndex(def, field, isUnique);
 	}
 
+	@Override
+	public void rebuildIndex(ZooClassDef def, ZooFieldDef field) {
+		disk.rebuildIndex(def, field);
+	}
+
 	@Override
 	public boolean removeIndex(ZooClassDef def, ZooFieldDef field) {
 		return disk.removeIndex(def, field);
 	}
 
+	@Override
+	public void defineCompositeIndex(ZooClassDef def, ZooCompositeIndexDef index) {
+		disk.defineCompositeIndex(def, index);
+	}
+
+	@Override
+	public void rebuildCompositeIndex(ZooClassDef def, ZooCompositeIndexDef index) {
+		disk.rebuildCompositeIndex(def, index);
+	}
+
+	@Override
+	public boolean removeCompositeIndex(ZooClassDef def, ZooCompositeIndexDef index) {
+		return disk.removeCompositeIndex(def, index);
+	}
+
 	@Override
 	public Iterator<ZooPC> readObjectFromIndex( ZooFieldDef field, 
-			long minValue, long maxValue, boolean loadFromCache) {
-		return disk.readObjectFromIndex(field, minValue, maxValue, loadFromCache);
+			long minValue, long maxValue, boolean loadFromCache, boolean descending) {
+		return disk.readObjectFromIndex(field, minValue, maxValue, loadFromCache, descending);
+	}
+
+	@Override
+	public long[] readOidsFromIndex(ZooFieldDef field, long minValue, long maxValue) {
+		return disk.readOidsFromIndex(field, minValue, maxValue);
+	}
+
+	@Override
+	public CloseableIterator<LLEntry> readKeysFromIndex(ZooFieldDef field, long minValue, 
+			long maxValue) {
+		return disk.readKeysFromIndex(field, minValue, maxValue);
+	}
+
+	@Override
+	public Iterator<ZooPC> readObjectFromOids(long[] oids, boolean loadFromCache) {
+		return disk.readObjectFromOids(oids, loadFromCache);
+	}
+
+	@Override
+	public long[] readOidsFromCompositeIndex(ZooCompositeIndexDef index, long minValue, 
+			long maxValue) {
+		return disk.readOidsFromCompositeIndex(index, minValue, maxValue);
+	}
+
+	@Override
+	public long[] readOidsFromStringIndex(ZooFieldDef field, String minValue, 
+			String maxValueExcl) {
+		return disk.readOidsFromStringIndex(field, minValue, maxValueExcl);
+	}
+
+	@Override
+	public IndexStatistics getIndexStatistics(ZooFieldDef field) {
+		return disk.getIndexStatistics(field);
 	}
 
 	@Override
@@ -20,6 +20,11 @@
  */
 package org.zoodb.internal.query;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.zoodb.internal.ZooCompositeIndexDef;
 import org.zoodb.internal.ZooFieldDef;
 
 /**
@@ -27,16 +32,49 @@ import org.zoodb.internal.ZooFieldDef;
  * - the query
  * - Index to use (if != null)
  * - min/max values of that index
+ * - ranges of further indices, whose OIDs should be intersected with the main index
  * - ascending/descending? 
  * 
  * @author Tilmann Zaeschke
  */
 public final class QueryAdvice {
 	private final QueryTreeNode query;
+	private List<QueryTreeNode> mergedQueries = Collections.emptyList();
 	private ZooFieldDef index;
+	private ZooCompositeIndexDef compositeIndex;
 	private long min;
 	private long max;
+	private String[] stringRange;
 	private boolean ascending;
+	private List<IndexRange> intersections = Collections.emptyList();
+	private double cost = 0;
+	
+	/**
+	 * A range on an attribute index.
+	 */
+	public static final class IndexRange {
+		private final ZooFieldDef index;
+		private final long min;
+		private final long max;
+		
+		IndexRange(ZooFieldDef index, long min, long max) {
+			this.index = index;
+			this.min = min;
+			this.max = max;
+		}
+		
+		public ZooFieldDef getIndex() {
+			return index;
+		}
+		
+		public long getMin() {
+			return min;
+		}
+		
+		public long getMax() {
+			return max;
+		}
+	}
 	
 	public QueryAdvice(QueryTreeNode queryTree) {
 		this.query = queryTree;
@@ -50,6 +88,25 @@ public final class QueryAdvice {
 		this.index = index;
 	}
 
+	/**
+	 * @return The composite index to use. If this is not {@code null}, then min/max refer to 
+	 * composite keys and {@link #getIndex()} returns {@code null}.
+	 */
+	public ZooCompositeIndexDef getCompositeIndex() {
+		return compositeIndex;
+	}
+
+	void setCompositeIndex(ZooCompositeIndexDef compositeIndex) {
+		this.compositeIndex = compositeIndex;
+	}
+
+	/**
+	 * @return Whether an attribute index or a composite index should be used.
+	 */
+	public boolean hasIndex() {
+		return index != null || compositeIndex != null;
+	}
+
 	public long getMin() {
 		return min;
 	}
@@ -66,6 +123,20 @@ public final class QueryAdvice {
 		this.max = max;
 	}
 
+	/**
+	 * @return The range {min, maxExclusive} of values of the String field returned by 
+	 * {@link #getIndex()}, or {@code null} if the range is unknown. The range can only be 
+	 * used with indices that store the full String keys. Bounds that are {@code null} 
+	 * are unlimited.
+	 */
+	public String[] getStringRange() {
+		return stringRange;
+	}
+
+	void setStringRange(String[] stringRange) {
+		this.stringRange = stringRange;
+	}
+
 	public boolean isAscending() {
 		return ascending;
 	}
@@ -77,6 +148,67 @@ public final class QueryAdvice {
 	public QueryTreeNode getQuery() {
 		return query;
 	}
+
+	/**
+	 * @return The query and the queries of all advices that were merged into this advice.
+	 * Objects match if they match any of these queries. 
+	 */
+	public List<QueryTreeNode> getQueries() {
+		if (mergedQueries.isEmpty()) {
+			return Collections.singletonList(query);
+		}
+		ArrayList<QueryTreeNode> ret = new ArrayList<QueryTreeNode>();
+		ret.add(query);
+		ret.addAll(mergedQueries);
+		return ret;
+	}
+	
+	/**
+	 * Merge an advice for the same index into this advice. The range of this advice is 
+	 * extended to cover both ranges. The queries of both advices are kept.
+	 * @param other An advice whose range overlaps with this advice
+	 */
+	void merge(QueryAdvice other) {
+		if (mergedQueries.isEmpty()) {
+			mergedQueries = new ArrayList<QueryTreeNode>();
+		}
+		mergedQueries.addAll(other.getQueries());
+		min = Math.min(min, other.getMin());
+		max = Math.max(max, other.getMax());
+		//the intersections apply only to the original ranges
+		clearIntersections();
+		stringRange = null;
+	}
+
+	/**
+	 * @return Ranges of further indices. Only objects that are found in the main index AND
+	 * in all these ranges can match the query. 
+	 */
+	public List<IndexRange> getIntersections() {
+		return intersections;
+	}
+	
+	void addIntersection(ZooFieldDef index, long min, long max) {
+		if (intersections.isEmpty()) {
+			intersections = new ArrayList<IndexRange>();
+		}
+		intersections.add(new IndexRange(index, min, max));
+	}
+	
+	void clearIntersections() {
+		intersections = Collections.emptyList();
+	}
+
+	/**
+	 * @return The estimated cost, only available if index statistics were used. 
+	 */
+	double getCost() {
+		return cost;
+	}
+	
+	void setCost(double cost) {
+		this.cost = cost;
+	}
 	
 	
 }
\ No newline at end of file
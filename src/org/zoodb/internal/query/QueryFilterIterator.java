@@ -0,0 +1,125 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.internal.query;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.zoodb.internal.util.CloseableIterator;
+
+/**
+ * This iterator lazily evaluates a query on the objects of a candidate iterator. Objects 
+ * are only loaded and evaluated when {@code hasNext()} is called, so a query result can be
+ * consumed without being materialized. The candidate iterator is closed when it is exhausted.
+ * If several queries are given, objects are returned if they match any of the queries. 
+ */
+public class QueryFilterIterator implements CloseableIterator<Object> {
+
+	private final Iterator<?> candidates;
+	private final QueryTreeNode[] queries;
+	private final Class<?> exactClass;
+	private Object next = null;
+	private boolean isFinished = false;
+
+	/**
+	 * @param candidates The candidate objects
+	 * @param queryTree The query
+	 * @param exactClass If not {@code null}, only instances of exactly this class are returned
+	 */
+	public QueryFilterIterator(Iterator<?> candidates, QueryTreeNode queryTree, 
+			Class<?> exactClass) {
+		this.candidates = candidates;
+		this.queries = new QueryTreeNode[]{queryTree};
+		this.exactClass = exactClass;
+	}
+
+	/**
+	 * @param candidates The candidate objects
+	 * @param queries The queries, objects are returned if they match any of the queries
+	 * @param exactClass If not {@code null}, only instances of exactly this class are returned
+	 */
+	public QueryFilterIterator(Iterator<?> candidates, List<QueryTreeNode> queries, 
+			Class<?> exactClass) {
+		this.candidates = candidates;
+		this.queries = queries.toArray(new QueryTreeNode[queries.size()]);
+		this.exactClass = exactClass;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next != null) {
+			return true;
+		}
+		if (isFinished) {
+			return false;
+		}
+		while (candidates.hasNext()) {
+			Object o = candidates.next();
+			if (exactClass != null && exactClass != o.getClass()) {
+				continue;
+			}
+			if (evaluate(o)) {
+				next = o;
+				return true;
+			}
+		}
+		close();
+		return false;
+	}
+
+	private boolean evaluate(Object o) {
+		for (QueryTreeNode q: queries) {
+			if (q.evaluate(o)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	public Object next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Object o = next;
+		next = null;
+		return o;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Closes the candidate iterator. This only needs to be called if the iterator is 
+	 * not consumed completely.
+	 */
+	@Override
+	public void close() {
+		isFinished = true;
+		next = null;
+		if (candidates instanceof CloseableIterator) {
+			((CloseableIterator<?>)candidates).close();
+		}
+	}
+}
@@ -20,6 +20,8 @@
  */
 package org.zoodb.internal.query;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.IdentityHashMap;
@@ -28,17 +30,43 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.logging.Level;
 
 import org.zoodb.api.impl.ZooPC;
+import org.zoodb.internal.Node;
 import org.zoodb.internal.ZooClassDef;
+import org.zoodb.internal.ZooCompositeIndexDef;
 import org.zoodb.internal.ZooFieldDef;
+import org.zoodb.internal.query.QueryParser.COMP_OP;
 import org.zoodb.internal.query.QueryParser.FNCT_OP;
 import org.zoodb.internal.server.index.BitTools;
+import org.zoodb.internal.server.index.IndexStatistics;
+import org.zoodb.internal.server.index.PagedStringIndex;
 import org.zoodb.internal.util.DBLogger;
+import org.zoodb.internal.util.Pair;
 
 public class QueryOptimizer {
 	
+	/** Relative cost of reading an index entry. */
+	private static final double COST_INDEX_READ = 0.05;
+	/** Relative cost of loading an object via an index (random access). */
+	private static final double COST_RANDOM_READ = 3;
+	/** Relative cost of loading an object during an extent scan (sequential access). */
+	private static final double COST_SCAN_READ = 1;
+	/** Relative cost of a comparison when sorting the result. */
+	private static final double COST_SORT = 0.05;
+	/** 
+	 * Below this number of index entries the statistics are not used. All plans are cheap
+	 * and the statistics of small indices do not tell much.
+	 */
+	private static final long MIN_ENTRIES_FOR_STATISTICS = 100;
+	
 	private final ZooClassDef clsDef;
+	private final List<ZooCompositeIndexDef> compositeIndices;
+	private final Node node;
+	/** Estimated cost of an extent scan. */
+	private double scanCost = 0;
+	private List<Pair<ZooFieldDef, Boolean>> ordering = Collections.emptyList();
 	
 	/**
 	 * A lookup map for all characters that indicate a (non-indexable) regex String. 
@@ -52,7 +80,18 @@ public class QueryOptimizer {
 	}
 	
 	public QueryOptimizer(ZooClassDef clsDef) {
+		this(clsDef, null);
+	}
+	
+	/**
+	 * @param clsDef The candidate class
+	 * @param node If not {@code null}, the index statistics of the node are used to choose 
+	 * between extent scans, indices and intersections of indices.
+	 */
+	public QueryOptimizer(ZooClassDef clsDef, Node node) {
 		this.clsDef = clsDef;
+		this.compositeIndices = clsDef.getCompositeIndices();
+		this.node = node;
 	}
 	
 	/**
@@ -76,10 +115,22 @@ public class QueryOptimizer {
 	 * @return Index to use.
 	 */
 	public List<QueryAdvice> determineIndexToUse(QueryTreeNode queryTree) {
+		return determineIndexToUse(queryTree, Collections.<Pair<ZooFieldDef, Boolean>>emptyList());
+	}
+	
+	/**
+	 * @param queryTree
+	 * @param ordering The ordering of the result, this is considered by the cost estimates 
+	 * @return Index to use.
+	 * @see #determineIndexToUse(QueryTreeNode)
+	 */
+	public List<QueryAdvice> determineIndexToUse(QueryTreeNode queryTree, 
+			List<Pair<ZooFieldDef, Boolean>> ordering) {
+		this.ordering = ordering;
 		List<QueryAdvice> advices = new LinkedList<QueryAdvice>();
 		List<ZooFieldDef> availableIndices = new LinkedList<ZooFieldDef>();
 		for (ZooFieldDef f: clsDef.getAllFields()) {
-			if (f.isIndexed()) {
+			if (isIndexed(f)) {
 				availableIndices.add(f);
 			}
 		}
@@ -98,7 +149,7 @@ public class QueryOptimizer {
 		//   uses an index. TODO
 		List<QueryTreeNode> subQueries = new LinkedList<QueryTreeNode>();
 		subQueries.add(queryTree);
-		queryTree.createSubs(subQueries);
+		queryTree.createSubs(subQueries, availableIndices);
 		
 //		System.out.println("Query2: " + queryTree.print());
 		for (QueryTreeNode sq: subQueries) {
@@ -144,12 +195,98 @@ public class QueryOptimizer {
 			}
 		}
 		
+		//If all sub-queries together are more expensive than a single extent scan, 
+		//we use the extent for all of them.
+		if (node != null && advices.size() > 1 && scanCost > 0) {
+			double cost = 0;
+			for (QueryAdvice qa: advices) {
+				cost += qa.hasIndex() ? qa.getCost() : scanCost;
+			}
+			if (cost >= scanCost) {
+				for (int i = 0; i < advices.size(); i++) {
+					advices.set(i, new QueryAdvice(advices.get(i).getQuery()));
+				}
+				return advices;
+			}
+		}
+		
 		//check for overlapping / global min/max
 		mergeAdvices(advices);
 		
 		return advices;
 	}
 	
+	/**
+	 * Determines a range of index keys that contains all index entries that can match the 
+	 * query. Every term of the query must compare the primitive field {@code f} with a constant 
+	 * or parameter, see {@link QueryTreeNode#isFieldValueQuery(ZooFieldDef)}.
+	 * In contrast to {@link #determineIndexToUse(QueryTreeNode)}, the query tree is not 
+	 * modified. The range may be larger than necessary, so the entries still have to be
+	 * evaluated with {@link QueryTreeNode#evaluateFieldValue(Object)}.
+	 * @param queryTree The query
+	 * @param f The indexed field
+	 * @return The range of keys as {min, max}
+	 */
+	public static long[] determineKeyRange(QueryTreeNode queryTree, ZooFieldDef f) {
+		long[] r1 = queryTree.n1 != null ? 
+				determineKeyRange(queryTree.n1, f) : determineKeyRange(queryTree.t1, f);
+		if (queryTree.op == null) {
+			return r1;
+		}
+		long[] r2 = queryTree.n2 != null ? 
+				determineKeyRange(queryTree.n2, f) : determineKeyRange(queryTree.t2, f);
+		switch (queryTree.op) {
+		case AND: return new long[]{Math.max(r1[0], r2[0]), Math.min(r1[1], r2[1])};
+		case OR: return new long[]{Math.min(r1[0], r2[0]), Math.max(r1[1], r2[1])};
+		default: return new long[]{Long.MIN_VALUE, Long.MAX_VALUE};
+		}
+	}
+	
+	private static long[] determineKeyRange(QueryTerm term, ZooFieldDef f) {
+		Long value = toPrimitiveKey(f, term.getValue(null));
+		if (value == null) {
+			return new long[]{Long.MIN_VALUE, Long.MAX_VALUE};
+		}
+		//Bounds are inclusive, this avoids rounding problems with floats 
+		switch (term.getOp()) {
+		case EQ: return new long[]{value, value};
+		case L:
+		case LE: return new long[]{Long.MIN_VALUE, value};
+		case A:
+		case AE: return new long[]{value, Long.MAX_VALUE};
+		default: return new long[]{Long.MIN_VALUE, Long.MAX_VALUE};
+		}
+	}
+	
+	/**
+	 * @return The index key or {@code null} if the value cannot be converted without loss.
+	 */
+	private static Long toPrimitiveKey(ZooFieldDef f, Object termVal) {
+		if (termVal instanceof Character) {
+			return (long)((Character)termVal).charValue();
+		}
+		if (!(termVal instanceof Number)) {
+			return null;
+		}
+		Number n = (Number) termVal;
+		switch (f.getPrimitiveType()) {
+		case DOUBLE: return BitTools.toSortableLong(n.doubleValue());
+		case FLOAT: return BitTools.toSortableLong(n.floatValue());
+		case BYTE:
+		case CHAR:
+		case INT:
+		case LONG:
+		case SHORT:
+			if ((termVal instanceof Double || termVal instanceof Float) && 
+					n.doubleValue() != Math.rint(n.doubleValue())) {
+				return null;
+			}
+			return n.longValue();
+		default:
+			return null;
+		}
+	}
+	
 	private static class AdviceComparator implements Comparator<QueryAdvice> {
 		@Override
 		public int compare(QueryAdvice o1, QueryAdvice o2) {
@@ -178,28 +315,32 @@ public class QueryOptimizer {
 			//shortcut
 			return;
 		}
-		IdentityHashMap<ZooFieldDef, TreeSet<QueryAdvice>> map = 
-				new IdentityHashMap<ZooFieldDef, TreeSet<QueryAdvice>>();
+		IdentityHashMap<Object, TreeSet<QueryAdvice>> map = 
+				new IdentityHashMap<Object, TreeSet<QueryAdvice>>();
 		//sort QAs by index and by minValue
+		boolean merged = false;
 		for (QueryAdvice qa: advices) {
-			TreeSet<QueryAdvice> subList = map.get(qa.getIndex());
+			TreeSet<QueryAdvice> subList = map.get(getIndexKey(qa));
 			if (subList == null) {
 				subList = new TreeSet<QueryAdvice>(new AdviceComparator());
-				map.put(qa.getIndex(), subList);
+				map.put(getIndexKey(qa), subList);
+			}
+			if (!subList.add(qa)) {
+				//same range, the comparator considers them equal
+				subList.ceiling(qa).merge(qa);
+				merged = true;
 			}
-			subList.add(qa);
 		}
 
 		//merge
-		boolean merged = false;
 		for (QueryAdvice qa: advices) {
-			TreeSet<QueryAdvice> subList = map.get(qa.getIndex());
+			TreeSet<QueryAdvice> subList = map.get(getIndexKey(qa));
 			Iterator<QueryAdvice> iter = subList.iterator();
 			QueryAdvice prev = iter.next();
 			while (iter.hasNext()) {
 				QueryAdvice current = iter.next();
 				if (prev.getMax() >= current.getMin()) {
-					prev.setMax(current.getMax());
+					prev.merge(current);
 					iter.remove();
 					merged = true;
 				} else {			
@@ -216,6 +357,22 @@ public class QueryOptimizer {
 		}
 	}
 
+	private static Object getIndexKey(QueryAdvice qa) {
+		return qa.getCompositeIndex() != null ? qa.getCompositeIndex() : qa.getIndex();
+	}
+
+	private boolean isIndexed(ZooFieldDef f) {
+		if (f.isIndexed()) {
+			return true;
+		}
+		for (ZooCompositeIndexDef ci: compositeIndices) {
+			if (ci.containsField(f)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * 
 	 * @param queryTree This is a sub-query that does not contain OR operands.
@@ -239,7 +396,7 @@ public class QueryOptimizer {
 				continue;
 			}
 			ZooFieldDef f = term.getLhsFieldDef();
-			if (f == null || !f.isIndexed()) {
+			if (f == null || !isIndexed(f)) {
 				//ignore fields that are not index
 				continue;
 			}
@@ -340,7 +497,115 @@ public class QueryOptimizer {
 			// -> Hopefully this optimization is marginal and negligible.
 			//But it may break everything!
 		}
-		return createQueryAdvice(minMap, maxMap, queryTree);
+		QueryAdvice qa = createQueryAdvice(minMap, maxMap, queryTree);
+		if (qa.getIndex() != null && qa.getIndex().isString()) {
+			qa.setStringRange(determineStringRange(queryTree, qa.getIndex()));
+		}
+		return qa;
+	}
+	
+	/**
+	 * Determines the range of String values that can match a sub-query. In contrast to the
+	 * hashed index keys, the range can be used for exact lookups in indices that store the
+	 * full String keys. 
+	 * @param queryTree A sub-query that does not contain OR operands
+	 * @param f A String field
+	 * @return The range {min, maxExclusive}, where {@code null} bounds are unlimited, or 
+	 * {@code null} if the query does not narrow the values of the field or if it compares
+	 * the field with {@code null}.
+	 */
+	static String[] determineStringRange(QueryTreeNode queryTree, ZooFieldDef f) {
+		String min = null;
+		String max = null;
+		QueryTreeIterator iter = queryTree.termIterator();
+		while (iter.hasNext()) {
+			QueryTerm term = iter.next();
+			String lo = null;
+			String hi = null;
+			if (term.isLhsFunction()) {
+				//negated functions have op==NE
+				if (term.getOp() != COMP_OP.EQ) {
+					continue;
+				}
+				String[] r = getStringFunctionRange(term.getLhsFunction(), f);
+				if (r == null) {
+					continue;
+				}
+				lo = r[0];
+				hi = r[1];
+			} else {
+				if (!term.isRhsFixed() || term.getLhsFieldDef() != f) {
+					continue;
+				}
+				Object termVal = term.getValue(null);
+				if (termVal == QueryTerm.NULL) {
+					if (term.getOp() == COMP_OP.NE) {
+						continue;
+					}
+					//null values are not in the full key index
+					return null;
+				}
+				if (!(termVal instanceof String)) {
+					continue;
+				}
+				String str = (String) termVal;
+				switch (term.getOp()) {
+				case EQ: lo = str; hi = PagedStringIndex.successor(str); break;
+				case L: hi = str; break;
+				case LE: hi = PagedStringIndex.successor(str); break;
+				case A: lo = PagedStringIndex.successor(str); break;
+				case AE: lo = str; break;
+				case STR_startsWith: 
+					lo = str; 
+					hi = PagedStringIndex.prefixUpperBound(str); 
+					break;
+				default: continue;
+				}
+			}
+			if (lo != null && (min == null || lo.compareTo(min) > 0)) {
+				min = lo;
+			}
+			if (hi != null && (max == null || hi.compareTo(max) < 0)) {
+				max = hi;
+			}
+		}
+		if (min == null && max == null) {
+			return null;
+		}
+		return new String[]{min, max};
+	}
+	
+	/**
+	 * @return The range {min, maxExclusive} of values for startsWith() and matches()
+	 * on the field, or {@code null} if the function does not narrow the values.
+	 */
+	private static String[] getStringFunctionRange(QueryFunction fn, ZooFieldDef f) {
+		if (!FNCT_OP.STR_startsWith.equals(fn.op()) && !FNCT_OP.STR_matches.equals(fn.op())) {
+			return null;
+		}
+		QueryFunction f0 = fn.getParams()[0];
+		if (!FNCT_OP.FIELD.equals(f0.op()) || f0.getParams()[0].op() != FNCT_OP.THIS 
+				|| f0.getFieldDef() != f) {
+			return null;
+		}
+		QueryFunction f1 = fn.getParams()[1];
+		if (!f1.isConstant()) {
+			return null;
+		}
+		String str = (String) f1.evaluate(null, null);
+		if (FNCT_OP.STR_matches.equals(fn.op())) {
+			for (int i = 0; i < str.length(); i++) {
+				char c = str.charAt(i);
+				if (c < REGEX_CHARS.length && REGEX_CHARS[c]) {
+					//use the leading part for a startsWith() query
+					str = str.substring(0, i);
+					return str.isEmpty() ? null : 
+						new String[]{str, PagedStringIndex.prefixUpperBound(str)};
+				}
+			}
+			return new String[]{str, PagedStringIndex.successor(str)};
+		}
+		return new String[]{str, PagedStringIndex.prefixUpperBound(str)};
 	}
 	
 	private void determineIndexToUseSubForQueryFunctions( 
@@ -366,7 +631,7 @@ public class QueryOptimizer {
 		}
 		
 		ZooFieldDef f = f0.getFieldDef();
-		if (f == null || !f.isIndexed()) {
+		if (f == null || !isIndexed(f)) {
 			//ignore fields that are not index
 			return;
 		}
@@ -438,6 +703,28 @@ public class QueryOptimizer {
 			//return default query
 			return new QueryAdvice(queryTree);
 		}
+		QueryAdvice cqa = createCompositeQueryAdvice(minMap, maxMap, queryTree);
+		//remove fields that are only part of composite indices
+		Iterator<ZooFieldDef> fIter = minMap.keySet().iterator();
+		while (fIter.hasNext()) {
+			ZooFieldDef f = fIter.next();
+			if (!isIndexUsable(f, minMap.get(f), maxMap.get(f))) {
+				fIter.remove();
+				maxMap.remove(f);
+			}
+		}
+		if (cqa != null) {
+			return cqa;
+		}
+		if (minMap.isEmpty()) {
+			return new QueryAdvice(queryTree);
+		}
+		if (node != null) {
+			QueryAdvice qa = createQueryAdviceCostBased(minMap, maxMap, queryTree);
+			if (qa != null) {
+				return qa;
+			}
+		}
 		
 		//the advised index to use...
 		// start with first
@@ -470,11 +757,242 @@ public class QueryOptimizer {
 			qa.setMin(BitTools.getMinPosInPage(qa.getMin()));
 			qa.setMax(BitTools.getMaxPosInPage(qa.getMax()));
 		}
+		
+		//The other indices are used to filter the OIDs of the main index before any object
+		//is loaded.
+		for (Map.Entry<ZooFieldDef, Long> me2: minMap.entrySet()) {
+			ZooFieldDef f = me2.getKey();
+			long min2 = me2.getValue();
+			long max2 = maxMap.get(f);
+			if (f == qa.getIndex() || isFullRange(f, min2, max2)) {
+				continue;
+			}
+			if (f.isString()) {
+				min2 = BitTools.getMinPosInPage(min2);
+				max2 = BitTools.getMaxPosInPage(max2);
+			}
+			qa.addIntersection(f, min2, max2);
+		}
 
 //		DatabaseLogger.debugPrintln(0, "Using index: " + def.getName());
 		return qa;
 	}
 
+	/**
+	 * A composite index is used if the query constrains at least two of its fields, i.e.
+	 * it compares the leading fields for equality and the next field with a range, 
+	 * for example {@code tenantId == t && timestamp > x}. The index with the most
+	 * constrained fields is used. Attribute indices on other fields are intersected with it.
+	 * @return The advice or {@code null} if no composite index qualifies.
+	 */
+	private QueryAdvice createCompositeQueryAdvice(
+			IdentityHashMap<ZooFieldDef, Long> minMap, 
+			IdentityHashMap<ZooFieldDef, Long> maxMap, 
+			QueryTreeNode queryTree) {
+		ZooCompositeIndexDef best = null;
+		int bestN = 1;
+		for (ZooCompositeIndexDef ci: compositeIndices) {
+			int n = getConstrainedPrefixLength(ci, minMap, maxMap);
+			if (n > bestN) {
+				best = ci;
+				bestN = n;
+			}
+		}
+		if (best == null) {
+			return null;
+		}
+		
+		ZooFieldDef[] fields = best.getFields();
+		long[] mins = new long[fields.length];
+		long[] maxs = new long[fields.length];
+		for (int i = 0; i < bestN; i++) {
+			mins[i] = minMap.get(fields[i]);
+			maxs[i] = maxMap.get(fields[i]);
+		}
+		QueryAdvice qa = new QueryAdvice(queryTree);
+		qa.setCompositeIndex(best);
+		qa.setMin(best.toKey(mins, bestN, false));
+		qa.setMax(best.toKey(maxs, bestN, true));
+
+		for (Map.Entry<ZooFieldDef, Long> me2: minMap.entrySet()) {
+			ZooFieldDef f = me2.getKey();
+			long min2 = me2.getValue();
+			long max2 = maxMap.get(f);
+			if (!isIndexUsable(f, min2, max2) || best.containsField(f) 
+					|| isFullRange(f, min2, max2)) {
+				continue;
+			}
+			if (f.isString()) {
+				min2 = BitTools.getMinPosInPage(min2);
+				max2 = BitTools.getMaxPosInPage(max2);
+			}
+			qa.addIntersection(f, min2, max2);
+		}
+		return qa;
+	}
+	
+	/**
+	 * @return The number of leading fields of the index that are compared for equality,
+	 * plus one if the following field is constrained by a range.
+	 */
+	private static int getConstrainedPrefixLength(ZooCompositeIndexDef ci,
+			IdentityHashMap<ZooFieldDef, Long> minMap, 
+			IdentityHashMap<ZooFieldDef, Long> maxMap) {
+		int n = 0;
+		for (ZooFieldDef f: ci.getFields()) {
+			Long min = minMap.get(f);
+			if (min == null) {
+				break;
+			}
+			long max = maxMap.get(f);
+			if (min == max) {
+				n++;
+				continue;
+			}
+			if (!isFullRange(f, min, max)) {
+				n++;
+			}
+			break;
+		}
+		return n;
+	}
+
+	/**
+	 * Hash indices can only be used to look up single keys.
+	 * @return Whether the attribute index of the field can be used for the range.
+	 */
+	private static boolean isIndexUsable(ZooFieldDef f, long min, long max) {
+		return f.isIndexed() && (!f.isIndexHashed() || min == max);
+	}
+
+	private static boolean isFullRange(ZooFieldDef f, long min, long max) {
+		return (min <= Long.MIN_VALUE && max >= Long.MAX_VALUE) 
+				|| (min <= f.getMinValue() && max >= f.getMaxValue());
+	}
+	
+	/**
+	 * Choose between an extent scan, a single index and an intersection of indices, based on 
+	 * the estimated number of index entries in each range.
+	 * The most selective index is used first. Further indices are intersected with it as long
+	 * as reading their index entries is cheaper than loading the objects that they exclude.
+	 * Finally, the index plan is only used if it is cheaper than an extent scan. 
+	 * @return The advice or {@code null} if no statistics are available.
+	 */
+	private QueryAdvice createQueryAdviceCostBased(
+			IdentityHashMap<ZooFieldDef, Long> minMap, 
+			IdentityHashMap<ZooFieldDef, Long> maxMap, 
+			QueryTreeNode queryTree) {
+		final int n = minMap.size();
+		ZooFieldDef[] fields = new ZooFieldDef[n];
+		long[] mins = new long[n];
+		long[] maxs = new long[n];
+		final long[] sizes = new long[n];
+		Integer[] order = new Integer[n];
+		long nObj = 0;
+		int i = 0;
+		for (Map.Entry<ZooFieldDef, Long> e: minMap.entrySet()) {
+			ZooFieldDef f = e.getKey();
+			long min = e.getValue();
+			long max = maxMap.get(f);
+			if (f.isString() && n > 1) {
+				//For String we have to extend the range because of the trailing hashcode
+				min = BitTools.getMinPosInPage(min);
+				max = BitTools.getMaxPosInPage(max);
+			}
+			IndexStatistics stats = node.getIndexStatistics(f);
+			if (stats == null) {
+				return null;
+			}
+			fields[i] = f;
+			mins[i] = min;
+			maxs[i] = max;
+			sizes[i] = isFullRange(f, min, max) ? 
+					stats.getEntryCount() : stats.estimateRange(min, max);
+			order[i] = i;
+			nObj = Math.max(nObj, stats.getEntryCount());
+			i++;
+		}
+		if (nObj < MIN_ENTRIES_FOR_STATISTICS) {
+			return null;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return Long.compare(sizes[o1], sizes[o2]);
+			}
+		});
+		double extentCost = nObj * COST_SCAN_READ + sortCost(nObj);
+		scanCost = Math.max(scanCost, extentCost);
+
+		//An index that is read in the order of the result avoids sorting, so it may be 
+		//cheaper than a smaller index range
+		int first = order[0];
+		double cost = Double.MAX_VALUE;
+		for (int k = 0; k < n; k++) {
+			int j = order[k];
+			double costJ = sizes[j] * (COST_INDEX_READ + COST_RANDOM_READ) + 
+					(isOrderedBy(fields[j]) ? 0 : sortCost(sizes[j]));
+			if (costJ < cost) {
+				first = j;
+				cost = costJ;
+			}
+		}
+		
+		QueryAdvice qa = new QueryAdvice(queryTree);
+		qa.setIndex(fields[first]);
+		qa.setMin(mins[first]);
+		qa.setMax(maxs[first]);
+		double nIndexRead = sizes[first];
+		double nLoad = sizes[first];
+		for (int k = 0; k < n; k++) {
+			int j = order[k];
+			if (j == first || isFullRange(fields[j], mins[j], maxs[j])) {
+				continue;
+			}
+			//assume that the predicates are independent
+			double nLoad2 = nObj > 0 ? nLoad * sizes[j] / nObj : nLoad;
+			//Intersections are read in the order of the OIDs, so the result has to be sorted
+			double cost2 = (nIndexRead + sizes[j]) * COST_INDEX_READ + 
+					nLoad2 * COST_RANDOM_READ + sortCost(nLoad2);
+			if (cost2 < cost) {
+				qa.addIntersection(fields[j], mins[j], maxs[j]);
+				nIndexRead += sizes[j];
+				nLoad = nLoad2;
+				cost = cost2;
+			}
+		}
+		qa.setCost(cost);
+
+		if (cost >= extentCost) {
+			if (DBLogger.isLoggable(Level.FINE)) {
+				DBLogger.LOGGER.fine("Query: extent scan is cheaper than index " + 
+						fields[first].getName());
+			}
+			return new QueryAdvice(queryTree);
+		}
+		return qa;
+	}
+	
+	/**
+	 * @return Whether reading the index of the field returns the objects in the order of 
+	 * the result. Only results ordered by a single field can use this.
+	 */
+	private boolean isOrderedBy(ZooFieldDef f) {
+		return ordering.size() == 1 && ordering.get(0).getA() == f && 
+				f.isPrimitiveType() && !f.isIndexHashed();
+	}
+	
+	/**
+	 * @param n Number of objects in the result
+	 * @return The estimated cost of sorting the result, 0 if no ordering is required.
+	 */
+	private double sortCost(double n) {
+		if (ordering.isEmpty() || n < 2) {
+			return 0;
+		}
+		return n * Math.log(n) / Math.log(2) * COST_SORT;
+	}
+	
 	private void optimize(QueryTreeNode q) {
 		stripUnaryNodes(q);
 	}
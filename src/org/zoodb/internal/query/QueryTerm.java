@@ -267,9 +267,23 @@ public final class QueryTerm {
 		}
 	}
 	
-	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public boolean evaluate(Object cand) {
-		Object lhsVal = getLhsValue(cand);
+		return evaluate(getLhsValue(cand), cand);
+	}
+	
+	/**
+	 * Evaluate the term on the value of the LHS field rather than on a candidate object,
+	 * for example on a value restored from an index key.
+	 * This is only valid if {@link #isFieldValueTerm(ZooFieldDef)} returns {@code true}.
+	 * @param fieldValue The value of the LHS field
+	 * @return Whether the value is a match.
+	 */
+	boolean evaluateFieldValue(Object fieldValue) {
+		return evaluate(fieldValue, null);
+	}
+	
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private boolean evaluate(Object lhsVal, Object cand) {
 		if (lhsVal == INVALID) {
 			//Return 'true' only in case of '!='. 
 			return false;//op == COMP_OP.NE;
@@ -463,6 +477,17 @@ public final class QueryTerm {
 		return rhsFieldDef == null;
 	}
 	
+	/**
+	 * @param f A field
+	 * @return Whether the term compares the field with a constant or parameter, such that
+	 * it can be evaluated on the field value alone.
+	 */
+	boolean isFieldValueTerm(ZooFieldDef f) {
+		return lhsFieldDef == f && lhsFunction == null && lhsValue == null && lhsParam == null
+				&& rhsFieldDef == null && rhsFunction == null && rhsValue != THIS 
+				&& op.isComparator();
+	}
+	
 	public boolean isLhsFunction() {
 		return lhsFunction != null;
 	}
@@ -20,9 +20,11 @@
  */
 package org.zoodb.internal.query;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.zoodb.internal.DataDeSerializerNoClass;
+import org.zoodb.internal.ZooFieldDef;
 import org.zoodb.internal.query.QueryParser.LOG_OP;
 import org.zoodb.internal.util.DBLogger;
 
@@ -47,17 +49,19 @@ public final class QueryTreeNode {
 		return (n2==null) && (t2==null);
 	}
 	
-	private boolean isBranchIndexed() {
-		if (t1 != null && t1.getLhsFieldDef() != null && t1.getLhsFieldDef().isIndexed()) {
+	private boolean isBranchIndexed(Collection<ZooFieldDef> indexedFields) {
+		if (t1 != null && t1.getLhsFieldDef() != null 
+				&& indexedFields.contains(t1.getLhsFieldDef())) {
 			return true;
 		}
-		if (t2 != null && t2.getLhsFieldDef() != null && t2.getLhsFieldDef().isIndexed()) {
+		if (t2 != null && t2.getLhsFieldDef() != null 
+				&& indexedFields.contains(t2.getLhsFieldDef())) {
 			return true;
 		}
-		if (n1 != null && n1.isBranchIndexed()) {
+		if (n1 != null && n1.isBranchIndexed(indexedFields)) {
 			return true;
 		}
-		if (n2 != null && n2.isBranchIndexed()) {
+		if (n2 != null && n2.isBranchIndexed(indexedFields)) {
 			return true;
 		}
 		return false;
@@ -153,6 +157,44 @@ public final class QueryTreeNode {
 		return (n2 != null ? n2.evaluate(dds, pos) : t2.evaluate(dds, pos));
 	}
 	
+	/**
+	 * @param f A field
+	 * @return Whether every term of the query compares the field with a constant or
+	 * parameter. Such queries can be evaluated on the field values alone.
+	 */
+	public boolean isFieldValueQuery(ZooFieldDef f) {
+		if (n1 != null ? !n1.isFieldValueQuery(f) : !t1.isFieldValueTerm(f)) {
+			return false;
+		}
+		if (n2 != null) {
+			return n2.isFieldValueQuery(f);
+		}
+		return t2 == null || t2.isFieldValueTerm(f);
+	}
+	
+	/**
+	 * Evaluate the query on the value of a single field rather than on materialized objects. 
+	 * This is only valid if {@link #isFieldValueQuery(ZooFieldDef)} returns {@code true}.
+	 * @param fieldValue The field value, for example restored from an index key
+	 * @return Whether the value is a match.
+	 */
+	public boolean evaluateFieldValue(Object fieldValue) {
+		boolean first = (n1 != null ? 
+				n1.evaluateFieldValue(fieldValue) : t1.evaluateFieldValue(fieldValue));
+		//do we have a second part?
+		if (op == null) {
+			return first;
+		}
+		if ( !first && op == LOG_OP.AND) {
+			return false;
+		}
+		if ( first && op == LOG_OP.OR) {
+			return true;
+		}
+		return (n2 != null ? 
+				n2.evaluateFieldValue(fieldValue) : t2.evaluateFieldValue(fieldValue));
+	}
+	
 	/**
 	 * This method splits a query into multiple queries for every occurrence of OR.
 	 * It walks down the query tree recursively, always doubling the tree when encountering
@@ -164,9 +206,12 @@ public final class QueryTreeNode {
 	 * 
 	 * @param subQueries container for sub query candidates, which upon return
 	 * contains one sub-query for every call.
+	 * @param indexedFields The fields that are part of an attribute index or of a composite 
+	 * index
 	 */
-	public void createSubs(List<QueryTreeNode> subQueries) {
-		if (!isBranchIndexed()) {
+	public void createSubs(List<QueryTreeNode> subQueries, 
+			Collection<ZooFieldDef> indexedFields) {
+		if (!isBranchIndexed(indexedFields)) {
 			//nothing to do, stop searching this branch
 			return;
 		}
@@ -226,16 +271,16 @@ public final class QueryTreeNode {
 				newTree = node2;
 			}
 			//subQueriesCandidates.add(newTree.root());
-			newTree.createSubs(subQueries);
+			newTree.createSubs(subQueries, indexedFields);
 			subQueries.add(newTree.root());
 		}
 		
 		//go into sub-nodes
 		if (n1 != null) {
-			n1.createSubs(subQueries);
+			n1.createSubs(subQueries, indexedFields);
 		}
 		if (n2 != null) {
-			n2.createSubs(subQueries);
+			n2.createSubs(subQueries, indexedFields);
 		}
 	}
 	
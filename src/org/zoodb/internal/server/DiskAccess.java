@@ -27,10 +27,14 @@ import java.util.Iterator;
 import org.zoodb.api.impl.ZooPC;
 import org.zoodb.internal.DataDeSerializer;
 import org.zoodb.internal.GenericObject;
+import org.zoodb.internal.SessionConfig.DURABILITY;
 import org.zoodb.internal.ZooClassDef;
 import org.zoodb.internal.ZooClassProxy;
+import org.zoodb.internal.ZooCompositeIndexDef;
 import org.zoodb.internal.ZooFieldDef;
 import org.zoodb.internal.ZooHandleImpl;
+import org.zoodb.internal.server.index.IndexStatistics;
+import org.zoodb.internal.server.index.LongLongIndex.LLEntry;
 import org.zoodb.internal.server.index.PagedOidIndex;
 import org.zoodb.internal.server.index.SchemaIndex.SchemaIndexEntry;
 import org.zoodb.internal.util.CloseableIterator;
@@ -49,10 +53,23 @@ public interface DiskAccess {
 	 */
 	public ZooPC readObject(long oid);
 	public ZooPC readObject(DataDeSerializer dds, long oid);
+
+	/**
+	 * Read several objects. The OIDs are resolved in ascending order and the objects
+	 * are read in the order of their position in the file. Cached objects are only read if
+	 * they are hollow.
+	 * @param oids The OIDs of the objects
+	 * @return The objects in the order of the OIDs, {@code null} for OIDs that were not found.
+	 */
+	public ZooPC[] readObjects(long[] oids);
 	
 	public void close();
 
-	public void commit();
+	/**
+	 * @param durability Defines whether the commit returns only after all pages have been
+	 * forced to disk.
+	 */
+	public void commit(DURABILITY durability);
 
 	/**
 	 * Defines an index and populates it. All objects are put into the cache. This is not 
@@ -64,8 +81,21 @@ public interface DiskAccess {
 	 */
 	void defineIndex(ZooClassDef cls, ZooFieldDef field, boolean isUnique);
 
+	/**
+	 * Removes all entries from the index of a field and populates it again.
+	 * @param cls
+	 * @param field
+	 */
+	void rebuildIndex(ZooClassDef cls, ZooFieldDef field);
+
 	public boolean removeIndex(ZooClassDef def, ZooFieldDef field);
 
+	void defineCompositeIndex(ZooClassDef def, ZooCompositeIndexDef index);
+
+	void rebuildCompositeIndex(ZooClassDef def, ZooCompositeIndexDef index);
+
+	boolean removeCompositeIndex(ZooClassDef def, ZooCompositeIndexDef index);
+
 	public Collection<ZooClassDef> readSchemaAll();
 
 	/**
@@ -74,9 +104,63 @@ public interface DiskAccess {
 	 * @param minValue range minimum
 	 * @param maxValue range maximum
 	 * @param loadFromCache Whether to load object from cache, if possible
+	 * @param descending Whether to return the objects in descending order of the index key
 	 */
 	Iterator<ZooPC> readObjectFromIndex(ZooFieldDef field, 
-			long minValue, long maxValue, boolean loadFromCache);
+			long minValue, long maxValue, boolean loadFromCache, boolean descending);
+
+	/**
+	 * WARNING: float/double values need to be converted with BitTools before used on indices.
+	 * @param field Field
+	 * @param minValue range minimum
+	 * @param maxValue range maximum
+	 * @return The OIDs of all objects in the range, sorted in ascending order
+	 */
+	long[] readOidsFromIndex(ZooFieldDef field, long minValue, long maxValue);
+
+	/**
+	 * Reads only the keys of an attribute index, no objects are loaded. 
+	 * WARNING: float/double values need to be converted with BitTools before used on indices.
+	 * @param field Field
+	 * @param minValue range minimum
+	 * @param maxValue range maximum
+	 * @return An iterator over all index entries in the range in ascending key order. The 
+	 * iterator should be closed if it is not consumed completely.
+	 */
+	CloseableIterator<LLEntry> readKeysFromIndex(ZooFieldDef field, long minValue, 
+			long maxValue);
+
+	/**
+	 * @param index Composite index
+	 * @param minValue range minimum of the composite key
+	 * @param maxValue range maximum of the composite key
+	 * @return The OIDs of all objects in the range, sorted in ascending order
+	 * @see ZooCompositeIndexDef#toKey(long[], int, boolean)
+	 */
+	long[] readOidsFromCompositeIndex(ZooCompositeIndexDef index, long minValue, long maxValue);
+
+	/**
+	 * @param field An indexed String field
+	 * @param minValue range minimum (inclusive) or {@code null}
+	 * @param maxValueExcl range maximum (exclusive) or {@code null}
+	 * @return The OIDs of all objects in the range, sorted in ascending order, or {@code null}
+	 * if the index of the field does not store full String keys.
+	 */
+	long[] readOidsFromStringIndex(ZooFieldDef field, String minValue, String maxValueExcl);
+
+	/**
+	 * @param oids The OIDs of the objects, preferably in ascending order
+	 * @param loadFromCache Whether to load object from cache, if possible
+	 */
+	Iterator<ZooPC> readObjectFromOids(long[] oids, boolean loadFromCache);
+
+	/**
+	 * Statistics are built when they are requested for the first time. 
+	 * @param field Indexed field
+	 * @return A copy of the current statistics of the field index or {@code null} if the 
+	 * index does not exist.
+	 */
+	IndexStatistics getIndexStatistics(ZooFieldDef field);
 
 	public long getStats(STATS stats);
 
@@ -114,7 +198,12 @@ public interface DiskAccess {
 
 	boolean checkIfObjectExists(long oid);
 
-	public long beginTransaction();
+	/**
+	 * @param isReadOnly Whether the transaction is read-only. Read-only transactions cannot 
+	 * commit any changes.
+	 * @return the ID of the new transaction
+	 */
+	public long beginTransaction(boolean isReadOnly);
 
 	public OptimisticTransactionResult rollbackTransaction();
 
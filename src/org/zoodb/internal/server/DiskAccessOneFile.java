@@ -28,10 +28,13 @@ import java.util.List;
 import org.zoodb.api.impl.ZooPC;
 import org.zoodb.internal.DataDeSerializer;
 import org.zoodb.internal.DataDeSerializerNoClass;
+import org.zoodb.internal.DataIndexUpdater;
 import org.zoodb.internal.GenericObject;
 import org.zoodb.internal.Node;
+import org.zoodb.internal.SessionConfig.DURABILITY;
 import org.zoodb.internal.ZooClassDef;
 import org.zoodb.internal.ZooClassProxy;
+import org.zoodb.internal.ZooCompositeIndexDef;
 import org.zoodb.internal.ZooFieldDef;
 import org.zoodb.internal.ZooHandleImpl;
 import org.zoodb.internal.client.AbstractCache;
@@ -39,7 +42,10 @@ import org.zoodb.internal.server.DiskIO.PAGE_TYPE;
 import org.zoodb.internal.server.ServerResponse.RESULT;
 import org.zoodb.internal.server.index.BitTools;
 import org.zoodb.internal.server.index.FreeSpaceManager;
+import org.zoodb.internal.server.index.IndexStatistics;
+import org.zoodb.internal.server.index.LLIndexBulkLoader;
 import org.zoodb.internal.server.index.LongLongIndex;
+import org.zoodb.internal.server.index.LongLongIndex.LLEntry;
 import org.zoodb.internal.server.index.LongLongIndex.LLEntryIterator;
 import org.zoodb.internal.server.index.LongLongIndex.LongLongIterator;
 import org.zoodb.internal.server.index.ObjectIterator;
@@ -47,6 +53,7 @@ import org.zoodb.internal.server.index.ObjectPosIterator;
 import org.zoodb.internal.server.index.PagedOidIndex;
 import org.zoodb.internal.server.index.PagedOidIndex.FilePos;
 import org.zoodb.internal.server.index.PagedPosIndex;
+import org.zoodb.internal.server.index.PagedStringIndex;
 import org.zoodb.internal.server.index.SchemaIndex;
 import org.zoodb.internal.server.index.SchemaIndex.SchemaIndexEntry;
 import org.zoodb.internal.server.index.ZooHandleIteratorAdapter;
@@ -54,9 +61,12 @@ import org.zoodb.internal.util.CloseableIterator;
 import org.zoodb.internal.util.DBLogger;
 import org.zoodb.internal.util.FormattedStringBuilder;
 import org.zoodb.internal.util.PoolDDS;
+import org.zoodb.internal.util.PrimLongArrayList;
+import org.zoodb.internal.util.PrimLongArrays;
 import org.zoodb.internal.util.PrimLongMapLI;
 import org.zoodb.internal.util.Util;
 import org.zoodb.tools.DBStatistics.STATS;
+import org.zoodb.tools.ZooConfig;
 
 /**
  * Disk storage functionality. This version stores all data in a single file, attempting a page 
@@ -112,9 +122,11 @@ public class DiskAccessOneFile implements DiskAccess {
 	private final StorageChannel file;
 	private final StorageChannelInput fileInAP;
 	private final PoolDDS ddsPool;
+	private final ParallelIndexBuilder indexBuilder;
 
-	private final SchemaIndex schemaIndex;
-	private final PagedOidIndex oidIndex;
+	//These refer to the snapshot views during transactions, see setViews()
+	private SchemaIndex schemaIndex;
+	private PagedOidIndex oidIndex;
 	private final FreeSpaceManager freeIndex;
     private final ObjectReader objectReader;
 	
@@ -123,15 +135,20 @@ public class DiskAccessOneFile implements DiskAccess {
     private long txId;
 	private final TxContext txContext = new TxContext(); 
 	
+	/** Whether this session holds the exclusive (commit) lock. */
+	private boolean isWriter = false;
+	private boolean isTxActive = false;
+	private boolean isReadOnly = false;
+	/** The committed state that is read by the current transaction. */
+	private SessionManager.Snapshot snapshot = null;
+	/** Nesting depth of shared locks held by this session. */
+	private int readDepth = 0;
+	
 	DiskAccessOneFile(Node node, AbstractCache cache, SessionManager sm) {
 		this.sm = sm;
 		this.node = node;
 		this.cache = cache;
 
-		//TODO read-lock
-		DBLogger.debugPrintln(1, "DAOF.this() RLOCK");
-		sm.getLock().readLock(this);
-		
 		this.freeIndex = sm.getFsm();
 		this.file = sm.getFile();
 		
@@ -147,11 +164,110 @@ public class DiskAccessOneFile implements DiskAccess {
 		ddsPool = new PoolDDS(file, this.cache);
 
 		fileInAP = file.getReader(true);
+		indexBuilder = new ParallelIndexBuilder(file, ZooConfig.getIndexBuildThreads());
+	}
+	
+	/**
+	 * Acquire the shared lock for the duration of a single read operation. Sessions that
+	 * hold the exclusive lock (during commit) do not acquire it again. Transactions read 
+	 * from a snapshot and do not require any lock, the snapshot is pinned by the first
+	 * read operation of the transaction.
+	 */
+	private void lockRead() {
+		if (snapshot != null || isWriter) {
+			return;
+		}
+		if (isTxActive) {
+			pinSnapshot();
+			return;
+		}
+		if (readDepth++ == 0) {
+			sm.getLock().readLock(this);
+		}
+	}
+
+	private void unlockRead() {
+		if (snapshot != null || isWriter) {
+			return;
+		}
+		if (--readDepth == 0) {
+			sm.getLock().release(this);
+		}
+	}
+	
+	/**
+	 * Pin the snapshot of the latest committed root page. This happens with the first read
+	 * operation of a transaction, so transactions see all commits that happened before 
+	 * they read anything. The tx ID is registered before the snapshot is pinned, this 
+	 * ensures that the FSM does not reuse any pages of the snapshot. The shared lock 
+	 * ensures that there is no commit in progress.
+	 */
+	private void pinSnapshot() {
+		sm.getLock().readLock(this);
+		try {
+			snapshot = sm.getSnapshot();
+		} finally {
+			sm.getLock().release(this);
+		}
+		setViews();
+	}
+	
+	/**
+	 * Select the indices for reading. Transactions read from the snapshot of the root page 
+	 * that was committed last when they began. The commit itself and operations outside of
+	 * transactions use the shared indices, which always reflect the latest commit.
+	 */
+	private void setViews() {
+		if (snapshot != null && !isWriter) {
+			oidIndex = snapshot.getOidIndex();
+			schemaIndex = snapshot.getSchemaIndex();
+		} else {
+			oidIndex = sm.getOidIndex();
+			schemaIndex = sm.getSchemaIndex();
+		}
+	}
+	
+	/**
+	 * Acquire the exclusive lock. Only one session can commit at any time and no 
+	 * reader operations are executed while it holds the lock.
+	 */
+	private void lockWrite() {
+		if (isWriter) {
+			throw DBLogger.newFatalInternal("Session holds already the write lock.");
+		}
+		sm.getLock().writeLock(this);
+		isWriter = true;
+		setViews();
+	}
+	
+	private void unlockWrite() {
+		if (isWriter) {
+			isWriter = false;
+			setViews();
+			sm.getLock().release(this);
+		}
+	}
+	
+	private void endTx() {
+		snapshot = null;
+		isReadOnly = false;
+		if (isTxActive) {
+			isTxActive = false;
+			sm.getTxManager().notifyTxEnd(txId);
+			sm.notifyTxEnd();
+		}
+		unlockWrite();
+		setViews();
 	}
 	
 	@Override
 	public void refreshSchema(ZooClassDef def) {
-		schemaIndex.refreshSchema(def, this);
+		lockRead();
+		try {
+			schemaIndex.refreshSchema(def, this);
+		} finally {
+			unlockRead();
+		}
 	}
 
 	
@@ -160,6 +276,16 @@ public class DiskAccessOneFile implements DiskAccess {
 	 */
 	@Override
 	public Collection<ZooClassDef> readSchemaAll() {
+		//exclusive, because new databases are initialized here
+		lockWrite();
+		try {
+			return readSchemaAllInternal();
+		} finally {
+			unlockWrite();
+		}
+	}
+	
+	private Collection<ZooClassDef> readSchemaAllInternal() {
 		Collection<ZooClassDef> all = schemaIndex.readSchemaAll(this, node);
 		if (all.isEmpty()) {
 			//new database, need to initialize!
@@ -174,8 +300,9 @@ public class DiskAccessOneFile implements DiskAccess {
 			all.add(zpcDef);
 			all.add(meta);
 		}
-		txContext.setSchemaTxId(schemaIndex.getTxIdOfLastWrite());
-		txContext.setSchemaIndexTxId(schemaIndex.getTxIdOfLastWriteThatRequiresRefresh());
+		txContext.setSchemaTxId(sm.getSchemaIndex().getTxIdOfLastWrite());
+		txContext.setSchemaIndexTxId(
+				sm.getSchemaIndex().getTxIdOfLastWriteThatRequiresRefresh());
 		return all;
 	}
 
@@ -203,8 +330,8 @@ public class DiskAccessOneFile implements DiskAccess {
 
 	@Override
 	public long[] allocateOids(int oidAllocSize) {
-		long[] ret = oidIndex.allocateOids(oidAllocSize);
-		return ret;
+		//OIDs are always allocated from the shared index
+		return sm.getOidIndex().allocateOids(oidAllocSize);
 	}
 		
 	@Override
@@ -239,24 +366,36 @@ public class DiskAccessOneFile implements DiskAccess {
 		}
 	}
 	
+	/**
+	 * This is used by the data sinks to update the indices during commit. It always returns
+	 * the shared index, because the sinks may be created during a transaction.
+	 */
 	@Override
 	public SchemaIndexEntry getSchemaIE(ZooClassDef def) {
-	    return schemaIndex.getSchema(def);
+	    return sm.getSchemaIndex().getSchema(def);
 	}
 	
+	/**
+	 * @return The shared OID index, see {@link #getSchemaIE(ZooClassDef)}.
+	 */
 	@Override
 	public PagedOidIndex getOidIndex() {
-	    return oidIndex;
+	    return sm.getOidIndex();
 	}
 	
 	@Override
 	public long countInstances(ZooClassProxy clsDef, boolean subClasses) {
-		return schemaIndex.countInstances(clsDef, subClasses);
+		lockRead();
+		try {
+			return schemaIndex.countInstances(clsDef, subClasses);
+		} finally {
+			unlockRead();
+		}
 	}
 
 	@Override
 	public ObjectWriter getWriter(ZooClassDef def) {
-	    return new ObjectWriterSV(file, oidIndex, def, schemaIndex);
+	    return new ObjectWriterSV(file, sm.getOidIndex(), def, sm.getSchemaIndex());
 	}
 	
 	/**
@@ -269,13 +408,18 @@ public class DiskAccessOneFile implements DiskAccess {
 	 */
 	@Override
 	public CloseableIterator<ZooPC> readAllObjects(long schemaId, boolean loadFromCache) {
-		SchemaIndexEntry se = schemaIndex.getSchema(schemaId);
-		if (se == null) {
-			throw DBLogger.newUser("Schema not found for class: " + schemaId);
+		lockRead();
+		try {
+			SchemaIndexEntry se = schemaIndex.getSchema(schemaId);
+			if (se == null) {
+				throw DBLogger.newUser("Schema not found for class: " + schemaId);
+			}
+
+			return new LockedIterator<ZooPC>(new ObjectPosIterator(se.getObjectIndexIterator(), 
+					cache, objectReader, loadFromCache));
+		} finally {
+			unlockRead();
 		}
-		
-		return new ObjectPosIterator(se.getObjectIndexIterator(), cache, objectReader, 
-		        loadFromCache);
 	}
 	
 	/**
@@ -283,13 +427,138 @@ public class DiskAccessOneFile implements DiskAccess {
 	 */
 	@Override
 	public CloseableIterator<ZooPC> readObjectFromIndex(
-			ZooFieldDef field, long minValue, long maxValue, boolean loadFromCache) {
-		SchemaIndexEntry se = schemaIndex.getSchema(field.getDeclaringType());
-		LongLongIndex fieldInd = (LongLongIndex) se.getIndex(field);
-		LLEntryIterator iter = fieldInd.iterator(minValue, maxValue);
-		return new ObjectIterator(iter, cache, this, objectReader, loadFromCache);
+			ZooFieldDef field, long minValue, long maxValue, boolean loadFromCache, 
+			boolean descending) {
+		lockRead();
+		try {
+			SchemaIndexEntry se = schemaIndex.getSchema(field.getDeclaringType());
+			LongLongIndex fieldInd = (LongLongIndex) se.getIndex(field);
+			LongLongIterator<LongLongIndex.LLEntry> iter = descending ? 
+					fieldInd.descendingIterator(maxValue, minValue) : 
+						fieldInd.iterator(minValue, maxValue);
+			return new LockedIterator<ZooPC>(
+					new ObjectIterator(iter, cache, this, objectReader, loadFromCache));
+		} finally {
+			unlockRead();
+		}
 	}	
 	
+	/**
+	 * WARNING: float/double values need to be converted with BitTools before used on indices. 
+	 */
+	@Override
+	public long[] readOidsFromIndex(ZooFieldDef field, long minValue, long maxValue) {
+		lockRead();
+		try {
+			SchemaIndexEntry se = schemaIndex.getSchema(field.getDeclaringType());
+			LongLongIndex fieldInd = se.getIndex(field);
+			LLEntryIterator iter = fieldInd.iterator(minValue, maxValue);
+			PrimLongArrayList oids = new PrimLongArrayList();
+			while (iter.hasNext()) {
+				oids.add(iter.next().getValue());
+			}
+			iter.close();
+			long[] ret = oids.toArray();
+			return PrimLongArrays.sortUnique(ret, ret.length);
+		} finally {
+			unlockRead();
+		}
+	}
+	
+	/**
+	 * WARNING: float/double values need to be converted with BitTools before used on indices. 
+	 */
+	@Override
+	public CloseableIterator<LLEntry> readKeysFromIndex(ZooFieldDef field, long minValue, 
+			long maxValue) {
+		lockRead();
+		try {
+			SchemaIndexEntry se = schemaIndex.getSchema(field.getDeclaringType());
+			LongLongIndex fieldInd = se.getIndex(field);
+			return new LockedIterator<LLEntry>(fieldInd.iterator(minValue, maxValue));
+		} finally {
+			unlockRead();
+		}
+	}
+	
+	@Override
+	public long[] readOidsFromCompositeIndex(ZooCompositeIndexDef index, long minValue, 
+			long maxValue) {
+		lockRead();
+		try {
+			SchemaIndexEntry se = schemaIndex.getSchema(index.getDeclaringType());
+			LongLongIndex ind = se.getCompositeIndex(index);
+			LLEntryIterator iter = ind.iterator(minValue, maxValue);
+			PrimLongArrayList oids = new PrimLongArrayList();
+			while (iter.hasNext()) {
+				oids.add(iter.next().getValue());
+			}
+			iter.close();
+			long[] ret = oids.toArray();
+			return PrimLongArrays.sortUnique(ret, ret.length);
+		} finally {
+			unlockRead();
+		}
+	}
+	
+	@Override
+	public long[] readOidsFromStringIndex(ZooFieldDef field, String minValue, 
+			String maxValueExcl) {
+		lockRead();
+		try {
+			SchemaIndexEntry se = schemaIndex.getSchema(field.getDeclaringType());
+			PagedStringIndex ind = se.getStringIndex(field);
+			if (ind == null) {
+				return null;
+			}
+			long[] ret = ind.getValues(minValue, maxValueExcl).toArray();
+			return PrimLongArrays.sortUnique(ret, ret.length);
+		} finally {
+			unlockRead();
+		}
+	}
+	
+	/**
+	 * The statistics are kept with the shared schema index. Unlike the schema index of a 
+	 * snapshot, it is not replaced by commits, so the statistics are built only once and then
+	 * updated by the data sinks of every commit. The shared lock ensures that there is no 
+	 * commit in progress.
+	 */
+	@Override
+	public IndexStatistics getIndexStatistics(ZooFieldDef field) {
+		if (!isWriter) {
+			sm.getLock().readLock(this);
+		}
+		try {
+			SchemaIndexEntry se = sm.getSchemaIndex().getSchema(field.getDeclaringType());
+			IndexStatistics stats = se == null ? null : se.getIndexStatistics(field);
+			if (stats == null) {
+				return null;
+			}
+			synchronized (stats) {
+				if (!stats.isInitialized()) {
+					stats.build(se.getIndex(field));
+				}
+				return stats.copy();
+			}
+		} finally {
+			if (!isWriter) {
+				sm.getLock().release(this);
+			}
+		}
+	}
+	
+	@Override
+	public CloseableIterator<ZooPC> readObjectFromOids(long[] oids, boolean loadFromCache) {
+		lockRead();
+		try {
+			return new LockedIterator<ZooPC>(
+					new ObjectIterator(oids, cache, this, objectReader, loadFromCache));
+		} finally {
+			unlockRead();
+		}
+	}
+	
     /**
      * Read objects.
      * This should never be necessary. TODO add warning?
@@ -300,14 +569,19 @@ public class DiskAccessOneFile implements DiskAccess {
      */
     @Override
     public CloseableIterator<ZooHandleImpl> oidIterator(ZooClassProxy clsPx, boolean subClasses) {
-        SchemaIndexEntry se = schemaIndex.getSchema(clsPx.getSchemaId());
-        if (se == null) {
-            throw new IllegalStateException("Schema not found for class: " + clsPx);
-        }
+    	lockRead();
+    	try {
+    		SchemaIndexEntry se = schemaIndex.getSchema(clsPx.getSchemaId());
+    		if (se == null) {
+    			throw new IllegalStateException("Schema not found for class: " + clsPx);
+    		}
 
-        ZooHandleIteratorAdapter it = new ZooHandleIteratorAdapter(
-                se.getObjectIndexIterator(), objectReader, cache);
-        return it;
+    		ZooHandleIteratorAdapter it = new ZooHandleIteratorAdapter(
+    				se.getObjectIndexIterator(), objectReader, cache);
+    		return new LockedIterator<ZooHandleImpl>(it);
+    	} finally {
+    		unlockRead();
+    	}
     }
     	
 	/**
@@ -329,6 +603,72 @@ public class DiskAccessOneFile implements DiskAccess {
 	 */
 	@Override
 	public ServerResponse readObject(ZooPC pc) {
+		lockRead();
+		try {
+			return readObjectInternal(pc);
+		} finally {
+			unlockRead();
+		}
+	}
+	
+	/**
+	 * Read several objects.
+	 * @param oids The OIDs of the objects
+	 * @return The objects in the order of the OIDs, {@code null} for OIDs that were not found.
+	 */
+	@Override
+	public ZooPC[] readObjects(long[] oids) {
+		lockRead();
+		try {
+			return readObjectsInternal(oids);
+		} finally {
+			unlockRead();
+		}
+	}
+
+	private ZooPC[] readObjectsInternal(long[] oids) {
+		int n = oids.length;
+		ZooPC[] ret = new ZooPC[n];
+		//Pairs of OID and array position. Looking up the OIDs in ascending order means that 
+		//every page of the OID index is visited only once.
+		long[] a = new long[2 * n];
+		for (int i = 0; i < n; i++) {
+			a[2 * i] = oids[i];
+			a[2 * i + 1] = i;
+		}
+		LLIndexBulkLoader.sort(a, 0, n);
+		//replace the OIDs with the file positions
+		int nFound = 0;
+		for (int i = 0; i < n; i++) {
+			FilePos oie = oidIndex.findOid(a[2 * i]);
+			if (oie == null) {
+				//The object remains hollow, this is reported when it is accessed
+				continue;
+			}
+			a[2 * nFound] = BitTools.getPos(oie.getPage(), oie.getOffs());
+			a[2 * nFound + 1] = a[2 * i + 1];
+			nFound++;
+		}
+		//read the objects page by page, in the order of their position in the file
+		LLIndexBulkLoader.sort(a, 0, nFound);
+		final DataDeSerializer dds = ddsPool.get();
+		for (int i = 0; i < nFound; i++) {
+			int pos = (int) a[2 * i + 1];
+			try {
+				ret[pos] = dds.readObject(
+						BitTools.getPage(a[2 * i]), BitTools.getOffs(a[2 * i]), true);
+			} catch (RuntimeException e) {
+				if (DBLogger.isUser(e)) {
+					throw e;
+				}
+				throw DBLogger.newFatal("ERROR reading object: " + Util.oidToString(oids[pos]), e);
+			}
+		}
+		ddsPool.offer(dds);
+		return ret;
+	}
+
+	private ServerResponse readObjectInternal(ZooPC pc) {
 		long oid = pc.jdoZooGetOid();
 		FilePos oie = oidIndex.findOid(oid);
 		if (oie == null) {
@@ -353,6 +693,15 @@ public class DiskAccessOneFile implements DiskAccess {
 
 	@Override
 	public GenericObject readGenericObject(ZooClassDef def, long oid) {
+		lockRead();
+		try {
+			return readGenericObjectInternal(oid);
+		} finally {
+			unlockRead();
+		}
+	}
+	
+	private GenericObject readGenericObjectInternal(long oid) {
 		FilePos oie = oidIndex.findOid(oid);
 		if (oie == null) {
 			throw DBLogger.newObjectNotFoundException(
@@ -381,78 +730,74 @@ public class DiskAccessOneFile implements DiskAccess {
 	 */
 	@Override
 	public ZooPC readObject(DataDeSerializer dds, long oid) {
-		FilePos oie = oidIndex.findOid(oid);
-		if (oie == null) {
-			throw DBLogger.newObjectNotFoundException("OID not found: " + Util.oidToString(oid));
+		lockRead();
+		try {
+			FilePos oie = oidIndex.findOid(oid);
+			if (oie == null) {
+				throw DBLogger.newObjectNotFoundException(
+						"OID not found: " + Util.oidToString(oid));
+			}
+
+			return dds.readObject(oie.getPage(), oie.getOffs(), false);
+		} finally {
+			unlockRead();
 		}
-		
-		return dds.readObject(oie.getPage(), oie.getOffs(), false);
 	}
 
 	@Override
 	public boolean checkIfObjectExists(long oid) {
-		FilePos oie = oidIndex.findOid(oid);
-		return oie != null;
+		lockRead();
+		try {
+			FilePos oie = oidIndex.findOid(oid);
+			return oie != null;
+		} finally {
+			unlockRead();
+		}
 	}
 
 	@Override
 	public void close() {
 		DBLogger.debugPrintln(1, "Closing DB session: " + node.getDbPath());
+		endTx();
 		sm.close();
 	}
 
+	/**
+	 * Begin a new transaction. Transactions do not hold any lock while they are active. 
+	 * With their first read operation they pin the last committed root page and from then 
+	 * on read through the views of the OID index and the schema index of that root page, 
+	 * see {@link SessionManager#getSnapshot()}. 
+	 * The exclusive lock is only acquired during commit, see {@link #beginCommit(ArrayList)}.
+	 */
 	@Override
-	public long beginTransaction() {
+	public long beginTransaction(boolean isReadOnly) {
 		txContext.reset();
-		//TODO
-		//TODO
-		//TODO
-		//TODO
-		//TODO
-		//TODO
-		//TODO
-		//TODO Use R-Lock
-		//TODO
-		//TODO Move locking code into SessionManager
-		//TODO
-		//TODO
-		//TODO
-		//TODO
-		//TODO
-		if (ALLOW_READ_CONCURRENCY) {
-			sm.getLock().readLock(this);
-		} else {
-			sm.getLock().writeLock(this);
-		}
-		//lock.lock();
-//		try {
-//			DBLogger.debugPrintln(1, "DAOF.beginTransaction() WLOCK");
-//			if (!lock.tryLock(10, TimeUnit.SECONDS)) {
-//				throw DBLogger.newUser("Deadlock?");
-//			}
-//		} catch (InterruptedException e) {
-//			Thread.currentThread().interrupt();
-//		}
+		endTx();
 		txId = sm.getNextTxId();
+		this.isReadOnly = isReadOnly;
+		isTxActive = true;
+		sm.notifyTxBegin();
 		return txId;
 	}
 	
-	private static boolean ALLOW_READ_CONCURRENCY = false;
+	/**
+	 * Read concurrency is always enabled now.
+	 * @param allowReadConcurrency ignored
+	 */
 	@Deprecated
 	public static void allowReadConcurrency(boolean allowReadConcurrency) {
-		System.err.println("TODO Remove this and always allow read-concurrency!");
-		//currently we don't allow it, because it is unsafe.
-		ALLOW_READ_CONCURRENCY = allowReadConcurrency;
+		//nothing to do
 	}
 	
 	@Override
 	public OptimisticTransactionResult rollbackTransaction() {
 		try {
 			//anything to do here?
-			//--> This is also used during start-up to drop locks on the SessionManager!
+			//--> This is also used to drop locks after failed commits!
 
 			//return result to trigger schema refresh all ALL schemata
 			OptimisticTransactionResult txr = new OptimisticTransactionResult(null, false, false);
+			SchemaIndex schemaIndex = sm.getSchemaIndex();
 			if (txContext.getSchemaIndexTxId() != schemaIndex.getTxIdOfLastWriteThatRequiresRefresh()) {
 				txr.setRefreshRequired(true);
 			}
@@ -464,12 +809,13 @@ public class DiskAccessOneFile implements DiskAccess {
 			return txr;
 		} finally {
 			DBLogger.debugPrintln(1, "DAOF.rollback() release lock");
-			sm.getLock().release(this);
+			endTx();
 		}
 	}
 	
 	private OptimisticTransactionResult checkConsistencyInternal(ArrayList<TxObjInfo> updates, 
 			boolean trialRun) {
+		SchemaIndex schemaIndex = sm.getSchemaIndex();
 		if (txContext.getSchemaTxId() != schemaIndex.getTxIdOfLastWrite()) {
 			return new OptimisticTransactionResult(null, true, false);
 		}
@@ -479,62 +825,40 @@ public class DiskAccessOneFile implements DiskAccess {
 		txContext.addOidUpdates(updates);
 		List<Long> conflicts = sm.checkForConflicts(txId, txContext, trialRun);
 		txContext.reset();
+		if (conflicts != null) {
+			//Drop the snapshot, refresh() should load the latest committed state
+			snapshot = null;
+		}
 		return new OptimisticTransactionResult(conflicts, false, false);
 	}
 	
 	@Override
 	public OptimisticTransactionResult checkTxConsistency(ArrayList<TxObjInfo> updates) {
-		//change read-lock to write-lock
-		DBLogger.debugPrintln(1, "DAOF.checkTxConsistency() WLOCK 1");
-		sm.getLock().release(this);
-		//sm.getLock().writeLock(this);
-		if (ALLOW_READ_CONCURRENCY) {
-			//TODO should be read-lock! We allow this only for the tests to pass...
-			sm.getLock().readLock(this);
-		} else {
-			sm.getLock().writeLock(this);
-		}
-
-		OptimisticTransactionResult ovr = checkConsistencyInternal(updates, true);
-		if (ovr.hasFailed()) {
-			return ovr;
+		if (isReadOnly) {
+			//read-only
+			return new OptimisticTransactionResult(null, false, false);
 		}
-
-
-		//change write-lock to read-lock
-		DBLogger.debugPrintln(1, "DAOF.checkTxConsistency() WLOCK 2");
-		sm.getLock().release(this);
-		//TODO
-		//TODO
-		//TODO
-		//TODO
-		//TODO
-		//TODO
-		//TODO
-		//TODO
-		//TODO
-		//lock = sm.getReadLock();
-		if (ALLOW_READ_CONCURRENCY) {
-			sm.getLock().readLock(this);
-		} else {
-			sm.getLock().writeLock(this);
+		DBLogger.debugPrintln(1, "DAOF.checkTxConsistency() WLOCK");
+		lockWrite();
+		try {
+			return checkConsistencyInternal(updates, true);
+		} finally {
+			unlockWrite();
 		}
-		
-		return ovr;
 	}
 
+	/**
+	 * Acquires the exclusive lock. The lock is held until the commit completes or until the
+	 * transaction is rolled back.
+	 */
 	@Override
 	public OptimisticTransactionResult beginCommit(ArrayList<TxObjInfo> updates) {
-		//change read-lock to write-lock
-		DBLogger.debugPrintln(1, "DAOF.beginCommit() WLOCK");
-		sm.getLock().release(this);
-		//sm.getLock().writeLock(this);
-		if (ALLOW_READ_CONCURRENCY) {
-			//TODO should be read-lock! We allow this only for the tests to pass...
-			sm.getLock().readLock(this);
-		} else {
-			sm.getLock().writeLock(this);
+		if (isReadOnly) {
+			//read-only, nothing to commit
+			return new OptimisticTransactionResult(null, false, false);
 		}
+		DBLogger.debugPrintln(1, "DAOF.beginCommit() WLOCK");
+		lockWrite();
 
 		OptimisticTransactionResult ovr = checkConsistencyInternal(updates, false);
 		if (ovr.hasFailed()) {
@@ -542,25 +866,35 @@ public class DiskAccessOneFile implements DiskAccess {
 		}
 
 		file.newTransaction(txId);
-		freeIndex.notifyBegin(txId);
+		TxManager txm = sm.getTxManager();
+		freeIndex.notifyBegin(txId, txm.getOldestActiveTxId(), txm.getLatestTxId());
 
 		return ovr;
 	}
 
 	@Override
-	public void commit() {
+	public void commit(DURABILITY durability) {
+		if (isReadOnly) {
+			txContext.reset();
+			endTx();
+			return;
+		}
 		int oidPage = oidIndex.write();
 		int schemaPage1 = schemaIndex.write(txId);
 		txContext.setSchemaTxId(schemaIndex.getTxIdOfLastWrite());
 		txContext.setSchemaIndexTxId(schemaIndex.getTxIdOfLastWriteThatRequiresRefresh());
 
-		sm.commitInfrastructure(oidPage, schemaPage1, oidIndex.getLastUsedOid(), txId);
+		long ticket = sm.commitInfrastructure(oidPage, schemaPage1, oidIndex.getLastUsedOid(), 
+				txId, durability);
 		txContext.reset();
 
 		//we release the lock only if the commit succeeds. Otherwise we keep the lock until
 		//everything was rolled back.
 		DBLogger.debugPrintln(1, "DAOF.commit() lock release");
-		sm.getLock().release(this);
+		endTx();
+		
+		//group commit: wait until the root page is on disk
+		sm.awaitDurable(ticket);
 	}
 
 	/**
@@ -577,57 +911,126 @@ public class DiskAccessOneFile implements DiskAccess {
 		
 		RootPage rootPage = sm.getRootPage();
 		//revert --> back to previous (expected) schema-tx-ID
-		schemaIndex.revert(rootPage.getSchemIndexPage(), txContext.getSchemaTxId());
+		sm.getSchemaIndex().revert(rootPage.getSchemIndexPage(), txContext.getSchemaTxId());
 		//We use the historic page count to avoid page-leaking
 		freeIndex.revert(rootPage.getFMSPage(), rootPage.getFSMPageCount());
 		//We do NOT reset the OID count. That may cause OID leaking(does it?), but the OIDs are
 		//still assigned to uncommitted objects.
-		oidIndex.revert(rootPage.getOidIndexPage());
+		sm.getOidIndex().revert(rootPage.getOidIndexPage());
 	}
 	
 	/**
-	 * Defines an index and populates it. All objects are put into the cache. This is not 
-	 * necessarily useful, but it is a one-off operation. Otherwise we would need a special
-	 * purpose implementation of the deserializer, which would have the need for a cache removed.
+	 * Defines an index and populates it. The keys are read directly from the serialized 
+	 * objects, see {@link #fillIndex(LongLongIndex, ZooClassDef, ZooFieldDef, boolean)}.
 	 */
 	@Override
 	public void defineIndex(ZooClassDef def, ZooFieldDef field, boolean isUnique) {
 		SchemaIndexEntry se = schemaIndex.getSchema(def);
 		LongLongIndex fieldInd = (LongLongIndex) se.defineIndex(field, isUnique);
+		fillIndex(fieldInd, def, field, isUnique);
+        
+        PagedStringIndex strInd = se.getStringIndex(field);
+        if (strInd != null) {
+        	fillStringIndex(strInd, def, field);
+        }
+	}
+
+	/**
+	 * Removes all entries from an existing index and populates it again from the objects
+	 * in the database. The statistics of the index are invalidated.
+	 */
+	@Override
+	public void rebuildIndex(ZooClassDef def, ZooFieldDef field) {
+		SchemaIndexEntry se = schemaIndex.getSchema(def);
+		LongLongIndex fieldInd = se.clearIndex(field);
+		if (fieldInd == null) {
+			throw DBLogger.newUser("Field has no index: " + field.getName());
+		}
+		fillIndex(fieldInd, def, field, se.isUnique(field));
 		
-		//fill index with existing objects
-		PagedPosIndex ind = se.getObjectIndexLatestSchemaVersion();
-		PagedPosIndex.ObjectPosIterator iter = ind.iteratorObjects();
-        DataDeSerializerNoClass dds = new DataDeSerializerNoClass(fileInAP);
-        if (field.isPrimitiveType()) {
-			while (iter.hasNext()) {
-				long pos = iter.nextPos();
+		PagedStringIndex strInd = se.getStringIndex(field);
+		if (strInd != null) {
+			fillStringIndex(strInd, def, field);
+		}
+	}
+
+	/**
+	 * Fills an empty index with the objects of the class. The objects are not deserialized, 
+	 * the keys are read directly from the serialized objects. B+-tree indices are bulk 
+	 * loaded with several threads, see {@link ParallelIndexBuilder}, other indices are 
+	 * filled one key at a time.
+	 */
+	private void fillIndex(LongLongIndex fieldInd, final ZooClassDef def, 
+			final ZooFieldDef field, boolean isUnique) {
+		ParallelIndexBuilder.KeyReader keyReader = new ParallelIndexBuilder.KeyReader() {
+			@Override
+			long readKey(DataDeSerializerNoClass dds, long pos) {
 				dds.seekPos(pos);
 				//first read the key, then afterwards the field!
-				long key = dds.getAttrAsLong(def, field);
+				if (field.isPrimitiveType()) {
+					return dds.getAttrAsLong(def, field);
+				}
+				//TODO handle null values:
+				//-ignore them?
+				//-use special value?
+				return dds.getAttrAsLongObjectNotNull(def, field);
+			}
+		};
+		SchemaIndexEntry se = schemaIndex.getSchema(def);
+		PagedPosIndex.ObjectPosIterator iter = 
+				se.getObjectIndexLatestSchemaVersion().iteratorObjects();
+		
+		if (LLIndexBulkLoader.isSupported(fieldInd)) {
+			LLIndexBulkLoader loader = new LLIndexBulkLoader(fieldInd);
+			try {
+				indexBuilder.addAll(iter, keyReader, loader);
+				loader.finish();
+			} finally {
+				loader.close();
+			}
+			return;
+		}
+		
+		DataDeSerializerNoClass dds = new DataDeSerializerNoClass(fileInAP);
+		try {
+			while (iter.hasNext()) {
+				long key = keyReader.readKey(dds, iter.nextPos());
+				long oid = dds.getLastOid();
 				if (isUnique) {
-					if (!fieldInd.insertLongIfNotSet(key, dds.getLastOid())) {
+					if (!fieldInd.insertLongIfNotSet(key, oid)) {
 						throw DBLogger.newUser("Duplicate entry in unique index: " +
-								Util.oidToString(dds.getLastOid()) + "  v=" + key);
+								Util.oidToString(oid) + "  v=" + key);
 					}
 				} else {
-					fieldInd.insertLong(key, dds.getLastOid());
+					fieldInd.insertLong(key, oid);
 				}
 			}
-        } else {
-			while (iter.hasNext()) {
-				long pos = iter.nextPos();
-				dds.seekPos(pos);
-				//first read the key, then afterwards the field!
-				long key = dds.getAttrAsLongObjectNotNull(def, field);
-				fieldInd.insertLong(key, dds.getLastOid());
-				//TODO handle null values:
-				//-ignore them?
-				//-use special value?
+		} finally {
+			iter.close();
+		}
+	}
+
+	/**
+	 * The full keys of String indices are not available from the deserializer, so we have to
+	 * load the objects.
+	 */
+	private void fillStringIndex(PagedStringIndex strInd, ZooClassDef def, ZooFieldDef field) {
+		CloseableIterator<ZooPC> it = readAllObjects(def.getSchemaId(), true);
+		try {
+			while (it.hasNext()) {
+				ZooPC pc = it.next();
+				if (pc.jdoZooIsDeleted()) {
+					//will be removed from the index anyway
+					continue;
+				}
+				String str = DataIndexUpdater.getString(pc, field);
+				if (str != null) {
+					strInd.insert(str, pc.jdoZooGetOid());
+				}
 			}
-			//DatabaseLogger.debugPrintln(0, "FIXME defineIndex()");
-        }
-        iter.close();
+		} finally {
+			it.close();
+		}
 	}
 
 	@Override
@@ -636,11 +1039,86 @@ public class DiskAccessOneFile implements DiskAccess {
 		return e.removeIndex(field);
 	}
 
+	/**
+	 * Defines a composite index and populates it with the objects of the class and of all
+	 * sub-classes.
+	 */
+	@Override
+	public void defineCompositeIndex(ZooClassDef def, ZooCompositeIndexDef index) {
+		SchemaIndexEntry se = schemaIndex.getSchema(def);
+		LongLongIndex ind = se.defineCompositeIndex(index);
+		fillCompositeIndex(ind, def, index);
+	}
+
+	@Override
+	public void rebuildCompositeIndex(ZooClassDef def, ZooCompositeIndexDef index) {
+		SchemaIndexEntry se = schemaIndex.getSchema(def);
+		LongLongIndex ind = se.clearCompositeIndex(index);
+		if (ind == null) {
+			throw DBLogger.newUser("Composite index not found: " + index);
+		}
+		fillCompositeIndex(ind, def, index);
+	}
+
+	private void fillCompositeIndex(LongLongIndex ind, ZooClassDef def, 
+			ZooCompositeIndexDef index) {
+		LLIndexBulkLoader loader = new LLIndexBulkLoader(ind);
+		try {
+			fillCompositeIndex(loader, def, index);
+			loader.finish();
+		} finally {
+			loader.close();
+		}
+	}
+
+	private void fillCompositeIndex(LLIndexBulkLoader loader, final ZooClassDef def, 
+			final ZooCompositeIndexDef index) {
+		SchemaIndexEntry se = schemaIndex.getSchema(def);
+		PagedPosIndex.ObjectPosIterator iter = 
+				se.getObjectIndexLatestSchemaVersion().iteratorObjects();
+		final ZooFieldDef[] fields = index.getFields();
+		ParallelIndexBuilder.KeyReader keyReader = new ParallelIndexBuilder.KeyReader() {
+			@Override
+			long readKey(DataDeSerializerNoClass dds, long pos) {
+				long[] keys = new long[fields.length];
+				for (int i = 0; i < fields.length; i++) {
+					//the deserializer reads the header, so we have to seek for every field
+					dds.seekPos(pos);
+					if (fields[i].isPrimitiveType()) {
+						keys[i] = dds.getAttrAsLong(def, fields[i]);
+					} else {
+						keys[i] = dds.getAttrAsLongObjectNotNull(def, fields[i]);
+					}
+				}
+				return index.toKey(keys);
+			}
+		};
+		indexBuilder.addAll(iter, keyReader, loader);
+		for (ZooClassProxy sub: def.getVersionProxy().getSubProxies()) {
+			fillCompositeIndex(loader, sub.getSchemaDef(), index);
+		}
+	}
+
+	@Override
+	public boolean removeCompositeIndex(ZooClassDef def, ZooCompositeIndexDef index) {
+		SchemaIndexEntry e = schemaIndex.getSchema(def);
+		return e.removeCompositeIndex(index);
+	}
+
     /**
      * Get the class of a given object.
      */
 	@Override
 	public long getObjectClass(long oid) {
+		lockRead();
+		try {
+			return getObjectClassInternal(oid);
+		} finally {
+			unlockRead();
+		}
+	}
+	
+	private long getObjectClassInternal(long oid) {
 		FilePos oie = oidIndex.findOid(oid);
 		if (oie == null) {
 			throw DBLogger.newObjectNotFoundException("OID not found: " + Util.oidToString(oid));
@@ -656,8 +1134,23 @@ public class DiskAccessOneFile implements DiskAccess {
 		}
 	}
 	
+	/**
+	 * Statistics do not pin a snapshot, outside of a snapshot they report the latest state.
+	 */
 	@Override
 	public long getStats(STATS stats) {
+		if (snapshot != null || isWriter) {
+			return getStatsInternal(stats);
+		}
+		sm.getLock().readLock(this);
+		try {
+			return getStatsInternal(stats);
+		} finally {
+			sm.getLock().release(this);
+		}
+	}
+	
+	private long getStatsInternal(STATS stats) {
 		switch (stats) {
 		case IO_DATA_PAGE_READ_CNT:
 			return ObjectReader.statsGetReadCount();
@@ -669,6 +1162,18 @@ public class DiskAccessOneFile implements DiskAccess {
 			return file.statsGetReadCountUnique();
 		case IO_PAGE_WRITE_CNT:
 			return file.statsGetWriteCount();
+		case IO_PAGE_CACHE_HIT_CNT:
+			return file.statsGetCacheHitCount();
+		case IO_PAGE_CACHE_MISS_CNT:
+			return file.statsGetCacheMissCount();
+		case IO_PAGE_CACHE_EVICT_CNT:
+			return file.statsGetCacheEvictionCount();
+		case IDX_PAGE_LOAD_CNT:
+			return file.getIndexPageBudget().statsGetLoadCount();
+		case IDX_PAGE_EVICT_CNT:
+			return file.getIndexPageBudget().statsGetEvictionCount();
+		case IDX_PAGE_RESIDENT_CNT:
+			return file.getIndexPageBudget().statsGetPageCount();
 		case DB_PAGE_CNT:
 			return file.statsGetPageCount();
 		case DB_PAGE_CNT_IDX_FSM:
@@ -708,6 +1213,19 @@ public class DiskAccessOneFile implements DiskAccess {
 
     @Override
     public String checkDb() {
+    	//The free space manager is not part of the snapshot, so we check the latest state.
+    	if (isWriter) {
+    		return checkDbInternal(sm.getOidIndex(), sm.getSchemaIndex());
+    	}
+    	sm.getLock().readLock(this);
+    	try {
+    		return checkDbInternal(sm.getOidIndex(), sm.getSchemaIndex());
+    	} finally {
+    		sm.getLock().release(this);
+    	}
+    }
+    
+    private String checkDbInternal(PagedOidIndex oidIndex, SchemaIndex schemaIndex) {
         final byte ROOT = 1;
         final byte IDX_FSM = 2;
         final byte IDX_OID = 3;
@@ -870,4 +1388,52 @@ public class DiskAccessOneFile implements DiskAccess {
         
         return sb.toString();
     }
+
+    /**
+     * Iterator wrapper that holds the shared lock while the underlying iterator reads from
+     * the database.
+     */
+    private class LockedIterator<T> implements CloseableIterator<T> {
+    	
+    	private final CloseableIterator<T> it;
+    	
+    	LockedIterator(CloseableIterator<T> it) {
+    		this.it = it;
+    	}
+
+		@Override
+		public boolean hasNext() {
+			lockRead();
+			try {
+				return it.hasNext();
+			} finally {
+				unlockRead();
+			}
+		}
+
+		@Override
+		public T next() {
+			lockRead();
+			try {
+				return it.next();
+			} finally {
+				unlockRead();
+			}
+		}
+
+		@Override
+		public void remove() {
+			it.remove();
+		}
+
+		@Override
+		public void close() {
+			lockRead();
+			try {
+				it.close();
+			} finally {
+				unlockRead();
+			}
+		}
+    }
 }
@@ -24,7 +24,12 @@ public interface DiskIO {
 
 	public static final int DB_FILE_TYPE_ID = 13031975;
 	public static final int DB_FILE_VERSION_MAJ = 1;
-	public static final int DB_FILE_VERSION_MIN = 5;
+	public static final int DB_FILE_VERSION_MIN = 6;
+	/** 
+	 * Oldest minor version that can be opened. The header of older files is upgraded to the 
+	 * current version with the first commit. 
+	 */
+	public static final int DB_FILE_VERSION_MIN_COMPATIBLE = 5;
 
 	static final short PAGE_FORMAT_VERSION = 1;
 	
@@ -43,6 +48,7 @@ public interface DiskIO {
 		GENERIC_INDEX(12),
 		POS_INDEX(13),
 		FIELD_INDEX(14),
+		COMPOSITE_INDEX(15),
 		;
 		
 		private final byte id;
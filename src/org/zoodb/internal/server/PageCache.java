@@ -0,0 +1,345 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.internal.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.zoodb.internal.util.DBLogger;
+import org.zoodb.internal.util.PrimLongMapLI;
+import org.zoodb.tools.DBStatistics;
+
+/**
+ * A bounded page cache that sits between a {@link StorageChannel} and its file.
+ * All views (readers and writers) of a channel share the same cache.
+ *
+ * Pages are kept in fixed frames and evicted with the CLOCK algorithm. Written pages are
+ * marked dirty and are only written to the file when they are evicted or when the cache is
+ * flushed, which happens before every fsync of the file. Dirty pages are written in the order
+ * of their page IDs, with a single gathering write for each run of consecutive pages. 
+ * Evicting a dirty page writes all dirty pages, so large commits are written in a few 
+ * sequential runs instead of one page at a time. Frames are copied in and out while
+ * holding the cache monitor, so a frame is never handed out to a view and does not need to be
+ * pinned.
+ */
+public class PageCache {
+
+	private static final long FREE = -1;
+	/** Maximum number of pages per gathering write. */
+	private static final int MAX_RUN = 256;
+
+	private final FileChannel fc;
+	// use LONG to enforce long-arithmetic in calculations
+	private final long PAGE_SIZE;
+	private final int capacity;
+
+	private final ByteBuffer[] frames;
+	private final long[] framePageIds;
+	private final boolean[] referenced;
+	private final boolean[] dirty;
+	private final PrimLongMapLI<Integer> pageToFrame;
+	private int nFramesUsed = 0;
+	private int nDirty = 0;
+	private int clockHand = 0;
+	//Incremented with every write, used to detect stale read-ahead pages
+	private long modCount = 0;
+
+	private long statNHit = 0;
+	private long statNMiss = 0;
+	private long statNEvict = 0;
+
+	/**
+	 * @param fc The file channel
+	 * @param pageSize The page size in bytes
+	 * @param capacity The maximum number of pages to cache
+	 */
+	public PageCache(FileChannel fc, int pageSize, int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Illegal cache size: " + capacity);
+		}
+		this.fc = fc;
+		this.PAGE_SIZE = pageSize;
+		this.capacity = capacity;
+		frames = new ByteBuffer[capacity];
+		framePageIds = new long[capacity];
+		Arrays.fill(framePageIds, FREE);
+		referenced = new boolean[capacity];
+		dirty = new boolean[capacity];
+		pageToFrame = new PrimLongMapLI<Integer>(capacity);
+	}
+
+	/**
+	 * Read a page into the given buffer. If the page is not cached, it is loaded from the file.
+	 * @param buf The target buffer
+	 * @param pageId The page ID
+	 */
+	public synchronized void read(ByteBuffer buf, long pageId) {
+		Integer frameId = pageToFrame.get(pageId);
+		ByteBuffer frame;
+		if (frameId != null) {
+			if (DBStatistics.isEnabled()) {
+				statNHit++;
+			}
+			int f = frameId;
+			referenced[f] = true;
+			frame = frames[f];
+		} else {
+			if (DBStatistics.isEnabled()) {
+				statNMiss++;
+			}
+			int f = allocateFrame(pageId);
+			frame = frames[f];
+			frame.clear();
+			try {
+				fc.read(frame, pageId * PAGE_SIZE);
+			} catch (IOException e) {
+				//don't keep the half-loaded frame
+				releaseFrame(f);
+				throw DBLogger.newFatal("Error loading Page: " + pageId, e);
+			}
+			//Zero the rest of the page if the file ends here
+			while (frame.hasRemaining()) {
+				frame.put((byte) 0);
+			}
+		}
+		frame.clear();
+		buf.put(frame);
+	}
+
+	/**
+	 * Write a page to the cache. The page is only written to disk when it is evicted or
+	 * when {@link #flush()} is called.
+	 * @param buf The page content, from position 0 to the limit
+	 * @param pageId The page ID
+	 */
+	public synchronized void write(ByteBuffer buf, long pageId) {
+		Integer frameId = pageToFrame.get(pageId);
+		int f;
+		ByteBuffer frame;
+		if (frameId != null) {
+			f = frameId;
+			frame = frames[f];
+			frame.clear();
+		} else {
+			f = allocateFrame(pageId);
+			frame = frames[f];
+			frame.clear();
+			if (buf.remaining() < PAGE_SIZE) {
+				//zero the part that is not written
+				frame.position(buf.remaining());
+				while (frame.hasRemaining()) {
+					frame.put((byte) 0);
+				}
+				frame.clear();
+			}
+		}
+		frame.put(buf);
+		referenced[f] = true;
+		modCount++;
+		if (!dirty[f]) {
+			dirty[f] = true;
+			nDirty++;
+		}
+	}
+
+	/**
+	 * Load pages into the cache unless they are cached already. This is used for read-ahead. 
+	 * The file is read without holding the cache monitor, so a loaded page is discarded if 
+	 * any page was written to the cache in the meantime. Loaded pages are not marked as 
+	 * referenced, so they are evicted first if they are not used.
+	 * @param firstPageId The first page to load
+	 * @param nPages The number of pages to load
+	 */
+	public void prefetch(long firstPageId, int nPages) {
+		ByteBuffer buf = ByteBuffer.allocateDirect((int) PAGE_SIZE);
+		for (long pageId = firstPageId; pageId < firstPageId + nPages; pageId++) {
+			long mod;
+			synchronized (this) {
+				if (pageToFrame.get(pageId) != null) {
+					continue;
+				}
+				mod = modCount;
+			}
+			buf.clear();
+			try {
+				while (buf.hasRemaining()) {
+					if (fc.read(buf, pageId * PAGE_SIZE + buf.position()) < 0) {
+						break;
+					}
+				}
+			} catch (IOException e) {
+				//read-ahead is only a hint
+				return;
+			}
+			if (buf.position() == 0) {
+				//end of file
+				return;
+			}
+			synchronized (this) {
+				if (mod != modCount || pageToFrame.get(pageId) != null) {
+					continue;
+				}
+				int f = allocateFrame(pageId);
+				referenced[f] = false;
+				ByteBuffer frame = frames[f];
+				frame.clear();
+				buf.flip();
+				frame.put(buf);
+				//Zero the rest of the page if the file ends here
+				while (frame.hasRemaining()) {
+					frame.put((byte) 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write all dirty pages to the file. Pages are written in the order of their page IDs.
+	 * This does not force the file to disk.
+	 */
+	public synchronized void flush() {
+		if (nDirty == 0) {
+			return;
+		}
+		long[] dirtyPages = new long[nDirty];
+		int n = 0;
+		for (int i = 0; i < nFramesUsed; i++) {
+			if (dirty[i]) {
+				dirtyPages[n++] = framePageIds[i];
+			}
+		}
+		Arrays.sort(dirtyPages);
+		ByteBuffer[] run = new ByteBuffer[Math.min(n, MAX_RUN)];
+		int start = 0;
+		while (start < n) {
+			int len = 1;
+			while (start + len < n && len < MAX_RUN 
+					&& dirtyPages[start + len] == dirtyPages[start] + len) {
+				len++;
+			}
+			writeRun(dirtyPages, start, len, run);
+			start += len;
+		}
+	}
+
+	/**
+	 * Write a run of consecutive pages with a single gathering write.
+	 */
+	private void writeRun(long[] pageIds, int start, int len, ByteBuffer[] run) {
+		long firstPageId = pageIds[start];
+		for (int i = 0; i < len; i++) {
+			int f = pageToFrame.get(pageIds[start + i]);
+			run[i] = frames[f];
+			run[i].clear();
+		}
+		try {
+			long pos = firstPageId * PAGE_SIZE;
+			long end = pos + len * PAGE_SIZE;
+			//All writes go through this cache, so nobody else uses the channel's position
+			fc.position(pos);
+			while (pos < end) {
+				pos += fc.write(run, 0, len);
+			}
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error writing pages: " + firstPageId + "-" + 
+					(firstPageId + len - 1), e);
+		}
+		for (int i = 0; i < len; i++) {
+			int f = pageToFrame.get(pageIds[start + i]);
+			dirty[f] = false;
+			run[i] = null;
+		}
+		nDirty -= len;
+	}
+
+	/**
+	 * Find a frame for the page, either a free one or one that is evicted using the CLOCK
+	 * algorithm. Dirty pages are written back before their frame is reused.
+	 */
+	private int allocateFrame(long pageId) {
+		int f;
+		if (nFramesUsed < capacity) {
+			f = nFramesUsed++;
+			frames[f] = ByteBuffer.allocateDirect((int) PAGE_SIZE);
+		} else {
+			while (referenced[clockHand]) {
+				referenced[clockHand] = false;
+				clockHand = (clockHand + 1) % capacity;
+			}
+			f = clockHand;
+			clockHand = (clockHand + 1) % capacity;
+			if (dirty[f]) {
+				//write-behind: write all dirty pages in sequential runs
+				flush();
+			}
+			pageToFrame.remove(framePageIds[f]);
+			if (DBStatistics.isEnabled()) {
+				statNEvict++;
+			}
+		}
+		framePageIds[f] = pageId;
+		referenced[f] = true;
+		pageToFrame.put(pageId, f);
+		return f;
+	}
+
+	private void releaseFrame(int f) {
+		pageToFrame.remove(framePageIds[f]);
+		//The frame remains allocated, it will be reused by the clock.
+		framePageIds[f] = FREE;
+		referenced[f] = false;
+	}
+
+	/**
+	 * @return The highest page ID that is cached but not yet written to the file, or -1.
+	 */
+	public synchronized long getMaxDirtyPageId() {
+		long max = -1;
+		for (int i = 0; i < nFramesUsed; i++) {
+			if (dirty[i] && framePageIds[i] > max) {
+				max = framePageIds[i];
+			}
+		}
+		return max;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public synchronized int size() {
+		return pageToFrame.size();
+	}
+
+	public long statsGetHitCount() {
+		return statNHit;
+	}
+
+	public long statsGetMissCount() {
+		return statNMiss;
+	}
+
+	public long statsGetEvictionCount() {
+		return statNEvict;
+	}
+}
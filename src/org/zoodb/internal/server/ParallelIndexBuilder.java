@@ -0,0 +1,192 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.internal.server;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.zoodb.internal.DataDeSerializerNoClass;
+import org.zoodb.internal.server.index.LLIndexBulkLoader;
+import org.zoodb.internal.server.index.PagedPosIndex;
+import org.zoodb.tools.DBStatistics;
+
+/**
+ * Reads the keys of an index from the serialized objects with several threads.
+ *
+ * The positions of the objects are read from the pos-index in chunks. Each chunk is
+ * partitioned recursively in a fork-join pool, every partition is read with a separate
+ * deserializer and sorted. The sorted partitions are merged and the resulting sorted run is
+ * passed to the {@link LLIndexBulkLoader}, which merges all runs into the new index.
+ *
+ * The pos-index itself is only read by the calling thread, because index pages are loaded
+ * lazily and the index is not thread-safe.
+ */
+class ParallelIndexBuilder {
+
+	/** Number of objects that are passed to the fork-join pool at once */
+	private static final int CHUNK_SIZE = 1 << 18;
+	/** Partitions with fewer objects are not split any further */
+	private static final int MIN_PARTITION_SIZE = 1 << 12;
+
+	private final StorageChannel file;
+	private final int nThreads;
+	/** Deserializers are reused, because readers cannot be removed from the file */
+	private final ConcurrentLinkedQueue<DataDeSerializerNoClass> readers =
+			new ConcurrentLinkedQueue<DataDeSerializerNoClass>();
+
+	/**
+	 * Reads the key of an object.
+	 */
+	static abstract class KeyReader {
+		/**
+		 * @param dds The deserializer
+		 * @param pos The position of the object
+		 * @return The key of the object. The OID is available from
+		 * {@link DataDeSerializerNoClass#getLastOid()}.
+		 */
+		abstract long readKey(DataDeSerializerNoClass dds, long pos);
+	}
+
+	/**
+	 * @param file The database file
+	 * @param nThreads The number of threads, {@code 0} uses one thread per processor
+	 */
+	ParallelIndexBuilder(StorageChannel file, int nThreads) {
+		this.file = file;
+		if (nThreads <= 0) {
+			nThreads = Runtime.getRuntime().availableProcessors();
+		}
+		this.nThreads = nThreads;
+	}
+
+	/**
+	 * Reads the keys of all objects of the iterator and adds them to the loader.
+	 * @param iter The objects, the iterator is closed afterwards
+	 * @param keyReader The key reader
+	 * @param loader The loader
+	 */
+	void addAll(PagedPosIndex.ObjectPosIterator iter, KeyReader keyReader,
+			LLIndexBulkLoader loader) {
+		//read statistics are not thread-safe
+		ForkJoinPool pool = new ForkJoinPool(DBStatistics.isEnabled() ? 1 : nThreads);
+		try {
+			long[] chunk = new long[CHUNK_SIZE];
+			int n = 0;
+			while (iter.hasNext()) {
+				chunk[n++] = iter.nextPos();
+				if (n == CHUNK_SIZE) {
+					loader.addSortedRun(pool.invoke(new ReadTask(chunk, 0, n, keyReader)));
+					n = 0;
+				}
+			}
+			if (n > 0) {
+				loader.addSortedRun(pool.invoke(new ReadTask(chunk, 0, n, keyReader)));
+			}
+		} finally {
+			pool.shutdown();
+			iter.close();
+		}
+	}
+
+	private DataDeSerializerNoClass getReader() {
+		DataDeSerializerNoClass dds = readers.poll();
+		if (dds == null) {
+			//getReader() is not thread-safe
+			synchronized (file) {
+				dds = new DataDeSerializerNoClass(file.getReader(true));
+			}
+		}
+		return dds;
+	}
+
+	/**
+	 * Reads the keys of a partition of a chunk.
+	 * @return The sorted key-value pairs of the partition
+	 */
+	private class ReadTask extends RecursiveTask<long[]> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long[] positions;
+		private final int from;
+		private final int to;
+		private final KeyReader keyReader;
+
+		ReadTask(long[] positions, int from, int to, KeyReader keyReader) {
+			this.positions = positions;
+			this.from = from;
+			this.to = to;
+			this.keyReader = keyReader;
+		}
+
+		@Override
+		protected long[] compute() {
+			if (to - from <= MIN_PARTITION_SIZE) {
+				return read();
+			}
+			int mid = (from + to) >>> 1;
+			ReadTask t1 = new ReadTask(positions, from, mid, keyReader);
+			ReadTask t2 = new ReadTask(positions, mid, to, keyReader);
+			t1.fork();
+			long[] r2 = t2.compute();
+			return merge(t1.join(), r2);
+		}
+
+		private long[] read() {
+			long[] ret = new long[2 * (to - from)];
+			DataDeSerializerNoClass dds = getReader();
+			try {
+				for (int i = from; i < to; i++) {
+					ret[2 * (i - from)] = keyReader.readKey(dds, positions[i]);
+					ret[2 * (i - from) + 1] = dds.getLastOid();
+				}
+			} finally {
+				readers.add(dds);
+			}
+			LLIndexBulkLoader.sort(ret, 0, to - from);
+			return ret;
+		}
+	}
+
+	/**
+	 * @return The merged sorted key-value pairs.
+	 */
+	private static long[] merge(long[] a, long[] b) {
+		long[] ret = new long[a.length + b.length];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j] || (a[i] == b[j] && a[i + 1] <= b[j + 1])) {
+				ret[k++] = a[i++];
+				ret[k++] = a[i++];
+			} else {
+				ret[k++] = b[j++];
+				ret[k++] = b[j++];
+			}
+		}
+		System.arraycopy(a, i, ret, k, a.length - i);
+		k += a.length - i;
+		System.arraycopy(b, j, ret, k, b.length - j);
+		return ret;
+	}
+}
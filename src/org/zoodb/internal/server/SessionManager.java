@@ -24,8 +24,13 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.zoodb.internal.Node;
+import org.zoodb.internal.SessionConfig.DURABILITY;
 import org.zoodb.internal.client.AbstractCache;
 import org.zoodb.internal.server.DiskIO.PAGE_TYPE;
 import org.zoodb.internal.server.index.FreeSpaceManager;
@@ -58,7 +63,28 @@ class SessionManager {
 
 	private final StorageChannelOutput fileOut;
 
-	private final RWSemaphore<DiskAccess> lock = new RWSemaphore<DiskAccess>();
+	private final RWSemaphore<Object> lock = new RWSemaphore<Object>();
+	private int activeTxCount = 0;
+	//Snapshot of the latest committed root page, guarded by 'this'
+	private Snapshot snapshot = null;
+	//Snapshot of the previous root page, if there was one. Guarded by 'this'
+	private Snapshot prevSnapshot = null;
+	
+	//group commit and asynchronous durability
+	private final int commitGroupWindow;
+	private final Object groupLock = new Object();
+	private final Object syncKey = new Object();
+	private long commitCount = 0;
+	private long durableCount = 0;
+	private boolean isGroupSyncActive = false;
+	private boolean isSyncScheduled = false;
+	private ExecutorService syncExecutor = null;
+	private long rootTxId;
+	private long rootLastUsedOid;
+	private int rootUserPage;
+	private int rootIndexPage;
+	/** Whether the file header has an older version and needs to be rewritten. */
+	private boolean upgradeHeader;
 	
 	private final TxManager txManager;
 	
@@ -82,7 +108,7 @@ class SessionManager {
 					"; Software version: " + 
 					DiskIO.DB_FILE_VERSION_MAJ + "." + DiskIO.DB_FILE_VERSION_MIN);
 		}
-		if (min != DiskIO.DB_FILE_VERSION_MIN) { 
+		if (min < DiskIO.DB_FILE_VERSION_MIN_COMPATIBLE || min > DiskIO.DB_FILE_VERSION_MIN) { 
 			throw DBLogger.newFatal("Illegal minor file version: " + maj + "." + min +
 					"; Software version: " + 
 					DiskIO.DB_FILE_VERSION_MAJ + "." + DiskIO.DB_FILE_VERSION_MIN);
@@ -95,6 +121,9 @@ class SessionManager {
 			throw DBLogger.newFatal("Incompatible page size: " + pageSize);
 		}
 		
+		//Files of older compatible versions get the current version with the first commit
+		upgradeHeader = min != DiskIO.DB_FILE_VERSION_MIN;
+
 		//main directory
 		rootPage = new RootPage();
 		rootPages[0] = in.readInt();
@@ -122,6 +151,7 @@ class SessionManager {
 		//tx ID
 		long txId = in.readLong();
 		this.txManager = new TxManager(txId);
+		this.rootTxId = txId;
 		//User table 
 		int userPage = in.readInt();
 		//OID table
@@ -151,6 +181,7 @@ class SessionManager {
 		rootPage.set(userPage, oidPage1, schemaPage1, indexPage, freeSpacePage, pageCount);
 
 		fileOut = file.getWriter(false);
+		commitGroupWindow = ZooConfig.getCommitGroupWindow();
 	}
 
 	/**
@@ -162,6 +193,11 @@ class SessionManager {
 			long txId) {
 		rootPageID = (rootPageID + 1) % 2;
 		
+		if (upgradeHeader) {
+			writeHeader(out);
+			upgradeHeader = false;
+		}
+		
 		out.seekPageForWrite(PAGE_TYPE.ROOT_PAGE, rootPages[rootPageID]);
 
 		//**********
@@ -189,6 +225,19 @@ class SessionManager {
 		out.writeLong(txId);
 	}
 	
+	/**
+	 * Writes the file header with the current file version.
+	 */
+	private void writeHeader(StorageChannelOutput out) {
+		out.seekPageForWrite(PAGE_TYPE.DB_HEADER, 0);
+		out.writeInt(DiskIO.DB_FILE_TYPE_ID);
+		out.writeInt(DiskIO.DB_FILE_VERSION_MAJ);
+		out.writeInt(DiskIO.DB_FILE_VERSION_MIN);
+		out.writeInt(ZooConfig.getFilePageSize());
+		out.writeInt(rootPages[0]);
+		out.writeInt(rootPages[1]);
+	}
+	
 	private long checkRoot(StorageChannelInput in, int pageId) {
 		in.seekPageForRead(PAGE_TYPE.ROOT_PAGE, pageId);
 		long txID1 = in.readLong();
@@ -206,7 +255,6 @@ class SessionManager {
 	}
 
 	public DiskAccessOneFile createSession(Node node, AbstractCache cache) {
-		//Create the session first, because it locks the SessionManager!
 		DiskAccessOneFile session =  new DiskAccessOneFile(node, cache, this);
 		count++;
 		if (count > 1) {
@@ -237,12 +285,30 @@ class SessionManager {
 	}
 	
 	void close() {
-		count--;
-		if (count == 0) {
-			DBLogger.debugPrintln(1, "Closing DB file: " + path);
-			fsm.getFile().close();
-			SessionFactory.removeSession(this);
+		//Sessions are created while holding the SessionFactory lock
+		synchronized (SessionFactory.class) {
+			count--;
+			if (count == 0) {
+				closeFile();
+			}
+		}
+	}
+	
+	private void closeFile() {
+		DBLogger.debugPrintln(1, "Closing DB file: " + path);
+		if (syncExecutor != null) {
+			syncExecutor.shutdown();
+			try {
+				syncExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				throw DBLogger.newFatal("Interrupted while closing DB file: " + path, e);
+			}
 		}
+		if (durableCount < commitCount) {
+			writePendingRoot();
+		}
+		fsm.getFile().close();
+		SessionFactory.removeSession(this);
 	}
 
 	Path getPath() {
@@ -257,7 +323,15 @@ class SessionManager {
 		return file;
 	}
 
-	void commitInfrastructure(int oidPage, int schemaPage1, long lastUsedOid, long txId) {
+	/**
+	 * Writes the free space manager and the root page. Depending on the durability mode and
+	 * on group commit, the pages are not forced to disk before this method returns.
+	 * This must be called while holding the write lock.
+	 * @return A ticket for {@link #awaitDurable(long)} or {@code -1} if the commit does 
+	 * not need to wait.
+	 */
+	long commitInfrastructure(int oidPage, int schemaPage1, long lastUsedOid, long txId, 
+			DURABILITY durability) {
 		int userPage = rootPage.getUserPage(); //not updated currently
 		int indexPage = rootPage.getIndexPage(); //TODO remove this?
 
@@ -267,31 +341,208 @@ class SessionManager {
 		int pageCount = fsm.getPageCount();
 		
 		if (!rootPage.isDirty(userPage, oidPage, schemaPage1, indexPage, freePage)) {
-			return;
+			return -1;
 		}
 		rootPage.set(userPage, oidPage, schemaPage1, indexPage, freePage, pageCount);
+		synchronized (this) {
+			//The next snapshot can only reuse pages of the snapshot of the previous root page
+			prevSnapshot = snapshot;
+			snapshot = null;
+		}
+		
+		long ticket;
+		synchronized (groupLock) {
+			//Commits may not arrive in tx order, make sure the tx ID is increasing
+			rootTxId = Math.max(rootTxId, txId);
+			rootLastUsedOid = lastUsedOid;
+			rootUserPage = userPage;
+			rootIndexPage = indexPage;
+			ticket = ++commitCount;
+		}
 		
+		switch (durability) {
+		case NO_FSYNC:
+			//Write everything, but leave it to the OS when the pages go to disk.
+			file.writeBack();
+			writeMainPage(userPage, oidPage, schemaPage1, indexPage, freePage, pageCount, 
+					fileOut, lastUsedOid, rootTxId);
+			file.writeBack();
+			fsm.notifyCommit();
+			return -1;
+		case ASYNC_FSYNC:
+			//Write the pages, the background thread forces them and writes the root page.
+			file.writeBack();
+			fsm.notifyCommitPending();
+			scheduleSync();
+			return -1;
+		case SYNC:
+			if (commitGroupWindow > 0) {
+				//Write the pages but leave forcing them and writing the root page to the group.
+				file.writeBack();
+				fsm.notifyCommitPending();
+				return ticket;
+			}
+			writePendingRoot();
+			//tell FSM that new free pages can now be reused.
+			fsm.notifyCommit();
+			
+			//refresh pos-index iterators, if any exist.
+			//TODO not necessary at the moment..., all tests (e.g. Test_62) pass anyway.
+			//refresh() is performed through the session object.
+			//schemaIndex.refreshIterators();
+			return -1;
+		default:
+			throw DBLogger.newFatalInternal("Unknown durability mode: " + durability);
+		}
+	}
+
+	/**
+	 * Wait until the commit with the given ticket has been forced to disk.
+	 * The first session that waits becomes the leader of the group. It waits for the 
+	 * duration of the commit window to allow other commits to join the group. Then it forces 
+	 * all pages and writes a single root page for all commits of the group.
+	 * This must be called without holding the write lock.
+	 * @param ticket The ticket returned by {@link #commitInfrastructure}
+	 */
+	void awaitDurable(long ticket) {
+		if (ticket < 0) {
+			return;
+		}
+		synchronized (groupLock) {
+			while (durableCount < ticket && isGroupSyncActive) {
+				try {
+					groupLock.wait();
+				} catch (InterruptedException e) {
+					throw DBLogger.newFatal("Interrupted while waiting for commit", e);
+				}
+			}
+			if (durableCount >= ticket) {
+				return;
+			}
+			isGroupSyncActive = true;
+		}
+		boolean isInterrupted = false;
+		try {
+			try {
+				Thread.sleep(commitGroupWindow);
+			} catch (InterruptedException e) {
+				//just commit right away
+				isInterrupted = true;
+			}
+			//Only one thread at a time can get here, so they can share the key
+			lock.writeLock(syncKey);
+			try {
+				writePendingRoot();
+			} finally {
+				lock.release(syncKey);
+			}
+		} finally {
+			synchronized (groupLock) {
+				isGroupSyncActive = false;
+				groupLock.notifyAll();
+			}
+			if (isInterrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Asynchronous durability: Let the background thread force the pages and write the 
+	 * root page for all commits that are not durable yet.
+	 */
+	private void scheduleSync() {
+		synchronized (groupLock) {
+			if (isSyncScheduled) {
+				return;
+			}
+			isSyncScheduled = true;
+			if (syncExecutor == null) {
+				syncExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "ZooDB-sync: " + path);
+						t.setDaemon(true);
+						return t;
+					}
+				});
+			}
+		}
+		syncExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				long ticket;
+				synchronized (groupLock) {
+					isSyncScheduled = false;
+					ticket = commitCount;
+				}
+				try {
+					awaitDurable(ticket);
+				} catch (RuntimeException e) {
+					DBLogger.severe("Error while writing root page: " + e.getMessage());
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Force all pages to disk and write a root page that covers all previous commits.
+	 * This must be called while holding the write lock.
+	 */
+	private void writePendingRoot() {
+		long txId;
+		long lastUsedOid;
+		int userPage;
+		int indexPage;
+		long count;
+		synchronized (groupLock) {
+			txId = rootTxId;
+			lastUsedOid = rootLastUsedOid;
+			userPage = rootUserPage;
+			indexPage = rootIndexPage;
+			count = commitCount;
+		}
+		if (count == durableCount) {
+			return;
+		}
+		RootPage rp = rootPage;
 		// flush the file including all splits 
 		file.flush(); 
-		writeMainPage(userPage, oidPage, schemaPage1, indexPage, freePage, pageCount, fileOut, 
+		writeMainPage(userPage, rp.getOidIndexPage(), rp.getSchemIndexPage(), 
+				indexPage, rp.getFMSPage(), rp.getFSMPageCount(), fileOut, 
 				lastUsedOid, txId);
 		//Second flush to update root pages.
 		file.flush(); 
 		
-		//tell FSM that new free pages can now be reused.
-		fsm.notifyCommit();
-		
-		//refresh pos-index iterators, if any exist.
-		//TODO not necessary at the moment..., all tests (e.g. Test_62) pass anyway.
-		//refresh() is performed through the session object.
-		//schemaIndex.refreshIterators();
-		txManager.deRegisterTx(txId);
+		fsm.notifyDurable();
+		synchronized (groupLock) {
+			durableCount = count;
+		}
 	}
 
 	RootPage getRootPage() {
 		return rootPage;
 	}
 
+	/**
+	 * Returns the views of the indices of the latest committed root page. The views are 
+	 * shared by all transactions that begin before the next commit. They reuse the 
+	 * index pages of the previous snapshot that did not change.
+	 * This must be called while holding the read lock.
+	 * @return The snapshot of the latest committed root page
+	 */
+	synchronized Snapshot getSnapshot() {
+		if (snapshot == null) {
+			StorageRootSnapshot channel = new StorageRootSnapshot(file, 
+					prevSnapshot == null ? null : prevSnapshot.channel.getIndexPageRegistry());
+			prevSnapshot = null;
+			snapshot = new Snapshot(channel,
+					new PagedOidIndex(channel, rootPage.getOidIndexPage(), oidIndex.getLastUsedOid()),
+					new SchemaIndex(channel, rootPage.getSchemIndexPage(), false));
+		}
+		return snapshot;
+	}
+
 	long getNextTxId() {
 		return txManager.getNextTxId();
 	}
@@ -304,7 +555,7 @@ class SessionManager {
 		return oidIndex;
 	}
 	
-	RWSemaphore<DiskAccess> getLock() {
+	RWSemaphore<Object> getLock() {
 		return lock;
 	}
 
@@ -321,7 +572,44 @@ class SessionManager {
 		return txManager;
 	}
 
-	public boolean isLocked() {
-		return lock.isLocked();
+	synchronized void notifyTxBegin() {
+		activeTxCount++;
+	}
+	
+	synchronized void notifyTxEnd() {
+		activeTxCount--;
+	}
+	
+	/**
+	 * @return Whether any session has an active transaction or holds a lock.
+	 */
+	public synchronized boolean isLocked() {
+		return activeTxCount > 0 || lock.isLocked();
+	}
+
+	/**
+	 * Read-only views of the OID index and the schema index of a committed root page.
+	 * The pages of a snapshot are not reused by the free space manager as long as any 
+	 * transaction that began before the next commit is active.
+	 */
+	static final class Snapshot {
+		private final StorageRootSnapshot channel;
+		private final PagedOidIndex oidIndex;
+		private final SchemaIndex schemaIndex;
+		
+		private Snapshot(StorageRootSnapshot channel, PagedOidIndex oidIndex, 
+				SchemaIndex schemaIndex) {
+			this.channel = channel;
+			this.oidIndex = oidIndex;
+			this.schemaIndex = schemaIndex;
+		}
+		
+		PagedOidIndex getOidIndex() {
+			return oidIndex;
+		}
+		
+		SchemaIndex getSchemaIndex() {
+			return schemaIndex;
+		}
 	}
 }
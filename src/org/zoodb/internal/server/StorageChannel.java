@@ -22,6 +22,9 @@ package org.zoodb.internal.server;
 
 import java.nio.ByteBuffer;
 
+import org.zoodb.internal.server.index.IndexPageBudget;
+import org.zoodb.internal.server.index.IndexPageRegistry;
+
 
 /**
  * A StorageChannel manages a database file and provides read- and 
@@ -42,18 +45,61 @@ public interface StorageChannel {
 
 	void close();
 
+	/**
+	 * Writes all pending pages to the file and forces them to disk.
+	 */
 	void flush();
 
+	/**
+	 * Writes all pending pages to the file, but does not force them to disk.
+	 * @see #flush()
+	 */
+	void writeBack();
+
+	/**
+	 * Readers use this to detect that their current page may have been rewritten. They drop 
+	 * the page with their next seek if the count has changed since they loaded the page.
+	 * @return The number of calls to {@link #writeBack()}, including those by 
+	 * {@link #flush()}.
+	 */
+	long getWriteBackCount();
+
 	void write(ByteBuffer buf, long currentPage);
 
 	void readPage(ByteBuffer buf, long pageId);
 
+	/**
+	 * Hint that the pages starting with the given page are likely to be read soon. They may be
+	 * loaded asynchronously.
+	 * @param pageId The first page to load
+	 * @return The number of pages that will be loaded, {@code 0} if read-ahead is not 
+	 * supported or disabled.
+	 */
+	int readAhead(long pageId);
+
 	int statsGetReadCount();
 
 	int statsGetWriteCount();
 
 	int statsGetReadCountUnique();
 
+	long statsGetCacheHitCount();
+
+	long statsGetCacheMissCount();
+
+	long statsGetCacheEvictionCount();
+
+	/**
+	 * @return The budget for the index pages that the indices of this channel keep in memory.
+	 */
+	IndexPageBudget getIndexPageBudget();
+
+	/**
+	 * @return The registry of the index pages of a snapshot, or {@code null} if the indices 
+	 * of this channel are not read-only snapshots.
+	 */
+	IndexPageRegistry getIndexPageRegistry();
+
 	void newTransaction(long txId);
 
 	long getTxId();
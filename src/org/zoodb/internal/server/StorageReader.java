@@ -41,12 +41,20 @@ public class StorageReader implements StorageChannelInput {
 	private long txTimeStamp = -1;
 	
 	private final int MAX_POS;
+	/** The write-back count of the root when the current page was loaded */
+	private long writeBackCount;
 	
 	private final StorageChannel root;
 	private final IntBuffer intBuffer;
 	private final int[] intArray;
 	
 	private CallbackPageRead overflowCallback = null;
+	
+	//read-ahead
+	private int lastPageId = -1;
+	private int nSequential = 0;
+	private int nReadAhead = 0;
+	private long readAheadEnd = -1;
 	private PAGE_TYPE currentType;
 
 	/**
@@ -67,12 +75,15 @@ public class StorageReader implements StorageChannelInput {
 	}
 
 	/**
-	 * To be called after every commit, to ensure that pages are reset, in case they have been 
-	 * rewritten.
+	 * Drops the current page, in case it has been rewritten. This happens automatically with
+	 * the next seek after a commit, see {@link StorageChannel#getWriteBackCount()}.
 	 */
 	@Override
 	public void reset() {
 		currentPage = -1;
+		lastPageId = -1;
+		nSequential = 0;
+		readAheadEnd = -1;
 	}
 	
 	@Override
@@ -92,10 +103,16 @@ public class StorageReader implements StorageChannelInput {
 	public void seekPage(PAGE_TYPE type, int pageId, int pageOffset) {
 		//isAutoPaging = autoPaging;
 
+		//The page may have been rewritten by a commit. The reader is never reset by other 
+		//threads, the check happens here, in the thread that uses the reader.
+		long n = root.getWriteBackCount();
+		if (n != writeBackCount) {
+			reset();
+			writeBackCount = n;
+		}
 		if (pageId != currentPage) {
 			currentPage = pageId;
-			buf.clear();
-			root.readPage(buf, pageId);
+			readPage(pageId);
 		}
 
 		currentType = type;
@@ -314,8 +331,7 @@ public class StorageReader implements StorageChannelInput {
 		if (isAutoPaging && buf.position() + delta > MAX_POS) {
 			final int pageId = buf.getInt();
 			currentPage = pageId;
-			buf.clear();
-			root.readPage(buf, pageId);
+			readPage(pageId);
 			buf.rewind();
 			//read header
 			readHeader();
@@ -325,6 +341,28 @@ public class StorageReader implements StorageChannelInput {
 		}
  	}
 
+	/**
+	 * Read a page into the buffer. If pages are read sequentially, the following pages
+	 * are requested for read-ahead, such that at least half a batch of pages is requested 
+	 * ahead of the current page.
+	 */
+	private void readPage(int pageId) {
+		buf.clear();
+		root.readPage(buf, pageId);
+		if (pageId == lastPageId + 1) {
+			nSequential++;
+			if (nSequential >= 2 && pageId + nReadAhead/2 >= readAheadEnd) {
+				long start = Math.max(readAheadEnd, pageId + 1);
+				nReadAhead = root.readAhead(start);
+				readAheadEnd = start + nReadAhead;
+			}
+		} else {
+			nSequential = 0;
+			readAheadEnd = -1;
+		}
+		lastPageId = pageId;
+	}
+	
 	private void readHeader() {
 		byte pageType = buf.get();
 		buf.get(); //dummy
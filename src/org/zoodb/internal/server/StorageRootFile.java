@@ -28,11 +28,18 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.zoodb.internal.server.index.FreeSpaceManager;
+import org.zoodb.internal.server.index.IndexPageBudget;
+import org.zoodb.internal.server.index.IndexPageRegistry;
 import org.zoodb.internal.util.DBLogger;
 import org.zoodb.internal.util.PrimLongMapLI;
 import org.zoodb.tools.DBStatistics;
+import org.zoodb.tools.ZooConfig;
 import org.zoodb.tools.ZooDebug;
 
 /**
@@ -44,13 +51,18 @@ import org.zoodb.tools.ZooDebug;
  */
 public final class StorageRootFile implements StorageChannel {
 
-	private final ArrayList<StorageChannelInput> viewsIn = new ArrayList<StorageChannelInput>();
 	private final ArrayList<StorageChannelOutput> viewsOut = new ArrayList<StorageChannelOutput>();
+	/** Only modified by the committing thread, see {@link #getWriteBackCount()} */
+	private volatile long writeBackCount = 0;
 
 	private final FreeSpaceManager fsm;
 	private final RandomAccessFile raf;
 	private final FileLock fileLock;
 	private final FileChannel fc;
+	private final PageCache cache;
+	private final IndexPageBudget indexPageBudget;
+	private final int readAheadPages;
+	private ExecutorService readAheadExecutor = null;
 	// use LONG to enforce long-arithmetic in calculations
 	private final long PAGE_SIZE;
 
@@ -89,6 +101,11 @@ public final class StorageRootFile implements StorageChannel {
 		} catch (IOException e) {
 			throw DBLogger.newFatal("Error opening database: " + dbPath, e);
 		}
+		int cacheSize = ZooConfig.getPageCacheSize();
+		cache = cacheSize > 0 ? new PageCache(fc, pageSize, cacheSize) : null;
+		//read-ahead loads pages into the cache
+		readAheadPages = cache != null ? ZooConfig.getReadAheadPages() : 0;
+		indexPageBudget = new IndexPageBudget(ZooConfig.getIndexPageBudget());
 	}
 
 	@Override
@@ -105,20 +122,25 @@ public final class StorageRootFile implements StorageChannel {
 	public final void close() {
 		flush();
 		try {
+			if (readAheadExecutor != null) {
+				readAheadExecutor.shutdownNow();
+				readAheadExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			}
 			fc.force(true);
 			fileLock.release();
 			fc.close();
 			raf.close();
 		} catch (IOException e) {
 			throw DBLogger.newFatal("Error closing database file.", e);
+		} catch (InterruptedException e) {
+			throw DBLogger.newFatal("Interrupted while closing database file.", e);
 		}
 	}
 
 	@Override
 	public final StorageChannelInput getReader(boolean autoPaging) {
-		StorageChannelInput in = new StorageReader(this, autoPaging);
-		viewsIn.add(in);
-		return in;
+		//Readers are not registered, they check getWriteBackCount() before reading a page
+		return new StorageReader(this, autoPaging);
 	}
 	
 	@Override
@@ -133,25 +155,40 @@ public final class StorageRootFile implements StorageChannel {
 	 */
 	@Override
 	public final void flush() {
+		writeBack();
+		try {
+			fc.force(false);
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error writing database file.", e);
+		}
+	}
+
+	@Override
+	public final void writeBack() {
 		//flush associated splits.
 		for (StorageChannelOutput paf: viewsOut) {
 			//flush() only writers
 			paf.flush();
 		}
-		for (StorageChannelInput paf: viewsIn) {
-			paf.reset();
-		}
-		try {
-			fc.force(false);
-		} catch (IOException e) {
-			throw DBLogger.newFatal("Error writing database file.", e);
+		writeBackCount++;
+		if (cache != null) {
+			cache.flush();
 		}
 	}
 
+	@Override
+	public long getWriteBackCount() {
+		return writeBackCount;
+	}
+
 	@Override
 	public final void readPage(ByteBuffer buf, long pageId) {
 		try {
-			fc.read(buf, pageId * PAGE_SIZE);
+			if (cache != null) {
+				cache.read(buf, pageId);
+			} else {
+				fc.read(buf, pageId * PAGE_SIZE);
+			}
 			if (DBStatistics.isEnabled()) {
 				statNRead++;
 				statNReadUnique.put(pageId, null);
@@ -161,6 +198,37 @@ public final class StorageRootFile implements StorageChannel {
 		}
 	}
 
+	@Override
+	public int readAhead(final long pageId) {
+		if (readAheadPages <= 0) {
+			return 0;
+		}
+		synchronized (this) {
+			if (readAheadExecutor == null) {
+				readAheadExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "ZooDB-read-ahead");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+			}
+		}
+		readAheadExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					cache.prefetch(pageId, readAheadPages);
+				} catch (RuntimeException e) {
+					//read-ahead is only a hint
+					DBLogger.debugPrintln(1, "Read-ahead failed: " + e.getMessage());
+				}
+			}
+		});
+		return readAheadPages;
+	}
+
 	@Override
 	public final void write(ByteBuffer buf, long pageId) {
 		try {
@@ -170,7 +238,11 @@ public final class StorageRootFile implements StorageChannel {
 			if (DBStatistics.isEnabled()) {
 				statNWrite++;
 			}
-			fc.write(buf, pageId * PAGE_SIZE);
+			if (cache != null) {
+				cache.write(buf, pageId);
+			} else {
+				fc.write(buf, pageId * PAGE_SIZE);
+			}
 		} catch (IOException e) {
 			throw DBLogger.newFatal("Error writing page: " + pageId, e);
 		}
@@ -193,6 +265,31 @@ public final class StorageRootFile implements StorageChannel {
 		return statNWrite;
 	}
 
+	@Override
+	public long statsGetCacheHitCount() {
+		return cache != null ? cache.statsGetHitCount() : 0;
+	}
+
+	@Override
+	public long statsGetCacheMissCount() {
+		return cache != null ? cache.statsGetMissCount() : 0;
+	}
+
+	@Override
+	public long statsGetCacheEvictionCount() {
+		return cache != null ? cache.statsGetEvictionCount() : 0;
+	}
+
+	@Override
+	public IndexPageBudget getIndexPageBudget() {
+		return indexPageBudget;
+	}
+
+	@Override
+	public IndexPageRegistry getIndexPageRegistry() {
+		return null;
+	}
+
 	@Override
 	public final int getPageSize() {
 		return (int) PAGE_SIZE;
@@ -206,7 +303,12 @@ public final class StorageRootFile implements StorageChannel {
 	@Override
 	public int statsGetPageCount() {
 		try {
-			return (int) (raf.length() / PAGE_SIZE);
+			long nPages = raf.length() / PAGE_SIZE;
+			if (cache != null) {
+				//pages that are not written yet
+				nPages = Math.max(nPages, cache.getMaxDirtyPageId() + 1);
+			}
+			return (int) nPages;
 		} catch (IOException e) {
 			throw DBLogger.newFatal("", e);
 		}
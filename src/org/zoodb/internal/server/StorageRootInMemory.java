@@ -24,20 +24,26 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 import org.zoodb.internal.server.index.FreeSpaceManager;
+import org.zoodb.internal.server.index.IndexPageBudget;
+import org.zoodb.internal.server.index.IndexPageRegistry;
 import org.zoodb.internal.util.PrimLongMapLI;
 import org.zoodb.tools.DBStatistics;
+import org.zoodb.tools.ZooConfig;
 import org.zoodb.tools.impl.DataStoreManagerInMemory;
 
 public class StorageRootInMemory implements StorageChannel {
 
-	private final ArrayList<StorageChannelInput> viewsIn = new ArrayList<StorageChannelInput>();
 	private final ArrayList<StorageChannelOutput> viewsOut = new ArrayList<StorageChannelOutput>();
+	/** Only modified by the committing thread, see {@link #getWriteBackCount()} */
+	private volatile long writeBackCount = 0;
 
 	private final FreeSpaceManager fsm;
 	// use bucket version of array List
 	private final ArrayList<ByteBuffer> buffers;
 
 	private final int PAGE_SIZE;
+	private final IndexPageBudget indexPageBudget = 
+			new IndexPageBudget(ZooConfig.getIndexPageBudget());
 	
 	private int statNRead = 0;
 	private int statNWrite = 0;
@@ -88,9 +94,8 @@ public class StorageRootInMemory implements StorageChannel {
 	
 	@Override
 	public StorageChannelInput getReader(boolean autoPaging) {
-		StorageChannelInput in = new StorageReader(this, autoPaging);
-		viewsIn.add(in);
-		return in;
+		//Readers are not registered, they check getWriteBackCount() before reading a page
+		return new StorageReader(this, autoPaging);
 	}
 	
 	@Override
@@ -118,14 +123,28 @@ public class StorageRootInMemory implements StorageChannel {
 	 */
 	@Override
 	public void flush() {
+		writeBack();
+	}
+	
+	@Override
+	public void writeBack() {
 		//flush associated splits.
 		for (StorageChannelOutput paf: viewsOut) {
 			//flush() only writers
 			paf.flush();
 		}
-		for (StorageChannelInput paf: viewsIn) {
-			paf.reset();
-		}
+		writeBackCount++;
+	}
+
+	@Override
+	public long getWriteBackCount() {
+		return writeBackCount;
+	}
+	
+	@Override
+	public int readAhead(long pageId) {
+		//nothing to do
+		return 0;
 	}
 	
 	@Override
@@ -145,6 +164,31 @@ public class StorageRootInMemory implements StorageChannel {
 		return statNWrite;
 	}
 
+	@Override
+	public long statsGetCacheHitCount() {
+		return 0;
+	}
+
+	@Override
+	public long statsGetCacheMissCount() {
+		return 0;
+	}
+
+	@Override
+	public long statsGetCacheEvictionCount() {
+		return 0;
+	}
+
+	@Override
+	public IndexPageBudget getIndexPageBudget() {
+		return indexPageBudget;
+	}
+
+	@Override
+	public IndexPageRegistry getIndexPageRegistry() {
+		return null;
+	}
+
 	@Override
 	public int getPageSize() {
 		return PAGE_SIZE;
@@ -168,7 +212,8 @@ public class StorageRootInMemory implements StorageChannel {
 
 	@Override
 	public void readPage(ByteBuffer buf, long pageId) {
-		ByteBuffer b2 = buffers.get((int) pageId);
+		//duplicate() allows concurrent readers
+		ByteBuffer b2 = buffers.get((int) pageId).duplicate();
 		b2.rewind();
 		buf.put(b2);
 		if (DBStatistics.isEnabled()) {
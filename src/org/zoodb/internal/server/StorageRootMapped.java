@@ -0,0 +1,368 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.internal.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.BitSet;
+
+import org.zoodb.internal.server.index.FreeSpaceManager;
+import org.zoodb.internal.server.index.IndexPageBudget;
+import org.zoodb.internal.server.index.IndexPageRegistry;
+import org.zoodb.internal.util.DBLogger;
+import org.zoodb.internal.util.PrimLongMapLI;
+import org.zoodb.tools.DBStatistics;
+import org.zoodb.tools.ZooConfig;
+import org.zoodb.tools.ZooDebug;
+
+/**
+ * A StorageChannel that maps the database file into memory. The file is mapped in segments
+ * of equal size which are added on demand when the file grows.
+ * 
+ * Reading and writing pages copies between the mapped segments and the buffers of the 
+ * views without any system calls. The page size must be a divisor of the segment size.
+ * 
+ * Readers copy pages out of the mapping instead of reading from it directly. This allows
+ * unmapping the segments when the file is closed without invalidating buffers that are still
+ * held by readers.
+ */
+public final class StorageRootMapped implements StorageChannel {
+
+	/** Segment size in bytes. */
+	public static final int SEGMENT_SIZE = 16*1024*1024;
+	
+	private final ArrayList<StorageChannelOutput> viewsOut = new ArrayList<StorageChannelOutput>();
+	/** Only modified by the committing thread, see {@link #getWriteBackCount()} */
+	private volatile long writeBackCount = 0;
+
+	private final FreeSpaceManager fsm;
+	private final RandomAccessFile raf;
+	private final FileLock fileLock;
+	private final FileChannel fc;
+	private final MapMode mapMode;
+	// use LONG to enforce long-arithmetic in calculations
+	private final long PAGE_SIZE;
+	private final IndexPageBudget indexPageBudget = 
+			new IndexPageBudget(ZooConfig.getIndexPageBudget());
+	private final int PAGES_PER_SEGMENT;
+	
+	private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+	/** Segments that have been written since the last flush. */
+	private final BitSet dirtySegments = new BitSet();
+	private long maxPageId = -1;
+
+	private int statNRead; 
+	private int statNWrite; 
+	private final PrimLongMapLI<Object> statNReadUnique = new PrimLongMapLI<Object>();
+	private long txId;
+
+	public StorageRootMapped(String dbPath, String options, int pageSize, FreeSpaceManager fsm) {
+		this.fsm = fsm;
+		PAGE_SIZE = pageSize;
+		if (SEGMENT_SIZE % pageSize != 0) {
+			throw DBLogger.newUser("Page size must be a divisor of " + SEGMENT_SIZE + 
+					": " + pageSize);
+		}
+		PAGES_PER_SEGMENT = SEGMENT_SIZE / pageSize;
+		mapMode = options.contains("w") ? MapMode.READ_WRITE : MapMode.READ_ONLY;
+		File file = new File(dbPath);
+		if (!file.exists()) {
+			throw DBLogger.newUser("DB file does not exist: " + dbPath);
+		}
+		try {
+			raf = new RandomAccessFile(file, options);
+			fc = raf.getChannel();
+			try {
+				//tryLock is supposed to return null, but it throws an Exception
+				fileLock = fc.tryLock();
+				if (fileLock == null) {
+					fc.close();
+					raf.close();
+					throw DBLogger.newUser("This file is in use by another process: " + dbPath);
+				}
+			} catch (OverlappingFileLockException e) {
+				fc.close();
+				raf.close();
+				throw DBLogger.newUser(
+						"This file is in use by another PersistenceManager: " + dbPath);
+			}
+			if (ZooDebug.isTesting()) {
+				ZooDebug.registerFile(fc);
+			}
+			maxPageId = raf.length() / PAGE_SIZE - 1;
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error opening database: " + dbPath, e);
+		}
+	}
+
+	@Override
+	public void newTransaction(long txId) {
+		this.txId = txId;
+	}
+	
+	@Override
+	public long getTxId() {
+		return this.txId;
+	}
+	
+	@Override
+	public final void close() {
+		flush();
+		try {
+			MappedByteBuffer[] segs = segments;
+			segments = new MappedByteBuffer[0];
+			boolean unmapped = true;
+			for (MappedByteBuffer seg: segs) {
+				unmapped &= unmap(seg);
+			}
+			//Truncating a file that is still mapped fails on some platforms. If the segments 
+			//could not be unmapped, the unused trailing part of the last segment stays in the 
+			//file. It contains only empty pages and is reused when the file grows.
+			if (mapMode == MapMode.READ_WRITE && unmapped) {
+				//remove the unused trailing part of the last segment
+				raf.setLength((maxPageId + 1) * PAGE_SIZE);
+			}
+			fc.force(true);
+			fileLock.release();
+			fc.close();
+			raf.close();
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error closing database file.", e);
+		}
+	}
+
+	@Override
+	public final StorageChannelInput getReader(boolean autoPaging) {
+		//Readers are not registered, they check getWriteBackCount() before reading a page
+		return new StorageReader(this, autoPaging);
+	}
+	
+	@Override
+	public final StorageChannelOutput getWriter(boolean autoPaging) {
+		StorageChannelOutput out = new StorageWriter(this, fsm, autoPaging);
+		viewsOut.add(out);
+		return out;
+	}
+	
+	/**
+	 * Not a true flush, just writes the stuff...
+	 */
+	@Override
+	public final void flush() {
+		writeBack();
+		MappedByteBuffer[] segs = segments;
+		for (int i = dirtySegments.nextSetBit(0); i >= 0; i = dirtySegments.nextSetBit(i+1)) {
+			segs[i].force();
+		}
+		dirtySegments.clear();
+	}
+
+	@Override
+	public final void writeBack() {
+		//flush associated splits.
+		for (StorageChannelOutput paf: viewsOut) {
+			//flush() only writers
+			paf.flush();
+		}
+		writeBackCount++;
+	}
+
+	@Override
+	public long getWriteBackCount() {
+		return writeBackCount;
+	}
+
+	/**
+	 * Returns the segment that contains the page. Segments are mapped on demand.
+	 */
+	private MappedByteBuffer getSegment(long pageId) {
+		int segId = (int) (pageId / PAGES_PER_SEGMENT);
+		MappedByteBuffer[] segs = segments;
+		if (segId < segs.length) {
+			return segs[segId];
+		}
+		return mapSegments(segId);
+	}
+	
+	private synchronized MappedByteBuffer mapSegments(int segId) {
+		MappedByteBuffer[] segs = segments;
+		if (segId < segs.length) {
+			return segs[segId];
+		}
+		MappedByteBuffer[] newSegs = new MappedByteBuffer[segId + 1];
+		System.arraycopy(segs, 0, newSegs, 0, segs.length);
+		try {
+			for (int i = segs.length; i <= segId; i++) {
+				long pos = (long)i * SEGMENT_SIZE;
+				long len = SEGMENT_SIZE;
+				if (mapMode == MapMode.READ_ONLY) {
+					//read-only mappings cannot extend the file
+					len = Math.max(0, Math.min(len, fc.size() - pos));
+				}
+				newSegs[i] = fc.map(mapMode, pos, len);
+			}
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error mapping segment: " + segId, e);
+		}
+		segments = newSegs;
+		return newSegs[segId];
+	}
+	
+	/**
+	 * Releases a mapped segment immediately instead of waiting for the garbage collector.
+	 * The segment must not be accessed afterwards.
+	 * @return {@code false} if the JVM does not support unmapping.
+	 */
+	private static boolean unmap(MappedByteBuffer seg) {
+		try {
+			//Java 9 and later
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), seg);
+			return true;
+		} catch (NoSuchMethodException e) {
+			//Java 7 and 8
+			try {
+				Method cleanerMethod = seg.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(seg);
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+				return true;
+			} catch (Exception e2) {
+				DBLogger.debugPrintln(1, "Cannot unmap segment: " + e2.getMessage());
+				return false;
+			}
+		} catch (Exception e) {
+			DBLogger.debugPrintln(1, "Cannot unmap segment: " + e.getMessage());
+			return false;
+		}
+	}
+	
+	@Override
+	public final void readPage(ByteBuffer buf, long pageId) {
+		ByteBuffer src = getSegment(pageId).duplicate();
+		int pos = (int) ((pageId % PAGES_PER_SEGMENT) * PAGE_SIZE);
+		src.limit(pos + (int)PAGE_SIZE);
+		src.position(pos);
+		buf.put(src);
+		if (DBStatistics.isEnabled()) {
+			statNRead++;
+			statNReadUnique.put(pageId, null);
+		}
+	}
+
+	@Override
+	public int readAhead(long pageId) {
+		//left to the operating system
+		return 0;
+	}
+
+	@Override
+	public final void write(ByteBuffer buf, long pageId) {
+		if (pageId<0) {
+			return;
+		}
+		if (DBStatistics.isEnabled()) {
+			statNWrite++;
+		}
+		ByteBuffer dst = getSegment(pageId).duplicate();
+		dst.position((int) ((pageId % PAGES_PER_SEGMENT) * PAGE_SIZE));
+		dst.put(buf);
+		dirtySegments.set((int) (pageId / PAGES_PER_SEGMENT));
+		if (pageId > maxPageId) {
+			synchronized (this) {
+				maxPageId = Math.max(maxPageId, pageId);
+			}
+		}
+	}
+
+	@Override
+	public final int statsGetReadCount() {
+		return statNRead;
+	}
+
+	@Override
+	public int statsGetReadCountUnique() {
+		int ret = statNReadUnique.size();
+		statNReadUnique.clear();
+		return ret;
+	}
+
+	@Override
+	public final int statsGetWriteCount() {
+		return statNWrite;
+	}
+
+	@Override
+	public long statsGetCacheHitCount() {
+		return 0;
+	}
+
+	@Override
+	public long statsGetCacheMissCount() {
+		return 0;
+	}
+
+	@Override
+	public long statsGetCacheEvictionCount() {
+		return 0;
+	}
+
+	@Override
+	public IndexPageBudget getIndexPageBudget() {
+		return indexPageBudget;
+	}
+
+	@Override
+	public IndexPageRegistry getIndexPageRegistry() {
+		return null;
+	}
+
+	@Override
+	public final int getPageSize() {
+		return (int) PAGE_SIZE;
+	}
+
+	@Override
+	public void reportFreePage(int pageId) {
+		fsm.reportFreePage(pageId);
+	}
+
+	@Override
+	public int statsGetPageCount() {
+		return (int) (maxPageId + 1);
+	}
+
+}
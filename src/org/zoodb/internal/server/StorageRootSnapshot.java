@@ -0,0 +1,175 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.internal.server;
+
+import java.nio.ByteBuffer;
+
+import org.zoodb.internal.server.index.IndexPageBudget;
+import org.zoodb.internal.server.index.IndexPageRegistry;
+import org.zoodb.internal.util.DBLogger;
+import org.zoodb.tools.ZooConfig;
+
+/**
+ * A read-only view on a StorageChannel. It is used by transactions to load copies of the 
+ * indices of a committed root page.
+ * 
+ * Reader and writer views are not registered, they are simply discarded with the snapshot.
+ * Pages that are referenced by a snapshot are not reused by the free space manager as long 
+ * as any transaction that uses the snapshot is active. The snapshot never changes, so 
+ * iterators on its indices are not invalidated by later commits.
+ * 
+ * The indices of a snapshot have their own page budget. Sharing the budget of the root 
+ * would allow the snapshot to evict pages of the shared indices while they are modified.
+ * The index pages that did not change since the previous snapshot are reused, see
+ * {@link IndexPageRegistry}.
+ */
+public final class StorageRootSnapshot implements StorageChannel {
+
+	private final StorageChannel root;
+	private final long txId;
+	private final IndexPageBudget indexPageBudget = 
+			new IndexPageBudget(ZooConfig.getIndexPageBudget());
+	private final IndexPageRegistry indexPageRegistry;
+	
+	/**
+	 * @param root The root channel
+	 * @param prevRegistry The page registry of the snapshot of the previous root page, 
+	 * or {@code null}
+	 */
+	public StorageRootSnapshot(StorageChannel root, IndexPageRegistry prevRegistry) {
+		this.root = root;
+		this.txId = root.getTxId();
+		this.indexPageRegistry = new IndexPageRegistry(prevRegistry);
+	}
+	
+	@Override
+	public StorageChannelInput getReader(boolean autoPaging) {
+		return new StorageReader(this, autoPaging);
+	}
+
+	@Override
+	public StorageChannelOutput getWriter(boolean autoPaging) {
+		//writers are required by the indices, but they are never used 
+		return new StorageWriter(this, null, autoPaging);
+	}
+
+	@Override
+	public void reportFreePage(int pageId) {
+		throw DBLogger.newFatalInternal("Snapshots are read-only.");
+	}
+
+	@Override
+	public int getPageSize() {
+		return root.getPageSize();
+	}
+
+	@Override
+	public void close() {
+		//nothing to do
+	}
+
+	@Override
+	public void flush() {
+		//nothing to do
+	}
+
+	@Override
+	public void writeBack() {
+		//nothing to do
+	}
+
+	@Override
+	public long getWriteBackCount() {
+		//The pages of a snapshot are never rewritten
+		return 0;
+	}
+
+	@Override
+	public void write(ByteBuffer buf, long currentPage) {
+		throw DBLogger.newFatalInternal("Snapshots are read-only.");
+	}
+
+	@Override
+	public void readPage(ByteBuffer buf, long pageId) {
+		root.readPage(buf, pageId);
+	}
+
+	@Override
+	public int readAhead(long pageId) {
+		return root.readAhead(pageId);
+	}
+
+	@Override
+	public int statsGetReadCount() {
+		return root.statsGetReadCount();
+	}
+
+	@Override
+	public int statsGetWriteCount() {
+		return root.statsGetWriteCount();
+	}
+
+	@Override
+	public int statsGetReadCountUnique() {
+		return root.statsGetReadCountUnique();
+	}
+
+	@Override
+	public long statsGetCacheHitCount() {
+		return root.statsGetCacheHitCount();
+	}
+
+	@Override
+	public long statsGetCacheMissCount() {
+		return root.statsGetCacheMissCount();
+	}
+
+	@Override
+	public long statsGetCacheEvictionCount() {
+		return root.statsGetCacheEvictionCount();
+	}
+
+	@Override
+	public IndexPageBudget getIndexPageBudget() {
+		return indexPageBudget;
+	}
+
+	@Override
+	public IndexPageRegistry getIndexPageRegistry() {
+		return indexPageRegistry;
+	}
+
+	@Override
+	public void newTransaction(long txId) {
+		//nothing to do
+	}
+
+	@Override
+	public long getTxId() {
+		return txId;
+	}
+
+	@Override
+	public int statsGetPageCount() {
+		return root.statsGetPageCount();
+	}
+
+}
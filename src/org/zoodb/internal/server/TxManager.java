@@ -69,6 +69,8 @@ class TxManager {
 	private boolean isSingleSession = true;
 	
 	private final LinkedList<Long> activeTXs = new LinkedList<>();
+	//Transactions that have not ended yet, used by the free space manager
+	private final LinkedList<Long> runningTXs = new LinkedList<>();
 	private long latestTxId = -1;
 	
 	public TxManager(long txId) {
@@ -141,7 +143,7 @@ class TxManager {
 	
 	/**
 	 * Deregister the transaction.
-	 * To be called after commit() or rollback().
+	 * To be called after commit() or rollback(). Unknown IDs are ignored.
 	 * @param txId
 	 */
 	synchronized void deRegisterTx(long txId) {
@@ -190,9 +192,31 @@ class TxManager {
 		//alternatively we could use a sorted list, but this is probably not cheaper... ?
 		latestTxId++;
 		activeTXs.add(latestTxId);
+		runningTXs.add(latestTxId);
 		return latestTxId;
 	}
 
+	/**
+	 * Mark the transaction as ended. This does not affect the update history. 
+	 * To be called after commit() or rollback(). Unknown IDs are ignored.
+	 * @param txId
+	 */
+	synchronized void notifyTxEnd(long txId) {
+		runningTXs.remove(txId);
+	}
+
+	/**
+	 * @return ID of the oldest active transaction or, if there is none, the ID that the next
+	 * transaction would get.
+	 */
+	synchronized long getOldestActiveTxId() {
+		return runningTXs.isEmpty() ? latestTxId + 1 : runningTXs.getFirst();
+	}
+	
+	synchronized long getLatestTxId() {
+		return latestTxId;
+	}
+	
 	synchronized void setMultiSession() {
 		isSingleSession = false;
 	}
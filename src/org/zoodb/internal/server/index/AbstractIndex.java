@@ -59,4 +59,13 @@ abstract class AbstractIndex {
 	public final StorageChannel getStorageChannel() {
 		return file;
 	}
+	
+	/**
+	 * Evicts unmodified pages during a sweep of the page budget, see {@link IndexPageBudget}.
+	 * Indices that are not registered with the budget keep all pages in memory.
+	 * @param budget The page budget
+	 */
+	void evictPages(IndexPageBudget budget) {
+		//nothing to evict
+	}
 }
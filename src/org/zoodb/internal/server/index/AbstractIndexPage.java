@@ -50,6 +50,8 @@ abstract class AbstractIndexPage {
 	final AbstractIndexPage[] subPages;
 	final int[] subPageIds;
 	private int pageId = -1;
+	/** Set when the page is accessed, cleared by the sweeps of the {@link IndexPageBudget} */
+	transient boolean isReferenced = true;
 	
 	
 	AbstractIndexPage(AbstractPagedIndex ind, AbstractIndexPage parent, boolean isLeaf) {
@@ -63,6 +65,7 @@ abstract class AbstractIndexPage {
 			subPageIds = null;
 			ind.statNLeaves++;
 		}
+		ind.notifyPageCreated();
 		this.isLeaf = isLeaf;
 
 		//new pages are always dirty
@@ -71,6 +74,14 @@ abstract class AbstractIndexPage {
 
 	protected abstract AbstractIndexPage newInstance();
 
+	/**
+	 * @param ind The read-only index of a snapshot
+	 * @param parent The parent page in that index
+	 * @return A page of the given index with the same content as this page
+	 */
+	abstract AbstractIndexPage newSnapshotInstance(AbstractPagedIndex ind, 
+			AbstractIndexPage parent);
+
 	/**
 	 * Copy constructor.
 	 * @param p
@@ -89,6 +100,30 @@ abstract class AbstractIndexPage {
 		pageId = p.pageId;
 	}
 
+	/**
+	 * Constructor for reusing an unmodified page of a previous snapshot in another index,
+	 * see {@link IndexPageRegistry}. The sub-page IDs are shared, sub-pages are loaded 
+	 * again by the new index.
+	 * @param ind The index of the new page
+	 * @param p The page to reuse
+	 */
+	AbstractIndexPage(AbstractPagedIndex ind, AbstractIndexPage p) {
+		this.ind = ind;
+		isLeaf = p.isLeaf;
+		if (!isLeaf) {
+			subPageIds = p.subPageIds;
+			subPages = new AbstractIndexPage[p.subPages.length];
+			ind.statNInner++;
+		} else {
+			subPageIds = null;
+			subPages = null;
+			ind.statNLeaves++;
+		}
+		ind.notifyPageCreated();
+		pageId = p.pageId;
+		setDirty( false );
+	}
+
 	private final void markPageDirty() {
 		//if the page is already dirty, then the parent is as well.
 		//no further action is necessary. Parent and index wrapper are already cloned and dirty.
@@ -138,6 +173,7 @@ abstract class AbstractIndexPage {
 		AbstractIndexPage page = subPages[pos];
 		if (page != null) {
 			//page is in memory
+			page.isReferenced = true;
 			return page;
 		}
 		
@@ -155,18 +191,34 @@ abstract class AbstractIndexPage {
 			incrementNEntries();
 		} else {
 			//load page
-			page = ind.readPage(pageId, this);
+			return loadPage(pos);
 		}
 		subPages[pos] = page;
 		return page;
 	}
 	
+	/**
+	 * Loads a sub-page. This is synchronized on the index, because concurrent readers share 
+	 * the index and its input channel.
+	 */
+	private AbstractIndexPage loadPage(int pos) {
+		synchronized (ind) {
+			AbstractIndexPage page = subPages[pos];
+			if (page == null) {
+				page = ind.readPage(subPageIds[pos], this);
+				subPages[pos] = page;
+			}
+			return page;
+		}
+	}
+	
 	protected abstract void incrementNEntries();
 	
 	final AbstractIndexPage readCachedPage(short pos) {
 	    AbstractIndexPage page = subPages[pos];
 		if (page != null) {
 			//page is in memory
+			page.isReferenced = true;
 			return page;
 		}
 		
@@ -389,11 +441,10 @@ abstract class AbstractIndexPage {
 	protected AbstractIndexPage getPageByPos(int pos) {
 		AbstractIndexPage page = subPages[pos];
 		if (page != null) {
+			page.isReferenced = true;
 			return page;
 		}
-		page = ind.readPage(subPageIds[pos], this);
-		subPages[pos] = page;
-		return page;
+		return loadPage(pos);
 	}
 
 	/**
@@ -38,7 +38,14 @@ import org.zoodb.internal.util.DBLogger;
  */
 public abstract class AbstractPagedIndex extends AbstractIndex {
 
+	/** Max number of entries in leaf page, see also {@link #maxFixedLeafN} */
 	protected transient final int maxLeafN;
+	/** Max number of entries in leaf page if the entries are not compressed */
+	protected transient final int maxFixedLeafN;
+	/** Max number of bytes of the compressed entries of a leaf page, 0 if not compressed */
+	transient final int maxLeafBytes;
+	/** Buffer for compressing and decompressing leaf pages */
+	final byte[] leafBuffer;
 	/** Max number of keys in inner page (there can be max+1 page-refs) */
 	protected transient final int maxInnerN;
 	//TODO if we ensure that maxXXX is a multiple of 2, then we could scrap the minXXX values
@@ -57,6 +64,10 @@ public abstract class AbstractPagedIndex extends AbstractIndex {
 	
 	private int modCount = 0;
 	private final PAGE_TYPE dataType;
+	/** The page budget of the file, or {@code null} for the free space manager */
+	private final IndexPageBudget budget;
+	/** The loaded pages of a snapshot index, {@code null} for other indices */
+	private final IndexPageRegistry registry;
 	
 
 	/**
@@ -102,9 +113,20 @@ public abstract class AbstractPagedIndex extends AbstractIndex {
 		final int pageHeader = 4 + DiskIO.PAGE_HEADER_SIZE; // 2 + 2 + general_header
 		final int refLen = 4;  //one int for pageID
 		// we use only int, so it should round down automatically...
-		maxLeafN = (pageSize - pageHeader) / (keyLen + valLen);
-		if (maxLeafN * (keyLen + valLen) + pageHeader > pageSize) {
-			throw DBLogger.newFatalInternal("Illegal Index size: " + maxLeafN);
+		maxFixedLeafN = (pageSize - pageHeader) / (keyLen + valLen);
+		if (maxFixedLeafN * (keyLen + valLen) + pageHeader > pageSize) {
+			throw DBLogger.newFatalInternal("Illegal Index size: " + maxFixedLeafN);
+		}
+		if (isCompressed(dataType)) {
+			//compressed leaf pages: 2 byte nEntries, 1 byte format, 4 byte length, entries.
+			//We assume that an entry requires at least 4 bytes on average.
+			maxLeafBytes = pageSize - pageHeader - 5;
+			maxLeafN = Math.min(Math.max(maxLeafBytes / 4, maxFixedLeafN), Short.MAX_VALUE);
+			leafBuffer = new byte[maxLeafBytes];
+		} else {
+			maxLeafBytes = 0;
+			maxLeafN = maxFixedLeafN;
+			leafBuffer = null;
 		}
 		minLeafN = maxLeafN >> 1;
 		
@@ -121,6 +143,37 @@ public abstract class AbstractPagedIndex extends AbstractIndex {
 
 	    DBLogger.debugPrintln(1,"OidIndex entries per page: " + maxLeafN + " / inner: " + 
 	            maxInnerN);
+
+		if (dataType != PAGE_TYPE.FREE_INDEX) {
+			budget = file.getIndexPageBudget();
+			budget.register(this);
+		} else {
+			//The FSM is modified while other indices are written, so we never evict its pages.
+			budget = null;
+		}
+		registry = file.getIndexPageRegistry();
+	}
+
+	/**
+	 * The leaf pages of the OID index, the POS index and the attribute indices are delta 
+	 * compressed. The leaves of other indices, such as the free space index, are not.
+	 * @param dataType The page type of the index
+	 * @return Whether leaf pages of the given type are compressed
+	 */
+	private static boolean isCompressed(PAGE_TYPE dataType) {
+		switch (dataType) {
+		case OID_INDEX:
+		case POS_INDEX:
+		case FIELD_INDEX:
+		case COMPOSITE_INDEX:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	final boolean isCompressed() {
+		return maxLeafBytes > 0;
 	}
 
 	abstract AbstractIndexPage createPage(AbstractIndexPage parent, boolean isLeaf);
@@ -133,6 +186,9 @@ public abstract class AbstractPagedIndex extends AbstractIndex {
 		
 		int ret = getRoot().write();
 		markClean();
+		if (budget != null) {
+			budget.notifyIndexWritten();
+		}
 		return ret;
 	}
 
@@ -159,12 +215,82 @@ public abstract class AbstractPagedIndex extends AbstractIndex {
 		return readPage(pageId, null);
 	}
 	
+	/**
+	 * Returns the root page. This may evict unmodified pages, see {@link #checkPageBudget()}.
+	 * @return The root page
+	 */
 	protected abstract AbstractIndexPage getRoot();
-	
-	final AbstractIndexPage readPage(int pageId, AbstractIndexPage parentPage) {
+
+	/**
+	 * @return The root page without checking the page budget
+	 */
+	abstract AbstractIndexPage getRootPage();
+
+	/**
+	 * Evicts unmodified pages if the page budget of the file is exceeded. This must only be
+	 * called at the beginning of an operation, because the operation must not hold any 
+	 * unmodified pages other than the root page. Iterators of this and other indices may 
+	 * still hold evicted pages.
+	 * This is called by {@link #getRoot()}.
+	 */
+	protected final void checkPageBudget() {
+		if (budget != null) {
+			budget.check();
+		}
+	}
+
+	/**
+	 * Evicts unmodified pages during a sweep of the page budget. This is synchronized, 
+	 * because concurrent readers may load pages at the same time.
+	 * @param budget The page budget
+	 */
+	@Override
+	final synchronized void evictPages(IndexPageBudget budget) {
+		AbstractIndexPage root = getRootPage();
+		if (root == null) {
+			//not fully constructed yet
+			return;
+		}
+		budget.countRoot(root);
+		if (!root.isLeaf) {
+			budget.sweep(root);
+		}
+		statNLeaves = budget.getSweepLeaves();
+		statNInner = budget.getSweepInner();
+	}
+
+	final void notifyPageCreated() {
+		if (budget != null) {
+			budget.notifyPageCreated();
+		}
+	}
+
+	final synchronized AbstractIndexPage readPage(int pageId, AbstractIndexPage parentPage) {
 		if (pageId == 0) {
 			throw new IllegalArgumentException();
 		}
+		if (registry != null) {
+			return readSnapshotPage(pageId, parentPage);
+		}
+		return loadPage(pageId, parentPage);
+	}
+	
+	/**
+	 * Snapshot indices reuse the pages of the previous snapshot that did not change.
+	 */
+	private AbstractIndexPage readSnapshotPage(int pageId, AbstractIndexPage parentPage) {
+		AbstractIndexPage prev = registry.getPreviousPage(pageId);
+		AbstractIndexPage newPage;
+		if (prev != null && prev.ind.dataType == dataType && prev.ind.isUnique() == isUnique()) {
+			newPage = prev.newSnapshotInstance(this, parentPage);
+		} else {
+			newPage = loadPage(pageId, parentPage);
+		}
+		registry.put(pageId, newPage);
+		return newPage;
+	}
+	
+	private AbstractIndexPage loadPage(int pageId, AbstractIndexPage parentPage) {
 		//TODO improve compression:
 		//no need to store number of entries in leaf pages? Max number is given in code, 
 		//actual number is where pageID!=0.
@@ -181,6 +307,9 @@ public abstract class AbstractPagedIndex extends AbstractIndex {
 		}
 		newPage.setPageId( pageId );  //the page ID is for exampled used to return the page to the FSM
 		newPage.setDirty( false );
+		if (budget != null) {
+			budget.notifyPageLoaded();
+		}
 		return newPage;
 	}
 
@@ -202,6 +331,18 @@ public abstract class AbstractPagedIndex extends AbstractIndex {
 		modCount++;
 	}
 	
+	/**
+	 * Replaces the root of an empty index with the root of a bulk loaded tree.
+	 * @param newRoot The new root page
+	 */
+	final void setBulkLoadedRoot(AbstractIndexPage newRoot) {
+		//The root may already have been reported if the index was cleared, this is harmless
+		file.reportFreePage(getRoot().pageId());
+		updateRoot(newRoot);
+		notifyPageUpdate();
+		markDirty();
+	}
+	
 	public List<Integer> debugPageIds() {
 	    ArrayList<Integer> pages = new ArrayList<Integer>();
 	    AbstractIndexPage root = getRoot();
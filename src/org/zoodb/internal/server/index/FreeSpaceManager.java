@@ -61,6 +61,11 @@ public class FreeSpaceManager {
 	private volatile long maxFreeTxId = -1;
 	//TODO ThreadLocal???? --> What if commits with in one tx come from different threads?
 	private long currentTxId = -1;  //This is local to a transaction
+	//Pages freed in the current transaction are tagged with this ID. 
+	private long freedTxId = -1;
+	//Pages freed by transactions up to this ID are no longer referenced by the root page on 
+	//disk. This is only lower than MAX_VALUE while the root page of a group commit is pending. 
+	private long durableTxId = Long.MAX_VALUE;
 	
 	//TODO invert the mapping:
 	//Map txId-->pageId!
@@ -115,7 +120,7 @@ public class FreeSpaceManager {
 		toDelete.clear();
 
 		for (Integer l: toAdd) {
-			idx.insertLong(l, currentTxId);
+			idx.insertLong(l, freedTxId);
 		}
 		toAdd.clear();
 
@@ -140,7 +145,7 @@ public class FreeSpaceManager {
 			idx.preallocatePagesForWriteMap(map, this);
 			
 			for (Integer l: toAdd) {
-				idx.insertLong(l, currentTxId);
+				idx.insertLong(l, freedTxId);
 				hasWritingSettled = false;
 			}
 			toAdd.clear();
@@ -278,11 +283,39 @@ public class FreeSpaceManager {
 		iter = null;
 	}
 	
+	/**
+	 * Called after a commit whose root page has not been written to disk yet. Pages freed by
+	 * this commit are not reused before {@link #notifyDurable()} is called, otherwise they 
+	 * could be overwritten while the root page on disk still refers to them.
+	 */
+	public void notifyCommitPending() {
+		notifyCommit();
+		durableTxId = Math.min(durableTxId, freedTxId - 1);
+	}
+	
+	/**
+	 * Called when the root page of all previous commits has been forced to disk.
+	 */
+	public void notifyDurable() {
+		durableTxId = Long.MAX_VALUE;
+	}
+	
 	public void notifyBegin(long newTxId) {
+		notifyBegin(newTxId, newTxId, newTxId);
+	}
+	
+	/**
+	 * Pages that are freed in a commit are tagged with the latest transaction ID. They are
+	 * only reused once all transactions up to that ID have ended, because concurrent readers
+	 * may still access them.
+	 * @param newTxId ID of the committing transaction
+	 * @param oldestActiveTxId ID of the oldest active transaction
+	 * @param latestTxId ID of the latest transaction that has been started
+	 */
+	public void notifyBegin(long newTxId, long oldestActiveTxId, long latestTxId) {
 		currentTxId = newTxId;
-		
-		//TODO not good for multi-session
-		maxFreeTxId = currentTxId - 1;
+		freedTxId = Math.max(newTxId, latestTxId);
+		maxFreeTxId = Math.min(Math.min(newTxId, oldestActiveTxId) - 1, durableTxId);
 		
 		
 		//Create a new Iterator for the current transaction
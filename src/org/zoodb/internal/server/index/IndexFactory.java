@@ -65,6 +65,28 @@ public class IndexFactory {
 		return new PagedUniqueLongLong(type, storage, pageId);
 	}
 	
+	/**
+	 * Unique index for point lookups, see {@link PagedHashLongLong}.
+	 * @param type
+	 * @param storage
+	 * @return a new index
+	 */
+	public static LongLongIndex createHashIndex(PAGE_TYPE type, StorageChannel storage) {
+		return new PagedHashLongLong(type, storage);
+	}
+	
+	/**
+	 * Unique index for point lookups, see {@link PagedHashLongLong}.
+	 * @param type
+	 * @param storage
+	 * @param pageId page id of the root page
+	 * @return an index reconstructed from disk
+	 */
+	public static LongLongIndex loadHashIndex(PAGE_TYPE type, StorageChannel storage, 
+			int pageId) {
+		return new PagedHashLongLong(type, storage, pageId);
+	}
+	
 	/**
 	 * EXPERIMENTAL! Index that has bit width of key and value as parameters.
 	 * @param type
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.internal.server.index;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.zoodb.tools.DBStatistics;
+
+/**
+ * Limits the number of index pages that the indices of a {@code StorageChannel} keep in
+ * memory. All indices of a channel share the same budget.
+ *
+ * When the budget is exceeded, unmodified pages are evicted with a CLOCK-like sweep over
+ * all indices: Every access marks a page as referenced. The sweep evicts unreferenced pages
+ * together with their sub-pages and clears the mark of the remaining pages. If this does not
+ * free enough pages, a second sweep evicts the pages that have not been accessed since the
+ * first sweep. Evicted pages are simply removed from their parent page and loaded again via
+ * their page ID when they are accessed. Iterators may still hold evicted pages, they remain
+ * valid because they are unmodified.
+ *
+ * Modified pages and their parents are never evicted. If the budget is exhausted by modified
+ * pages, no sweep takes place until the number of pages has grown by another tenth of the
+ * budget or until an index has been written.
+ *
+ * Pages are only evicted at the beginning of an index operation, when the operation does not
+ * yet hold any pages, see {@link AbstractPagedIndex#checkPageBudget()}. The free space
+ * manager does not take part, because it is used during the write operations of other
+ * indices.
+ *
+ * The number of pages is approximate. It counts all pages that are created or loaded and
+ * is corrected with every sweep.
+ * 
+ * Hash indices do not consist of index pages, they evict whole buckets instead, see 
+ * {@link #evict(int)}.
+ */
+public class IndexPageBudget {
+
+	/** A sweep stops evicting pages when the number of pages is below 90% of the budget */
+	private static final double LOW_WATER_MARK = 0.9;
+
+	private final int maxPages;
+	private final int lowWaterMark;
+	private final AtomicInteger nPages = new AtomicInteger();
+	private volatile int sweepThreshold;
+	private final ArrayList<WeakReference<AbstractIndex>> indices =
+			new ArrayList<WeakReference<AbstractIndex>>();
+	/** Discarded indices are removed from the list when it reaches this size */
+	private int purgeSize = 64;
+
+	//sweep state, guarded by 'this'
+	private int nToEvict;
+	private int nSweepLeaves;
+	private int nSweepInner;
+
+	private final AtomicLong statNLoad = new AtomicLong();
+	private long statNEvict = 0;
+
+	/**
+	 * @param maxPages The maximum number of index pages in memory, {@code 0} for no limit.
+	 */
+	public IndexPageBudget(int maxPages) {
+		if (maxPages < 0) {
+			throw new IllegalArgumentException("Illegal index page budget: " + maxPages);
+		}
+		this.maxPages = maxPages;
+		this.lowWaterMark = (int) (maxPages * LOW_WATER_MARK);
+		this.sweepThreshold = maxPages;
+	}
+
+	synchronized void register(AbstractIndex ind) {
+		if (indices.size() >= purgeSize) {
+			Iterator<WeakReference<AbstractIndex>> it = indices.iterator();
+			while (it.hasNext()) {
+				if (it.next().get() == null) {
+					it.remove();
+				}
+			}
+			purgeSize = Math.max(64, 2 * indices.size());
+		}
+		indices.add(new WeakReference<AbstractIndex>(ind));
+	}
+
+	/**
+	 * Called whenever a page is created or loaded.
+	 */
+	final void notifyPageCreated() {
+		nPages.incrementAndGet();
+	}
+
+	final void notifyPageLoaded() {
+		if (DBStatistics.isEnabled()) {
+			statNLoad.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Called after an index has been written, the written pages can be evicted now.
+	 */
+	final void notifyIndexWritten() {
+		sweepThreshold = maxPages;
+	}
+
+	/**
+	 * Evicts pages if the budget is exceeded.
+	 */
+	final void check() {
+		if (maxPages > 0 && nPages.get() > sweepThreshold) {
+			sweep();
+		}
+	}
+
+	private synchronized void sweep() {
+		if (nPages.get() <= sweepThreshold) {
+			//another thread was faster
+			return;
+		}
+		//The first sweep evicts all unreferenced pages, the second one only as many as required
+		nToEvict = Integer.MAX_VALUE;
+		int n = sweepIndices();
+		if (n > lowWaterMark) {
+			nToEvict = n - lowWaterMark;
+			n = sweepIndices();
+		}
+		nPages.set(n);
+		sweepThreshold = Math.max(maxPages, n + maxPages - lowWaterMark);
+	}
+
+	/**
+	 * @return The number of pages after the sweep
+	 */
+	private int sweepIndices() {
+		int n = 0;
+		Iterator<WeakReference<AbstractIndex>> it = indices.iterator();
+		while (it.hasNext()) {
+			AbstractIndex ind = it.next().get();
+			if (ind == null) {
+				it.remove();
+				continue;
+			}
+			nSweepLeaves = 0;
+			nSweepInner = 0;
+			ind.evictPages(this);
+			n += nSweepLeaves + nSweepInner;
+		}
+		return n;
+	}
+
+	/**
+	 * Evicts unmodified sub-pages that have not been accessed since the last sweep and
+	 * clears the access mark of the other sub-pages.
+	 * @param page An inner page
+	 */
+	final void sweep(AbstractIndexPage page) {
+		for (int i = 0; i <= page.getNKeys(); i++) {
+			AbstractIndexPage p = page.subPages[i];
+			if (p == null) {
+				continue;
+			}
+			if (!p.isDirty() && !p.isReferenced && nToEvict > 0) {
+				//the sub-pages of a clean page are clean as well
+				page.subPages[i] = null;
+				int nEvicted = countPages(p);
+				nToEvict -= nEvicted;
+				statNEvict += nEvicted;
+				continue;
+			}
+			p.isReferenced = false;
+			if (p.isLeaf) {
+				nSweepLeaves++;
+			} else {
+				nSweepInner++;
+				sweep(p);
+			}
+		}
+	}
+
+	private static int countPages(AbstractIndexPage page) {
+		int n = 1;
+		if (!page.isLeaf) {
+			for (int i = 0; i <= page.getNKeys(); i++) {
+				if (page.subPages[i] != null) {
+					n += countPages(page.subPages[i]);
+				}
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Decides during a sweep whether a group of unmodified pages that has not been accessed 
+	 * since the last sweep is evicted. This is used by indices that do not consist of
+	 * index pages.
+	 * @param nPages The number of pages
+	 * @return Whether the pages should be evicted
+	 */
+	final boolean evict(int nPages) {
+		if (nToEvict <= 0) {
+			return false;
+		}
+		nToEvict -= nPages;
+		statNEvict += nPages;
+		return true;
+	}
+
+	/**
+	 * Count the pages that an index keeps in memory during a sweep, see {@link #evict(int)}.
+	 * @param nLeaves The number of leaf pages
+	 * @param nInner The number of inner pages
+	 */
+	final void countResidentPages(int nLeaves, int nInner) {
+		nSweepLeaves += nLeaves;
+		nSweepInner += nInner;
+	}
+
+	/**
+	 * Count the root page of an index during a sweep.
+	 */
+	final void countRoot(AbstractIndexPage root) {
+		if (root.isLeaf) {
+			nSweepLeaves++;
+		} else {
+			nSweepInner++;
+		}
+	}
+
+	final int getSweepLeaves() {
+		return nSweepLeaves;
+	}
+
+	final int getSweepInner() {
+		return nSweepInner;
+	}
+
+	public int getMaxPages() {
+		return maxPages;
+	}
+
+	public int statsGetPageCount() {
+		return nPages.get();
+	}
+
+	public long statsGetLoadCount() {
+		return statNLoad.get();
+	}
+
+	public synchronized long statsGetEvictionCount() {
+		return statNEvict;
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.internal.server.index;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+import org.zoodb.internal.util.PrimLongMapLI;
+
+/**
+ * Keeps track of the index pages that the read-only indices of a snapshot have loaded, so
+ * that the snapshot of the following commit can reuse the pages that did not change.
+ *
+ * Index pages are never modified in place, a commit writes modified pages to new page IDs.
+ * The pages that a commit frees are not reused by the same commit. A page ID that occurs
+ * in the trees of two consecutive root pages therefore refers to the same content in both.
+ * This is only true for consecutive root pages, so a registry only refers to the registry
+ * of the previous root page, and that one drops its own predecessor.
+ *
+ * Pages are only weakly referenced, evicted pages are not retained by the registry.
+ * Reused pages are copies that share the (immutable) keys and values with the original
+ * page, so they do not retain the pages or the indices of the previous snapshot.
+ */
+public final class IndexPageRegistry {
+
+	private final PrimLongMapLI<PageRef> pages = new PrimLongMapLI<PageRef>();
+	private final ReferenceQueue<AbstractIndexPage> queue =
+			new ReferenceQueue<AbstractIndexPage>();
+	private IndexPageRegistry predecessor;
+
+	/**
+	 * @param predecessor The registry of the previous root page or {@code null}
+	 */
+	public IndexPageRegistry(IndexPageRegistry predecessor) {
+		if (predecessor != null) {
+			//avoid chains of registries
+			predecessor.dropPredecessor();
+		}
+		this.predecessor = predecessor;
+	}
+
+	private synchronized void dropPredecessor() {
+		predecessor = null;
+	}
+
+	synchronized void put(int pageId, AbstractIndexPage page) {
+		purge();
+		pages.put(pageId, new PageRef(pageId, page, queue));
+	}
+
+	private synchronized AbstractIndexPage get(int pageId) {
+		PageRef ref = pages.get(pageId);
+		return ref == null ? null : ref.get();
+	}
+
+	/**
+	 * @param pageId A page ID
+	 * @return The page with the given ID if it has been loaded by the previous snapshot,
+	 * otherwise {@code null}
+	 */
+	AbstractIndexPage getPreviousPage(int pageId) {
+		IndexPageRegistry prev;
+		synchronized (this) {
+			prev = predecessor;
+		}
+		return prev == null ? null : prev.get(pageId);
+	}
+
+	private void purge() {
+		PageRef ref;
+		while ((ref = (PageRef) queue.poll()) != null) {
+			if (pages.get(ref.pageId) == ref) {
+				pages.remove(ref.pageId);
+			}
+		}
+	}
+
+	private static final class PageRef extends WeakReference<AbstractIndexPage> {
+		private final int pageId;
+
+		PageRef(int pageId, AbstractIndexPage page, ReferenceQueue<AbstractIndexPage> queue) {
+			super(page, queue);
+			this.pageId = pageId;
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.internal.server.index;
+
+import java.util.Arrays;
+
+import org.zoodb.internal.server.index.LongLongIndex.LLEntryIterator;
+
+/**
+ * Statistics of an attribute index: the number of entries, an estimate of the number of 
+ * distinct keys and an equi-depth histogram of the keys.
+ * 
+ * The statistics are not stored in the database. They are built by scanning the index when 
+ * they are requested for the first time. Afterwards they are updated incrementally with 
+ * every insert or removal. After many updates the histogram bounds become inaccurate, in that 
+ * case the statistics are invalidated and rebuilt when they are requested the next time.
+ * 
+ * All estimates work on the sortable long keys of the index, see {@link BitTools}.
+ */
+public class IndexStatistics {
+
+	/** Maximum number of buckets of the histogram. */
+	public static final int MAX_BUCKETS = 32;
+	/** Minimum number of updates before the statistics are rebuilt. */
+	private static final int MIN_UPDATES_FOR_REBUILD = 100;
+	
+	private boolean isInitialized = false;
+	private boolean isUnique;
+	private long nEntries;
+	private long nEntriesAtBuild;
+	private long nUpdates;
+	private long minKey;
+	/** Inclusive upper bound of each bucket. */
+	private long[] bounds;
+	private long[] counts;
+	private long[] countsAtBuild;
+	private long[] distinctAtBuild;
+	
+	public IndexStatistics() {
+		//empty
+	}
+	
+	private IndexStatistics(IndexStatistics s) {
+		isInitialized = s.isInitialized;
+		isUnique = s.isUnique;
+		nEntries = s.nEntries;
+		nEntriesAtBuild = s.nEntriesAtBuild;
+		nUpdates = s.nUpdates;
+		minKey = s.minKey;
+		bounds = s.bounds.clone();
+		counts = s.counts.clone();
+		countsAtBuild = s.countsAtBuild.clone();
+		distinctAtBuild = s.distinctAtBuild.clone();
+	}
+	
+	/**
+	 * @return A copy of these statistics.
+	 */
+	public synchronized IndexStatistics copy() {
+		return new IndexStatistics(this);
+	}
+	
+	public synchronized boolean isInitialized() {
+		return isInitialized;
+	}
+	
+	/**
+	 * Invalidate the statistics, for example after the index has been cleared.
+	 */
+	public synchronized void invalidate() {
+		isInitialized = false;
+	}
+	
+	/**
+	 * Build the statistics by scanning the whole index.
+	 * @param index The index
+	 */
+	public synchronized void build(LongLongIndex index) {
+		isUnique = index instanceof LongLongIndex.LongLongUIndex;
+		
+		//pass 1: count entries and distinct keys
+		long n = 0;
+		long nDistinct = 0;
+		long prevKey = 0;
+		LLEntryIterator it = index.iterator();
+		while (it.hasNext()) {
+			long key = it.next().getKey();
+			if (n == 0 || key != prevKey) {
+				nDistinct++;
+			}
+			prevKey = key;
+			n++;
+		}
+		it.close();
+
+		//pass 2: equi-depth histogram, equal keys are always in the same bucket
+		int nBuckets = (int) Math.max(1, Math.min(MAX_BUCKETS, nDistinct));
+		long depth = (n + nBuckets - 1) / nBuckets;
+		bounds = new long[nBuckets];
+		counts = new long[nBuckets];
+		distinctAtBuild = new long[nBuckets];
+		minKey = Long.MIN_VALUE;
+		int b = 0;
+		it = index.iterator();
+		boolean isFirst = true;
+		while (it.hasNext()) {
+			long key = it.next().getKey();
+			if (isFirst) {
+				minKey = key;
+				isFirst = false;
+			} else if (key != prevKey) {
+				if (counts[b] >= depth && b < nBuckets - 1) {
+					bounds[b] = prevKey;
+					b++;
+				}
+				distinctAtBuild[b]++;
+			}
+			if (distinctAtBuild[b] == 0) {
+				distinctAtBuild[b] = 1;
+			}
+			counts[b]++;
+			prevKey = key;
+		}
+		it.close();
+		bounds[b] = n == 0 ? Long.MAX_VALUE : prevKey;
+		nBuckets = b + 1;
+		bounds = Arrays.copyOf(bounds, nBuckets);
+		counts = Arrays.copyOf(counts, nBuckets);
+		distinctAtBuild = Arrays.copyOf(distinctAtBuild, nBuckets);
+		countsAtBuild = counts.clone();
+		
+		nEntries = n;
+		nEntriesAtBuild = n;
+		nUpdates = 0;
+		isInitialized = true;
+	}
+	
+	/**
+	 * Report an insert into the index. 
+	 * @param key The key
+	 */
+	public synchronized void insert(long key) {
+		if (!isInitialized) {
+			return;
+		}
+		if (key < minKey) {
+			minKey = key;
+		}
+		int b = bucketOf(key);
+		if (key > bounds[b]) {
+			bounds[b] = key;
+		}
+		counts[b]++;
+		nEntries++;
+		checkUpdates();
+	}
+	
+	/**
+	 * Report a removal from the index. 
+	 * @param key The key
+	 */
+	public synchronized void remove(long key) {
+		if (!isInitialized) {
+			return;
+		}
+		int b = bucketOf(key);
+		if (counts[b] > 0) {
+			counts[b]--;
+			nEntries--;
+		}
+		checkUpdates();
+	}
+	
+	private void checkUpdates() {
+		nUpdates++;
+		if (nUpdates > MIN_UPDATES_FOR_REBUILD + nEntriesAtBuild / 2) {
+			//The histogram does not represent the index anymore
+			isInitialized = false;
+		}
+	}
+	
+	private int bucketOf(long key) {
+		int pos = Arrays.binarySearch(bounds, key);
+		if (pos < 0) {
+			pos = -(pos + 1);
+		}
+		return pos < bounds.length ? pos : bounds.length - 1;
+	}
+	
+	/**
+	 * @return The number of entries in the index.
+	 */
+	public long getEntryCount() {
+		return nEntries;
+	}
+	
+	/**
+	 * @return The number of inserts and removals since the statistics were built.
+	 */
+	public long getUpdateCount() {
+		return nUpdates;
+	}
+	
+	/**
+	 * @return An estimate of the number of distinct keys in the index.
+	 */
+	public long getDistinctKeyCount() {
+		long n = 0;
+		for (int b = 0; b < counts.length; b++) {
+			n += distinct(b);
+		}
+		return n;
+	}
+	
+	private double distinct(int b) {
+		if (isUnique || counts[b] == 0) {
+			return counts[b];
+		}
+		//assume that the number of distinct keys grows with the number of entries
+		double d = distinctAtBuild[b] * (double)counts[b] / Math.max(1, countsAtBuild[b]); 
+		return Math.max(1, Math.min(d, counts[b]));
+	}
+	
+	/**
+	 * Estimates the number of entries in a range of keys. 
+	 * @param min Minimum key, inclusive
+	 * @param max Maximum key, inclusive
+	 * @return The estimated number of index entries in the range.
+	 */
+	public long estimateRange(long min, long max) {
+		if (min > max || nEntries <= 0) {
+			return 0;
+		}
+		double sum = 0;
+		long lo = minKey;
+		for (int b = 0; b < bounds.length; b++) {
+			long hi = bounds[b];
+			if (hi >= min && lo <= max && counts[b] > 0) {
+				if (min == max) {
+					sum += counts[b] / distinct(b);
+				} else {
+					double overlap = (double)Math.min(hi, max) - Math.max(lo, min) + 1;
+					double width = (double)hi - lo + 1;
+					sum += counts[b] * Math.min(1, overlap / width);
+				}
+			}
+			if (hi == Long.MAX_VALUE || hi >= max) {
+				break;
+			}
+			lo = hi + 1;
+		}
+		return Math.min(nEntries, (long) Math.ceil(sum));
+	}
+	
+	@Override
+	public String toString() {
+		return "entries=" + nEntries + " distinct=" + getDistinctKeyCount() + 
+				" buckets=" + bounds.length;
+	}
+}
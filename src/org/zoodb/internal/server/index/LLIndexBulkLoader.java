@@ -0,0 +1,521 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.internal.server.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import org.zoodb.internal.util.DBLogger;
+import org.zoodb.internal.util.Util;
+
+/**
+ * Builds a B+-tree index bottom-up from unsorted key-value pairs.
+ *
+ * The pairs are collected in memory. When the buffer is full, it is sorted and written to a
+ * temporary file (a sorted run). {@link #finish()} merges the runs and writes the leaves and
+ * inner pages sequentially. The pages are filled completely, except that the entries are
+ * distributed evenly over the pages of each level, so there are no almost empty pages at the
+ * end of a level. Compressed leaves are filled until the compressed entries use the page, in 
+ * this case the inner pages are built after all leaves have been written.
+ * Only the root page is kept in memory, it is written with the next
+ * {@link LongLongIndex#write()}.
+ *
+ * This is much faster than inserting the pairs one by one, because every page is written
+ * exactly once and no pages are split.
+ *
+ * Usage: {@code add()} all pairs, then call {@code finish()} and {@code close()}. Pairs that
+ * have been sorted elsewhere can be added with {@code addSortedRun()}. The temporary files 
+ * are deleted by {@code finish()} and, if it is not called or fails, by {@code close()}. 
+ */
+public class LLIndexBulkLoader {
+
+	/** Number of key-value pairs that are sorted in memory (16MB). */
+	public static final int DEFAULT_RUN_SIZE = 1 << 20;
+	/** Initial size of the buffer, it grows up to the run size. */
+	private static final int INITIAL_BUFFER_SIZE = 1 << 10;
+
+	private final AbstractPagedIndex ind;
+	/** key-value pairs, keys at even positions, values at odd positions */
+	private long[] buffer;
+	private int bufferN = 0;
+	/** Maximum size of the buffer, twice the run size */
+	private final int maxBufferN;
+	private long nTotal = 0;
+	private final ArrayList<File> runs = new ArrayList<File>();
+	/** sorted runs that are kept in memory, see {@link #addSortedRun(long[])} */
+	private final ArrayList<long[]> memRuns = new ArrayList<long[]>();
+	private int memRunsN = 0;
+
+	//state of the tree construction
+	private Level[] levels;
+	private long prevKey;
+	private long prevValue;
+	private boolean hasPrev = false;
+	/** Compressed size of the current leaf */
+	private int leafSize;
+	/** Compressed leaves: page ID, min key and min value of the written leaves */
+	private long[] leafRefs;
+	private int leafRefsN;
+
+	/**
+	 * A level of the tree under construction. The number of entries and pages are known in
+	 * advance, so the entries can be distributed evenly.
+	 */
+	private static final class Level {
+		private final long nEntries;
+		private final long nPages;
+		private long pageCount = 0;
+		private LLIndexPage page;
+		/** Number of entries (leaves) or sub-pages (inner pages) in the current page */
+		private int n;
+		private long minKey;
+		private long minValue;
+
+		Level(long nEntries, int maxPerPage) {
+			this.nEntries = nEntries;
+			this.nPages = (nEntries + maxPerPage - 1) / maxPerPage;
+		}
+
+		/** @return Target number of entries in the current page */
+		long getPageN() {
+			return nEntries / nPages + (pageCount < nEntries % nPages ? 1 : 0);
+		}
+	}
+
+	/**
+	 * @param index An empty index, see {@link #isSupported(LongLongIndex)}
+	 */
+	public LLIndexBulkLoader(LongLongIndex index) {
+		this(index, DEFAULT_RUN_SIZE);
+	}
+
+	/**
+	 * @param index An empty index, see {@link #isSupported(LongLongIndex)}
+	 * @param runSize The number of key-value pairs that are sorted in memory
+	 */
+	public LLIndexBulkLoader(LongLongIndex index, int runSize) {
+		if (!isSupported(index)) {
+			throw new IllegalArgumentException("Bulk loading is not supported for: " +
+					index.getClass().getName());
+		}
+		ind = (AbstractPagedIndex) index;
+		if (ind.getRoot().getNKeys() >= 0) {
+			throw new IllegalStateException("Bulk loading requires an empty index.");
+		}
+		maxBufferN = 2 * runSize;
+		buffer = new long[Math.min(maxBufferN, 2 * INITIAL_BUFFER_SIZE)];
+	}
+
+	/**
+	 * @param index An index
+	 * @return Whether the index can be bulk loaded. Only B+-tree indices can be bulk loaded.
+	 */
+	public static boolean isSupported(LongLongIndex index) {
+		return index instanceof PagedLongLong || index instanceof PagedUniqueLongLong;
+	}
+
+	/**
+	 * Adds a key-value pair. The pairs can be added in any order.
+	 * @param key The key
+	 * @param value The value
+	 */
+	public void add(long key, long value) {
+		if (bufferN == buffer.length) {
+			if (buffer.length < maxBufferN) {
+				buffer = Arrays.copyOf(buffer, (int) Math.min(maxBufferN, 2L * buffer.length));
+			} else {
+				writeRun();
+			}
+		}
+		buffer[bufferN++] = key;
+		buffer[bufferN++] = value;
+		nTotal++;
+	}
+
+	/**
+	 * Adds key-value pairs that are already sorted by key and value, for example pairs that
+	 * were sorted by another thread. The loader takes ownership of the array.
+	 * @param run Array with keys at even and values at odd positions
+	 */
+	public void addSortedRun(long[] run) {
+		nTotal += run.length >> 1;
+		if (memRunsN + run.length <= maxBufferN) {
+			memRuns.add(run);
+			memRunsN += run.length;
+		} else {
+			writeRun(run, run.length);
+		}
+	}
+
+	private void writeRun() {
+		sort(buffer, 0, bufferN >> 1);
+		writeRun(buffer, bufferN);
+		bufferN = 0;
+	}
+
+	private void writeRun(long[] run, int n) {
+		try {
+			File f = File.createTempFile("zoodb-index-", ".run");
+			//add it before writing, so that close() deletes it if writing fails
+			runs.add(f);
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(f), 1 << 16));
+			try {
+				for (int i = 0; i < n; i++) {
+					out.writeLong(run[i]);
+				}
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error writing sorted run of index", e);
+		}
+	}
+
+	/**
+	 * Writes the index. The root page remains dirty until the index is written.
+	 * If the index is unique and a key occurs more than once, a user exception is thrown
+	 * and the index is left in an undefined state.
+	 */
+	public void finish() {
+		if (nTotal == 0) {
+			return;
+		}
+		initLevels();
+		sort(buffer, 0, bufferN >> 1);
+		if (runs.isEmpty() && memRuns.isEmpty()) {
+			for (int i = 0; i < bufferN; i += 2) {
+				append(buffer[i], buffer[i + 1]);
+			}
+		} else {
+			try {
+				merge();
+			} finally {
+				deleteRuns();
+			}
+		}
+		if (ind.isCompressed()) {
+			finishCompressedLeaves();
+		}
+		//the root page is the only page of the top level
+		ind.setBulkLoadedRoot(levels[levels.length - 1].page);
+	}
+
+	private void initLevels() {
+		Level leaves = new Level(nTotal, ind.maxLeafN);
+		if (ind.isCompressed()) {
+			//the number of leaves is known only after all entries have been appended
+			levels = new Level[]{leaves};
+			leafRefs = new long[3 * 1024];
+			leafRefsN = 0;
+		} else {
+			levels = createLevels(leaves, leaves.nPages);
+		}
+	}
+
+	private Level[] createLevels(Level leaves, long nLeaves) {
+		ArrayList<Level> list = new ArrayList<Level>();
+		list.add(leaves);
+		Level level = new Level(nLeaves, ind.maxInnerN + 1);
+		list.add(level);
+		while (level.nPages > 1) {
+			level = new Level(level.nPages, ind.maxInnerN + 1);
+			list.add(level);
+		}
+		return list.toArray(new Level[list.size()]);
+	}
+
+	private void finishCompressedLeaves() {
+		writeLeaf();
+		Level leaves = levels[0];
+		levels = createLevels(leaves, leaves.pageCount);
+		for (int i = 0; i < leafRefsN; i += 3) {
+			appendSubPage(1, (int) leafRefs[i], leafRefs[i + 1], leafRefs[i + 2]);
+		}
+		leafRefs = null;
+	}
+
+	private void merge() {
+		PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(
+				runs.size() + memRuns.size() + 1,
+				new Comparator<RunReader>() {
+			@Override
+			public int compare(RunReader o1, RunReader o2) {
+				return compare(o1.key, o1.value, o2.key, o2.value);
+			}
+			private int compare(long k1, long v1, long k2, long v2) {
+				int c = Long.compare(k1, k2);
+				return c != 0 ? c : Long.compare(v1, v2);
+			}
+		});
+		ArrayList<RunReader> readers = new ArrayList<RunReader>();
+		try {
+			for (File f: runs) {
+				RunReader r = new RunReader(f);
+				readers.add(r);
+				if (r.next()) {
+					queue.add(r);
+				}
+			}
+			for (long[] run: memRuns) {
+				RunReader r = new RunReader(run, run.length);
+				if (r.next()) {
+					queue.add(r);
+				}
+			}
+			//the remaining buffer is the last run
+			RunReader r = new RunReader(buffer, bufferN);
+			if (r.next()) {
+				queue.add(r);
+			}
+			while (!queue.isEmpty()) {
+				r = queue.poll();
+				append(r.key, r.value);
+				if (r.next()) {
+					queue.add(r);
+				}
+			}
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error reading sorted run of index", e);
+		} finally {
+			for (RunReader r: readers) {
+				r.close();
+			}
+		}
+	}
+
+	private void append(long key, long value) {
+		if (hasPrev && ind.isUnique() && key == prevKey) {
+			throw DBLogger.newUser("Duplicate entry in unique index: " +
+					Util.oidToString(value) + "  v=" + key);
+		}
+
+		Level leaves = levels[0];
+		if (leaves.page != null && ind.isCompressed()) {
+			int entrySize = LLIndexPage.varLongSize(key - prevKey) + 
+					LLIndexPage.varLongSize(value - prevValue);
+			if (leaves.page.canBulkAppend(leafSize, entrySize)) {
+				leafSize += entrySize;
+			} else {
+				writeLeaf();
+			}
+		}
+		hasPrev = true;
+		prevKey = key;
+		prevValue = value;
+
+		if (leaves.page == null) {
+			leaves.page = (LLIndexPage) ind.createPage(null, true);
+			leaves.minKey = key;
+			leaves.minValue = value;
+			leafSize = LLIndexPage.varLongSize(key) + LLIndexPage.varLongSize(value);
+		}
+		leaves.page.bulkAppend(key, value);
+		leaves.n++;
+		if (!ind.isCompressed() && leaves.n == leaves.getPageN()) {
+			writeLeaf();
+		}
+	}
+
+	private void writeLeaf() {
+		Level leaves = levels[0];
+		int pageId = leaves.page.write();
+		leaves.page = null;
+		leaves.n = 0;
+		leaves.pageCount++;
+		if (ind.isCompressed()) {
+			if (leafRefsN == leafRefs.length) {
+				leafRefs = Arrays.copyOf(leafRefs, leafRefs.length * 2);
+			}
+			leafRefs[leafRefsN++] = pageId;
+			leafRefs[leafRefsN++] = leaves.minKey;
+			leafRefs[leafRefsN++] = leaves.minValue;
+		} else {
+			appendSubPage(1, pageId, leaves.minKey, leaves.minValue);
+		}
+	}
+
+	private void appendSubPage(int iLevel, int pageId, long minKey, long minValue) {
+		Level level = levels[iLevel];
+		if (level.page == null) {
+			level.page = (LLIndexPage) ind.createPage(null, false);
+			level.minKey = minKey;
+			level.minValue = minValue;
+		}
+		level.page.bulkAppendSubPage(pageId, minKey, minValue);
+		level.n++;
+		if (level.n == level.getPageN() && iLevel < levels.length - 1) {
+			int newPageId = level.page.write();
+			level.page = null;
+			level.n = 0;
+			level.pageCount++;
+			appendSubPage(iLevel + 1, newPageId, level.minKey, level.minValue);
+		}
+	}
+
+	/**
+	 * Deletes temporary files.
+	 */
+	public void close() {
+		deleteRuns();
+		memRuns.clear();
+		memRunsN = 0;
+	}
+	
+	private void deleteRuns() {
+		for (File f: runs) {
+			if (!f.delete() && f.exists()) {
+				DBLogger.debugPrintln(1, "Could not delete temporary file: " + f);
+			}
+		}
+		runs.clear();
+	}
+
+	/**
+	 * Sorts key-value pairs by key and value.
+	 * @param a Array with keys at even and values at odd positions
+	 * @param from First pair (inclusive)
+	 * @param to Last pair (exclusive)
+	 */
+	public static void sort(long[] a, int from, int to) {
+		while (to - from > 16) {
+			//median of three
+			int mid = (from + to) >>> 1;
+			if (compare(a, mid, from) < 0) {
+				swap(a, mid, from);
+			}
+			if (compare(a, to - 1, mid) < 0) {
+				swap(a, to - 1, mid);
+				if (compare(a, mid, from) < 0) {
+					swap(a, mid, from);
+				}
+			}
+			long pk = a[2 * mid];
+			long pv = a[2 * mid + 1];
+			int i = from;
+			int j = to - 1;
+			while (i <= j) {
+				while (compare(a, i, pk, pv) < 0) {
+					i++;
+				}
+				while (compare(a, j, pk, pv) > 0) {
+					j--;
+				}
+				if (i <= j) {
+					swap(a, i, j);
+					i++;
+					j--;
+				}
+			}
+			//recurse into the smaller part
+			if (j - from < to - i) {
+				sort(a, from, j + 1);
+				from = i;
+			} else {
+				sort(a, i, to);
+				to = j + 1;
+			}
+		}
+		//insertion sort
+		for (int i = from + 1; i < to; i++) {
+			for (int j = i; j > from && compare(a, j, j - 1) < 0; j--) {
+				swap(a, j, j - 1);
+			}
+		}
+	}
+
+	private static int compare(long[] a, int i, int j) {
+		return compare(a, i, a[2 * j], a[2 * j + 1]);
+	}
+
+	private static int compare(long[] a, int i, long key, long value) {
+		int c = Long.compare(a[2 * i], key);
+		return c != 0 ? c : Long.compare(a[2 * i + 1], value);
+	}
+
+	private static void swap(long[] a, int i, int j) {
+		long k = a[2 * i];
+		long v = a[2 * i + 1];
+		a[2 * i] = a[2 * j];
+		a[2 * i + 1] = a[2 * j + 1];
+		a[2 * j] = k;
+		a[2 * j + 1] = v;
+	}
+
+	/**
+	 * Reader for a sorted run, either from a file or from memory.
+	 */
+	private static final class RunReader {
+		private final DataInputStream in;
+		private final long[] array;
+		private long remaining;
+		private int pos = 0;
+		private long key;
+		private long value;
+
+		RunReader(File f) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16));
+			array = null;
+			remaining = f.length() / 16;
+		}
+
+		RunReader(long[] array, int n) {
+			in = null;
+			this.array = array;
+			remaining = n >> 1;
+		}
+
+		boolean next() throws IOException {
+			if (remaining == 0) {
+				return false;
+			}
+			remaining--;
+			if (in != null) {
+				key = in.readLong();
+				value = in.readLong();
+			} else {
+				key = array[pos++];
+				value = array[pos++];
+			}
+			return true;
+		}
+
+		void close() {
+			try {
+				if (in != null) {
+					in.close();
+				}
+			} catch (IOException e) {
+				throw DBLogger.newFatal("Error closing sorted run of index", e);
+			}
+		}
+	}
+}
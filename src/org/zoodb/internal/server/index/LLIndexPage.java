@@ -27,11 +27,23 @@ import org.zoodb.internal.server.index.LongLongIndex.LLEntryIterator;
 import org.zoodb.internal.util.DBLogger;
 
 class LLIndexPage extends AbstractIndexPage {
+	/** Flag in the number of entries of a leaf page, indicates compressed entries */
+	private static final int COMPRESSED = 0x8000;
+	/** Compressed format: keys and values as zigzag varint deltas to the previous entry */
+	private static final byte FORMAT_DELTA = 1;
+	/** 
+	 * Space that is kept free on compressed leaves. When a leaf is split, the first entry
+	 * of the new leaf is not encoded as delta anymore and may require 18 additional bytes. 
+	 */
+	private static final int SPLIT_RESERVE = 20;
+	
 	private LLIndexPage parent;
 	private final long[] keys;
 	private final long[] values;
 	/** number of keys. There are nEntries+1 subPages in any leaf page. */
 	private short nEntries;
+	/** Compressed size of the entries of a leaf, or -1 if it has not been computed yet. */
+	private int encodedSize = -1;
 	
 	
 	public LLIndexPage(AbstractPagedIndex ind, LLIndexPage parent, boolean isLeaf) {
@@ -56,6 +68,7 @@ class LLIndexPage extends AbstractIndexPage {
 		super(p);
 		keys = p.keys.clone();
 		nEntries = p.nEntries;
+		encodedSize = p.encodedSize;
 		parent = p.parent;
 		if (isLeaf) {
 			values = p.values.clone();
@@ -68,20 +81,235 @@ class LLIndexPage extends AbstractIndexPage {
 		}
 	}
 	
+	/**
+	 * Constructor for reusing an unmodified page of a previous snapshot. Snapshot pages are 
+	 * never modified, so they can share their keys and values.
+	 */
+	private LLIndexPage(AbstractPagedIndex ind, LLIndexPage parent, LLIndexPage p) {
+		super(ind, p);
+		this.parent = parent;
+		keys = p.keys;
+		values = p.values;
+		nEntries = p.nEntries;
+		encodedSize = p.encodedSize;
+	}
+
 	@Override
 	void readData() {
-		nEntries = ind.in.readShort();
-		readArrayFromRaf(ind.keySize, keys, nEntries);
-		readArrayFromRaf(ind.valSize, values, nEntries);
+		short n = ind.in.readShort();
+		if ((n & COMPRESSED) == 0) {
+			nEntries = n;
+			encodedSize = -1;
+			readArrayFromRaf(ind.keySize, keys, nEntries);
+			readArrayFromRaf(ind.valSize, values, nEntries);
+			return;
+		}
+		nEntries = (short) (n & ~COMPRESSED);
+		byte format = ind.in.readByte();
+		if (format != FORMAT_DELTA) {
+			throw DBLogger.newFatal("Unsupported format of index page: " + format);
+		}
+		int len = ind.in.readInt();
+		encodedSize = len;
+		byte[] buf = ind.leafBuffer;
+		ind.in.noCheckRead(buf, len);
+		int pos = 0;
+		for (int i = 0; i < nEntries; i++) {
+			pos = readVarLong(buf, pos, keys, i);
+			pos = readVarLong(buf, pos, values, i);
+		}
+		for (int i = 1; i < nEntries; i++) {
+			keys[i] += keys[i-1];
+			values[i] += values[i-1];
+		}
 	}
 	
 	@Override
 	void writeData() {
+		if (ind.isCompressed()) {
+			int len = encodedSize();
+			if (len <= ind.maxLeafBytes) {
+				byte[] buf = ind.leafBuffer;
+				int pos = 0;
+				long prevKey = 0;
+				long prevValue = 0;
+				for (int i = 0; i < nEntries; i++) {
+					pos = writeVarLong(buf, pos, keys[i] - prevKey);
+					pos = writeVarLong(buf, pos, values[i] - prevValue);
+					prevKey = keys[i];
+					prevValue = values[i];
+				}
+				ind.out.writeShort((short) (nEntries | COMPRESSED));
+				ind.out.writeByte(FORMAT_DELTA);
+				ind.out.writeInt(len);
+				ind.out.noCheckWrite(buf, len);
+				return;
+			}
+			//Entries that do not compress well are stored uncompressed
+			if (nEntries > ind.maxFixedLeafN) {
+				throw DBLogger.newFatalInternal("Leaf page overflow: " + nEntries);
+			}
+		}
 		ind.out.writeShort(nEntries);
 		writeArrayToRaf(ind.keySize, keys, nEntries);
 		writeArrayToRaf(ind.valSize, values, nEntries);
 	}
 
+	/**
+	 * @return The number of bytes of the compressed entries [from, to). The first entry is
+	 * encoded as delta to the given key and value.
+	 */
+	private int compressedSize(int from, int to, long prevKey, long prevValue) {
+		int size = 0;
+		for (int i = from; i < to; i++) {
+			size += varLongSize(keys[i] - prevKey) + varLongSize(values[i] - prevValue);
+			prevKey = keys[i];
+			prevValue = values[i];
+		}
+		return size;
+	}
+
+	/**
+	 * @return The compressed size of the entries of this leaf. The size is computed once
+	 * and then updated by inserts, updates and removals.
+	 */
+	private int encodedSize() {
+		if (encodedSize < 0) {
+			encodedSize = compressedSize(0, nEntries, 0, 0);
+		}
+		return encodedSize;
+	}
+
+	/**
+	 * @return The compressed size of the entry at the given position.
+	 */
+	private int entrySize(int pos) {
+		if (pos == 0) {
+			return varLongSize(keys[0]) + varLongSize(values[0]);
+		}
+		return varLongSize(keys[pos] - keys[pos-1]) + varLongSize(values[pos] - values[pos-1]);
+	}
+
+	/**
+	 * @return The compressed size of the leaf after inserting the entry at the given position.
+	 */
+	private int sizeAfterInsert(int pos, long key, long value) {
+		long prevKey = pos > 0 ? keys[pos-1] : 0;
+		long prevValue = pos > 0 ? values[pos-1] : 0;
+		int size = encodedSize() + varLongSize(key - prevKey) + varLongSize(value - prevValue);
+		if (pos < nEntries) {
+			size += varLongSize(keys[pos] - key) + varLongSize(values[pos] - value) 
+					- entrySize(pos);
+		}
+		return size;
+	}
+
+	/**
+	 * @return The compressed size of the leaf after replacing the value at the given position.
+	 */
+	private int sizeAfterReplace(int pos, long value) {
+		long prevValue = pos > 0 ? values[pos-1] : 0;
+		int size = encodedSize() 
+				- varLongSize(values[pos] - prevValue) + varLongSize(value - prevValue);
+		if (pos + 1 < nEntries) {
+			size += varLongSize(values[pos+1] - value) - varLongSize(values[pos+1] - values[pos]);
+		}
+		return size;
+	}
+
+	/**
+	 * @return The compressed size of the leaf after removing the entry at the given position.
+	 */
+	private int sizeAfterRemove(int pos) {
+		int size = encodedSize() - entrySize(pos);
+		if (pos + 1 < nEntries) {
+			size -= entrySize(pos+1);
+			long prevKey = pos > 0 ? keys[pos-1] : 0;
+			long prevValue = pos > 0 ? values[pos-1] : 0;
+			size += varLongSize(keys[pos+1] - prevKey) + varLongSize(values[pos+1] - prevValue);
+		}
+		return size;
+	}
+
+	/**
+	 * @return Whether the compressed leaf can take another entry at the given position.
+	 */
+	private boolean canInsertCompressed(int pos, long key, long value) {
+		return sizeAfterInsert(pos, key, value) <= ind.maxLeafBytes - SPLIT_RESERVE;
+	}
+
+	/**
+	 * @return Whether the compressed leaf still fits if the value at the given position is
+	 * replaced.
+	 */
+	private boolean canReplaceCompressed(int pos, long value) {
+		return sizeAfterReplace(pos, value) <= ind.maxLeafBytes - SPLIT_RESERVE;
+	}
+
+	/**
+	 * @return Whether the entries [from1, to1) of p1 and the entries [from2, to2) of p2 fit
+	 * on a single leaf page. The entries of p1 must be smaller than the entries of p2.
+	 */
+	private static boolean fitsOnLeaf(LLIndexPage p1, int from1, int to1, 
+			LLIndexPage p2, int from2, int to2) {
+		AbstractPagedIndex ind = p1.ind;
+		if (to1 - from1 + to2 - from2 <= ind.maxFixedLeafN) {
+			return true;
+		}
+		int size;
+		if (to1 > from1) {
+			size = p1.compressedSize(from1, to1, 0, 0) 
+					+ p2.compressedSize(from2, to2, p1.keys[to1-1], p1.values[to1-1]);
+		} else {
+			size = p2.compressedSize(from2, to2, 0, 0);
+		}
+		return size <= ind.maxLeafBytes - SPLIT_RESERVE;
+	}
+
+	/**
+	 * Used during bulk loading. 
+	 * @param size The compressed size of the page
+	 * @param delta The compressed size of the entry
+	 * @return Whether the entry can be appended to the page.
+	 */
+	final boolean canBulkAppend(int size, int delta) {
+		if (nEntries >= ind.maxLeafN) {
+			return false;
+		}
+		return nEntries < ind.maxFixedLeafN || size + delta <= ind.maxLeafBytes - SPLIT_RESERVE;
+	}
+
+	/**
+	 * @return The number of bytes of the zigzag varint encoding of the given delta.
+	 */
+	static int varLongSize(long delta) {
+		long v = (delta << 1) ^ (delta >> 63);
+		return (64 - Long.numberOfLeadingZeros(v | 1) + 6) / 7;
+	}
+
+	private static int writeVarLong(byte[] buf, int pos, long delta) {
+		long v = (delta << 1) ^ (delta >> 63);
+		while ((v & ~0x7FL) != 0) {
+			buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		buf[pos++] = (byte) v;
+		return pos;
+	}
+
+	private static int readVarLong(byte[] buf, int pos, long[] array, int i) {
+		long v = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buf[pos++];
+			v |= (long)(b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		array[i] = (v >>> 1) ^ -(v & 1);
+		return pos;
+	}
+
 	@Override
 	void writeKeys() {
 		ind.out.writeShort(nEntries);
@@ -105,7 +333,7 @@ class LLIndexPage extends AbstractIndexPage {
 			return;
 		}
 		switch (bitWidth) {
-		case 8: ind.out.noCheckWrite(array); break;
+		case 8: ind.out.noCheckWrite(array, nEntries); break;
 //		case 8:
 //			//writing ints using a normal loop
 //			for (int i = 0; i < nEntries; i++) {
@@ -132,7 +360,7 @@ class LLIndexPage extends AbstractIndexPage {
 			return;
 		}
 		switch (bitWidth) {
-		case 8: ind.in.noCheckRead(array); break;
+		case 8: ind.in.noCheckRead(array, nEntries); break;
 //		case 8:
 //			//reading ints using a normal loop
 //			for (int i = 0; i < nEntries; i++) {
@@ -293,17 +521,34 @@ class LLIndexPage extends AbstractIndexPage {
         //key found? -> pos >=0
         if (pos >= 0) {
         	//check if values changes
-            if (value != values[pos]) {
-                markPageDirtyAndClone();
+            if (value == values[pos]) {
+            	return;
+            }
+            markPageDirtyAndClone();
+            if (nEntries <= ind.maxFixedLeafN || canReplaceCompressed(pos, value)) {
+                if (encodedSize >= 0) {
+                    encodedSize = sizeAfterReplace(pos, value);
+                }
                 values[pos] = value;
+                return;
             }
-            return;
-        } 
+            //The new value does not compress as well as the old one and the page would
+            //overflow. Remove the entry and insert it again, this splits the page.
+            encodedSize = sizeAfterRemove(pos);
+            System.arraycopy(keys, pos+1, keys, pos, nEntries-pos-1);
+            System.arraycopy(values, pos+1, values, pos, nEntries-pos-1);
+            nEntries--;
+        } else {
+        	pos = -(pos+1);
+        }
 
-        if (nEntries < ind.maxLeafN) {
+        if (nEntries < ind.maxLeafN && 
+        		(nEntries < ind.maxFixedLeafN || canInsertCompressed(pos, key, value))) {
             //okay so we add it locally
-            pos = -(pos+1);
             markPageDirtyAndClone();
+            if (encodedSize >= 0) {
+                encodedSize = sizeAfterInsert(pos, key, value);
+            }
             if (pos < nEntries) {
                 System.arraycopy(keys, pos, keys, pos+1, nEntries-pos);
                 System.arraycopy(values, pos, values, pos+1, nEntries-pos);
@@ -317,10 +562,12 @@ class LLIndexPage extends AbstractIndexPage {
 			LLIndexPage newP;
 			boolean isNew = false;
 			boolean isPrev = false;
-			//use ind.maxLeafN -1 to avoid pretty much pointless copying (and possible endless 
-			//loops, see iterator tests)
+			//use nEntries-1 to avoid pretty much pointless copying (and possible endless 
+			//loops, see iterator tests). Compressed pages may be full with fewer entries than
+			//maxLeafN, so we compare with the local nEntries.
 			LLIndexPage next = (LLIndexPage) parent.getNextLeafPage(this);
-			if (next != null && next.nEntries < ind.maxLeafN-1) {
+			if (next != null && next.nEntries < nEntries-1 && fitsOnLeaf(
+					this, (nEntries + next.nEntries) >> 1, nEntries, next, 0, next.nEntries)) {
 				//merge
 				newP = next;
 				newP.markPageDirtyAndClone();
@@ -328,7 +575,8 @@ class LLIndexPage extends AbstractIndexPage {
 			} else {
 				//Merging with prev is not make a big difference, maybe we should remove it...
 				LLIndexPage prev = (LLIndexPage) parent.getPrevLeafPage(this);
-				if (prev != null && prev.nEntries < ind.maxLeafN-1) {
+				if (prev != null && prev.nEntries < nEntries-1 && fitsOnLeaf(prev, 0, 
+						prev.nEntries, this, 0, nEntries - ((nEntries + prev.nEntries) >> 1))) {
 					//merge
 					newP = prev;
 					newP.markPageDirtyAndClone();
@@ -346,7 +594,7 @@ class LLIndexPage extends AbstractIndexPage {
 					//This is an optimization for indices that add increasing unique numbers 
 					//such as OIDs. For these, it increases the average fill-size.
 					//find split point such that pages can be completely full
-					int pos2 = binarySearch(0, nEntries, keys[0] + ind.maxLeafN, value);
+					int pos2 = binarySearch(0, nEntries, keys[0] + nEntries, value);
 					if (pos2 < 0) {
 						pos2 = -(pos2+1);
 					}
@@ -356,7 +604,7 @@ class LLIndexPage extends AbstractIndexPage {
 				} else {
 					//non-unique: we assume ascending keys.
 					//If they are not ascending, merging with subsequent page sorts it out.
-					nEntriesToKeep = (int) (ind.maxLeafN * 0.9);
+					nEntriesToKeep = (int) (nEntries * 0.9);
 				}
 			}
 			int nEntriesToCopy = nEntries - nEntriesToKeep;
@@ -381,6 +629,8 @@ class LLIndexPage extends AbstractIndexPage {
 			}
 			nEntries = (short) nEntriesToKeep;
 			newP.nEntries = (short) (nEntriesToCopy + newP.nEntries);
+			encodedSize = -1;
+			newP.encodedSize = -1;
 			//New page and min key
 			if (isNew || !isPrev) {
 				if (ind.isUnique()) {
@@ -678,6 +928,9 @@ class LLIndexPage extends AbstractIndexPage {
         // first remove the element
         markPageDirtyAndClone();
         long prevValue = values[i];
+        if (encodedSize >= 0) {
+        	encodedSize = sizeAfterRemove(i);
+        }
         System.arraycopy(keys, i+1, keys, i, nEntries-i-1);
         System.arraycopy(values, i+1, values, i, nEntries-i-1);
         nEntries--;
@@ -694,13 +947,15 @@ class LLIndexPage extends AbstractIndexPage {
          		//We merge only if they all fit on a single page. This means we may read
         		//the previous page unnecessarily, but we avoid writing it as long as 
         		//possible. TODO find a balance, and do no read prev page in all cases
-        		if (nEntries + prevPage.nEntries < ind.maxLeafN) {
+        		if (nEntries + prevPage.nEntries < ind.maxLeafN && 
+        				fitsOnLeaf(prevPage, 0, prevPage.nEntries, this, 0, nEntries)) {
         			//TODO for now this work only for leaves with the same root. We
         			//would need to update the min values in the inner nodes.
         			prevPage.markPageDirtyAndClone();
         			System.arraycopy(keys, 0, prevPage.keys, prevPage.nEntries, nEntries);
         			System.arraycopy(values, 0, prevPage.values, prevPage.nEntries, nEntries);
         			prevPage.nEntries += nEntries;
+        			prevPage.encodedSize = -1;
         			ind.statNLeaves--;
         			parent.removeLeafPage(this, keys[0], values[0]);
         		}
@@ -874,6 +1129,11 @@ class LLIndexPage extends AbstractIndexPage {
 		return new LLIndexPage(this);
 	}
 
+	@Override
+	AbstractIndexPage newSnapshotInstance(AbstractPagedIndex ind, AbstractIndexPage parent) {
+		return new LLIndexPage(ind, (LLIndexPage) parent, this);
+	}
+
 	/**
 	 * Special method to remove entries. When removing the entry, it checks whether other entries
 	 * in the given range exist. If none exist, the value is returned as free page to FSM.  
@@ -954,5 +1214,34 @@ class LLIndexPage extends AbstractIndexPage {
 	@Override
 	final void setNEntries(int n) {
 		nEntries = (short) n;
+		encodedSize = -1;
+	}
+
+	/**
+	 * Appends an entry to a leaf during bulk loading. Entries must be appended in order.
+	 */
+	final void bulkAppend(long key, long value) {
+		keys[nEntries] = key;
+		values[nEntries] = value;
+		nEntries++;
+		encodedSize = -1;
+	}
+
+	/**
+	 * Appends a sub-page to an inner page during bulk loading. Sub-pages must be appended in
+	 * order.
+	 * @param pageId The page ID of the sub-page
+	 * @param minKey The minimal key of the sub-page
+	 * @param minValue The value of the minimal key
+	 */
+	final void bulkAppendSubPage(int pageId, long minKey, long minValue) {
+		nEntries++;
+		subPageIds[nEntries] = pageId;
+		if (nEntries > 0) {
+			keys[nEntries - 1] = minKey;
+			if (values != null) {
+				values[nEntries - 1] = minValue;
+			}
+		}
 	}
 }
@@ -27,7 +27,8 @@ import org.zoodb.internal.DataDeSerializer;
 import org.zoodb.internal.client.AbstractCache;
 import org.zoodb.internal.server.DiskAccessOneFile;
 import org.zoodb.internal.server.ObjectReader;
-import org.zoodb.internal.server.index.LongLongIndex.LLEntryIterator;
+import org.zoodb.internal.server.index.LongLongIndex.LLEntry;
+import org.zoodb.internal.server.index.LongLongIndex.LongLongIterator;
 import org.zoodb.internal.util.CloseableIterator;
 
 /**
@@ -42,7 +43,7 @@ import org.zoodb.internal.util.CloseableIterator;
  */
 public class ObjectIterator implements CloseableIterator<ZooPC> {
 
-	private final LLEntryIterator iter;  
+	private final LongLongIterator<LLEntry> iter;  
 	private final DiskAccessOneFile file;
 	private final DataDeSerializer deSer;
 	private final boolean loadFromCache;
@@ -59,7 +60,7 @@ public class ObjectIterator implements CloseableIterator<ZooPC> {
 	 * @param cache
 	 * @param file
 	 */
-	public ObjectIterator(LLEntryIterator iter, AbstractCache cache, 
+	public ObjectIterator(LongLongIterator<LLEntry> iter, AbstractCache cache, 
 			DiskAccessOneFile file, ObjectReader in, boolean loadFromCache) {
 		this.iter = iter;
 		this.file = file;
@@ -69,6 +70,20 @@ public class ObjectIterator implements CloseableIterator<ZooPC> {
 		findNext();
 	}
 
+	/**
+	 * Object iterator over a given set of OIDs.
+	 * 
+	 * @param oids The OIDs, objects are read in this order
+	 * @param cache
+	 * @param file
+	 * @param in
+	 * @param loadFromCache
+	 */
+	public ObjectIterator(long[] oids, AbstractCache cache, 
+			DiskAccessOneFile file, ObjectReader in, boolean loadFromCache) {
+		this(new OidArrayIterator(oids), cache, file, in, loadFromCache);
+	}
+
 	@Override
 	public boolean hasNext() {
 		return pc != null;
@@ -85,8 +100,8 @@ public class ObjectIterator implements CloseableIterator<ZooPC> {
 	}
 	
 	private void findNext() {
-		while (iter.hasNextULL()) {
-			LongLongIndex.LLEntry e = iter.nextULL();
+		while (iter.hasNext()) {
+			LLEntry e = iter.next();
 			
 			//try loading from cache first
 			if (loadFromCache) {
@@ -123,4 +138,37 @@ public class ObjectIterator implements CloseableIterator<ZooPC> {
 		pc = null;
 		iter.close();
 	}
+	
+	private static class OidArrayIterator implements LongLongIterator<LLEntry> {
+		private final long[] oids;
+		private int pos = 0;
+		
+		OidArrayIterator(long[] oids) {
+			this.oids = oids;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return pos < oids.length;
+		}
+
+		@Override
+		public LLEntry next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			long oid = oids[pos++];
+			return new LLEntry(oid, oid);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			pos = oids.length;
+		}
+	}
 }
@@ -0,0 +1,744 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.internal.server.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.zoodb.internal.server.DiskIO;
+import org.zoodb.internal.server.DiskIO.PAGE_TYPE;
+import org.zoodb.internal.server.StorageChannel;
+import org.zoodb.internal.server.StorageChannelInput;
+import org.zoodb.internal.server.StorageChannelOutput;
+
+/**
+ * A unique index based on linear hashing. Point lookups, inserts and removals need a single
+ * bucket, which is usually a single page, independent of the size of the index.
+ *
+ * The index consists of a directory with the page IDs of all buckets and of the buckets.
+ * A bucket is a chain of pages with key-value pairs. When the average load of the buckets
+ * exceeds a threshold, the bucket at the split pointer is split and the split pointer is
+ * advanced. Buckets are not merged when entries are removed. When the directory is full, 
+ * buckets are not split anymore but grow longer chains.
+ *
+ * The root page of the index contains the page IDs of the buckets. If they do not fit on 
+ * the root page, they are stored on directory pages and the root page contains the page IDs 
+ * of the directory pages. The directory is kept in memory, {@link #write()} only writes the
+ * root page and the directory pages that refer to modified buckets.
+ * 
+ * Buckets are read on demand. Unmodified buckets are evicted as a whole when the 
+ * {@link IndexPageBudget} of the storage channel is exceeded.
+ *
+ * Keys are not ordered, iterators over key ranges therefore have to read all buckets and
+ * sort the matching entries in memory. Only iterators over a single key are efficient.
+ */
+public class PagedHashLongLong extends AbstractIndex implements LongLongIndex {
+
+	/** level (int), split pointer (int), number of buckets (int), number of entries (long) */
+	private static final int DIR_HEADER_BYTES = 4 + 4 + 4 + 8;
+	/** next page (int), number of entries (short) */
+	private static final int BUCKET_HEADER_BYTES = 4 + 2;
+	/** key (long), value (long) */
+	private static final int ENTRY_BYTES = 8 + 8;
+	/** Maximum average fill ratio of buckets before a bucket is split */
+	private static final double MAX_LOAD = 0.75;
+
+	private final PAGE_TYPE dataType;
+	private final StorageChannelInput in;
+	private final StorageChannelOutput out;
+	/** Entries per bucket page */
+	private final int pageCapacity;
+	/** Bucket IDs or directory page IDs on the root page */
+	private final int rootDirCapacity;
+	/** Bucket IDs on a directory page */
+	private final int dirCapacity;
+	/** Maximum number of buckets, buckets are not split anymore when it is reached */
+	private final int maxBuckets;
+	private final IndexPageBudget budget;
+
+	private int level;
+	private int splitPtr;
+	private int nBuckets;
+	private long nEntries;
+	private int[] bucketPageIds;
+	private Bucket[] buckets;
+	private int rootPageId = -1;
+	/** Directory pages, only used if the bucket IDs do not fit on the root page */
+	private int[] dirPageIds = new int[0];
+	/** Directory pages that refer to buckets that have been written since the last write */
+	private final BitSet dirtyDirPages = new BitSet();
+	private int statNWrittenPages = 0;
+
+	private static final class Bucket {
+		private long[] keys;
+		private long[] vals;
+		private int n = 0;
+		/** The pages of this bucket on disk */
+		private int[] pageIds = new int[0];
+		private boolean isDirty = true;
+		/** Whether the bucket has been accessed since the last sweep of the page budget */
+		private boolean isReferenced = true;
+
+		Bucket(int capacity) {
+			keys = new long[capacity];
+			vals = new long[capacity];
+		}
+
+		int find(long key) {
+			for (int i = 0; i < n; i++) {
+				if (keys[i] == key) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		void add(long key, long value) {
+			if (n == keys.length) {
+				keys = Arrays.copyOf(keys, n * 2);
+				vals = Arrays.copyOf(vals, n * 2);
+			}
+			keys[n] = key;
+			vals[n] = value;
+			n++;
+			isDirty = true;
+		}
+
+		void remove(int pos) {
+			n--;
+			keys[pos] = keys[n];
+			vals[pos] = vals[n];
+			isDirty = true;
+		}
+	}
+
+	/**
+	 * Constructor for creating a new index.
+	 * @param dataType Page type
+	 * @param file The storage channel
+	 */
+	public PagedHashLongLong(PAGE_TYPE dataType, StorageChannel file) {
+		this(dataType, file, true);
+		init();
+	}
+
+	/**
+	 * Constructor for reading an index from disk.
+	 * @param dataType Page type
+	 * @param file The storage channel
+	 * @param pageId ID of the root page
+	 */
+	public PagedHashLongLong(PAGE_TYPE dataType, StorageChannel file, int pageId) {
+		this(dataType, file, false);
+		readDirectory(pageId);
+	}
+
+	private PagedHashLongLong(PAGE_TYPE dataType, StorageChannel file, boolean isNew) {
+		super(file, isNew, true);
+		this.dataType = dataType;
+		this.in = file.getReader(false);
+		this.out = file.getWriter(false);
+		int pageBytes = file.getPageSize() - DiskIO.PAGE_HEADER_SIZE;
+		pageCapacity = (pageBytes - BUCKET_HEADER_BYTES) / ENTRY_BYTES;
+		rootDirCapacity = (pageBytes - DIR_HEADER_BYTES) / 4;
+		dirCapacity = pageBytes / 4;
+		maxBuckets = rootDirCapacity * dirCapacity;
+		budget = file.getIndexPageBudget();
+		budget.register(this);
+	}
+
+	private void init() {
+		level = 0;
+		splitPtr = 0;
+		nBuckets = 1;
+		nEntries = 0;
+		bucketPageIds = new int[16];
+		buckets = new Bucket[16];
+		buckets[0] = new Bucket(16);
+		budget.notifyPageCreated();
+	}
+
+	/**
+	 * The hash function. Mixing the bits is necessary because keys are often sequential or
+	 * share their lower bits, for example for doubles.
+	 */
+	private static int hash(long key) {
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+
+	private int bucketId(long key) {
+		int h = hash(key);
+		int id = h & ((1 << level) - 1);
+		if (id < splitPtr) {
+			id = h & ((2 << level) - 1);
+		}
+		return id;
+	}
+
+	private Bucket getBucket(int id) {
+		Bucket b = buckets[id];
+		if (b == null) {
+			b = readBucket(bucketPageIds[id]);
+			buckets[id] = b;
+		}
+		b.isReferenced = true;
+		return b;
+	}
+
+	/**
+	 * Evicts unmodified buckets if the page budget of the file is exceeded. This must be 
+	 * called before the index is locked, because the sweep locks all indices of the file.
+	 */
+	private void checkPageBudget() {
+		budget.check();
+	}
+
+	/**
+	 * Evicts unmodified buckets that have not been accessed since the last sweep and
+	 * clears the access mark of the other buckets.
+	 */
+	@Override
+	synchronized void evictPages(IndexPageBudget budget) {
+		if (buckets == null) {
+			//not fully constructed yet
+			return;
+		}
+		int nLeaves = 0;
+		for (int i = 0; i < nBuckets; i++) {
+			Bucket b = buckets[i];
+			if (b == null) {
+				continue;
+			}
+			int nPages = Math.max(1, b.pageIds.length);
+			if (!b.isDirty && !b.isReferenced && budget.evict(nPages)) {
+				buckets[i] = null;
+				continue;
+			}
+			b.isReferenced = false;
+			nLeaves += nPages;
+		}
+		budget.countResidentPages(nLeaves, statsGetInnerN());
+	}
+
+	private void split() {
+		int srcId = splitPtr;
+		int dstId = (1 << level) + splitPtr;
+		if (dstId >= buckets.length) {
+			buckets = Arrays.copyOf(buckets, buckets.length * 2);
+			bucketPageIds = Arrays.copyOf(bucketPageIds, bucketPageIds.length * 2);
+		}
+		Bucket src = getBucket(srcId);
+		Bucket dst = new Bucket(Math.max(16, src.n));
+		budget.notifyPageCreated();
+		int mask = (2 << level) - 1;
+		int i = 0;
+		while (i < src.n) {
+			if ((hash(src.keys[i]) & mask) == srcId) {
+				i++;
+			} else {
+				dst.add(src.keys[i], src.vals[i]);
+				src.remove(i);
+			}
+		}
+		src.isDirty = true;
+		buckets[dstId] = dst;
+		bucketPageIds[dstId] = -1;
+		nBuckets++;
+		splitPtr++;
+		if (splitPtr == (1 << level)) {
+			level++;
+			splitPtr = 0;
+		}
+	}
+
+	private void insert(Bucket b, long key, long value) {
+		b.add(key, value);
+		nEntries++;
+		markDirty();
+		if (nEntries > MAX_LOAD * pageCapacity * nBuckets && nBuckets < maxBuckets) {
+			split();
+		}
+	}
+
+	@Override
+	public void insertLong(long key, long value) {
+		checkPageBudget();
+		synchronized (this) {
+			Bucket b = getBucket(bucketId(key));
+			int pos = b.find(key);
+			if (pos >= 0) {
+				if (b.vals[pos] != value) {
+					b.vals[pos] = value;
+					b.isDirty = true;
+					markDirty();
+				}
+				return;
+			}
+			insert(b, key, value);
+		}
+	}
+
+	@Override
+	public boolean insertLongIfNotSet(long key, long value) {
+		checkPageBudget();
+		synchronized (this) {
+			Bucket b = getBucket(bucketId(key));
+			if (b.find(key) >= 0) {
+				return false;
+			}
+			insert(b, key, value);
+			return true;
+		}
+	}
+
+	/**
+	 * Removes the entry with the given key. The value is ignored, because the index is unique.
+	 * @return the previous value
+	 * @throws NoSuchElementException if the key was not found
+	 */
+	@Override
+	public long removeLong(long key, long value) {
+		checkPageBudget();
+		synchronized (this) {
+			Bucket b = getBucket(bucketId(key));
+			int pos = b.find(key);
+			if (pos < 0) {
+				throw new NoSuchElementException("Key not found: " + key);
+			}
+			long ret = b.vals[pos];
+			b.remove(pos);
+			nEntries--;
+			markDirty();
+			return ret;
+		}
+	}
+
+	/**
+	 * @param key The key
+	 * @return The entry with the given key or {@code null} if the key was not found.
+	 */
+	public LLEntry findValue(long key) {
+		checkPageBudget();
+		synchronized (this) {
+			return find(key);
+		}
+	}
+
+	private LLEntry find(long key) {
+		Bucket b = getBucket(bucketId(key));
+		int pos = b.find(key);
+		return pos < 0 ? null : new LLEntry(key, b.vals[pos]);
+	}
+
+	@Override
+	public LLEntryIterator iterator() {
+		return iterator(Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	@Override
+	public LLEntryIterator iterator(long min, long max) {
+		checkPageBudget();
+		synchronized (this) {
+			if (min == max) {
+				LLEntry e = find(min);
+				List<LLEntry> list = e == null ?
+						Collections.<LLEntry>emptyList() : Collections.singletonList(e);
+				return new HashIterator(list);
+			}
+			return new HashIterator(collect(min, max, false));
+		}
+	}
+
+	@Override
+	public LongLongIterator<LLEntry> descendingIterator() {
+		return descendingIterator(Long.MAX_VALUE, Long.MIN_VALUE);
+	}
+
+	@Override
+	public LongLongIterator<LLEntry> descendingIterator(long max, long min) {
+		if (min == max) {
+			return iterator(min, max);
+		}
+		checkPageBudget();
+		synchronized (this) {
+			return new HashIterator(collect(min, max, true));
+		}
+	}
+
+	private List<LLEntry> collect(long min, long max, final boolean descending) {
+		ArrayList<LLEntry> list = new ArrayList<LLEntry>();
+		for (int i = 0; i < nBuckets; i++) {
+			Bucket b = getBucket(i);
+			for (int j = 0; j < b.n; j++) {
+				long key = b.keys[j];
+				if (key >= min && key <= max) {
+					list.add(new LLEntry(key, b.vals[j]));
+				}
+			}
+		}
+		Collections.sort(list, new Comparator<LLEntry>() {
+			@Override
+			public int compare(LLEntry o1, LLEntry o2) {
+				int c = Long.compare(o1.getKey(), o2.getKey());
+				return descending ? -c : c;
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * This requires reading all buckets.
+	 * @return The smallest key or {@code Long.MIN_VALUE} if the index is empty.
+	 */
+	@Override
+	public long getMinKey() {
+		checkPageBudget();
+		synchronized (this) {
+			if (nEntries == 0) {
+				return Long.MIN_VALUE;
+			}
+			long min = Long.MAX_VALUE;
+			for (int i = 0; i < nBuckets; i++) {
+				Bucket b = getBucket(i);
+				for (int j = 0; j < b.n; j++) {
+					min = Math.min(min, b.keys[j]);
+				}
+			}
+			return min;
+		}
+	}
+
+	/**
+	 * This requires reading all buckets.
+	 * @return The largest key or {@code Long.MIN_VALUE} if the index is empty.
+	 */
+	@Override
+	public long getMaxKey() {
+		checkPageBudget();
+		synchronized (this) {
+			long max = Long.MIN_VALUE;
+			for (int i = 0; i < nBuckets && nEntries > 0; i++) {
+				Bucket b = getBucket(i);
+				for (int j = 0; j < b.n; j++) {
+					max = Math.max(max, b.keys[j]);
+				}
+			}
+			return max;
+		}
+	}
+
+	@Override
+	public synchronized long size() {
+		return nEntries;
+	}
+
+	@Override
+	public synchronized int write() {
+		if (!isDirty() && rootPageId >= 0) {
+			return rootPageId;
+		}
+		for (int i = 0; i < nBuckets; i++) {
+			Bucket b = buckets[i];
+			if (b != null && b.isDirty) {
+				bucketPageIds[i] = writeBucket(b);
+				dirtyDirPages.set(i / dirCapacity);
+			}
+		}
+
+		int nDirPages = getDirPageCount();
+		if (nDirPages > dirPageIds.length) {
+			int n0 = dirPageIds.length;
+			dirPageIds = Arrays.copyOf(dirPageIds, nDirPages);
+			Arrays.fill(dirPageIds, n0, nDirPages, -1);
+			dirtyDirPages.set(n0, nDirPages);
+		}
+		for (int p = dirtyDirPages.nextSetBit(0); p >= 0 && p < nDirPages; 
+				p = dirtyDirPages.nextSetBit(p + 1)) {
+			dirPageIds[p] = writeDirPage(p);
+		}
+		dirtyDirPages.clear();
+
+		rootPageId = out.allocateAndSeek(dataType, rootPageId);
+		out.writeInt(level);
+		out.writeInt(splitPtr);
+		out.writeInt(nBuckets);
+		out.writeLong(nEntries);
+		if (nDirPages == 0) {
+			for (int i = 0; i < nBuckets; i++) {
+				out.writeInt(bucketPageIds[i]);
+			}
+		} else {
+			for (int p = 0; p < nDirPages; p++) {
+				out.writeInt(dirPageIds[p]);
+			}
+		}
+		out.flush();
+		statNWrittenPages++;
+		markClean();
+		budget.notifyIndexWritten();
+		return rootPageId;
+	}
+
+	/**
+	 * @return The number of directory pages, not counting the root page.
+	 */
+	private int getDirPageCount() {
+		if (nBuckets <= rootDirCapacity) {
+			return 0;
+		}
+		return (nBuckets + dirCapacity - 1) / dirCapacity;
+	}
+
+	private int writeDirPage(int p) {
+		int pageId = out.allocateAndSeek(dataType, dirPageIds[p]);
+		int start = p * dirCapacity;
+		int end = Math.min(nBuckets, start + dirCapacity);
+		for (int i = start; i < end; i++) {
+			out.writeInt(bucketPageIds[i]);
+		}
+		out.flush();
+		statNWrittenPages++;
+		return pageId;
+	}
+
+	private int writeBucket(Bucket b) {
+		int nPages = Math.max(1, (b.n + pageCapacity - 1) / pageCapacity);
+		int[] newPageIds = new int[nPages];
+		int next = 0;
+		for (int p = nPages - 1; p >= 0; p--) {
+			int prevId = p < b.pageIds.length ? b.pageIds[p] : -1;
+			int pageId = out.allocateAndSeek(dataType, prevId);
+			int start = p * pageCapacity;
+			int end = Math.min(b.n, start + pageCapacity);
+			out.writeInt(next);
+			out.writeShort((short) (end - start));
+			for (int i = start; i < end; i++) {
+				out.writeLong(b.keys[i]);
+				out.writeLong(b.vals[i]);
+			}
+			out.flush();
+			statNWrittenPages++;
+			newPageIds[p] = pageId;
+			next = pageId;
+		}
+		for (int p = nPages; p < b.pageIds.length; p++) {
+			file.reportFreePage(b.pageIds[p]);
+		}
+		b.pageIds = newPageIds;
+		b.isDirty = false;
+		return newPageIds[0];
+	}
+
+	private void readDirectory(int pageId) {
+		in.seekPageForRead(dataType, pageId);
+		rootPageId = pageId;
+		level = in.readInt();
+		splitPtr = in.readInt();
+		nBuckets = in.readInt();
+		nEntries = in.readLong();
+		int capacity = 16;
+		while (capacity < nBuckets) {
+			capacity *= 2;
+		}
+		bucketPageIds = new int[capacity];
+		buckets = new Bucket[capacity];
+		int nDirPages = getDirPageCount();
+		dirPageIds = new int[nDirPages];
+		if (nDirPages == 0) {
+			for (int i = 0; i < nBuckets; i++) {
+				bucketPageIds[i] = in.readInt();
+			}
+			return;
+		}
+		for (int p = 0; p < nDirPages; p++) {
+			dirPageIds[p] = in.readInt();
+		}
+		for (int p = 0; p < nDirPages; p++) {
+			in.seekPageForRead(dataType, dirPageIds[p]);
+			int start = p * dirCapacity;
+			int end = Math.min(nBuckets, start + dirCapacity);
+			for (int i = start; i < end; i++) {
+				bucketPageIds[i] = in.readInt();
+			}
+		}
+	}
+
+	private Bucket readBucket(int pageId) {
+		Bucket b = new Bucket(pageCapacity);
+		int nPages = 0;
+		int[] pageIds = new int[1];
+		while (pageId != 0) {
+			if (nPages == pageIds.length) {
+				pageIds = Arrays.copyOf(pageIds, nPages * 2);
+			}
+			pageIds[nPages++] = pageId;
+			in.seekPageForRead(dataType, pageId);
+			budget.notifyPageCreated();
+			budget.notifyPageLoaded();
+			pageId = in.readInt();
+			int n = in.readShort();
+			for (int i = 0; i < n; i++) {
+				b.add(in.readLong(), in.readLong());
+			}
+		}
+		b.pageIds = Arrays.copyOf(pageIds, nPages);
+		b.isDirty = false;
+		return b;
+	}
+
+	@Override
+	public synchronized void clear() {
+		for (int i = 0; i < nBuckets; i++) {
+			if (buckets[i] != null || bucketPageIds[i] > 0) {
+				for (int pageId: getBucket(i).pageIds) {
+					file.reportFreePage(pageId);
+				}
+			}
+		}
+		for (int pageId: dirPageIds) {
+			file.reportFreePage(pageId);
+		}
+		if (rootPageId >= 0) {
+			file.reportFreePage(rootPageId);
+		}
+		rootPageId = -1;
+		dirPageIds = new int[0];
+		dirtyDirPages.clear();
+		init();
+		markDirty();
+	}
+
+	@Override
+	public synchronized void print() {
+		System.out.println("Hash index: level=" + level + " splitPtr=" + splitPtr +
+				" buckets=" + nBuckets + " entries=" + nEntries);
+		for (int i = 0; i < nBuckets; i++) {
+			Bucket b = getBucket(i);
+			System.out.println("  bucket " + i + ": pages=" + Arrays.toString(b.pageIds) +
+					" n=" + b.n);
+		}
+	}
+
+	/**
+	 * @return The number of buckets.
+	 */
+	@Override
+	public synchronized int statsGetLeavesN() {
+		return nBuckets;
+	}
+
+	/**
+	 * @return The number of directory pages, including the root page.
+	 */
+	@Override
+	public synchronized int statsGetInnerN() {
+		return 1 + getDirPageCount();
+	}
+
+	@Override
+	public int statsGetWrittenPagesN() {
+		return statNWrittenPages;
+	}
+
+	@Override
+	public PAGE_TYPE getDataType() {
+		return dataType;
+	}
+
+	@Override
+	public synchronized List<Integer> debugPageIds() {
+		ArrayList<Integer> pages = new ArrayList<Integer>();
+		pages.add(rootPageId);
+		for (int pageId: dirPageIds) {
+			pages.add(pageId);
+		}
+		for (int i = 0; i < nBuckets; i++) {
+			for (int pageId: getBucket(i).pageIds) {
+				pages.add(pageId);
+			}
+		}
+		return pages;
+	}
+
+	/**
+	 * Iterator over a precomputed list of entries.
+	 */
+	private static final class HashIterator implements LLEntryIterator {
+		private final List<LLEntry> entries;
+		private int pos = 0;
+
+		HashIterator(List<LLEntry> entries) {
+			this.entries = entries;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return pos < entries.size();
+		}
+
+		@Override
+		public LLEntry next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return entries.get(pos++);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			pos = entries.size();
+		}
+
+		@Deprecated
+		@Override
+		public boolean hasNextULL() {
+			return hasNext();
+		}
+
+		@Deprecated
+		@Override
+		public LLEntry nextULL() {
+			return next();
+		}
+
+		@Deprecated
+		@Override
+		public long nextKey() {
+			return next().getKey();
+		}
+	}
+}
@@ -83,6 +83,12 @@ public class PagedLongLong extends AbstractPagedIndex implements LongLongIndex {
 
 	@Override
 	protected LLIndexPage getRoot() {
+		checkPageBudget();
+		return root;
+	}
+
+	@Override
+	LLIndexPage getRootPage() {
 		return root;
 	}
 
@@ -0,0 +1,654 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.internal.server.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.zoodb.internal.server.DiskIO;
+import org.zoodb.internal.server.DiskIO.PAGE_TYPE;
+import org.zoodb.internal.server.StorageChannel;
+import org.zoodb.internal.server.StorageChannelInput;
+import org.zoodb.internal.server.StorageChannelOutput;
+import org.zoodb.internal.util.PrimLongArrayList;
+
+/**
+ * A B+-tree with variable length String keys and long values (OIDs). Every key-value pair
+ * is stored only once, but a key can occur with many values.
+ *
+ * In contrast to String keys in a LongLongIndex, which consist of a prefix and a hash code,
+ * the keys are stored completely. Lookups and range queries are therefore exact. Keys are
+ * prefix compressed: Every key stores only the length of the prefix that it shares with the
+ * previous key in the page, followed by the remaining characters. Pages are split when their
+ * serialized size exceeds the page size.
+ *
+ * Keys that are longer than {@link #getMaxKeyLength()} characters are truncated, lookups of
+ * such keys may return false positives, see {@link #isExact(String)}. {@code null} keys are
+ * not supported.
+ *
+ * Pages are not merged when entries are removed, only empty pages are removed from the tree.
+ * Iteration is not concurrent with updates, all values of a range are returned at once.
+ */
+public class PagedStringIndex extends AbstractIndex {
+
+	/** prefix length (short), suffix length (short), value (long) */
+	private static final int ENTRY_BYTES = 2 + 2 + 8;
+	/** page ID (int) of a sub-page */
+	private static final int REF_BYTES = 4;
+
+	private final PAGE_TYPE dataType;
+	private final StorageChannelInput in;
+	private final StorageChannelOutput out;
+	private final int maxPageBytes;
+	private final int maxKeyLen;
+	private Page root;
+
+	private final class Page {
+		private final boolean isLeaf;
+		private int pageId = -1;
+		private boolean isDirty = true;
+		private int n = 0;
+		private String[] keys;
+		private long[] vals;
+		/** Serialized size of the page */
+		private int nBytes;
+		//inner pages only, there are n+1 sub-pages
+		private Page[] subPages;
+		private int[] subPageIds;
+
+		private Page(boolean isLeaf, int capacity) {
+			this.isLeaf = isLeaf;
+			keys = new String[capacity];
+			vals = new long[capacity];
+			if (!isLeaf) {
+				subPages = new Page[capacity + 1];
+				subPageIds = new int[capacity + 1];
+			}
+		}
+
+		/**
+		 * @return Position of the first entry that is larger or equal to the key/value pair.
+		 */
+		private int search(String key, long val) {
+			int lo = 0;
+			int hi = n;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (compare(keys[mid], vals[mid], key, val) < 0) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+
+		/**
+		 * @return Position of the first entry whose key is larger or equal to the key.
+		 */
+		private int search(String key) {
+			int lo = 0;
+			int hi = n;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (keys[mid].compareTo(key) < 0) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+
+		/**
+		 * @return The sub-page that contains the key/value pair.
+		 */
+		private int subPagePos(String key, long val) {
+			//separators are the smallest entries of the following sub-page
+			int pos = search(key, val);
+			if (pos < n && compare(keys[pos], vals[pos], key, val) == 0) {
+				pos++;
+			}
+			return pos;
+		}
+
+		private Page getSubPage(int pos) {
+			Page p = subPages[pos];
+			if (p == null) {
+				p = readPage(subPageIds[pos]);
+				subPages[pos] = p;
+			}
+			return p;
+		}
+
+		private int entryBytes(int pos) {
+			return PagedStringIndex.entryBytes(keys[pos], pos > 0 ? keys[pos-1] : null);
+		}
+
+		private void insertEntry(int pos, String key, long val) {
+			if (n == keys.length) {
+				int len = keys.length * 2;
+				keys = Arrays.copyOf(keys, len);
+				vals = Arrays.copyOf(vals, len);
+				if (!isLeaf) {
+					subPages = Arrays.copyOf(subPages, len + 1);
+					subPageIds = Arrays.copyOf(subPageIds, len + 1);
+				}
+			}
+			if (pos < n) {
+				nBytes -= entryBytes(pos);
+			}
+			System.arraycopy(keys, pos, keys, pos + 1, n - pos);
+			System.arraycopy(vals, pos, vals, pos + 1, n - pos);
+			keys[pos] = key;
+			vals[pos] = val;
+			n++;
+			nBytes += entryBytes(pos);
+			if (pos + 1 < n) {
+				nBytes += entryBytes(pos + 1);
+			}
+		}
+
+		private void removeEntry(int pos) {
+			nBytes -= entryBytes(pos);
+			if (pos + 1 < n) {
+				nBytes -= entryBytes(pos + 1);
+			}
+			System.arraycopy(keys, pos + 1, keys, pos, n - pos - 1);
+			System.arraycopy(vals, pos + 1, vals, pos, n - pos - 1);
+			n--;
+			keys[n] = null;
+			if (pos < n) {
+				nBytes += entryBytes(pos);
+			}
+		}
+
+		private void insertSubPage(int pos, Page p) {
+			System.arraycopy(subPages, pos, subPages, pos + 1, n - pos);
+			System.arraycopy(subPageIds, pos, subPageIds, pos + 1, n - pos);
+			subPages[pos] = p;
+			subPageIds[pos] = 0;
+			nBytes += REF_BYTES;
+		}
+
+		private void removeSubPage(int pos) {
+			System.arraycopy(subPages, pos + 1, subPages, pos, n + 1 - pos);
+			System.arraycopy(subPageIds, pos + 1, subPageIds, pos, n + 1 - pos);
+			subPages[n + 1] = null;
+			subPageIds[n + 1] = 0;
+			nBytes -= REF_BYTES;
+		}
+
+		private void computeBytes() {
+			//leaf/inner flag and number of entries
+			nBytes = 4;
+			if (!isLeaf) {
+				nBytes += (n + 1) * REF_BYTES;
+			}
+			for (int i = 0; i < n; i++) {
+				nBytes += entryBytes(i);
+			}
+		}
+
+		/**
+		 * @return The position where the page should be split, such that both halves have
+		 * about the same size.
+		 */
+		private int splitPos() {
+			int half = nBytes / 2;
+			int sum = 0;
+			int pos = 0;
+			while (pos < n - 1 && sum < half) {
+				sum += entryBytes(pos);
+				pos++;
+			}
+			return pos;
+		}
+	}
+
+	/**
+	 * Result of a page split.
+	 */
+	private static final class Split {
+		private final String key;
+		private final long val;
+		private final Page right;
+		Split(String key, long val, Page right) {
+			this.key = key;
+			this.val = val;
+			this.right = right;
+		}
+	}
+
+	/**
+	 * Constructor for creating a new index.
+	 * @param dataType Page type
+	 * @param file The storage channel
+	 */
+	public PagedStringIndex(PAGE_TYPE dataType, StorageChannel file) {
+		this(dataType, file, true);
+		root = newPage(true);
+	}
+
+	/**
+	 * Constructor for reading an index from disk.
+	 * @param dataType Page type
+	 * @param file The storage channel
+	 * @param pageId ID of the root page
+	 */
+	public PagedStringIndex(PAGE_TYPE dataType, StorageChannel file, int pageId) {
+		this(dataType, file, false);
+		root = readPage(pageId);
+	}
+
+	private PagedStringIndex(PAGE_TYPE dataType, StorageChannel file, boolean isNew) {
+		super(file, isNew, false);
+		this.dataType = dataType;
+		this.in = file.getReader(false);
+		this.out = file.getWriter(false);
+		//page header plus some safety margin
+		maxPageBytes = file.getPageSize() - DiskIO.PAGE_HEADER_SIZE - 4;
+		//at least four entries fit on a page
+		maxKeyLen = (maxPageBytes / 4 - ENTRY_BYTES - REF_BYTES) / 2;
+	}
+
+	private Page newPage(boolean isLeaf) {
+		Page p = new Page(isLeaf, 16);
+		p.computeBytes();
+		return p;
+	}
+
+	private static int compare(String k1, long v1, String k2, long v2) {
+		int c = k1.compareTo(k2);
+		if (c != 0) {
+			return c;
+		}
+		return Long.compare(v1, v2);
+	}
+
+	private static int entryBytes(String key, String prev) {
+		return ENTRY_BYTES + 2 * (key.length() - commonPrefix(key, prev));
+	}
+
+	private static int commonPrefix(String key, String prev) {
+		if (prev == null) {
+			return 0;
+		}
+		int len = Math.min(key.length(), prev.length());
+		int i = 0;
+		while (i < len && key.charAt(i) == prev.charAt(i)) {
+			i++;
+		}
+		return i;
+	}
+
+	private String truncate(String key) {
+		return key.length() > maxKeyLen ? key.substring(0, maxKeyLen) : key;
+	}
+
+	/**
+	 * @return The maximum number of characters of a key. Longer keys are truncated.
+	 */
+	public int getMaxKeyLength() {
+		return maxKeyLen;
+	}
+
+	/**
+	 * @param key A key
+	 * @return Whether lookups of the key are exact, i.e. whether the key is short enough to
+	 * be stored without truncation.
+	 */
+	public boolean isExact(String key) {
+		return key.length() < maxKeyLen;
+	}
+
+	/**
+	 * Inserts a key/value pair. Nothing happens if the pair already exists.
+	 * @param key The key, must not be {@code null}
+	 * @param value The value
+	 */
+	public synchronized void insert(String key, long value) {
+		Split s = insert(root, truncate(key), value);
+		if (s != null) {
+			Page newRoot = newPage(false);
+			newRoot.subPages[0] = root;
+			newRoot.insertEntry(0, s.key, s.val);
+			newRoot.subPages[1] = s.right;
+			newRoot.computeBytes();
+			root = newRoot;
+		}
+	}
+
+	private Split insert(Page p, String key, long val) {
+		if (p.isLeaf) {
+			int pos = p.search(key, val);
+			if (pos < p.n && compare(p.keys[pos], p.vals[pos], key, val) == 0) {
+				return null;
+			}
+			markPageDirty(p);
+			p.insertEntry(pos, key, val);
+		} else {
+			int pos = p.subPagePos(key, val);
+			Page sub = p.getSubPage(pos);
+			Split s = insert(sub, key, val);
+			if (sub.isDirty) {
+				//the page ID of the sub-page changes when it is written
+				markPageDirty(p);
+			}
+			if (s == null) {
+				return null;
+			}
+			p.insertEntry(pos, s.key, s.val);
+			p.insertSubPage(pos + 1, s.right);
+		}
+		if (p.nBytes <= maxPageBytes) {
+			return null;
+		}
+		return split(p);
+	}
+
+	private Split split(Page p) {
+		int m = p.splitPos();
+		Page right;
+		Split s;
+		if (p.isLeaf) {
+			//the separator is the first entry of the right page
+			right = new Page(true, Math.max(16, p.n - m));
+			s = new Split(p.keys[m], p.vals[m], right);
+			moveEntries(p, m, right);
+		} else {
+			//the separator moves up, it is not stored in either page
+			m = Math.max(1, Math.min(m, p.n - 2));
+			right = new Page(false, Math.max(16, p.n - m));
+			s = new Split(p.keys[m], p.vals[m], right);
+			System.arraycopy(p.subPages, m + 1, right.subPages, 0, p.n - m);
+			System.arraycopy(p.subPageIds, m + 1, right.subPageIds, 0, p.n - m);
+			Arrays.fill(p.subPages, m + 1, p.n + 1, null);
+			Arrays.fill(p.subPageIds, m + 1, p.n + 1, 0);
+			moveEntries(p, m + 1, right);
+			p.n--;
+			p.keys[p.n] = null;
+		}
+		p.computeBytes();
+		right.computeBytes();
+		return s;
+	}
+
+	private static void moveEntries(Page p, int from, Page dst) {
+		int len = p.n - from;
+		System.arraycopy(p.keys, from, dst.keys, 0, len);
+		System.arraycopy(p.vals, from, dst.vals, 0, len);
+		dst.n = len;
+		Arrays.fill(p.keys, from, p.n, null);
+		p.n = from;
+	}
+
+	/**
+	 * Removes a key/value pair.
+	 * @param key The key, must not be {@code null}
+	 * @param value The value
+	 * @return Whether the pair was found.
+	 */
+	public synchronized boolean remove(String key, long value) {
+		if (!remove(root, truncate(key), value)) {
+			return false;
+		}
+		//shrink tree
+		while (!root.isLeaf && root.n == 0) {
+			Page p = root.getSubPage(0);
+			reportFreePage(root);
+			root = p;
+		}
+		return true;
+	}
+
+	private boolean remove(Page p, String key, long val) {
+		if (p.isLeaf) {
+			int pos = p.search(key, val);
+			if (pos >= p.n || compare(p.keys[pos], p.vals[pos], key, val) != 0) {
+				return false;
+			}
+			markPageDirty(p);
+			p.removeEntry(pos);
+			return true;
+		}
+		int pos = p.subPagePos(key, val);
+		Page sub = p.getSubPage(pos);
+		if (!remove(sub, key, val)) {
+			return false;
+		}
+		markPageDirty(p);
+		if (sub.n == 0 && (sub.isLeaf || sub.subPageIds[0] == 0 && sub.subPages[0] == null)) {
+			//remove empty sub-page
+			if (p.n == 0) {
+				//the last sub-page, the page becomes empty as well
+				reportFreePage(sub);
+				p.subPages[0] = null;
+				p.subPageIds[0] = 0;
+				if (p == root) {
+					root = newPage(true);
+					reportFreePage(p);
+				}
+				return true;
+			}
+			reportFreePage(sub);
+			p.removeEntry(pos > 0 ? pos - 1 : 0);
+			p.removeSubPage(pos);
+		}
+		return true;
+	}
+
+	private void markPageDirty(Page p) {
+		p.isDirty = true;
+		markDirty();
+	}
+
+	private void reportFreePage(Page p) {
+		if (p.pageId > 0) {
+			file.reportFreePage(p.pageId);
+		}
+	}
+
+	/**
+	 * Returns the values of all keys in the range [min, max).
+	 * If {@code min} is longer than {@link #getMaxKeyLength()}, the result may contain
+	 * values of smaller keys.
+	 * @param min The minimum key (inclusive) or {@code null} for no lower bound
+	 * @param maxExcl The maximum key (exclusive) or {@code null} for no upper bound
+	 * @return The values, in order of their keys
+	 */
+	public synchronized PrimLongArrayList getValues(String min, String maxExcl) {
+		PrimLongArrayList ret = new PrimLongArrayList();
+		String lo = min == null ? "" : truncate(min);
+		if (maxExcl != null && lo.compareTo(maxExcl) >= 0) {
+			return ret;
+		}
+		collect(root, min == null ? "" : min, lo, maxExcl, ret);
+		return ret;
+	}
+
+	private void collect(Page p, String min, String lo, String hi, PrimLongArrayList ret) {
+		if (p.isLeaf) {
+			for (int i = p.search(lo); i < p.n; i++) {
+				String k = p.keys[i];
+				if (hi != null && k.compareTo(hi) >= 0) {
+					return;
+				}
+				//truncated keys may be smaller than the original key
+				if (k.length() >= maxKeyLen || k.compareTo(min) >= 0) {
+					ret.add(p.vals[i]);
+				}
+			}
+			return;
+		}
+		for (int i = p.search(lo); i <= p.n; i++) {
+			if (i > 0 && hi != null && p.keys[i-1].compareTo(hi) >= 0) {
+				return;
+			}
+			collect(p.getSubPage(i), min, lo, hi, ret);
+		}
+	}
+
+	/**
+	 * @param prefix A prefix
+	 * @return The smallest String that is larger than all Strings that start with the prefix,
+	 * or {@code null} if there is no such String.
+	 */
+	public static String prefixUpperBound(String prefix) {
+		int i = prefix.length() - 1;
+		while (i >= 0 && prefix.charAt(i) == Character.MAX_VALUE) {
+			i--;
+		}
+		if (i < 0) {
+			return null;
+		}
+		return prefix.substring(0, i) + (char)(prefix.charAt(i) + 1);
+	}
+
+	/**
+	 * @param key A key
+	 * @return The smallest String that is larger than the key.
+	 */
+	public static String successor(String key) {
+		return key + '\u0000';
+	}
+
+	/**
+	 * Writes all modified pages.
+	 * @return The page ID of the root page.
+	 */
+	public synchronized int write() {
+		if (!root.isDirty) {
+			markClean();
+			return root.pageId;
+		}
+		int ret = write(root);
+		markClean();
+		return ret;
+	}
+
+	private int write(Page p) {
+		if (!p.isDirty) {
+			return p.pageId;
+		}
+		if (!p.isLeaf) {
+			//first write the sub pages, because their page IDs change
+			for (int i = 0; i <= p.n; i++) {
+				if (p.subPages[i] != null) {
+					p.subPageIds[i] = write(p.subPages[i]);
+				}
+			}
+		}
+		p.pageId = out.allocateAndSeek(dataType, p.pageId);
+		if (p.isLeaf) {
+			out.writeShort((short) 0);
+		} else {
+			out.writeShort((short) (p.n + 1));
+			for (int i = 0; i <= p.n; i++) {
+				out.writeInt(p.subPageIds[i]);
+			}
+		}
+		out.writeShort((short) p.n);
+		String prev = null;
+		for (int i = 0; i < p.n; i++) {
+			String key = p.keys[i];
+			int prefix = commonPrefix(key, prev);
+			out.writeShort((short) prefix);
+			out.writeShort((short) (key.length() - prefix));
+			for (int c = prefix; c < key.length(); c++) {
+				out.writeChar(key.charAt(c));
+			}
+			out.writeLong(p.vals[i]);
+			prev = key;
+		}
+		out.flush();
+		p.isDirty = false;
+		return p.pageId;
+	}
+
+	private Page readPage(int pageId) {
+		in.seekPageForRead(dataType, pageId);
+		int nSub = in.readShort();
+		int[] subPageIds = new int[nSub];
+		for (int i = 0; i < nSub; i++) {
+			subPageIds[i] = in.readInt();
+		}
+		int n = in.readShort();
+		Page p = new Page(nSub == 0, Math.max(16, n));
+		if (!p.isLeaf) {
+			System.arraycopy(subPageIds, 0, p.subPageIds, 0, nSub);
+		}
+		String prev = "";
+		char[] buf = new char[maxKeyLen];
+		for (int i = 0; i < n; i++) {
+			int prefix = in.readShort();
+			int len = in.readShort();
+			prev.getChars(0, prefix, buf, 0);
+			for (int c = 0; c < len; c++) {
+				buf[prefix + c] = in.readChar();
+			}
+			prev = new String(buf, 0, prefix + len);
+			p.keys[i] = prev;
+			p.vals[i] = in.readLong();
+		}
+		p.n = n;
+		p.computeBytes();
+		p.pageId = pageId;
+		p.isDirty = false;
+		return p;
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public synchronized void clear() {
+		clear(root);
+		root = newPage(true);
+		markDirty();
+	}
+
+	private void clear(Page p) {
+		if (!p.isLeaf) {
+			for (int i = 0; i <= p.n; i++) {
+				if (p.subPages[i] != null || p.subPageIds[i] != 0) {
+					clear(p.getSubPage(i));
+				}
+			}
+		}
+		reportFreePage(p);
+	}
+
+	public synchronized List<Integer> debugPageIds() {
+		ArrayList<Integer> pages = new ArrayList<Integer>();
+		debugPageIds(root, pages);
+		return pages;
+	}
+
+	private void debugPageIds(Page p, List<Integer> pages) {
+		pages.add(p.pageId);
+		if (!p.isLeaf) {
+			for (int i = 0; i <= p.n; i++) {
+				debugPageIds(p.getSubPage(i), pages);
+			}
+		}
+	}
+}
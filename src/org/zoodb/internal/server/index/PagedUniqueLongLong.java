@@ -121,6 +121,12 @@ public class PagedUniqueLongLong extends AbstractPagedIndex implements LongLongI
 
 	@Override
 	protected final LLIndexPage getRoot() {
+		checkPageBudget();
+		return root;
+	}
+
+	@Override
+	final LLIndexPage getRootPage() {
 		return root;
 	}
 
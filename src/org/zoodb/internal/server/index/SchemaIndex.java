@@ -34,6 +34,7 @@ import org.zoodb.internal.Node;
 import org.zoodb.internal.PersistentSchemaOperation;
 import org.zoodb.internal.ZooClassDef;
 import org.zoodb.internal.ZooClassProxy;
+import org.zoodb.internal.ZooCompositeIndexDef;
 import org.zoodb.internal.ZooFieldDef;
 import org.zoodb.internal.server.CallbackPageRead;
 import org.zoodb.internal.server.CallbackPageWrite;
@@ -94,10 +95,26 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 	    //This is the unique fieldId which is maintained throughout different versions of the field
 		private long fieldId;
 		private boolean isUnique;
+		//only for unique indices on non-String fields, the index is a hash index
+		private boolean isHashed;
 		private FTYPE fType;
 		private int page;
 		private LongLongIndex index;
+		//only for composite indices, fieldId is then the ID of the first field
+		private long[] fieldIds;
+		//only for STRING_FULL, the index with the complete String keys
+		private int strPage;
+		private PagedStringIndex strIndex;
+		//not persistent
+		private final IndexStatistics stats = new IndexStatistics();
+		
+		private byte getFlags() {
+			return (byte) ((isUnique ? FLAG_UNIQUE : 0) | (isHashed ? FLAG_HASHED : 0));
+		}
 	}
+	
+	private static final int FLAG_UNIQUE = 1;
+	private static final int FLAG_HASHED = 2;
 
 	public static enum FTYPE {
 		LONG(8, Long.TYPE, "long"),
@@ -108,7 +125,10 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 		FLOAT(4, Float.TYPE, "float"),
 		CHAR(2, Character.TYPE, "char"), 
 		STRING(8, null, "java.lang.String"),
-		REF(8, Long.TYPE, ZooPC.class.getName());
+		REF(8, Long.TYPE, ZooPC.class.getName()),
+		COMPOSITE(8, Long.TYPE, null),
+		//String index with additional full key index
+		STRING_FULL(8, null, null);
 //		private final int len;
 //		private final Type type;
 		private final String typeName;
@@ -123,7 +143,7 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 			}
 			String typeName = fieldType.getTypeName();
 			for (FTYPE t: values()) {
-				if (t.typeName.equals(typeName)) {
+				if (typeName.equals(t.typeName)) {
 					return t;
 				}
 			}
@@ -147,6 +167,7 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 		private int[] objIndexPages;
 		private transient PagedPosIndex[] objIndex;
 		private ArrayList<FieldIndex> fieldIndices = new ArrayList<FieldIndex>();
+		private ArrayList<FieldIndex> compositeIndices = new ArrayList<FieldIndex>();
 		
 		/**
 		 * Constructor for reading index.
@@ -166,11 +187,25 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 		    int nF = in.readShort();
 		    for (int i = 0; i < nF; i++) {
 		    	FieldIndex fi = new FieldIndex();
-		    	fieldIndices.add(fi);
 		    	fi.fieldId = in.readLong();
 		    	fi.fType = FTYPE.values()[in.readByte()];
-		    	fi.isUnique = in.readBoolean();
+		    	//flags, compatible with the 'isUnique' boolean of older databases
+		    	byte flags = in.readByte();
+		    	fi.isUnique = (flags & FLAG_UNIQUE) != 0;
+		    	fi.isHashed = (flags & FLAG_HASHED) != 0;
 		    	fi.page = in.readInt();
+		    	if (fi.fType == FTYPE.COMPOSITE) {
+		    		fi.fieldIds = new long[in.readShort()];
+		    		for (int j = 0; j < fi.fieldIds.length; j++) {
+		    			fi.fieldIds[j] = in.readLong();
+		    		}
+		    		compositeIndices.add(fi);
+		    	} else {
+		    		if (fi.fType == FTYPE.STRING_FULL) {
+		    			fi.strPage = in.readInt();
+		    		}
+		    		fieldIndices.add(fi);
+		    	}
 		    }
 		}
 		
@@ -202,12 +237,25 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 		    for (int page: objIndexPages) {
 		        out.writeInt(page);  //no data page yet
 		    }
-		    out.writeShort((short) fieldIndices.size());
+		    out.writeShort((short) (fieldIndices.size() + compositeIndices.size()));
 		    for (FieldIndex fi: fieldIndices) {
 		    	out.writeLong(fi.fieldId);
 		    	out.writeByte((byte) fi.fType.ordinal());
-		    	out.writeBoolean(fi.isUnique);
+		    	out.writeByte(fi.getFlags());
+		    	out.writeInt(fi.page);
+		    	if (fi.fType == FTYPE.STRING_FULL) {
+		    		out.writeInt(fi.strPage);
+		    	}
+		    }
+		    for (FieldIndex fi: compositeIndices) {
+		    	out.writeLong(fi.fieldId);
+		    	out.writeByte((byte) fi.fType.ordinal());
+		    	out.writeByte(fi.getFlags());
 		    	out.writeInt(fi.page);
+		    	out.writeShort((short) fi.fieldIds.length);
+		    	for (long id: fi.fieldIds) {
+		    		out.writeLong(id);
+		    	}
 		    }
 		}
 
@@ -254,14 +302,22 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 			fi.fieldId = field.getFieldSchemaId();
 			fi.fType = FTYPE.fromType(field);
 			fi.isUnique = isUnique;
+			fi.isHashed = isUnique && !field.isString() && field.isIndexHashed();
 			field.setIndexed(true);
 			field.setUnique(isUnique);
+			field.setIndexHashed(fi.isHashed);
 			//unique String indexes use a non-unique index!
-			if (isUnique && !field.isString()) {
+			if (fi.isHashed) {
+				fi.index = IndexFactory.createHashIndex(PAGE_TYPE.FIELD_INDEX, file);
+			} else if (isUnique && !field.isString()) {
 				fi.index = IndexFactory.createUniqueIndex(PAGE_TYPE.FIELD_INDEX, file);
 			} else {
 				fi.index = IndexFactory.createIndex(PAGE_TYPE.FIELD_INDEX, file);
 			}
+			if (field.isString()) {
+				fi.fType = FTYPE.STRING_FULL;
+				fi.strIndex = new PagedStringIndex(PAGE_TYPE.FIELD_INDEX, file);
+			}
 			fieldIndices.add(fi);
 			markRefreshRequired();
 			return fi.index;
@@ -272,9 +328,13 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 			while (iter.hasNext()) {
 				FieldIndex fi = iter.next(); 
 				if (fi.fieldId == field.getFieldSchemaId()) {
+					//load the index with the correct type (e.g. hashed), then clear it 
+					getIndex(field).clear();
+					clearStringIndex(fi);
 					iter.remove();
-					fi.index.clear();
 					field.setIndexed(false);
+					//the index is not written anymore, so the directory has to be
+					markDirty();
 					markRefreshRequired();
 					return true;
 				}
@@ -282,11 +342,31 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 			return false;
 		}
 
+		/**
+		 * Removes all entries from the index of the field and invalidates its statistics.
+		 * @param field The indexed field
+		 * @return The empty index or {@code null} if the field is not indexed.
+		 */
+		public LongLongIndex clearIndex(ZooFieldDef field) {
+			for (FieldIndex fi: fieldIndices) {
+				if (fi.fieldId == field.getFieldSchemaId()) {
+					LongLongIndex ind = getIndex(field);
+					ind.clear();
+					clearStringIndex(fi);
+					fi.stats.invalidate();
+					return ind;
+				}
+			}
+			return null;
+		}
+
 		public LongLongIndex getIndex(ZooFieldDef field) {
 			for (FieldIndex fi: fieldIndices) {
 				if (fi.fieldId == field.getFieldSchemaId()) {
 					if (fi.index == null) {
-						if (fi.isUnique && !field.isString()) {
+						if (fi.isHashed) {
+							fi.index = IndexFactory.loadHashIndex(PAGE_TYPE.FIELD_INDEX, file, fi.page);
+						} else if (fi.isUnique && !field.isString()) {
 							fi.index = IndexFactory.loadUniqueIndex(PAGE_TYPE.FIELD_INDEX, file, fi.page);
 						} else {
 							fi.index = IndexFactory.loadIndex(PAGE_TYPE.FIELD_INDEX, file, fi.page);
@@ -298,11 +378,150 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 			return null;
 		}
 
+		/**
+		 * @param field A String field
+		 * @return The index with the complete String keys or {@code null} if the field has no
+		 * such index. Indices of databases that were created before full String keys were
+		 * supported have no such index.
+		 */
+		public PagedStringIndex getStringIndex(ZooFieldDef field) {
+			for (FieldIndex fi: fieldIndices) {
+				if (fi.fieldId == field.getFieldSchemaId()) {
+					return getStringIndex(fi);
+				}
+			}
+			return null;
+		}
+
+		private PagedStringIndex getStringIndex(FieldIndex fi) {
+			if (fi.fType != FTYPE.STRING_FULL) {
+				return null;
+			}
+			if (fi.strIndex == null) {
+				fi.strIndex = new PagedStringIndex(PAGE_TYPE.FIELD_INDEX, file, fi.strPage);
+			}
+			return fi.strIndex;
+		}
+
+		private void clearStringIndex(FieldIndex fi) {
+			PagedStringIndex si = getStringIndex(fi);
+			if (si != null) {
+				si.clear();
+			}
+		}
+
+		public LongLongIndex defineCompositeIndex(ZooCompositeIndexDef def) {
+			long[] ids = def.getFieldIds();
+			for (FieldIndex fi: compositeIndices) {
+				if (Arrays.equals(fi.fieldIds, ids)) {
+					throw new IllegalArgumentException("Index is already defined: " + def);
+				}
+			}
+			FieldIndex fi = new FieldIndex();
+			fi.fieldId = ids[0];
+			fi.fieldIds = ids;
+			fi.fType = FTYPE.COMPOSITE;
+			fi.isUnique = false;
+			fi.index = IndexFactory.createIndex(PAGE_TYPE.COMPOSITE_INDEX, file);
+			compositeIndices.add(fi);
+			markRefreshRequired();
+			return fi.index;
+		}
+
+		public boolean removeCompositeIndex(ZooCompositeIndexDef def) {
+			Iterator<FieldIndex> iter = compositeIndices.iterator();
+			while (iter.hasNext()) {
+				FieldIndex fi = iter.next(); 
+				if (def.matches(fi.fieldIds)) {
+					iter.remove();
+					getIndex(fi).clear();
+					//the index is not written anymore, so the directory has to be
+					markDirty();
+					markRefreshRequired();
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Removes all entries from a composite index.
+		 * @param def The index definition
+		 * @return The empty index or {@code null} if there is no such index.
+		 */
+		public LongLongIndex clearCompositeIndex(ZooCompositeIndexDef def) {
+			LongLongIndex ind = getCompositeIndex(def);
+			if (ind != null) {
+				ind.clear();
+			}
+			return ind;
+		}
+
+		public LongLongIndex getCompositeIndex(ZooCompositeIndexDef def) {
+			for (FieldIndex fi: compositeIndices) {
+				if (def.matches(fi.fieldIds)) {
+					return getIndex(fi);
+				}
+			}
+			return null;
+		}
+
+		private LongLongIndex getIndex(FieldIndex fi) {
+			if (fi.index == null) {
+				fi.index = IndexFactory.loadIndex(PAGE_TYPE.COMPOSITE_INDEX, file, fi.page);
+			}
+			return fi.index;
+		}
+
+		/**
+		 * @param def A version of the indexed class
+		 * @return The definitions of all composite indices of the class. Older versions of the
+		 * class may not have all indexed fields, their indices are omitted.
+		 */
+		public ArrayList<ZooCompositeIndexDef> getCompositeIndexDefs(ZooClassDef def) {
+			ArrayList<ZooCompositeIndexDef> ret = new ArrayList<ZooCompositeIndexDef>();
+			ZooFieldDef[] allFields = def.getAllFields();
+			loop: 
+			for (FieldIndex fi: compositeIndices) {
+				ZooFieldDef[] fields = new ZooFieldDef[fi.fieldIds.length];
+				for (int i = 0; i < fields.length; i++) {
+					for (ZooFieldDef f: allFields) {
+						if (f.getFieldSchemaId() == fi.fieldIds[i]) {
+							fields[i] = f;
+						}
+					}
+					if (fields[i] == null) {
+						continue loop;
+					}
+				}
+				ret.add(new ZooCompositeIndexDef(def, fields));
+			}
+			return ret;
+		}
+
+		/**
+		 * The statistics are only maintained after they have been built, 
+		 * see {@link IndexStatistics#isInitialized()}.
+		 * @param field The indexed field
+		 * @return The statistics of the index or {@code null} if the field is not indexed.
+		 */
+		public IndexStatistics getIndexStatistics(ZooFieldDef field) {
+			for (FieldIndex fi: fieldIndices) {
+				if (fi.fieldId == field.getFieldSchemaId()) {
+					return fi.stats;
+				}
+			}
+			return null;
+		}
+
 		public ArrayList<LongLongIndex> getIndices() {
 			ArrayList<LongLongIndex> indices = new ArrayList<LongLongIndex>();
 			for (FieldIndex fi: fieldIndices) {
 				indices.add(fi.index);
 			}
+			for (FieldIndex fi: compositeIndices) {
+				indices.add(fi.index);
+			}
 			return indices;
 		}
 
@@ -310,6 +529,11 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 			ArrayList<AbstractPagedIndex> indices = new ArrayList<AbstractPagedIndex>();
 			for (FieldIndex fi: fieldIndices) {
 				fi.index.clear();
+				clearStringIndex(fi);
+				fi.stats.invalidate();
+			}
+			for (FieldIndex fi: compositeIndices) {
+				getIndex(fi).clear();
 			}
 			return indices;
 		}
@@ -323,6 +547,15 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 			throw new IllegalArgumentException("Index not found for " + field.getName());
 		}
 
+		public boolean isHashed(ZooFieldDef field) {
+			for (FieldIndex fi: fieldIndices) {
+				if (fi.fieldId == field.getFieldSchemaId()) {
+					return fi.isHashed;
+				}
+			}
+			throw new IllegalArgumentException("Index not found for " + field.getName());
+		}
+
 		/**
 		 * 
 		 * @return True if any indices were written.
@@ -335,6 +568,16 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 					fi.page = fi.index.write();
 					dirty = true;
 				}
+				if (fi.strIndex != null && fi.strIndex.isDirty()) {
+					fi.strPage = fi.strIndex.write();
+					dirty = true;
+				}
+			}
+			for (FieldIndex fi: compositeIndices) {
+				if (fi.index != null && fi.index.isDirty()) {
+					fi.page = fi.index.write();
+					dirty = true;
+				}
 			}
 			return dirty;
 		}
@@ -354,17 +597,37 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
                     fi.fieldId = op.getFieldId();
                     fi.fType = FTYPE.fromType(field);
                     fi.isUnique = field.isIndexUnique();
-                    if (fi.isUnique && !field.isString()) {
+                    fi.isHashed = fi.isUnique && !field.isString() && field.isIndexHashed();
+                    if (fi.isHashed) {
+                        fi.index = IndexFactory.createHashIndex(PAGE_TYPE.FIELD_INDEX, file);
+                    } else if (fi.isUnique && !field.isString()) {
                         fi.index = IndexFactory.createUniqueIndex(PAGE_TYPE.FIELD_INDEX, file);
                     } else {
                         fi.index = IndexFactory.createIndex(PAGE_TYPE.FIELD_INDEX, file);
                     }
+                    if (field.isString()) {
+                        fi.fType = FTYPE.STRING_FULL;
+                        fi.strIndex = new PagedStringIndex(PAGE_TYPE.FIELD_INDEX, file);
+                    }
                     fieldIndices.add(fi);
                 } else {
                     for (int i = 0; i < fieldIndices.size(); i++) {
                         if (fieldIndices.get(i).fieldId == op.getFieldId()) {
                             FieldIndex fi = fieldIndices.remove(i);
                             fi.index.clear();
+                            clearStringIndex(fi);
+                        }
+                    }
+                    //composite indices become invalid if any of their fields is removed
+                    Iterator<FieldIndex> iter = compositeIndices.iterator();
+                    while (iter.hasNext()) {
+                        FieldIndex fi = iter.next();
+                        for (long id: fi.fieldIds) {
+                            if (id == op.getFieldId()) {
+                                iter.remove();
+                                getIndex(fi).clear();
+                                break;
+                            }
                         }
                     }
                 }
@@ -514,8 +777,10 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 			if (e.getIndex(f) != null) {
 				f.setIndexed(true);
 				f.setUnique(e.isUnique(f));
+				f.setIndexHashed(e.isHashed(f));
 			}
 		}
+		def.setCompositeIndices(e.getCompositeIndexDefs(def));
 	}
 
 	
@@ -552,11 +817,13 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 				if (se.getIndex(f) != null) {
 					f.setIndexed(true);
 					f.setUnique(se.isUnique(f));
+					f.setIndexHashed(se.isHashed(f));
 				}
 				if (f.getTypeOID() > 0) {
 					f.setType(ret.get(f.getTypeOID()));
 				}
 			}
+			def.setCompositeIndices(se.getCompositeIndexDefs(def));
 		}
 
 		//build proxy structure
@@ -599,6 +866,10 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 		//field indices
 		for (FieldIndex fi: entry.fieldIndices) {
 			fi.index.clear();
+			entry.clearStringIndex(fi);
+		}
+		for (FieldIndex fi: entry.compositeIndices) {
+			entry.getIndex(fi).clear();
 		}
 		
 		//pos index
@@ -623,6 +894,13 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
         for (SchemaIndexEntry e: schemaIndex.values()) {
             for (FieldIndex fi: e.fieldIndices) {
                 ret.addAll(fi.index.debugPageIds());
+                PagedStringIndex si = e.getStringIndex(fi);
+                if (si != null) {
+                    ret.addAll(si.debugPageIds());
+                }
+            }
+            for (FieldIndex fi: e.compositeIndices) {
+                ret.addAll(e.getIndex(fi).debugPageIds());
             }
         }
         return ret;
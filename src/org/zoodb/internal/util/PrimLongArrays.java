@@ -0,0 +1,105 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.internal.util;
+
+import java.util.Arrays;
+
+/**
+ * Set operations on sorted arrays of primitive longs, for example OIDs.
+ * All arrays must be sorted in ascending order and must not contain duplicates.
+ */
+public final class PrimLongArrays {
+
+	private PrimLongArrays() {
+		//static class
+	}
+	
+	/**
+	 * @param a1 sorted array
+	 * @param a2 sorted array
+	 * @return A sorted array with all values that occur in both arrays
+	 */
+	public static long[] intersect(long[] a1, long[] a2) {
+		long[] ret = new long[Math.min(a1.length, a2.length)];
+		int i1 = 0;
+		int i2 = 0;
+		int n = 0;
+		while (i1 < a1.length && i2 < a2.length) {
+			if (a1[i1] < a2[i2]) {
+				i1++;
+			} else if (a1[i1] > a2[i2]) {
+				i2++;
+			} else {
+				ret[n++] = a1[i1];
+				i1++;
+				i2++;
+			}
+		}
+		return n == ret.length ? ret : Arrays.copyOf(ret, n);
+	}
+
+	/**
+	 * @param a1 sorted array
+	 * @param a2 sorted array
+	 * @return A sorted array with all values that occur in any of the arrays
+	 */
+	public static long[] union(long[] a1, long[] a2) {
+		long[] ret = new long[a1.length + a2.length];
+		int i1 = 0;
+		int i2 = 0;
+		int n = 0;
+		while (i1 < a1.length && i2 < a2.length) {
+			if (a1[i1] < a2[i2]) {
+				ret[n++] = a1[i1++];
+			} else if (a1[i1] > a2[i2]) {
+				ret[n++] = a2[i2++];
+			} else {
+				ret[n++] = a1[i1];
+				i1++;
+				i2++;
+			}
+		}
+		while (i1 < a1.length) {
+			ret[n++] = a1[i1++];
+		}
+		while (i2 < a2.length) {
+			ret[n++] = a2[i2++];
+		}
+		return n == ret.length ? ret : Arrays.copyOf(ret, n);
+	}
+	
+	/**
+	 * Sorts the array and removes duplicates.
+	 * @param a array
+	 * @param len the number of valid entries in the array
+	 * @return A sorted array without duplicates
+	 */
+	public static long[] sortUnique(long[] a, int len) {
+		Arrays.sort(a, 0, len);
+		int n = 0;
+		for (int i = 0; i < len; i++) {
+			if (n == 0 || a[n-1] != a[i]) {
+				a[n++] = a[i];
+			}
+		}
+		return n == a.length ? a : Arrays.copyOf(a, n);
+	}
+}
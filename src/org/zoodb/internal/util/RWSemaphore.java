@@ -24,7 +24,7 @@ import java.util.concurrent.Semaphore;
 
 public class RWSemaphore<T> {
 
-	public static final int MAX_READERS = 16;
+	public static final int MAX_READERS = 64;
 	private final T NO_KEY = null;
 	
 	private final Semaphore rSemaphore;
@@ -112,6 +112,19 @@ public class ZooJdoHelper extends ZooHelper {
     	c.createIndex(fieldName, isUnique);
     }
 
+    /**
+     * Enables or disables persistence by reachability for a PersistenceManager. If it is
+     * disabled, new objects are only made persistent with {@code makePersistent()}. 
+     * @param pm
+     * @param flag Whether new objects that are referenced by persistent objects should be
+     * made persistent automatically
+     * @see org.zoodb.api.ZooConstants#PROPERTY_PERSISTENCE_BY_REACHABILITY
+     */
+    public static void setPersistenceByReachability(PersistenceManager pm, boolean flag) {
+    	DBTracer.logCall(ZooJdoHelper.class, pm, flag); 
+    	((PersistenceManagerImpl)pm).getSession().getConfig().setPersistenceByReachability(flag);
+    }
+
     /**
      * Get access to the statistics API of ZooDB.
      * @param pm
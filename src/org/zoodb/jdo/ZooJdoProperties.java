@@ -155,6 +155,21 @@ public class ZooJdoProperties extends Properties implements Constants {
 		put(Constants.PROPERTY_DETACH_ALL_ON_COMMIT, Boolean.toString(flag));
 		return this;
 	}
+
+
+	/**
+	 * Whether transactions should be read-only. Read-only transactions read from a snapshot
+	 * of the last committed state and do not block or get blocked by concurrent commits.
+	 * By default transactions are not read-only.
+	 * @param flag
+	 * @return this
+	 * @see Constants#PROPERTY_READONLY
+	 */
+	public ZooJdoProperties setReadOnly(boolean flag) {
+    	DBTracer.logCall(this, flag); 
+		put(Constants.PROPERTY_READONLY, Boolean.toString(flag));
+		return this;
+	}
 	
 	
 //	/**
@@ -229,6 +244,55 @@ public class ZooJdoProperties extends Properties implements Constants {
 	}
 
 
+	/**
+	 * Property that defines when a commit returns. By default a commit returns only after all
+	 * data has been forced to disk. 
+	 * With {@link ZooConstants#DURABILITY_ASYNC_FSYNC}, data is forced to disk by a background 
+	 * thread. With {@link ZooConstants#DURABILITY_NO_FSYNC} this is left to the operating 
+	 * system. 
+	 * @param mode One of the {@code DURABILITY_*} constants in {@link ZooConstants}
+	 * @return this
+	 * @see ZooConstants#PROPERTY_DURABILITY
+	 */
+	public ZooJdoProperties setZooDurability(String mode) {
+    	DBTracer.logCall(this, mode); 
+		put(ZooConstants.PROPERTY_DURABILITY, mode);
+		return this;
+	}
+
+
+	/**
+	 * Property that defines whether query results are evaluated lazily while they are 
+	 * iterated. This bounds memory consumption and the time to the first result.
+	 * Streaming is only used for queries without ordering, result settings and uniqueness.
+	 * Executing the same query object again invalidates previous streaming results.
+	 * Default is {@code false}.
+	 * @param flag
+	 * @return this
+	 * @see ZooConstants#PROPERTY_STREAMING_QUERIES
+	 */
+	public ZooJdoProperties setZooStreamingQueries(boolean flag) {
+    	DBTracer.logCall(this, flag); 
+		put(ZooConstants.PROPERTY_STREAMING_QUERIES, Boolean.toString(flag));
+		return this;
+	}
+
+
+	/**
+	 * Property that defines whether new objects that are referenced by persistent objects
+	 * are made persistent automatically (persistence by reachability).
+	 * Default is {@code true}.
+	 * @param flag
+	 * @return this
+	 * @see ZooConstants#PROPERTY_PERSISTENCE_BY_REACHABILITY
+	 */
+	public ZooJdoProperties setZooPersistenceByReachability(boolean flag) {
+    	DBTracer.logCall(this, flag); 
+		put(ZooConstants.PROPERTY_PERSISTENCE_BY_REACHABILITY, Boolean.toString(flag));
+		return this;
+	}
+
+
 	/**
 	 * Property that defines whether PersistenceManagers should expect multi-threaded access. 
 	 * Default is {@code true}.
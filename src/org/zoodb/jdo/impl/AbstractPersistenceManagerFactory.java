@@ -27,6 +27,7 @@ import javax.jdo.JDOUserException;
 import javax.jdo.PersistenceManagerFactory;
 
 import org.zoodb.api.ZooConstants;
+import org.zoodb.internal.SessionConfig.DURABILITY;
 import org.zoodb.tools.ZooHelper;
 
 
@@ -72,6 +73,10 @@ public abstract class AbstractPersistenceManagerFactory
     private boolean autoCreateSchema = true;
 	private boolean evictPrimitives = false;
 	private boolean failOnClosedQueries = false;
+	private boolean isReadOnly = false;
+	private DURABILITY durability = DURABILITY.SYNC;
+	private boolean streamingQueries = false;
+	private boolean persistenceByReachability = true;
 //	private boolean allowNonStandardSCOs = false;
     
     //Non-standard properties.
@@ -160,7 +165,7 @@ public abstract class AbstractPersistenceManagerFactory
     		} else if (Constants.PROPERTY_SERVER_TIME_ZONE_ID.equals(key)) {
     			System.out.println("STUB: Property not supported: " + key + "=" + props.get(key)); //TODO
     		} else if (Constants.PROPERTY_READONLY.equals(key)) {
-    			System.out.println("STUB: Property not supported: " + key + "=" + props.get(key)); //TODO
+    			isReadOnly = Boolean.parseBoolean(props.getProperty(key));
     			
     		//The following two properties are only used in the props, not in the overrides.
     		} else if (Constants.PROPERTY_NAME.equals(key)) {
@@ -184,6 +189,12 @@ public abstract class AbstractPersistenceManagerFactory
     			evictPrimitives = Boolean.parseBoolean(props.getProperty(key));
     		} else if (ZooConstants.PROPERTY_FAIL_ON_CLOSED_QUERIES.equals(key)) {
     			failOnClosedQueries = Boolean.parseBoolean(props.getProperty(key));
+    		} else if (ZooConstants.PROPERTY_DURABILITY.equals(key)) {
+    			durability = parseDurability(props.getProperty(key));
+    		} else if (ZooConstants.PROPERTY_STREAMING_QUERIES.equals(key)) {
+    			streamingQueries = Boolean.parseBoolean(props.getProperty(key));
+    		} else if (ZooConstants.PROPERTY_PERSISTENCE_BY_REACHABILITY.equals(key)) {
+    			persistenceByReachability = Boolean.parseBoolean(props.getProperty(key));
     		} else {
     			//throw new IllegalArgumentException("Unknown key: " + key);
     			System.err.println("Property not recognised: " + key + "=" + props.getProperty(key));
@@ -252,6 +263,17 @@ public abstract class AbstractPersistenceManagerFactory
         return isOptimistic;
     }
 
+    @Override
+    public boolean getReadOnly() {
+    	return isReadOnly;
+    }
+    
+    @Override
+    public void setReadOnly(boolean flag) {
+    	checkFrozen();
+    	isReadOnly = flag;
+    }
+
     @Override
     public boolean getNontransactionalRead() {
         return nonTransactionalRead;
@@ -399,4 +421,40 @@ public abstract class AbstractPersistenceManagerFactory
 	public boolean getFailOnClosedQueries() {
 		return failOnClosedQueries;
 	}
+	
+	
+	/**
+	 * @return Whether to evaluate query results lazily.
+	 * @see  ZooConstants#PROPERTY_STREAMING_QUERIES
+	 */
+	public boolean getStreamingQueries() {
+		return streamingQueries;
+	}
+	
+	
+	/**
+	 * @return Whether new objects are made persistent by reachability.
+	 * @see  ZooConstants#PROPERTY_PERSISTENCE_BY_REACHABILITY
+	 */
+	public boolean getPersistenceByReachability() {
+		return persistenceByReachability;
+	}
+	
+	
+	/**
+	 * @return The durability mode.
+	 * @see  ZooConstants#PROPERTY_DURABILITY
+	 */
+	public DURABILITY getDurability() {
+		return durability;
+	}
+	
+	private static DURABILITY parseDurability(String mode) {
+		try {
+			return DURABILITY.valueOf(mode.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new JDOUserException("Illegal value for " + ZooConstants.PROPERTY_DURABILITY + 
+					": " + mode, e);
+		}
+	}
 }
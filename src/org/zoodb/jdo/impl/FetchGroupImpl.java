@@ -0,0 +1,310 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.jdo.impl;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jdo.FetchGroup;
+
+import org.zoodb.api.impl.ZooPC;
+import org.zoodb.internal.ZooFieldDef;
+import org.zoodb.internal.util.DBLogger;
+
+/**
+ * Fetch group implementation. Fetch groups are used by the {@link FetchPlanImpl} to decide
+ * which references are loaded together with an object. The members of a group apply
+ * to the class of the group and to its sub-classes.
+ *
+ * Categories are resolved via the declared fields of the class when they are added.
+ * Recursion depths are stored, but the depth of the loaded object graph is only limited by
+ * {@link FetchPlanImpl#getMaxFetchDepth()}. 
+ */
+public class FetchGroupImpl implements FetchGroup {
+
+	private static final int DEFAULT_RECURSION_DEPTH = 1;
+
+	private final Class<?> type;
+	private final String name;
+	private final Set<String> members = new HashSet<String>();
+	private final Map<String, Integer> recursionDepths = new HashMap<String, Integer>();
+	/** Whether the elements of DBCollections are members, they have no persistent fields */
+	private boolean containsContent = false;
+	private boolean postLoad = false;
+	private boolean isUnmodifiable = false;
+
+	FetchGroupImpl(Class<?> type, String name) {
+		if (type == null || name == null) {
+			throw DBLogger.newUser("Fetch groups require a class and a name.");
+		}
+		this.type = type;
+		this.name = name;
+		if (DEFAULT.equals(name)) {
+			addCategory(DEFAULT);
+		}
+	}
+
+	/**
+	 * Creates a modifiable copy of a fetch group.
+	 * @param group The original group
+	 */
+	FetchGroupImpl(FetchGroupImpl group) {
+		this.type = group.type;
+		this.name = group.name;
+		this.members.addAll(group.members);
+		this.recursionDepths.putAll(group.recursionDepths);
+		this.containsContent = group.containsContent;
+		this.postLoad = group.postLoad;
+	}
+
+	@Override
+	public int hashCode() {
+		return type.hashCode() ^ name.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof FetchGroup)) {
+			return false;
+		}
+		FetchGroup g = (FetchGroup) other;
+		return type == g.getType() && name.equals(g.getName());
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Class getType() {
+		return type;
+	}
+
+	@Override
+	public boolean getPostLoad() {
+		return postLoad;
+	}
+
+	@Override
+	public FetchGroup setPostLoad(boolean postLoad) {
+		checkModifiable();
+		this.postLoad = postLoad;
+		return this;
+	}
+
+	@Override
+	public FetchGroup addMember(String memberName) {
+		checkModifiable();
+		getField(memberName);
+		members.add(memberName);
+		return this;
+	}
+
+	@Override
+	public FetchGroup addMembers(String... memberNames) {
+		for (String m: memberNames) {
+			addMember(m);
+		}
+		return this;
+	}
+
+	@Override
+	public FetchGroup removeMember(String memberName) {
+		checkModifiable();
+		getField(memberName);
+		members.remove(memberName);
+		return this;
+	}
+
+	@Override
+	public FetchGroup removeMembers(String... memberNames) {
+		for (String m: memberNames) {
+			removeMember(m);
+		}
+		return this;
+	}
+
+	@Override
+	public FetchGroup addCategory(String categoryName) {
+		checkModifiable();
+		members.addAll(getCategory(categoryName));
+		if (!isBasicCategory(categoryName)) {
+			containsContent = true;
+		}
+		return this;
+	}
+
+	@Override
+	public FetchGroup removeCategory(String categoryName) {
+		checkModifiable();
+		members.removeAll(getCategory(categoryName));
+		if (!isBasicCategory(categoryName)) {
+			containsContent = false;
+		}
+		return this;
+	}
+
+	@Override
+	public FetchGroup setRecursionDepth(String memberName, int recursionDepth) {
+		checkModifiable();
+		if (!members.contains(memberName)) {
+			throw DBLogger.newUser("Not a member of fetch group '" + name + "': " + memberName);
+		}
+		recursionDepths.put(memberName, recursionDepth);
+		return this;
+	}
+
+	@Override
+	public int getRecursionDepth(String memberName) {
+		if (!members.contains(memberName)) {
+			return 0;
+		}
+		Integer d = recursionDepths.get(memberName);
+		return d == null ? DEFAULT_RECURSION_DEPTH : d;
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Set getMembers() {
+		return Collections.unmodifiableSet(members);
+	}
+
+	@Override
+	public FetchGroup setUnmodifiable() {
+		isUnmodifiable = true;
+		return this;
+	}
+
+	@Override
+	public boolean isUnmodifiable() {
+		return isUnmodifiable;
+	}
+
+	@Override
+	public String toString() {
+		return "FetchGroup(" + type.getName() + ", " + name + "): " + members;
+	}
+
+	/**
+	 * @param cls A class
+	 * @return Whether this group applies to the class.
+	 */
+	boolean appliesTo(Class<?> cls) {
+		return cls != null && type.isAssignableFrom(cls);
+	}
+
+	/**
+	 * @param f A field
+	 * @return Whether the field is a member of this group.
+	 */
+	boolean contains(ZooFieldDef f) {
+		return members.contains(f.getName()) && 
+				f.getJavaField() != null && 
+				f.getJavaField().getDeclaringClass().isAssignableFrom(type);
+	}
+
+	/**
+	 * @return Whether the elements of {@code DBCollection} instances are members.
+	 */
+	boolean containsContent() {
+		return containsContent;
+	}
+
+	private static boolean isBasicCategory(String categoryName) {
+		return DEFAULT.equals(categoryName) || BASIC.equals(categoryName);
+	}
+
+	private void checkModifiable() {
+		if (isUnmodifiable) {
+			throw DBLogger.newUser("This fetch group is unmodifiable: " + name);
+		}
+	}
+
+	private Field getField(String memberName) {
+		for (Class<?> c = type; c != null && c != ZooPC.class; c = c.getSuperclass()) {
+			for (Field f: c.getDeclaredFields()) {
+				if (f.getName().equals(memberName) && isPersistent(f)) {
+					return f;
+				}
+			}
+		}
+		throw DBLogger.newUser("Field not found in " + type.getName() + ": " + memberName);
+	}
+
+	private Set<String> getCategory(String categoryName) {
+		Set<String> ret = new HashSet<String>();
+		for (Class<?> c = type; c != null && c != ZooPC.class; c = c.getSuperclass()) {
+			for (Field f: c.getDeclaredFields()) {
+				if (!isPersistent(f)) {
+					continue;
+				}
+				boolean isMember;
+				if (ALL.equals(categoryName)) {
+					isMember = true;
+				} else if (isBasicCategory(categoryName)) {
+					isMember = isBasic(f);
+				} else if (RELATIONSHIP.equals(categoryName)) {
+					isMember = !isBasic(f);
+				} else if (MULTIVALUED.equals(categoryName)) {
+					isMember = isMultiValued(f);
+				} else {
+					throw DBLogger.newUser("Unknown fetch group category: " + categoryName);
+				}
+				if (isMember) {
+					ret.add(f.getName());
+				}
+			}
+		}
+		return ret;
+	}
+
+	private static boolean isPersistent(Field f) {
+		int mod = f.getModifiers();
+		return !Modifier.isStatic(mod) && !Modifier.isTransient(mod);
+	}
+
+	/**
+	 * @return Whether the field can not reference persistent objects.
+	 */
+	private static boolean isBasic(Field f) {
+		Class<?> t = f.getType();
+		while (t.isArray()) {
+			t = t.getComponentType();
+		}
+		return t.isPrimitive() || t == String.class || Number.class.isAssignableFrom(t) ||
+				t == Boolean.class || t == Character.class || t == java.util.Date.class ||
+				t.isEnum();
+	}
+
+	private static boolean isMultiValued(Field f) {
+		Class<?> t = f.getType();
+		return (t.isArray() || Collection.class.isAssignableFrom(t) ||
+				Map.class.isAssignableFrom(t)) && !isBasic(f);
+	}
+}
@@ -20,138 +20,223 @@
  */
 package org.zoodb.jdo.impl;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
 
 import javax.jdo.FetchPlan;
 
+import org.zoodb.internal.PrefetchPolicy;
+import org.zoodb.internal.ZooClassDef;
+import org.zoodb.internal.ZooFieldDef;
 import org.zoodb.internal.util.DBLogger;
 
-public class FetchPlanImpl implements FetchPlan {
+/**
+ * Fetch plan implementation.
+ * 
+ * Objects are always loaded with all their fields, references to other objects are 
+ * initially hollow. The fetch plan defines which of these references are loaded together
+ * with the results of queries and with {@code getObjectById()}. The fetch group 
+ * {@link FetchPlan#ALL} loads all references, the {@link FetchPlan#DEFAULT} group loads
+ * none. Other groups are defined via 
+ * {@link javax.jdo.PersistenceManager#getFetchGroup(Class, String)} or 
+ * {@link javax.jdo.PersistenceManagerFactory#addFetchGroups(javax.jdo.FetchGroup...)}.
+ * 
+ * The maximum fetch depth limits the number of reference levels that are loaded. 
+ * 
+ * @author Tilmann Zaeschke
+ */
+public class FetchPlanImpl implements FetchPlan, PrefetchPolicy {
+
+	private final PersistenceManagerImpl pm;
+	private final Set<String> groups = new HashSet<String>();
+	private int maxFetchDepth = 1;
+	private int fetchSize = FETCH_SIZE_OPTIMAL;
+	private int detachmentOptions = DETACH_LOAD_FIELDS;
+	private final ArrayList<Object> detachmentRoots = new ArrayList<Object>();
+	private Class<?>[] detachmentRootClasses = new Class<?>[0];
+
+	FetchPlanImpl(PersistenceManagerImpl pm) {
+		this.pm = pm;
+		groups.add(DEFAULT);
+	}
+
+	/**
+	 * Creates a copy of a fetch plan, for example for queries.
+	 * @param plan The original plan
+	 */
+	FetchPlanImpl(FetchPlanImpl plan) {
+		this.pm = plan.pm;
+		this.groups.addAll(plan.groups);
+		this.maxFetchDepth = plan.maxFetchDepth;
+		this.fetchSize = plan.fetchSize;
+		this.detachmentOptions = plan.detachmentOptions;
+		this.detachmentRoots.addAll(plan.detachmentRoots);
+		this.detachmentRootClasses = plan.detachmentRootClasses;
+	}
 
 	@Override
 	public FetchPlan addGroup(String fetchGroupName) {
-		//TODO
-		DBLogger.debugPrint(1, "STUB FecthPlanImpl");
+		groups.add(fetchGroupName);
 		return this;
 	}
 
 	@Override
 	public FetchPlan removeGroup(String fetchGroupName) {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return null;
+		groups.remove(fetchGroupName);
+		return this;
 	}
 
 	@Override
 	public FetchPlan clearGroups() {
-		//TODO
-		DBLogger.debugPrint(1, "STUB FecthPlanImpl");
+		groups.clear();
 		return this;
 	}
 
 	@SuppressWarnings("rawtypes")
 	@Override
 	public Set getGroups() {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return null;
+		return Collections.unmodifiableSet(new HashSet<String>(groups));
 	}
 
 	@SuppressWarnings("rawtypes")
 	@Override
 	public FetchPlan setGroups(Collection fetchGroupNames) {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return null;
+		groups.clear();
+		for (Object o: fetchGroupNames) {
+			groups.add((String) o);
+		}
+		return this;
 	}
 
 	@Override
 	public FetchPlan setGroups(String... fetchGroupNames) {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return null;
+		groups.clear();
+		Collections.addAll(groups, fetchGroupNames);
+		return this;
 	}
 
 	@Override
 	public FetchPlan setGroup(String fetchGroupName) {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return null;
+		groups.clear();
+		groups.add(fetchGroupName);
+		return this;
 	}
 
 	@Override
 	public FetchPlan setMaxFetchDepth(int fetchDepth) {
-		//TODO
-		DBLogger.debugPrint(1, "STUB FecthPlanImpl");
+		if (fetchDepth == 0 || fetchDepth < -1) {
+			throw DBLogger.newUser("Illegal fetch depth: " + fetchDepth);
+		}
+		this.maxFetchDepth = fetchDepth;
 		return this;
 	}
 
 	@Override
 	public int getMaxFetchDepth() {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return 0;
+		return maxFetchDepth;
 	}
 
 	@SuppressWarnings("rawtypes")
 	@Override
 	public FetchPlan setDetachmentRoots(Collection roots) {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return null;
+		detachmentRoots.clear();
+		for (Object o: roots) {
+			detachmentRoots.add(o);
+		}
+		return this;
 	}
 
 	@SuppressWarnings("rawtypes")
 	@Override
 	public Collection getDetachmentRoots() {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return null;
+		return Collections.unmodifiableList(detachmentRoots);
 	}
 
 	@SuppressWarnings("rawtypes")
 	@Override
 	public FetchPlan setDetachmentRootClasses(Class... rootClasses) {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return null;
+		detachmentRootClasses = rootClasses == null ? new Class<?>[0] : rootClasses.clone();
+		return this;
 	}
 
 	@SuppressWarnings("rawtypes")
 	@Override
 	public Class[] getDetachmentRootClasses() {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return null;
+		return detachmentRootClasses.clone();
 	}
 
+	/**
+	 * The fetch size is stored, but has no effect. Query results are loaded as a whole or,
+	 * for streaming queries, one object at a time.
+	 */
 	@Override
 	public FetchPlan setFetchSize(int fetchSize) {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return null;
+		if (fetchSize < FETCH_SIZE_GREEDY) {
+			throw DBLogger.newUser("Illegal fetch size: " + fetchSize);
+		}
+		this.fetchSize = fetchSize;
+		return this;
 	}
 
 	@Override
 	public int getFetchSize() {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return 0;
+		return fetchSize;
 	}
 
 	@Override
 	public FetchPlan setDetachmentOptions(int options) {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return null;
+		this.detachmentOptions = options;
+		return this;
 	}
 
 	@Override
 	public int getDetachmentOptions() {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return 0;
+		return detachmentOptions;
+	}
+
+	@Override
+	public boolean isPrefetchEnabled() {
+		if (groups.contains(ALL)) {
+			return true;
+		}
+		for (String name: groups) {
+			if (!pm.getFetchGroupsInternal(name).isEmpty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean isFetched(ZooClassDef def, ZooFieldDef field) {
+		if (groups.contains(ALL)) {
+			return true;
+		}
+		for (String name: groups) {
+			for (FetchGroupImpl g: pm.getFetchGroupsInternal(name)) {
+				if (g.appliesTo(def.getJavaClass()) && g.contains(field)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean isContentFetched(ZooClassDef def) {
+		if (groups.contains(ALL)) {
+			return true;
+		}
+		for (String name: groups) {
+			for (FetchGroupImpl g: pm.getFetchGroupsInternal(name)) {
+				if (g.appliesTo(def.getJavaClass()) && g.containsContent()) {
+					return true;
+				}
+			}
+		}
+		return false;
 	}
-
 }
@@ -20,7 +20,9 @@
  */
 package org.zoodb.jdo.impl;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -54,9 +56,10 @@ public class PersistenceManagerFactoryImpl
 	private static final long serialVersionUID = 1L;
 	private Set<PersistenceManagerImpl> pms = new HashSet<PersistenceManagerImpl>();
 	private boolean isClosed = false;
-	private boolean isReadOnly = false;
 	private static final StateInterrogation SI = new ZooStateInterrogator();
 	
+	/** Active fetch groups, these are unmodifiable */
+	private HashSet<FetchGroupImpl> fetchGroups = new HashSet<FetchGroupImpl>();
 	private HashMap<InstanceLifecycleListener, List<Class<?>>> lcListeners = 
 			new HashMap<InstanceLifecycleListener, List<Class<?>>>(); 
 	
@@ -125,14 +128,26 @@ public class PersistenceManagerFactoryImpl
         PersistenceManagerFactoryImpl pmf = 
             (PersistenceManagerFactoryImpl) super.clone();
         pmf.pms = new HashSet<PersistenceManagerImpl>(); //do not clone _pm!
+        synchronized (fetchGroups) {
+        	pmf.fetchGroups = new HashSet<FetchGroupImpl>(fetchGroups);
+        }
         return pmf;
     }
 
 	@Override
 	public void addFetchGroups(FetchGroup... arg0) {
 		checkOpen(); //? TZ
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+		synchronized (fetchGroups) {
+			for (FetchGroup g: arg0) {
+				if (!(g instanceof FetchGroupImpl)) {
+					throw new JDOUserException("Unknown fetch group type: " + g);
+				}
+				g.setUnmodifiable();
+				//replace groups with the same class and name
+				fetchGroups.remove(g);
+				fetchGroups.add((FetchGroupImpl) g);
+			}
+		}
 	}
 
 	@SuppressWarnings("rawtypes")
@@ -231,15 +246,51 @@ public class PersistenceManagerFactoryImpl
 	@SuppressWarnings("rawtypes")
 	@Override
 	public FetchGroup getFetchGroup(Class arg0, String arg1) {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+		FetchGroupImpl g = getActiveFetchGroup(arg0, arg1);
+		return g == null ? new FetchGroupImpl(arg0, arg1) : new FetchGroupImpl(g);
 	}
 
 	@SuppressWarnings("rawtypes")
 	@Override
 	public Set getFetchGroups() {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+		synchronized (fetchGroups) {
+			return Collections.unmodifiableSet(new HashSet<FetchGroup>(fetchGroups));
+		}
+	}
+
+	/**
+	 * @param cls The class
+	 * @param name The name of the group
+	 * @return The active fetch group or {@code null}.
+	 */
+	FetchGroupImpl getActiveFetchGroup(Class<?> cls, String name) {
+		synchronized (fetchGroups) {
+			for (FetchGroupImpl g: fetchGroups) {
+				if (g.getType() == cls && g.getName().equals(name)) {
+					return g;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param name The name of the groups
+	 * @return The active fetch groups with the given name, for all classes.
+	 */
+	List<FetchGroupImpl> getActiveFetchGroups(String name) {
+		synchronized (fetchGroups) {
+			if (fetchGroups.isEmpty()) {
+				return Collections.emptyList();
+			}
+			ArrayList<FetchGroupImpl> ret = new ArrayList<FetchGroupImpl>();
+			for (FetchGroupImpl g: fetchGroups) {
+				if (g.getName().equals(name)) {
+					ret.add(g);
+				}
+			}
+			return ret;
+		}
 	}
 
 	@Override
@@ -272,11 +323,6 @@ public class PersistenceManagerFactoryImpl
 		throw new UnsupportedOperationException();
 	}
 
-	@Override
-	public boolean getReadOnly() {
-		return isReadOnly;
-	}
-
 	@Override
 	public boolean getRestoreValues() {
 		// TODO Auto-generated method stub
@@ -309,15 +355,19 @@ public class PersistenceManagerFactoryImpl
 	@Override
 	public void removeAllFetchGroups() {
 		checkOpen(); //? TZ
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+		synchronized (fetchGroups) {
+			fetchGroups.clear();
+		}
 	}
 
 	@Override
 	public void removeFetchGroups(FetchGroup... arg0) {
 		checkOpen(); //? TZ
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+		synchronized (fetchGroups) {
+			for (FetchGroup g: arg0) {
+				fetchGroups.remove(g);
+			}
+		}
 	}
 
 	@Override
@@ -391,7 +441,7 @@ public class PersistenceManagerFactoryImpl
 	@Override
 	public void setReadOnly(boolean arg0) {
 		checkOpen();
-		isReadOnly = arg0;	
+		super.setReadOnly(arg0);
 	}
 
 	@Override
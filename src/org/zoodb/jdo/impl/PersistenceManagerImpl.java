@@ -20,11 +20,15 @@
  */
 package org.zoodb.jdo.impl;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -81,7 +85,10 @@ public class PersistenceManagerImpl implements PersistenceManager, SessionParent
     private final Session nativeConnection;
     private final SessionConfig cfg = new SessionConfig();
     
-    private final FetchPlan fetchplan = new FetchPlanImpl();
+    private final FetchPlanImpl fetchplan = new FetchPlanImpl(this);
+    /** Fetch groups of this PM, by name */
+    private final HashMap<String, ArrayList<FetchGroupImpl>> fetchGroups = 
+    		new HashMap<String, ArrayList<FetchGroupImpl>>();
     
     /**
      * @param props
@@ -94,6 +101,10 @@ public class PersistenceManagerImpl implements PersistenceManager, SessionParent
         cfg.setFailOnCloseQueries(factory.getFailOnClosedQueries());
         cfg.setDetachAllOnCommit(factory.getDetachAllOnCommit());
         cfg.setNonTransactionalRead(factory.getNontransactionalRead());
+        cfg.setReadOnly(factory.getReadOnly());
+        cfg.setDurability(factory.getDurability());
+        cfg.setStreamingQueries(factory.getStreamingQueries());
+        cfg.setPersistenceByReachability(factory.getPersistenceByReachability());
     	nativeConnection = new Session(this, factory.getConnectionURL(), cfg);
     	nativeConnection.setMultithreaded(factory.getMultithreaded());
         transaction = new TransactionImpl(this, 
@@ -390,7 +401,19 @@ public class PersistenceManagerImpl implements PersistenceManager, SessionParent
     public Collection getObjectsById(Collection oids) {
     	DBTracer.logCall(this, oids);
         checkOpen();
-        throw new UnsupportedOperationException();
+        Collection<?> oidColl = oids;
+        Object[] res = nativeConnection.getObjectsById(oidColl);
+        int i = 0;
+        for (Object oid: oidColl) {
+        	if (res[i++] == null) {
+        		throw new JDOObjectNotFoundException("OID=" + Util.oidToString(oid));
+        	}
+        }
+        List<Object> ret = Arrays.asList(res);
+        if (fetchplan.isPrefetchEnabled()) {
+        	nativeConnection.prefetch(ret, fetchplan);
+        }
+        return new ArrayList<Object>(ret);
     }
 
     /**
@@ -522,18 +545,61 @@ public class PersistenceManagerImpl implements PersistenceManager, SessionParent
 	public FetchGroup getFetchGroup(Class arg0, String arg1) {
     	DBTracer.logCall(this, arg0, arg1);
         checkOpen();
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+        ArrayList<FetchGroupImpl> list = fetchGroups.get(arg1);
+        if (list == null) {
+        	list = new ArrayList<FetchGroupImpl>();
+        	fetchGroups.put(arg1, list);
+        }
+        for (FetchGroupImpl g: list) {
+        	if (g.getType() == arg0) {
+        		return g;
+        	}
+        }
+        //create a modifiable copy of the group of the factory
+        FetchGroupImpl g = factory.getActiveFetchGroup(arg0, arg1);
+        g = g == null ? new FetchGroupImpl(arg0, arg1) : new FetchGroupImpl(g);
+        list.add(g);
+        return g;
+	}
+
+	/**
+	 * @param name Name of a fetch group
+	 * @return The fetch groups of this PM and the active fetch groups of the factory with the 
+	 * given name, for all classes.
+	 */
+	List<FetchGroupImpl> getFetchGroupsInternal(String name) {
+		List<FetchGroupImpl> ret = factory.getActiveFetchGroups(name);
+		ArrayList<FetchGroupImpl> list = fetchGroups.get(name);
+		if (list == null || list.isEmpty()) {
+			return ret;
+		}
+		if (ret.isEmpty()) {
+			return list;
+		}
+		//groups of the PM replace the groups of the factory
+		ArrayList<FetchGroupImpl> merged = new ArrayList<FetchGroupImpl>(list);
+		for (FetchGroupImpl g: ret) {
+			if (!list.contains(g)) {
+				merged.add(g);
+			}
+		}
+		return merged;
 	}
 
 	@Override
 	public FetchPlan getFetchPlan() {
     	DBTracer.logCall(this);
         checkOpen();
-        DBLogger.debugPrint(1, "STUB PersistenceManagerImpl.getFetchPlan()");
         return fetchplan;
 	}
 
+	/**
+	 * @return The fetch plan without checks.
+	 */
+	FetchPlanImpl getFetchPlanInternal() {
+		return fetchplan;
+	}
+
 	@Override
 	public boolean getIgnoreCache() {
     	DBTracer.logCall(this);
@@ -612,6 +678,9 @@ public class PersistenceManagerImpl implements PersistenceManager, SessionParent
         if (o == null) {
             throw new JDOObjectNotFoundException("OID=" + Util.oidToString(arg0));
         }
+        if (fetchplan.isPrefetchEnabled()) {
+        	nativeConnection.prefetch(Collections.singletonList(o), fetchplan);
+        }
         return o;
 	}
 
@@ -627,16 +696,16 @@ public class PersistenceManagerImpl implements PersistenceManager, SessionParent
 	public Object[] getObjectsById(Object[] arg0, boolean arg1) {
     	DBTracer.logCall(this, arg0, arg1);
         checkOpen();
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+        //objects are always validated, see getObjectById(Object, boolean)
+        return getObjectsById(arg0);
 	}
 
 	@Override
 	public Object[] getObjectsById(boolean arg0, Object... arg1) {
     	DBTracer.logCall(this, arg0, arg1);
         checkOpen();
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+        //objects are always validated, see getObjectById(Object, boolean)
+        return getObjectsById(arg1);
 	}
 
 	@Override
@@ -1049,8 +1118,8 @@ public class PersistenceManagerImpl implements PersistenceManager, SessionParent
 	public Collection getObjectsById(Collection arg0, boolean arg1) {
     	DBTracer.logCall(this, arg0, arg1);
         checkOpen();
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+        //objects are always validated, see getObjectById(Object, boolean)
+        return getObjectsById(arg0);
 	}
 	
 	/**
@@ -20,14 +20,17 @@
  */
 package org.zoodb.jdo.impl;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.StringTokenizer;
 import java.util.logging.Level;
 
@@ -38,14 +41,18 @@ import javax.jdo.ObjectState;
 import javax.jdo.PersistenceManager;
 import javax.jdo.Query;
 
+import org.zoodb.api.ZooConstants;
 import org.zoodb.api.impl.ZooPC;
 import org.zoodb.internal.Node;
+import org.zoodb.internal.SerializerTools.PRIMITIVE;
 import org.zoodb.internal.ZooClassDef;
 import org.zoodb.internal.ZooClassProxy;
 import org.zoodb.internal.ZooFieldDef;
 import org.zoodb.internal.client.session.ClientSessionCache;
 import org.zoodb.internal.query.QueryAdvice;
+import org.zoodb.internal.query.QueryAdvice.IndexRange;
 import org.zoodb.internal.query.QueryComparator;
+import org.zoodb.internal.query.QueryFilterIterator;
 import org.zoodb.internal.query.QueryMergingIterator;
 import org.zoodb.internal.query.QueryOptimizer;
 import org.zoodb.internal.query.QueryParameter;
@@ -56,10 +63,12 @@ import org.zoodb.internal.query.QueryTerm;
 import org.zoodb.internal.query.QueryTreeIterator;
 import org.zoodb.internal.query.QueryTreeNode;
 import org.zoodb.internal.query.TypeConverterTools;
+import org.zoodb.internal.server.index.LongLongIndex.LLEntry;
 import org.zoodb.internal.util.CloseableIterator;
 import org.zoodb.internal.util.DBLogger;
 import org.zoodb.internal.util.ObjectIdentitySet;
 import org.zoodb.internal.util.Pair;
+import org.zoodb.internal.util.PrimLongArrays;
 import org.zoodb.internal.util.SynchronizedROCollection;
 import org.zoodb.tools.DBStatistics;
 import org.zoodb.tools.DBStatistics.STATS;
@@ -78,6 +87,7 @@ public class QueryImpl implements Query {
 	// transient to satisfy findbugs (Query is Serializable, but _pm / _ext are not).
 	private transient PersistenceManagerImpl pm;
 	private transient Extent<?> ext;
+	private transient FetchPlanImpl fetchPlan;
 	private boolean isUnmodifiable = false;
 	private Class<?> candCls = ZooPC.class; //TODO good default?
 	private transient ZooClassDef candClsDef = null;
@@ -107,6 +117,9 @@ public class QueryImpl implements Query {
 	private QueryParameter rangeMaxParameter = null;
 	private String rangeStr = null;
 	
+	private Boolean isStreaming = null;
+	private transient SynchronizedROCollection<Object> lastStreamingResult = null;
+	
 	@SuppressWarnings("rawtypes")
 	public QueryImpl(PersistenceManagerImpl pm, Extent ext, String filter) {
 		this(pm);
@@ -127,6 +140,7 @@ public class QueryImpl implements Query {
 	public QueryImpl(PersistenceManagerImpl pm) {
 		this.pm = pm;
 		ignoreCache = pm.getIgnoreCache();
+		fetchPlan = new FetchPlanImpl(pm.getFetchPlanInternal());
 		pm.getSession().checkActiveRead();
 	}
 
@@ -229,6 +243,10 @@ public class QueryImpl implements Query {
 	@Override
 	public void addExtension(String key, Object value) {
 		checkUnmodifiable();
+		if (ZooConstants.PROPERTY_STREAMING_QUERIES.equals(key)) {
+			isStreaming = Boolean.parseBoolean(String.valueOf(value));
+			return;
+		}
 		// TODO Auto-generated method stub
 		throw new UnsupportedOperationException();
 	}
@@ -494,78 +512,167 @@ public class QueryImpl implements Query {
 		}
 	}
 	
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private void applyQueryOnExtent(List<Object> ret, QueryAdvice qa) {
-		QueryTreeNode queryTree = qa.getQuery();
-		Iterator<?> ext2;
-		if (!ignoreCache) {
-			ClientSessionCache cache = pm.getSession().internalGetCache();
-			cache.persistReachableObjects();
+	private void applyQueryOnExtent(List<Object> ret, Iterator<Object> it) {
+		while (it.hasNext()) {
+			ret.add(it.next());
 		}
-		if (qa.getIndex() != null) {
-			ext2 = pm.getSession().getPrimaryNode().readObjectFromIndex(qa.getIndex(),
-					qa.getMin(), qa.getMax(), !ignoreCache);
-			if (!ignoreCache) {
-				ClientSessionCache cache = pm.getSession().internalGetCache();
-				ArrayList<ZooPC> dirtyObjs = cache.getDirtyObjects();
-				if (!dirtyObjs.isEmpty()) {
-					QueryMergingIterator<ZooPC> qmi = new QueryMergingIterator();
-					qmi.add((Iterator<ZooPC>) ext2);
-					qmi.add(cache.iterator(candClsDef, subClasses, ObjectState.PERSISTENT_NEW));
-					ext2 = qmi;
-				}
+	}
+	
+	/**
+	 * Creates an iterator that evaluates the query lazily on the candidate objects.
+	 * @param qa The query advice
+	 * @return An iterator over all matching objects
+	 */
+	Iterator<Object> createResultIterator(QueryAdvice qa) {
+		//If the candidates come from a user-defined extent, we need to check the class
+		boolean checkClass = ext != null && !subClasses;
+		return new QueryFilterIterator(createCandidateIterator(qa), qa.getQueries(), 
+				checkClass ? candCls : null);
+	}
+	
+	/**
+	 * Creates an iterator over the union of the results of several sub-queries. If all 
+	 * sub-queries use the same index, their ranges are disjoint and are read in index order.
+	 * If they use different indices, the OIDs from the indices are merged before any object 
+	 * is loaded. Every object is loaded only once and returned if it matches any sub-query.
+	 * @return An iterator over all matching objects
+	 */
+	private Iterator<Object> createUnionResultIterator() {
+		ArrayList<QueryTreeNode> queries = new ArrayList<QueryTreeNode>();
+		boolean useIndices = true;
+		boolean isSameIndex = true;
+		QueryAdvice qa0 = indexToUse.get(0);
+		for (QueryAdvice qa: indexToUse) {
+			queries.addAll(qa.getQueries());
+			if (!qa.hasIndex()) {
+				useIndices = false;
+			}
+			if (qa.getIndex() != qa0.getIndex() || 
+					qa.getCompositeIndex() != qa0.getCompositeIndex()) {
+				isSameIndex = false;
 			}
+		}
+		
+		prepareCache();
+		Iterator<?> candidates;
+		if (useIndices && isSameIndex) {
+			//The ranges of the advices for one index do not overlap, see QueryOptimizer
+			QueryMergingIterator<ZooPC> qmi = new QueryMergingIterator<ZooPC>();
+			for (QueryAdvice qa: indexToUse) {
+				qmi.add(readObjects(qa));
+			}
+			candidates = addNewObjects(qmi);
+		} else if (useIndices) {
+			long[] oids = new long[0];
+			for (QueryAdvice qa: indexToUse) {
+				oids = PrimLongArrays.union(oids, readOids(qa));
+			}
+			candidates = addNewObjects(
+					pm.getSession().getPrimaryNode().readObjectFromOids(oids, !ignoreCache));
 		} else {
-			if (DBLogger.isLoggable(Level.FINE)) {
-				DBLogger.LOGGER.fine("query.execute() uses extent without index");
+			candidates = createExtentIterator();
+		}
+		boolean checkClass = ext != null && !subClasses;
+		return new QueryFilterIterator(candidates, queries, checkClass ? candCls : null);
+	}
+	
+	/**
+	 * @param qa The query advice
+	 * @return The sorted OIDs of all objects in the index range of the advice and in all 
+	 * index ranges that should be intersected with it.
+	 */
+	private long[] readOids(QueryAdvice qa) {
+		Node node = pm.getSession().getPrimaryNode();
+		long[] oids;
+		if (qa.getCompositeIndex() != null) {
+			oids = node.readOidsFromCompositeIndex(qa.getCompositeIndex(), 
+					qa.getMin(), qa.getMax());
+		} else {
+			oids = null;
+			String[] r = qa.getStringRange();
+			if (r != null) {
+				//null if the index does not store full String keys
+				oids = node.readOidsFromStringIndex(qa.getIndex(), r[0], r[1]);
 			}
-			if (DBStatistics.isEnabled()) {
-				pm.getSession().statsInc(STATS.QU_EXECUTED_WITHOUT_INDEX);
-				if (!ordering.isEmpty()) {
-					pm.getSession().statsInc(STATS.QU_EXECUTED_WITH_ORDERING_WITHOUT_INDEX);
-				}
+			if (oids == null) {
+				oids = node.readOidsFromIndex(qa.getIndex(), qa.getMin(), qa.getMax());
 			}
-			//use extent
-			if (ext != null) {
-				//use user-defined extent
-				ext2 = ext.iterator();
-			} else {
-				//create type extent
-				ext2 = new ExtentImpl(candCls, subClasses, pm, ignoreCache).iterator();
+		}
+		for (IndexRange r: qa.getIntersections()) {
+			if (oids.length == 0) {
+				break;
 			}
+			oids = PrimLongArrays.intersect(oids, 
+					node.readOidsFromIndex(r.getIndex(), r.getMin(), r.getMax()));
 		}
-		
-		if (ext != null && !subClasses) {
-			// normal iteration
-			while (ext2.hasNext()) {
-				Object o = ext2.next();
-				if (subClasses) {
-					if (!candCls.isAssignableFrom(o.getClass())) {
-						continue;
-					}
-				} else {
-					if (candCls != o.getClass()) {
-						continue;
-					}
-				}
-				boolean isMatch = queryTree.evaluate(o);
-				if (isMatch) {
-					ret.add(o);
-				}
+		return oids;
+	}
+	
+	private Iterator<?> createCandidateIterator(QueryAdvice qa) {
+		prepareCache();
+		if (qa.hasIndex()) {
+			return addNewObjects(readObjects(qa));
+		}
+		return createExtentIterator();
+	}
+	
+	/**
+	 * @param qa A query advice that uses an index
+	 * @return The objects in the index range of the advice
+	 */
+	private Iterator<ZooPC> readObjects(QueryAdvice qa) {
+		if (qa.getIndex() != null && qa.getIntersections().isEmpty() 
+				&& qa.getStringRange() == null) {
+			return pm.getSession().getPrimaryNode().readObjectFromIndex(qa.getIndex(),
+					qa.getMin(), qa.getMax(), !ignoreCache, false);
+		}
+		//Intersect the OIDs before loading any objects
+		return pm.getSession().getPrimaryNode().readObjectFromOids(readOids(qa), !ignoreCache);
+	}
+	
+	private void prepareCache() {
+		if (!ignoreCache) {
+			ClientSessionCache cache = pm.getSession().internalGetCache();
+			cache.persistReachableObjects();
+		}
+	}
+	
+	/**
+	 * Indices do not contain new objects. Unless the cache is ignored, new objects are 
+	 * added from the cache. 
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Iterator<?> addNewObjects(Iterator<ZooPC> it) {
+		if (!ignoreCache) {
+			ClientSessionCache cache = pm.getSession().internalGetCache();
+			ArrayList<ZooPC> dirtyObjs = cache.getDirtyObjects();
+			if (!dirtyObjs.isEmpty()) {
+				QueryMergingIterator<ZooPC> qmi = new QueryMergingIterator();
+				qmi.add(it);
+				qmi.add(cache.iterator(candClsDef, subClasses, ObjectState.PERSISTENT_NEW));
+				return qmi;
 			}
-		} else {
-			// normal iteration (ignoring the possibly existing compatible extent to allow indices)
-			while (ext2.hasNext()) {
-				Object o = ext2.next();
-				boolean isMatch = queryTree.evaluate(o);
-				if (isMatch) {
-					ret.add(o);
-				}
+		}
+		return it;
+	}
+	
+	private Iterator<?> createExtentIterator() {
+		if (DBLogger.isLoggable(Level.FINE)) {
+			DBLogger.LOGGER.fine("query.execute() uses extent without index");
+		}
+		if (DBStatistics.isEnabled()) {
+			pm.getSession().statsInc(STATS.QU_EXECUTED_WITHOUT_INDEX);
+			if (!ordering.isEmpty()) {
+				pm.getSession().statsInc(STATS.QU_EXECUTED_WITH_ORDERING_WITHOUT_INDEX);
 			}
 		}
-		if (ext2 instanceof CloseableIterator) {
-			((CloseableIterator)ext2).close();
+		//use extent
+		if (ext != null) {
+			//use user-defined extent
+			return ext.iterator();
 		}
+		//create type extent
+		return new ExtentImpl<>(candCls, subClasses, pm, ignoreCache).iterator();
 	}
 	
 	private void checkParamCount(int i) {
@@ -597,37 +704,37 @@ public class QueryImpl implements Query {
 
 			//assign parameters
 			assignParametersToQueryTree(queryTree);
+			
+			if (resultSettings != null) {
+				QueryResultProcessor rp = createResultProcessor();
+				ZooFieldDef f = getIndexOnlyField(rp, queryTree);
+				if (f != null) {
+					return runIndexOnlyAggregation(rp, f, queryTree);
+				}
+			}
+			
 			//This is only for indices, not for given extents
-			QueryOptimizer qo = new QueryOptimizer(candClsDef);
-			indexToUse = qo.determineIndexToUse(queryTree);
+			QueryOptimizer qo = 
+					new QueryOptimizer(candClsDef, pm.getSession().getPrimaryNode());
+			indexToUse = qo.determineIndexToUse(queryTree, ordering);
 
+			ZooFieldDef orderedIndex = getOrderedIndexScanField();
+			if (orderedIndex != null) {
+				return runOrderedIndexScan(indexToUse.get(0), orderedIndex);
+			}
+			
+			if (isStreamingPossible()) {
+				return postProcessStreaming(indexToUse.get(0));
+			}
+			
 			//TODO can also return a list with (yet) unknown size. In that case size() should return
 			//Integer.MAX_VALUE (JDO 2.2 14.6.1)
 			ArrayList<Object> ret = new ArrayList<Object>();
-			for (QueryAdvice qa: indexToUse) {
-				applyQueryOnExtent(ret, qa);
-			}
-
-			//Now check if we need to check for duplicates, i.e. if multiple indices were used.
-			for (QueryAdvice qa: indexToUse) {
-				if (qa.getIndex() != indexToUse.get(0).getIndex()) {
-					DBLogger.debugPrintln(0, "Merging query results(A)!");
-					System.out.println("Merging query results(A)!");
-					ObjectIdentitySet<Object> ret2 = new ObjectIdentitySet<Object>();
-					ret2.addAll(ret);
-					return postProcess(ret2);
-				}
-			}
-
-			//If we have more than one sub-query, we need to merge anyway, because the result sets may
-			//overlap. 
-			//TODO implement merging of sub-queries!!!
-			if (indexToUse.size() > 1) {
-				DBLogger.debugPrintln(0, "Merging query results(B)!");
-				System.out.println("Merging query results(B)!");
-				ObjectIdentitySet<Object> ret2 = new ObjectIdentitySet<Object>();
-				ret2.addAll(ret);
-				return postProcess(ret2);
+			if (indexToUse.size() == 1) {
+				applyQueryOnExtent(ret, createResultIterator(indexToUse.get(0)));
+			} else {
+				//Several sub-queries, merge them such that every object is loaded only once
+				applyQueryOnExtent(ret, createUnionResultIterator());
 			}
 
 			return postProcess(ret);
@@ -641,10 +748,224 @@ public class QueryImpl implements Query {
 		}
 	}
 
+	/**
+	 * Streaming is only possible if the query does not require the whole result, i.e. for
+	 * queries without ordering, result settings or uniqueness, and if the result does not
+	 * need to be merged from several sub-queries.
+	 */
+	private boolean isStreamingPossible() {
+		boolean streaming = isStreaming != null ? isStreaming : 
+			pm.getSession().getConfig().getStreamingQueries();
+		return streaming && indexToUse.size() == 1 && resultSettings == null && !unique 
+				&& ordering.isEmpty();
+	}
+	
+	/**
+	 * An ordered index scan is possible if the result is ordered by a single indexed field
+	 * and only the first part of the result is requested with a range. In that case the 
+	 * index is traversed in the requested order and the scan stops after the last object
+	 * of the range.
+	 * Only primitive fields qualify, because String keys are not fully ordered in the index.
+	 * Hash indices are not ordered at all.
+	 * @return The field whose index should be scanned or {@code null} if not possible.
+	 */
+	private ZooFieldDef getOrderedIndexScanField() {
+		if (ordering.size() != 1 || indexToUse.size() != 1 || ext != null 
+				|| resultSettings != null || unique) {
+			return null;
+		}
+		ZooFieldDef f = ordering.get(0).getA();
+		if (!f.isIndexed() || !f.isPrimitiveType() || f.isIndexHashed()) {
+			return null;
+		}
+		//The index also contains instances of the declaring class, which may be a super class
+		if (!f.getDeclaringType().getClassName().equals(candCls.getName())) {
+			return null;
+		}
+		ZooFieldDef index = indexToUse.get(0).getIndex();
+		if ((index != null && index != f) || indexToUse.get(0).getCompositeIndex() != null) {
+			return null;
+		}
+		resolveRange();
+		if (rangeMax == Long.MAX_VALUE) {
+			return null;
+		}
+		if (!isCacheClean()) {
+			return null;
+		}
+		return f;
+	}
+	
+	/**
+	 * Indices do not reflect modified or new objects. 
+	 * @return Whether the cache contains no modified or new objects.
+	 */
+	private boolean isCacheClean() {
+		ClientSessionCache cache = pm.getSession().internalGetCache();
+		if (!ignoreCache) {
+			cache.persistReachableObjects();
+		}
+		return cache.getDirtyObjects().isEmpty();
+	}
+	
+	/**
+	 * Aggregates can be computed from the keys of an attribute index alone if the filter
+	 * and all aggregated values refer only to the indexed field. The index must contain
+	 * exactly the candidate objects, i.e. the field must be declared in the candidate class
+	 * and the query must either include sub-classes or the class must not have sub-classes.
+	 * @param rp The result processor
+	 * @param tree The query or {@code null} if there is no filter
+	 * @return The field whose index should be used or {@code null} if not possible.
+	 */
+	private ZooFieldDef getIndexOnlyField(QueryResultProcessor rp, QueryTreeNode tree) {
+		if (rp.isProjection()) {
+			return null;
+		}
+		if (ext != null && !(ext instanceof ExtentImpl && ext.hasSubclasses() == subClasses)) {
+			return null;
+		}
+		if (!subClasses && !candClsDef.getVersionProxy().getSubClasses().isEmpty()) {
+			return null;
+		}
+		ZooFieldDef index = null;
+		for (ZooFieldDef f: candClsDef.getAllFields()) {
+			if (!f.isIndexed() || f.getDeclaringType() != candClsDef 
+					|| !rp.isIndexOnlyPossible(f)) {
+				continue;
+			}
+			if (tree != null && (!f.isPrimitiveType() || 
+					f.getPrimitiveType() == PRIMITIVE.BOOLEAN || !tree.isFieldValueQuery(f))) {
+				continue;
+			}
+			index = f;
+			break;
+		}
+		if (index == null || !isCacheClean()) {
+			return null;
+		}
+		return index;
+	}
+	
+	private Object runIndexOnlyAggregation(QueryResultProcessor rp, ZooFieldDef field, 
+			QueryTreeNode tree) {
+		long[] range = new long[]{Long.MIN_VALUE, Long.MAX_VALUE};
+		if (tree != null) {
+			range = QueryOptimizer.determineKeyRange(tree, field);
+		}
+		if (range[0] > range[1]) {
+			return rp.processResultAggregation(
+					Collections.<LLEntry>emptyIterator(), tree, field);
+		}
+		//aggregate while iterating, the keys are never copied
+		CloseableIterator<LLEntry> keys = pm.getSession().getPrimaryNode().readKeysFromIndex(
+				field, range[0], range[1]);
+		try {
+			return rp.processResultAggregation(keys, tree, field);
+		} finally {
+			keys.close();
+		}
+	}
+	
+	private QueryResultProcessor createResultProcessor() {
+		return new QueryResultProcessor(resultSettings, candCls, candClsDef, resultClass);
+	}
+	
+	private Object runOrderedIndexScan(QueryAdvice qa, ZooFieldDef field) {
+		long min = Long.MIN_VALUE;
+		long max = Long.MAX_VALUE;
+		if (qa.getIndex() == field) {
+			min = qa.getMin();
+			max = qa.getMax();
+		}
+		boolean ascending = ordering.get(0).getB();
+		Iterator<ZooPC> it = pm.getSession().getPrimaryNode().readObjectFromIndex(
+				field, min, max, !ignoreCache, !ascending);
+		QueryFilterIterator qfi = 
+				new QueryFilterIterator(it, qa.getQueries(), subClasses ? null : candCls);
+		ArrayList<Object> ret = new ArrayList<Object>();
+		while (ret.size() < rangeMax && qfi.hasNext()) {
+			ret.add(qfi.next());
+		}
+		qfi.close();
+		prefetch(ret);
+		return new SynchronizedROCollection<>(ret, pm.getSession(), rangeMin, rangeMax);
+	}
+	
+	private Object postProcessStreaming(QueryAdvice qa) {
+		resolveRange();
+		
+		//The result is evaluated lazily with the current parameters. Executing the query 
+		//again invalidates previous results.
+		closeStreamingResult();
+		lastStreamingResult = new SynchronizedROCollection<Object>(
+				new StreamingQueryResult<Object>(this, qa), pm.getSession(), rangeMin, rangeMax);
+		return lastStreamingResult;
+	}
+	
+	private void closeStreamingResult() {
+		if (lastStreamingResult != null) {
+			try {
+				lastStreamingResult.close();
+			} catch (IOException e) {
+				throw DBLogger.newFatal("Error closing query result.", e);
+			}
+			lastStreamingResult = null;
+		}
+	}
+	
+	/**
+	 * Returns the first {@code k} objects of the ordered collection without sorting the whole 
+	 * collection. A bounded max-heap keeps the {@code k} smallest objects seen so far. Ties are
+	 * resolved by position in the collection, so the result is the same as with a stable sort.
+	 * @param c The unordered collection
+	 * @param k The number of objects to return
+	 * @return An ordered list of the first {@code k} objects 
+	 */
+	private List<Object> sortTopK(Collection<Object> c, int k) {
+		ArrayList<Object> ret = new ArrayList<Object>(Math.max(k, 0));
+		if (k <= 0) {
+			return ret;
+		}
+		final QueryComparator<Object> comp = new QueryComparator<Object>(ordering);
+		PriorityQueue<Pair<Object, Integer>> heap = new PriorityQueue<Pair<Object, Integer>>(
+				k + 1, new Comparator<Pair<Object, Integer>>() {
+			@Override
+			public int compare(Pair<Object, Integer> o1, Pair<Object, Integer> o2) {
+				//reversed order -> the largest object is at the head 
+				int res = comp.compare(o2.getA(), o1.getA());
+				return res != 0 ? res : o2.getB().compareTo(o1.getB());
+			}
+		});
+		int pos = 0;
+		for (Object o: c) {
+			if (heap.size() < k) {
+				heap.add(new Pair<Object, Integer>(o, pos));
+			} else if (comp.compare(o, heap.peek().getA()) < 0) {
+				heap.poll();
+				heap.add(new Pair<Object, Integer>(o, pos));
+			}
+			pos++;
+		}
+		while (!heap.isEmpty()) {
+			ret.add(heap.poll().getA());
+		}
+		Collections.reverse(ret);
+		return ret;
+	}
+	
+	private void resolveRange() {
+		if (rangeMinParameter != null) {
+			rangeMin = TypeConverterTools.toLong(rangeMinParameter.getValue());
+		}
+		if (rangeMaxParameter != null) {
+			rangeMax = TypeConverterTools.toLong(rangeMaxParameter.getValue());
+		}
+	}
+	
 	private Object postProcess(Collection<Object> c) {
+		resolveRange();
 		if (resultSettings != null) {
-			QueryResultProcessor rp = 
-					new QueryResultProcessor(resultSettings, candCls, candClsDef, resultClass);
+			QueryResultProcessor rp = createResultProcessor();
 			if (rp.isProjection()) {
 				c = rp.processResultProjection(c.iterator(), unique);
 			} else {
@@ -661,6 +982,7 @@ public class QueryImpl implements Query {
 				if (iter.hasNext()) {
 					throw new JDOUserException("Too many results found in unique query.");
 				}
+				prefetch(Collections.singletonList(ret));
 				return ret;
 			} else {
 				//no result found
@@ -668,24 +990,38 @@ public class QueryImpl implements Query {
 			}
 		}
 		if (ordering != null && !ordering.isEmpty()) {
-			if (!(c instanceof List)) {
-				c = new ArrayList<>(c);
+			if (rangeMax < c.size()) {
+				//only the first part of the result is required
+				c = sortTopK(c, (int) rangeMax);
+			} else {
+				if (!(c instanceof List)) {
+					c = new ArrayList<>(c);
+				}
+				Collections.sort((List<Object>) c, new QueryComparator<Object>(ordering));
 			}
-			Collections.sort((List<Object>) c, new QueryComparator<Object>(ordering));
-		}
-		
-		//get range
-		if (rangeMinParameter != null) {
-			rangeMin = TypeConverterTools.toLong(rangeMinParameter.getValue());
-		}
-		if (rangeMaxParameter != null) {
-			rangeMax = TypeConverterTools.toLong(rangeMaxParameter.getValue());
 		}
 		
+		prefetch(c);
 		//To void remove() calls
 		return new SynchronizedROCollection<>(c, pm.getSession(), rangeMin, rangeMax);
 	}
 	
+	/**
+	 * Loads the objects that are referenced by the result, as defined by the fetch plan.
+	 * Only results that are already loaded are considered, i.e. lists. Results that are 
+	 * evaluated lazily, such as extents or streaming results, are not prefetched.
+	 * @param c The result
+	 */
+	private void prefetch(Collection<?> c) {
+		if (!(c instanceof List) || !fetchPlan.isPrefetchEnabled()) {
+			return;
+		}
+		List<?> list = (List<?>) c;
+		int min = (int) Math.min(rangeMin, list.size());
+		int max = (int) Math.max(min, Math.min(rangeMax, list.size()));
+		pm.getSession().prefetch(list.subList(min, max), fetchPlan);
+	}
+	
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Override
 	public Object execute() {
@@ -695,6 +1031,16 @@ public class QueryImpl implements Query {
 			try {
 				pm.getSession().lock();
 				pm.getSession().checkActiveRead();
+				if (resultSettings != null) {
+					QueryResultProcessor rp = createResultProcessor();
+					ZooFieldDef f = getIndexOnlyField(rp, null);
+					if (f != null) {
+						if (DBStatistics.isEnabled()) {
+							pm.getSession().statsInc(STATS.QU_EXECUTED_TOTAL);
+						}
+						return runIndexOnlyAggregation(rp, f, null);
+					}
+				}
 				if (!ignoreCache) {
 					ClientSessionCache cache = pm.getSession().internalGetCache();
 					cache.persistReachableObjects();
@@ -770,8 +1116,7 @@ public class QueryImpl implements Query {
 
 	@Override
 	public FetchPlan getFetchPlan() {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+		return fetchPlan;
 	}
 
 	@Override
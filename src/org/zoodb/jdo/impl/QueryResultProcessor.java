@@ -27,6 +27,9 @@ import java.util.Iterator;
 import org.zoodb.internal.SerializerTools.PRIMITIVE;
 import org.zoodb.internal.ZooClassDef;
 import org.zoodb.internal.ZooFieldDef;
+import org.zoodb.internal.query.QueryTreeNode;
+import org.zoodb.internal.server.index.BitTools;
+import org.zoodb.internal.server.index.LongLongIndex.LLEntry;
 import org.zoodb.internal.util.DBLogger;
 
 /**
@@ -120,22 +123,54 @@ class QueryResultProcessor {
 			}
 		}
 		abstract void add(Object o);
+		/**
+		 * Adds the value of an index entry of the field. 
+		 * @param key The index key 
+		 */
+		void addKey(long key) {
+			throw new UnsupportedOperationException();
+		}
 		abstract Object result();
 	}
 	
-	private static class AVG extends Item {
-		private double d;
-		private long l;
-		long n;
+	/**
+	 * Aggregates of numeric values. These can be computed from the keys of an index.
+	 */
+	private static abstract class Aggregate extends Item {
 		@Override
 		void add(Object o) {
-			n++;
 			if (isFloat) {
-				d += getFloat(o);
+				addFloat(getFloat(o));
 			} else {
-				l += getInt(o);
+				addInt(getInt(o));
+			}
+		}
+		@Override
+		void addKey(long key) {
+			switch (field.getPrimitiveType()) {
+			case DOUBLE: addFloat(BitTools.toDouble(key)); break;
+			case FLOAT: addFloat(BitTools.toFloat(key)); break;
+			default: addInt(key);
 			}
 		}
+		abstract void addInt(long i);
+		abstract void addFloat(double d);
+	}
+	
+	private static class AVG extends Aggregate {
+		private double d;
+		private long l;
+		long n;
+		@Override
+		void addInt(long i) {
+			n++;
+			l += i;
+		}
+		@Override
+		void addFloat(double d2) {
+			n++;
+			d += d2;
+		}
 		@Override
 		Object result() {
 			if (isFloat) {
@@ -148,21 +183,19 @@ class QueryResultProcessor {
 		}
 	}
 
-	private static class MAX extends Item {
+	private static class MAX extends Aggregate {
 		private double d = Double.NEGATIVE_INFINITY;
 		private long l = Long.MIN_VALUE;
 		@Override
-		void add(Object o) {
-			if (isFloat) {
-				double d2 = getFloat(o);
-				if (d2 > d) {
-					d = d2;
-				}
-			} else {
-				long i2 = getInt(o);
-				if (i2 > l) {
-					l = i2;
-				}
+		void addInt(long i2) {
+			if (i2 > l) {
+				l = i2;
+			}
+		}
+		@Override
+		void addFloat(double d2) {
+			if (d2 > d) {
+				d = d2;
 			}
 		}
 		@Override
@@ -175,21 +208,19 @@ class QueryResultProcessor {
 		}
 	}
 	
-	private static class MIN extends Item {
+	private static class MIN extends Aggregate {
 		private double d = Double.MAX_VALUE;
 		private long l = Long.MAX_VALUE;
 		@Override
-		void add(Object o) {
-			if (isFloat) {
-				double d2 = getFloat(o);
-				if (d2 < d) {
-					d = d2;
-				}
-			} else {
-				long i2 = getInt(o);
-				if (i2 < l) {
-					l = i2;
-				}
+		void addInt(long i2) {
+			if (i2 < l) {
+				l = i2;
+			}
+		}
+		@Override
+		void addFloat(double d2) {
+			if (d2 < d) {
+				d = d2;
 			}
 		}
 		@Override
@@ -202,16 +233,16 @@ class QueryResultProcessor {
 		}
 	}
 	
-	private static class SUM extends Item {
+	private static class SUM extends Aggregate {
 		private double d;
 		private long l;
 		@Override
-		void add(Object o) {
-			if (isFloat) {
-				d += getFloat(o);
-			} else {
-				l += getInt(o);
-			}
+		void addInt(long i) {
+			l += i;
+		}
+		@Override
+		void addFloat(double d2) {
+			d += d2;
 		}
 		@Override
 		Object result() {
@@ -230,6 +261,10 @@ class QueryResultProcessor {
 			n++;
 		}
 		@Override
+		void addKey(long key) {
+			n++;
+		}
+		@Override
 		Object result() {
 			return n;
 		}
@@ -310,11 +345,14 @@ class QueryResultProcessor {
 			}
 			
 			items.add(item);
-			ZooFieldDef def = candClsDef.getAllFieldsAsMap().get(fieldName);
-			if (def == null) {
-				throw DBLogger.newUser("Invalid fieldname in result definition: " + fieldName);
+			//count(this) has no field
+			if (!(item instanceof COUNT) || !fieldName.equals("this")) {
+				ZooFieldDef def = candClsDef.getAllFieldsAsMap().get(fieldName);
+				if (def == null) {
+					throw DBLogger.newUser("Invalid fieldname in result definition: " + fieldName);
+				}
+				item.setField(def, resultClass);//getField(candCls, candClsDef, fieldName));
 			}
-			item.setField(def, resultClass);//getField(candCls, candClsDef, fieldName));
 
 			if (!data.isEmpty() && data.charAt(0) == ',') {
 				data = data.substring(1).trim();
@@ -369,6 +407,33 @@ class QueryResultProcessor {
 				i.add(o);
 			}
 		}
+		return aggregationResult();
+	}
+
+	/**
+	 * Computes the aggregates from the keys of an attribute index without loading any objects.
+	 * This is only valid if {@link #isIndexOnlyPossible(ZooFieldDef)} returns {@code true}.
+	 * @param keys The index entries, one entry per candidate object
+	 * @param filter A query that is evaluated on the field values of the keys, may be 
+	 * {@code null}
+	 * @param index The indexed field
+	 * @return The result of the aggregation
+	 */
+	Object processResultAggregation(Iterator<LLEntry> keys, QueryTreeNode filter, 
+			ZooFieldDef index) {
+		while (keys.hasNext()) {
+			long key = keys.next().getKey();
+			if (filter != null && !filter.evaluateFieldValue(keyToValue(index, key))) {
+				continue;
+			}
+			for (Item i: items) {
+				i.addKey(key);
+			}
+		}
+		return aggregationResult();
+	}
+	
+	private Object aggregationResult() {
 		//prepare returning results
 		if (items.size() == 1) {
 			return items.get(0).result();
@@ -384,4 +449,39 @@ class QueryResultProcessor {
 	boolean isProjection() {
 		return isProjection;
 	}
+	
+	/**
+	 * @param index An indexed field
+	 * @return Whether the result can be computed from the keys of the index alone. This is the
+	 * case if all items are counts or numeric aggregates of the indexed field. 
+	 */
+	boolean isIndexOnlyPossible(ZooFieldDef index) {
+		if (isProjection || items.isEmpty()) {
+			return false;
+		}
+		for (Item i: items) {
+			if (i instanceof COUNT) {
+				continue;
+			}
+			if (i.field != index || !index.isPrimitiveType() || 
+					index.getPrimitiveType() == PRIMITIVE.BOOLEAN) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static Object keyToValue(ZooFieldDef field, long key) {
+		switch (field.getPrimitiveType()) {
+		case BYTE: return (byte)key;
+		case CHAR: return (char)key;
+		case DOUBLE: return BitTools.toDouble(key);
+		case FLOAT: return BitTools.toFloat(key);
+		case INT: return (int)key;
+		case LONG: return key;
+		case SHORT: return (short)key;
+		default:
+			throw new UnsupportedOperationException(field.getPrimitiveType().name());
+		}
+	}
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.jdo.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+
+import org.zoodb.internal.query.QueryAdvice;
+import org.zoodb.internal.util.CloseableIterator;
+
+/**
+ * Result of a streaming query. The query is evaluated lazily while the result is iterated,
+ * every call to {@link #iterator()} evaluates the query again. 
+ * Calling {@code size()}, {@code contains()} or {@code toArray()} loads all results into 
+ * memory.
+ * 
+ * @param <E> The result type
+ */
+public class StreamingQueryResult<E> implements Collection<E> {
+
+	private final QueryImpl query;
+	private final QueryAdvice qa;
+	private ArrayList<E> materializedList = null;
+	
+	StreamingQueryResult(QueryImpl query, QueryAdvice qa) {
+		this.query = query;
+		this.qa = qa;
+	}
+
+	private ArrayList<E> materialize() {
+		//WARNING: this loads all results into memory!
+		if (materializedList == null) {
+			//iterator() returns the materialized list once it is set, so fill it first
+			ArrayList<E> list = new ArrayList<>();
+			Iterator<E> it = iterator();
+			while (it.hasNext()) {
+				list.add(it.next());
+			}
+			materializedList = list;
+		}
+		return materializedList;
+	}
+	
+	@Override
+	public int size() {
+		return materialize().size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		if (materializedList != null) {
+			return materializedList.isEmpty();
+		}
+		//Only the first result is needed, close the iterator to release the index iterators
+		Iterator<E> it = iterator();
+		try {
+			return !it.hasNext();
+		} finally {
+			if (it instanceof CloseableIterator) {
+				((CloseableIterator<?>)it).close();
+			}
+		}
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return materialize().contains(o);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Iterator<E> iterator() {
+		if (materializedList != null) {
+			return materializedList.iterator();
+		}
+		return (Iterator<E>) query.createResultIterator(qa);
+	}
+
+	@Override
+	public Object[] toArray() {
+		return materialize().toArray();
+	}
+
+	@Override
+	public <T> T[] toArray(T[] a) {
+		return materialize().toArray(a);
+	}
+
+	@Override
+	public boolean add(E e) {
+		throw new UnsupportedOperationException("Query results are immutable.");
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		throw new UnsupportedOperationException("Query results are immutable.");
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		return materialize().containsAll(c);
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends E> c) {
+		throw new UnsupportedOperationException("Query results are immutable.");
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		throw new UnsupportedOperationException("Query results are immutable.");
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		throw new UnsupportedOperationException("Query results are immutable.");
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("Query results are immutable.");
+	}
+}
@@ -44,11 +44,31 @@ public interface ZooClass {
 	 */
 	public abstract void createIndex(String fieldName, boolean isUnique);
 
+	/**
+	 * Creates a unique hash index on the specified field for the current class and all 
+	 * sub-classes. Short for {@link ZooClass#getField(String)}.createHashIndex(). 
+	 * @see ZooField#createHashIndex()
+	 */
+	public abstract void createHashIndex(String fieldName);
+
 	/**
 	 * Short for {@link ZooClass#getField(String)}.removeIndex(). 
 	 */
 	public abstract boolean removeIndex(String fieldName);
 
+	/**
+	 * Short for {@link ZooClass#getField(String)}.rebuildIndex(). 
+	 * @see ZooField#rebuildIndex()
+	 */
+	public abstract void rebuildIndex(String fieldName);
+
+	/**
+	 * Rebuilds all indices of the class, including composite indices. Indices of fields
+	 * that are declared in super-classes are not rebuilt.
+	 * @see ZooField#rebuildIndex()
+	 */
+	public abstract void rebuildIndices();
+
 	/**
 	 * Short for {@link ZooClass#getField(String)}.hasIndex(). 
 	 */
@@ -59,6 +79,33 @@ public interface ZooClass {
 	 */
 	public abstract boolean isIndexUnique(String fieldName);
 
+	/**
+	 * Short for {@link ZooClass#getField(String)}.isIndexHashed(). 
+	 */
+	public abstract boolean isIndexHashed(String fieldName);
+
+	/**
+	 * Creates a composite index on the specified fields for the current class and all 
+	 * sub-classes. The index is ordered by the first field, then by the second field and so on.
+	 * It can be used by queries that compare the leading fields for equality and the following
+	 * field with a range, for example {@code tenantId == t && timestamp > x}.
+	 * Composite indices are never unique.
+	 * @param fieldNames The names of the 2 to 4 indexed fields, in order of significance
+	 */
+	public abstract void createCompositeIndex(String ... fieldNames);
+
+	/**
+	 * @param fieldNames The names of the indexed fields, in the order of index creation
+	 * @return {@code true} if the index was removed, {@code false} if there was no such index.
+	 */
+	public abstract boolean removeCompositeIndex(String ... fieldNames);
+
+	/**
+	 * @param fieldNames The names of the indexed fields, in the order of index creation
+	 * @return Whether there is a composite index on exactly these fields.
+	 */
+	public abstract boolean hasCompositeIndex(String ... fieldNames);
+
 	/**
 	 * Drops all instances of the class. This does not affect cached instances
 	 */
@@ -38,12 +38,29 @@ public interface ZooField {
 	 */
 	public abstract void createIndex(boolean isUnique);
 
+	/**
+	 * Creates a unique hash index on the specified field for the current class and all 
+	 * sub-classes. Hash indices are faster than normal indices for queries that compare the
+	 * field with a single value, for example {@code id == x}, but they cannot be used for range
+	 * queries or for ordering. Hash indices are not supported for String fields.
+	 */
+	public abstract void createHashIndex();
+
 	public abstract boolean removeIndex();
 
+	/**
+	 * Rebuilds the index of the field from the objects in the database. The index is rebuilt 
+	 * during commit. Rebuilt indices are fully packed and use less space than indices that 
+	 * have been updated over a long time.
+	 */
+	public abstract void rebuildIndex();
+
 	public abstract boolean hasIndex();
 
 	public abstract boolean isIndexUnique();
 
+	public abstract boolean isIndexHashed();
+
 
 	public abstract void rename(String name);
 
@@ -41,6 +41,18 @@ public class DBStatistics {
 		/** Data page (only stored objects) read access counter. 
 		 * Counts only unique access (each page counted only once). */
 		IO_DATA_PAGE_READ_CNT_UNQ(true), 
+		/** Page cache hit counter. */
+		IO_PAGE_CACHE_HIT_CNT(true),
+		/** Page cache miss counter. Each miss results in a read from the file. */
+		IO_PAGE_CACHE_MISS_CNT(true),
+		/** Page cache eviction counter. */
+		IO_PAGE_CACHE_EVICT_CNT(true),
+		/** Number of index pages loaded from the database file. */
+		IDX_PAGE_LOAD_CNT(true),
+		/** Number of index pages evicted from memory, see {@link ZooConfig#setIndexPageBudget}. */
+		IDX_PAGE_EVICT_CNT(true),
+		/** Number of index pages in memory. */
+		IDX_PAGE_RESIDENT_CNT(true),
 		
 		/** Number of pages used by free space manager. */
 		DB_PAGE_CNT_IDX_FSM(true), 
@@ -127,6 +139,44 @@ public class DBStatistics {
 		return s.getPrimaryNode().getStats(STATS.IO_DATA_PAGE_READ_CNT_UNQ);
 	}
 
+	public long getStoragePageCacheHitCount() {
+		return s.getPrimaryNode().getStats(STATS.IO_PAGE_CACHE_HIT_CNT);
+	}
+
+	public long getStoragePageCacheMissCount() {
+		return s.getPrimaryNode().getStats(STATS.IO_PAGE_CACHE_MISS_CNT);
+	}
+
+	public long getStoragePageCacheEvictionCount() {
+		return s.getPrimaryNode().getStats(STATS.IO_PAGE_CACHE_EVICT_CNT);
+	}
+
+	/**
+	 * 
+	 * @return Number of index pages that were loaded from the database file. This is only
+	 * counted while statistics are enabled.
+	 */
+	public long getIndexPageLoadCount() {
+		return s.getPrimaryNode().getStats(STATS.IDX_PAGE_LOAD_CNT);
+	}
+
+	/**
+	 * 
+	 * @return Number of index pages that were evicted from memory because the index page
+	 * budget was exceeded.
+	 */
+	public long getIndexPageEvictionCount() {
+		return s.getPrimaryNode().getStats(STATS.IDX_PAGE_EVICT_CNT);
+	}
+
+	/**
+	 * 
+	 * @return Approximate number of index pages in memory.
+	 */
+	public long getIndexPageResidentCount() {
+		return s.getPrimaryNode().getStats(STATS.IDX_PAGE_RESIDENT_CNT);
+	}
+
 	public long getQueryCompileCount() {
 		return s.getStats(STATS.QU_COMPILED);
 	}
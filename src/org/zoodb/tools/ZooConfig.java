@@ -15,22 +15,39 @@ public class ZooConfig {
 	public static final String FILE_PAF_BB = preServer + "StorageRootFile";
 	//public static final String FILE_PAF_BB = preServer + "StorageInMemory";
 	public static final String FILE_PAF_IN_MEMORY = preServer + "StorageRootInMemory";
+	/** Memory mapped database file. */
+	public static final String FILE_PAF_MAPPED = preServer + "StorageRootMapped";
 
 	public static final String FILE_MGR_IN_MEMORY = preZoo + "tools.impl.DataStoreManagerInMemory";
 	public static final String FILE_MGR_ONE_FILE = preZoo + "tools.impl.DataStoreManagerOneFile";
 	//public static final String FILE_MGR_ONE_FILE = FILE_MGR_IN_MEMORY; 
 
 	public static final int FILE_PAGE_SIZE_DEFAULT = 1024*4;  //bytes
+	public static final int PAGE_CACHE_SIZE_DEFAULT = 1024;  //pages
+	public static final int COMMIT_GROUP_WINDOW_DEFAULT = 0;  //ms
+	public static final int READ_AHEAD_PAGES_DEFAULT = 0;  //pages
+	public static final int INDEX_BUILD_THREADS_DEFAULT = 0;  //0 = one per processor
+	public static final int INDEX_PAGE_BUDGET_DEFAULT = 1024*16;  //pages
 
 	
 	private static String fileDefault = FILE_PAF_BB;
 	private static String fileManagerDefault = FILE_MGR_ONE_FILE;
 	private static int defaultPageSize = FILE_PAGE_SIZE_DEFAULT;
+	private static int pageCacheSize = PAGE_CACHE_SIZE_DEFAULT;
+	private static int commitGroupWindow = COMMIT_GROUP_WINDOW_DEFAULT;
+	private static int readAheadPages = READ_AHEAD_PAGES_DEFAULT;
+	private static int indexBuildThreads = INDEX_BUILD_THREADS_DEFAULT;
+	private static int indexPageBudget = INDEX_PAGE_BUDGET_DEFAULT;
 
 	public static void setDefaults() {
 		fileDefault = FILE_PAF_BB;
 		fileManagerDefault = FILE_MGR_ONE_FILE;
 		defaultPageSize = FILE_PAGE_SIZE_DEFAULT;
+		pageCacheSize = PAGE_CACHE_SIZE_DEFAULT;
+		commitGroupWindow = COMMIT_GROUP_WINDOW_DEFAULT;
+		readAheadPages = READ_AHEAD_PAGES_DEFAULT;
+		indexBuildThreads = INDEX_BUILD_THREADS_DEFAULT;
+		indexPageBudget = INDEX_PAGE_BUDGET_DEFAULT;
 	}
 	
 	public static void setFileManager(String className) {
@@ -42,6 +59,15 @@ public class ZooConfig {
 		}
 	}
 
+	/**
+	 * Set the StorageChannel implementation for database files, for example 
+	 * {@link #FILE_PAF_MAPPED}. The setting takes effect when a database file is opened.
+	 * @param className the StorageChannel class name
+	 */
+	public static void setFileProcessor(String className) {
+		fileDefault = className;
+	}
+
 	public static String getFileProcessor() {
 		return fileDefault;
 	}
@@ -61,4 +87,75 @@ public class ZooConfig {
 	public static void setFilePageSize(int pageSize) {
 		defaultPageSize = pageSize;
 	}
+
+	public static int getPageCacheSize() {
+		return pageCacheSize;
+	}
+
+	/**
+	 * Set the size of the page cache that is shared by all sessions on a database file. 
+	 * The setting takes effect when a database file is opened.
+	 * @param nPages maximum number of cached pages, {@code 0} disables the cache.
+	 */
+	public static void setPageCacheSize(int nPages) {
+		pageCacheSize = nPages;
+	}
+
+	public static int getCommitGroupWindow() {
+		return commitGroupWindow;
+	}
+
+	/**
+	 * Enable group commit. Commits that arrive within the window are forced to disk 
+	 * together, with a single root page write for the whole group. Each commit still returns 
+	 * only after it has been forced to disk. 
+	 * The setting takes effect when a database file is opened.
+	 * @param millis length of the window in milliseconds, {@code 0} disables group commit.
+	 */
+	public static void setCommitGroupWindow(int millis) {
+		commitGroupWindow = millis;
+	}
+
+	public static int getReadAheadPages() {
+		return readAheadPages;
+	}
+
+	/**
+	 * Enable read-ahead for sequential reads, such as extent scans. When a reader accesses
+	 * pages sequentially, the following pages are loaded asynchronously into the page cache.
+	 * Read-ahead requires the page cache, see {@link #setPageCacheSize(int)}.
+	 * The setting takes effect when a database file is opened.
+	 * @param nPages number of pages to load ahead, {@code 0} disables read-ahead.
+	 */
+	public static void setReadAheadPages(int nPages) {
+		readAheadPages = nPages;
+	}
+
+	public static int getIndexBuildThreads() {
+		return indexBuildThreads;
+	}
+
+	/**
+	 * Set the number of threads that read the existing objects when an index is created or 
+	 * rebuilt. The setting takes effect when a session is opened.
+	 * @param nThreads number of threads, {@code 0} uses one thread per processor.
+	 */
+	public static void setIndexBuildThreads(int nThreads) {
+		indexBuildThreads = nThreads;
+	}
+
+	public static int getIndexPageBudget() {
+		return indexPageBudget;
+	}
+
+	/**
+	 * Set the maximum number of index pages that are kept in memory for a database file. 
+	 * Unmodified pages that exceed the budget are evicted and loaded again when required.
+	 * Modified pages are kept until they are committed.
+	 * The setting takes effect when a database file is opened.
+	 * @param nPages maximum number of index pages, {@code 0} disables eviction.
+	 */
+	public static void setIndexPageBudget(int nPages) {
+		indexPageBudget = nPages;
+	}
 }
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.tools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.zoodb.api.impl.ZooPC;
+import org.zoodb.internal.util.DBLogger;
+import org.zoodb.tools.internal.ClassFileEnhancer;
+import org.zoodb.tools.internal.ClassFileEnhancer.FieldResolver;
+import org.zoodb.tools.internal.ZooCommandLineTool;
+
+/**
+ * Enhancer for persistent classes, i.e. sub-classes of {@link ZooPC}. 
+ * 
+ * Enhanced classes call {@link ZooPC#zooActivateRead()} before reading a persistent field
+ * and {@link ZooPC#zooActivateWrite(String)} before writing a persistent field, so these 
+ * calls do not have to be added by hand. Writing a field that is not indexed does not 
+ * create a backup of the indexed fields, and such objects are skipped during index 
+ * maintenance when they are committed. See {@link ClassFileEnhancer} for details.
+ * 
+ * Persistent fields may also be accessed directly by sub-classes and other classes, for 
+ * example in the same package. The enhancer therefore replaces field access in all classes, 
+ * not only in persistent classes. Classes that access persistent fields directly must be 
+ * enhanced together with the persistent classes or loaded with the Java agent.
+ * 
+ * The enhancer can be used at build time on a directory with class files, for example
+ * with the {@code exec-maven-plugin} in the {@code process-classes} phase:
+ * <p>
+ * Usage: {@code ZooEnhancer <class directory> [<class directory> ...]}
+ * <p>
+ * Alternatively, it can be used as Java agent that enhances classes when they are loaded:
+ * <p>
+ * {@code java -javaagent:zoodb.jar ...}
+ */
+public class ZooEnhancer extends ZooCommandLineTool implements ClassFileTransformer {
+
+	private static final String CLASS_SUFFIX = ".class";
+	
+	private ZooEnhancer() {
+		// agent
+	}
+	
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			err.println("Usage: ZooEnhancer <class directory> [<class directory> ...]");
+			return;
+		}
+		for (String dir: args) {
+			File f = new File(dir);
+			if (!f.isDirectory()) {
+				err.println("ERROR Directory not found: " + dir);
+				return;
+			}
+			out.println("Enhancing classes in: " + dir);
+			int n = enhance(f, Thread.currentThread().getContextClassLoader());
+			out.println("Enhanced classes: " + n);
+		}
+	}
+
+	/**
+	 * Called by the JVM when ZooDB is used as Java agent.
+	 * @param agentArgs Agent arguments, they are ignored
+	 * @param inst The instrumentation
+	 */
+	public static void premain(String agentArgs, Instrumentation inst) {
+		inst.addTransformer(new ZooEnhancer());
+	}
+
+	@Override
+	public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+			ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+		if (loader == null || classBeingRedefined != null || isInternal(className) || 
+				isSystem(className)) {
+			//We cannot add methods to classes that have already been loaded
+			return null;
+		}
+		try {
+			ClassFileEnhancer e = new ClassFileEnhancer(classfileBuffer);
+			Map<String, ClassFileEnhancer> none = Collections.emptyMap();
+			Resolver resolver = new Resolver(none, null, loader);
+			return e.enhance(isPersistent(e.getSuperClassName(), null, loader), resolver);
+		} catch (RuntimeException e) {
+			//exceptions are ignored by the JVM 
+			DBLogger.severe("Error enhancing class " + className + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Enhances all classes in a directory and its sub-directories. Persistent classes get
+	 * accessors for their fields, and access to persistent fields is replaced in all classes.
+	 * @param dir The directory with the class files
+	 * @param loader The class loader for classes that are not in the directory
+	 * @return The number of enhanced classes.
+	 */
+	public static int enhance(File dir, ClassLoader loader) {
+		ArrayList<File> files = new ArrayList<File>();
+		listClassFiles(dir, files);
+		HashMap<String, ClassFileEnhancer> classes = new HashMap<String, ClassFileEnhancer>();
+		HashMap<String, File> classFiles = new HashMap<String, File>();
+		for (File f: files) {
+			ClassFileEnhancer e = new ClassFileEnhancer(read(f));
+			classes.put(e.getClassName(), e);
+			classFiles.put(e.getClassName(), f);
+		}
+		int n = 0;
+		HashMap<String, String> supers = new HashMap<String, String>();
+		for (ClassFileEnhancer e: classes.values()) {
+			supers.put(e.getClassName(), e.getSuperClassName());
+		}
+		Resolver resolver = new Resolver(classes, supers, loader);
+		for (ClassFileEnhancer e: classes.values()) {
+			if (isInternal(e.getClassName())) {
+				continue;
+			}
+			byte[] ba = e.enhance(isPersistent(e.getSuperClassName(), supers, loader), resolver);
+			if (ba != null) {
+				write(classFiles.get(e.getClassName()), ba);
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * ZooDB's own persistent classes activate themselves.
+	 */
+	private static boolean isInternal(String className) {
+		return className == null || (className.startsWith("org/zoodb/") && 
+				!className.startsWith("org/zoodb/test/"));
+	}
+	
+	/**
+	 * Classes of the JDK cannot access persistent fields.
+	 */
+	private static boolean isSystem(String className) {
+		return className.startsWith("java/") || className.startsWith("javax/") ||
+				className.startsWith("sun/") || className.startsWith("com/sun/") || 
+				className.startsWith("jdk/");
+	}
+	
+	/**
+	 * Resolves field references to the persistent class that declares the field. Classes
+	 * that are enhanced in the same run are looked up in the given map, other classes are
+	 * loaded. Loaded classes must have been enhanced already, i.e. declare the accessor.
+	 */
+	private static final class Resolver implements FieldResolver {
+		
+		private final Map<String, ClassFileEnhancer> classes;
+		private final HashMap<String, String> supers;
+		private final ClassLoader loader;
+		//owner.name:desc -> declaring class, "" if the field is not persistent
+		private final HashMap<String, String> cache = new HashMap<String, String>();
+		
+		Resolver(Map<String, ClassFileEnhancer> classes, HashMap<String, String> supers, 
+				ClassLoader loader) {
+			this.classes = classes;
+			this.supers = supers;
+			this.loader = loader;
+		}
+		
+		@Override
+		public String getDeclaringClass(String owner, String name, String desc) {
+			String key = owner + "." + name + ":" + desc;
+			String ret = cache.get(key);
+			if (ret == null) {
+				ret = resolve(owner, name, desc);
+				cache.put(key, ret == null ? "" : ret);
+			}
+			return ret == null || ret.isEmpty() ? null : ret;
+		}
+
+		private String resolve(String owner, String name, String desc) {
+			while (owner != null && !isInternal(owner) && !isSystem(owner)) {
+				ClassFileEnhancer e = classes.get(owner);
+				if (e == null) {
+					return resolveLoaded(owner, name);
+				}
+				if (e.declaresField(name, desc)) {
+					if (e.isPersistentField(name, desc) && 
+							isPersistent(e.getSuperClassName(), supers, loader)) {
+						return owner;
+					}
+					return null;
+				}
+				owner = e.getSuperClassName();
+			}
+			return null;
+		}
+		
+		private String resolveLoaded(String owner, String name) {
+			try {
+				Class<?> cls = Class.forName(owner.replace('/', '.'), false, loader);
+				for (; cls != null; cls = cls.getSuperclass()) {
+					Field f;
+					try {
+						f = cls.getDeclaredField(name);
+					} catch (NoSuchFieldException e) {
+						continue;
+					}
+					String clsName = cls.getName().replace('.', '/');
+					if (!ZooPC.class.isAssignableFrom(cls) || isInternal(clsName) ||
+							(f.getModifiers() & (Modifier.STATIC | Modifier.TRANSIENT)) != 0 ||
+							f.isSynthetic()) {
+						return null;
+					}
+					//the class must have been enhanced
+					cls.getDeclaredMethod(ClassFileEnhancer.GETTER_PREFIX + name, cls);
+					return clsName;
+				}
+			} catch (ClassNotFoundException e) {
+				DBLogger.debugPrintln(1, "Class not found: " + owner);
+			} catch (NoSuchMethodException e) {
+				DBLogger.debugPrintln(1, "Class not enhanced: " + owner);
+			} catch (LinkageError e) {
+				DBLogger.debugPrintln(1, "Class not found: " + owner);
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * @param superName The internal name of the super-class
+	 * @param supers Super-classes of classes that are not loaded yet, may be {@code null} 
+	 * @param loader The class loader for other classes
+	 * @return Whether the super-class is persistent
+	 */
+	private static boolean isPersistent(String superName, HashMap<String, String> supers, 
+			ClassLoader loader) {
+		while (supers != null && supers.containsKey(superName)) {
+			superName = supers.get(superName);
+		}
+		if (superName == null || superName.equals("java/lang/Object")) {
+			return false;
+		}
+		try {
+			Class<?> sup = Class.forName(superName.replace('/', '.'), false, loader);
+			return ZooPC.class.isAssignableFrom(sup);
+		} catch (ClassNotFoundException e) {
+			DBLogger.debugPrintln(1, "Class not found: " + superName);
+			return false;
+		} catch (LinkageError e) {
+			DBLogger.debugPrintln(1, "Class not found: " + superName);
+			return false;
+		}
+	}
+	
+	private static void listClassFiles(File dir, ArrayList<File> files) {
+		File[] list = dir.listFiles();
+		if (list == null) {
+			return;
+		}
+		for (File f: list) {
+			if (f.isDirectory()) {
+				listClassFiles(f, files);
+			} else if (f.getName().endsWith(CLASS_SUFFIX)) {
+				files.add(f);
+			}
+		}
+	}
+	
+	private static byte[] read(File f) {
+		byte[] ba = new byte[(int) f.length()];
+		InputStream is = null;
+		try {
+			is = new FileInputStream(f);
+			int pos = 0;
+			while (pos < ba.length) {
+				int n = is.read(ba, pos, ba.length - pos);
+				if (n < 0) {
+					throw new IOException("Unexpected end of file: " + f);
+				}
+				pos += n;
+			}
+			return ba;
+		} catch (IOException e) {
+			throw DBLogger.newUser("Error reading class file: " + f, e);
+		} finally {
+			close(is);
+		}
+	}
+
+	private static void write(File f, byte[] ba) {
+		OutputStream os = null;
+		try {
+			os = new FileOutputStream(f);
+			os.write(ba);
+		} catch (IOException e) {
+			throw DBLogger.newUser("Error writing class file: " + f, e);
+		} finally {
+			close(os);
+		}
+	}
+	
+	private static void close(Closeable c) {
+		if (c != null) {
+			try {
+				c.close();
+			} catch (IOException e) {
+				DBLogger.debugPrintln(1, "Error closing file: " + e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.tools;
+
+import javax.jdo.JDOHelper;
+import javax.jdo.PersistenceManager;
+import javax.jdo.PersistenceManagerFactory;
+
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.jdo.ZooJdoProperties;
+import org.zoodb.schema.ZooClass;
+import org.zoodb.tools.internal.ZooCommandLineTool;
+
+/**
+ * Rebuilds all indices of one or more classes. The existing objects are read with several
+ * threads, see {@link ZooConfig#setIndexBuildThreads(int)}.
+ *
+ * Usage: {@code ZooRebuildIndices <database> <class> [<class> ...]}
+ */
+public class ZooRebuildIndices extends ZooCommandLineTool {
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			err.println("Usage: ZooRebuildIndices <database> <class> [<class> ...]");
+			return;
+		}
+		String dbName = args[0];
+
+		if (!ZooHelper.getDataStoreManager().dbExists(dbName)) {
+			err.println("ERROR Database not found: " + dbName);
+			return;
+		}
+
+		out.println("Rebuilding indices of database: " + dbName);
+
+		ZooJdoProperties props = new ZooJdoProperties(dbName);
+		PersistenceManagerFactory pmf = JDOHelper.getPersistenceManagerFactory(props);
+		PersistenceManager pm = pmf.getPersistenceManager();
+		try {
+			pm.currentTransaction().begin();
+			for (int i = 1; i < args.length; i++) {
+				ZooClass cls = ZooJdoHelper.schema(pm).getClass(args[i]);
+				if (cls == null) {
+					err.println("ERROR Class not found: " + args[i]);
+					pm.currentTransaction().rollback();
+					return;
+				}
+				cls.rebuildIndices();
+				out.println("Rebuilding indices of class: " + args[i]);
+			}
+			long t0 = System.currentTimeMillis();
+			pm.currentTransaction().commit();
+			long t1 = System.currentTimeMillis();
+			out.println("Rebuilding indices done: " + (t1 - t0) + "ms");
+		} finally {
+			if (pm.currentTransaction().isActive()) {
+				pm.currentTransaction().rollback();
+			}
+			pm.close();
+			pmf.close();
+		}
+	}
+
+}
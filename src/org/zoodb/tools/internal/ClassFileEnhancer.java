@@ -0,0 +1,650 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.tools.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.zoodb.internal.util.DBLogger;
+
+/**
+ * Enhancer for class files that declare or access persistent fields, see 
+ * {@link org.zoodb.tools.ZooEnhancer}.
+ *
+ * The enhancer adds two synthetic static accessors for every persistent field {@code f} of 
+ * a persistent class: {@code zooGet$f(obj)} calls {@code obj.zooActivateRead()} and returns 
+ * the field, {@code zooSet$f(obj, value)} calls {@code obj.zooActivateWrite("f")} and sets 
+ * the field. The accessors have the visibility of the field, accessors of private fields are
+ * package-private.
+ * 
+ * In every class, persistent or not, each {@code getfield} and {@code putfield} instruction 
+ * for a persistent field is replaced with an {@code invokestatic} of the accessor in the
+ * class that declares the field. The declaring class is resolved through the class hierarchy,
+ * see {@link FieldResolver}, so access from sub-classes and other classes is replaced as
+ * well. Both instructions have the same length and the same effect on the operand stack, so
+ * the code, the jump offsets, the exception tables and the stack map frames of the methods 
+ * remain valid. 
+ * 
+ * Persistent fields are the non-static, non-transient and non-synthetic fields declared by 
+ * a persistent class. In constructors, {@code putfield} instructions for fields of the class
+ * itself are not replaced, because they may precede the call to the super-constructor and
+ * because the new object is not persistent yet.
+ * 
+ * The enhancer does not depend on a byte code library, it only parses the constant pool, the
+ * fields and the methods of the class file.
+ */
+public final class ClassFileEnhancer {
+
+	private static final int MAGIC = 0xCAFEBABE;
+
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_PROTECTED = 0x0004;
+	private static final int ACC_STATIC = 0x0008;
+	private static final int ACC_TRANSIENT = 0x0080;
+	private static final int ACC_INTERFACE = 0x0200;
+	private static final int ACC_SYNTHETIC = 0x1000;
+
+	private static final int CP_UTF8 = 1;
+	private static final int CP_CLASS = 7;
+	private static final int CP_STRING = 8;
+	private static final int CP_FIELDREF = 9;
+	private static final int CP_METHODREF = 10;
+	private static final int CP_NAME_AND_TYPE = 12;
+
+	private static final int GETFIELD = 0xB4;
+	private static final int PUTFIELD = 0xB5;
+	private static final int INVOKESTATIC = 0xB8;
+	
+	public static final String GETTER_PREFIX = "zooGet$";
+	public static final String SETTER_PREFIX = "zooSet$";
+
+	/**
+	 * Resolves field references to fields of other classes.
+	 */
+	public interface FieldResolver {
+		/**
+		 * @param owner The internal name of the class in the field reference
+		 * @param name The name of the field
+		 * @param desc The descriptor of the field
+		 * @return The internal name of the persistent class that declares the field, or 
+		 * {@code null} if the field is not a persistent field.
+		 */
+		String getDeclaringClass(String owner, String name, String desc);
+	}
+
+	private final byte[] in;
+	private final ByteBuffer buf;
+	
+	//constant pool
+	private int cpCount;
+	private int[] cpPos;
+	private int cpEnd;
+	private final HashMap<String, Integer> cpLookup = new HashMap<String, Integer>();
+	private final ByteArrayOutputStream cpNew = new ByteArrayOutputStream();
+	private final DataOutputStream cpNewOut = new DataOutputStream(cpNew);
+
+	private int accessFlags;
+	private int thisClass;
+	private String className;
+	private String superClassName;
+	
+	//persistent fields: name -> descriptor
+	private final LinkedHashMap<String, String> fields = new LinkedHashMap<String, String>();
+	//persistent fields: name -> access flags
+	private final HashMap<String, Integer> fieldAccess = new HashMap<String, Integer>();
+	//all fields: name + descriptor
+	private final HashSet<String> declaredFields = new HashSet<String>();
+	private boolean isEnhanced = false;
+	private final ArrayList<int[]> codes = new ArrayList<int[]>(); //{start, length, isInit}
+	private int methodsCountPos;
+	private int methodsEnd;
+
+	/**
+	 * @param classFile The class file, it is not modified.
+	 */
+	public ClassFileEnhancer(byte[] classFile) {
+		this.in = classFile;
+		this.buf = ByteBuffer.wrap(classFile);
+		try {
+			parse();
+		} catch (RuntimeException e) {
+			throw DBLogger.newUser("Invalid class file", e);
+		}
+	}
+
+	private void parse() {
+		if (buf.getInt() != MAGIC) {
+			throw new IllegalArgumentException("Not a class file");
+		}
+		buf.getShort(); //minor
+		buf.getShort(); //major
+		cpCount = u2();
+		cpPos = new int[cpCount];
+		for (int i = 1; i < cpCount; i++) {
+			cpPos[i] = buf.position();
+			int tag = u1();
+			switch (tag) {
+			case CP_UTF8: 
+				int len = u2();
+				cpLookup.put(utf8Key(utf8(i)), i);
+				buf.position(buf.position() + len);
+				break;
+			case 3: //int
+			case 4: //float
+				buf.getInt(); break;
+			case 5: //long
+			case 6: //double
+				buf.getLong(); 
+				i++;
+				break;
+			case CP_CLASS:
+			case CP_STRING:
+			case 16: //method type
+			case 19: //module
+			case 20: //package
+				cpLookup.put(tag + ":" + u2(), i);
+				break;
+			case CP_FIELDREF:
+			case CP_METHODREF:
+			case 11: //interface method
+			case CP_NAME_AND_TYPE:
+			case 17: //dynamic
+			case 18: //invoke dynamic
+				cpLookup.put(tag + ":" + u2() + ":" + u2(), i);
+				break;
+			case 15: //method handle
+				u1(); u2(); break;
+			default:
+				throw new IllegalArgumentException("Unknown constant pool tag: " + tag);
+			}
+		}
+		cpEnd = buf.position();
+		
+		accessFlags = u2();
+		thisClass = u2();
+		className = utf8(classNameIndex(thisClass));
+		int superClass = u2();
+		superClassName = superClass == 0 ? null : utf8(classNameIndex(superClass));
+		int nInterfaces = u2();
+		buf.position(buf.position() + 2 * nInterfaces);
+
+		int nFields = u2();
+		for (int i = 0; i < nFields; i++) {
+			int access = u2();
+			String name = utf8(u2());
+			String desc = utf8(u2());
+			skipAttributes();
+			declaredFields.add(name + desc);
+			if ((access & (ACC_STATIC | ACC_TRANSIENT | ACC_SYNTHETIC)) == 0) {
+				fields.put(name, desc);
+				fieldAccess.put(name, access);
+			}
+		}
+		
+		methodsCountPos = buf.position();
+		int nMethods = u2();
+		for (int i = 0; i < nMethods; i++) {
+			u2(); //access
+			String name = utf8(u2());
+			u2(); //descriptor
+			if (name.startsWith(GETTER_PREFIX) || name.startsWith(SETTER_PREFIX)) {
+				isEnhanced = true;
+			}
+			int nAttr = u2();
+			for (int j = 0; j < nAttr; j++) {
+				String aName = utf8(u2());
+				int len = buf.getInt();
+				int start = buf.position();
+				if (aName.equals("Code")) {
+					int codeLen = buf.getInt(start + 4);
+					codes.add(new int[]{start + 8, codeLen, name.equals("<init>") ? 1 : 0});
+				}
+				buf.position(start + len);
+			}
+		}
+		methodsEnd = buf.position();
+	}
+	
+	/**
+	 * @return The internal name of the class, for example {@code org/example/Person}.
+	 */
+	public String getClassName() {
+		return className;
+	}
+
+	/**
+	 * @return The internal name of the super-class.
+	 */
+	public String getSuperClassName() {
+		return superClassName;
+	}
+
+	/**
+	 * @return Whether the class has already been enhanced.
+	 */
+	public boolean isEnhanced() {
+		return isEnhanced;
+	}
+
+	/**
+	 * @param name The name of a field
+	 * @param desc The descriptor of the field
+	 * @return Whether the class declares the field.
+	 */
+	public boolean declaresField(String name, String desc) {
+		return declaredFields.contains(name + desc);
+	}
+
+	/**
+	 * @param name The name of a field
+	 * @param desc The descriptor of the field
+	 * @return Whether the field would be persistent if this class is persistent.
+	 */
+	public boolean isPersistentField(String name, String desc) {
+		return desc.equals(fields.get(name));
+	}
+
+	/**
+	 * @param isPersistent Whether the class is persistent, only persistent classes get 
+	 * accessors for their fields
+	 * @param resolver The resolver for fields of other classes, or {@code null} if only 
+	 * access to fields of this class should be replaced
+	 * @return The enhanced class file or {@code null} if the class requires no enhancement or
+	 * if it has already been enhanced.
+	 */
+	public byte[] enhance(boolean isPersistent, FieldResolver resolver) {
+		if (isEnhanced || (accessFlags & ACC_INTERFACE) != 0) {
+			return null;
+		}
+		boolean addAccessors = isPersistent && !fields.isEmpty();
+		byte[] out = in.clone();
+		try {
+			//replace field access
+			HashMap<Integer, Integer> getters = new HashMap<Integer, Integer>();
+			HashMap<Integer, Integer> setters = new HashMap<Integer, Integer>();
+			boolean isReplaced = false;
+			for (int[] code: codes) {
+				isReplaced |= replaceFieldAccess(out, code[0], code[1], code[2] == 1, 
+						isPersistent, resolver, getters, setters);
+			}
+			if (!isReplaced && !addAccessors) {
+				return null;
+			}
+			isEnhanced = true;
+			
+			//create accessors
+			ByteArrayOutputStream methods = new ByteArrayOutputStream();
+			DataOutputStream mOut = new DataOutputStream(methods);
+			int nMethods = 0;
+			if (addAccessors) {
+				int codeName = addUtf8("Code");
+				int activateRead = addMethodRef(thisClass, "zooActivateRead", "()V");
+				int activateWrite = addMethodRef(thisClass, "zooActivateWrite", 
+						"(Ljava/lang/String;)V");
+				for (Map.Entry<String, String> f: fields.entrySet()) {
+					String name = f.getKey();
+					String desc = f.getValue();
+					int access = (fieldAccess.get(name) & (ACC_PUBLIC | ACC_PROTECTED)) | 
+							ACC_STATIC | ACC_SYNTHETIC;
+					int fieldRef = addFieldRef(thisClass, name, desc);
+					writeGetter(mOut, codeName, access, name, desc, fieldRef, activateRead);
+					writeSetter(mOut, codeName, access, name, desc, fieldRef, activateWrite);
+				}
+				nMethods = 2 * fields.size();
+			}
+			mOut.flush();
+			
+			ByteArrayOutputStream ba = new ByteArrayOutputStream(in.length + 
+					cpNew.size() + methods.size());
+			DataOutputStream dOut = new DataOutputStream(ba);
+			dOut.write(out, 0, 8);
+			dOut.writeShort(cpCount);
+			dOut.write(out, 10, cpEnd - 10);
+			cpNewOut.flush();
+			cpNew.writeTo(dOut);
+			dOut.write(out, cpEnd, methodsCountPos - cpEnd);
+			dOut.writeShort(buf.getShort(methodsCountPos) + nMethods);
+			dOut.write(out, methodsCountPos + 2, methodsEnd - methodsCountPos - 2);
+			methods.writeTo(dOut);
+			dOut.write(out, methodsEnd, out.length - methodsEnd);
+			dOut.flush();
+			return ba.toByteArray();
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error enhancing class: " + className, e);
+		}
+	}
+
+	/**
+	 * @return Whether any field access has been replaced.
+	 */
+	private boolean replaceFieldAccess(byte[] out, int start, int len, boolean isConstructor, 
+			boolean isPersistent, FieldResolver resolver, 
+			HashMap<Integer, Integer> getters, HashMap<Integer, Integer> setters) 
+					throws IOException {
+		boolean isReplaced = false;
+		int pc = 0;
+		while (pc < len) {
+			int op = out[start + pc] & 0xFF;
+			if (op == GETFIELD || op == PUTFIELD) {
+				int ref = buf.getShort(start + pc + 1) & 0xFFFF;
+				HashMap<Integer, Integer> map = op == GETFIELD ? getters : setters;
+				Integer method = map.get(ref);
+				if (method == null && !map.containsKey(ref)) {
+					method = createAccessorRef(ref, op == GETFIELD, isPersistent, resolver);
+					map.put(ref, method);
+				}
+				boolean isOwnInit = isConstructor && op == PUTFIELD && 
+						getRefClass(ref).equals(className) && declaresField(
+								getRefName(ref), getRefDesc(ref));
+				if (method != null && !isOwnInit) {
+					out[start + pc] = (byte) INVOKESTATIC;
+					out[start + pc + 1] = (byte) (method >> 8);
+					out[start + pc + 2] = (byte) (int) method;
+					isReplaced = true;
+				}
+			}
+			pc += getInstructionLength(start, pc);
+		}
+		return isReplaced;
+	}
+	
+	/**
+	 * @param fieldRef A field reference
+	 * @return The method reference of the accessor for the field or {@code null} if the 
+	 * field is not persistent.
+	 */
+	private Integer createAccessorRef(int fieldRef, boolean isGetter, boolean isPersistent, 
+			FieldResolver resolver) throws IOException {
+		String owner = getRefClass(fieldRef);
+		String name = getRefName(fieldRef);
+		String desc = getRefDesc(fieldRef);
+		if (owner.equals(className)) {
+			if (declaresField(name, desc)) {
+				owner = isPersistent && isPersistentField(name, desc) ? className : null;
+			} else if (resolver != null && superClassName != null) {
+				//inherited field
+				owner = resolver.getDeclaringClass(superClassName, name, desc);
+			} else {
+				owner = null;
+			}
+		} else {
+			owner = resolver != null ? resolver.getDeclaringClass(owner, name, desc) : null;
+		}
+		if (owner == null) {
+			return null;
+		}
+		int cls = owner.equals(className) ? thisClass : addClass(owner);
+		return isGetter ? 
+				addMethodRef(cls, GETTER_PREFIX + name, "(L" + owner + ";)" + desc) :
+				addMethodRef(cls, SETTER_PREFIX + name, "(L" + owner + ";" + desc + ")V");
+	}
+
+	private String getRefClass(int ref) {
+		return utf8(classNameIndex(buf.getShort(cpPos[ref] + 1) & 0xFFFF));
+	}
+
+	private String getRefName(int ref) {
+		int nt = cpPos[buf.getShort(cpPos[ref] + 3) & 0xFFFF];
+		return utf8(buf.getShort(nt + 1) & 0xFFFF);
+	}
+
+	private String getRefDesc(int ref) {
+		int nt = cpPos[buf.getShort(cpPos[ref] + 3) & 0xFFFF];
+		return utf8(buf.getShort(nt + 3) & 0xFFFF);
+	}
+
+	private int getInstructionLength(int start, int pc) {
+		int op = in[start + pc] & 0xFF;
+		if (op <= 0x0F) {
+			return 1;
+		}
+		switch (op) {
+		case 0x10: //bipush 
+		case 0x12: //ldc
+		case 0xA9: //ret
+		case 0xBC: //newarray
+			return 2;
+		case 0x11: //sipush
+		case 0x13: //ldc_w
+		case 0x14: //ldc2_w
+		case 0x84: //iinc
+		case 0xB2: //getstatic
+		case 0xB3: //putstatic
+		case 0xB4: //getfield
+		case 0xB5: //putfield
+		case 0xB6: //invokevirtual
+		case 0xB7: //invokespecial
+		case 0xB8: //invokestatic
+		case 0xBB: //new
+		case 0xBD: //anewarray
+		case 0xC0: //checkcast
+		case 0xC1: //instanceof
+		case 0xC6: //ifnull
+		case 0xC7: //ifnonnull
+			return 3;
+		case 0xC5: //multianewarray
+			return 4;
+		case 0xB9: //invokeinterface
+		case 0xBA: //invokedynamic
+		case 0xC8: //goto_w
+		case 0xC9: //jsr_w
+			return 5;
+		case 0xC4: //wide
+			return (in[start + pc + 1] & 0xFF) == 0x84 ? 6 : 4;
+		case 0xAA: { //tableswitch
+			int p = pc + 1 + ((4 - (pc + 1) % 4) % 4);
+			int low = buf.getInt(start + p + 4);
+			int high = buf.getInt(start + p + 8);
+			return p + 12 + 4 * (high - low + 1) - pc;
+		}
+		case 0xAB: { //lookupswitch
+			int p = pc + 1 + ((4 - (pc + 1) % 4) % 4);
+			int n = buf.getInt(start + p + 4);
+			return p + 8 + 8 * n - pc;
+		}
+		default:
+		}
+		if ((op >= 0x15 && op <= 0x19) || (op >= 0x36 && op <= 0x3A)) {
+			//load and store with index
+			return 2;
+		}
+		if (op >= 0x99 && op <= 0xA8) {
+			//conditional branches, goto, jsr
+			return 3;
+		}
+		return 1;
+	}
+
+	private void writeGetter(DataOutputStream out, int codeName, int access, String field, 
+			String desc, int fieldRef, int activateRead) throws IOException {
+		//aload_0, dup, invokevirtual zooActivateRead(), getfield, return
+		out.writeShort(access);
+		out.writeShort(addUtf8(GETTER_PREFIX + field));
+		out.writeShort(addUtf8("(L" + className + ";)" + desc));
+		out.writeShort(1);
+		byte[] code = {
+				0x2A, 
+				0x59, 
+				(byte) 0xB6, (byte) (activateRead >> 8), (byte) activateRead, 
+				(byte) GETFIELD, (byte) (fieldRef >> 8), (byte) fieldRef,
+				(byte) returnOpcode(desc)};
+		writeCode(out, codeName, 2, 1, code);
+	}
+
+	private void writeSetter(DataOutputStream out, int codeName, int access, String field, 
+			String desc, int fieldRef, int activateWrite) throws IOException {
+		//aload_0, ldc_w "field", invokevirtual zooActivateWrite(String), 
+		//aload_0, load_1, putfield, return
+		out.writeShort(access);
+		out.writeShort(addUtf8(SETTER_PREFIX + field));
+		out.writeShort(addUtf8("(L" + className + ";" + desc + ")V"));
+		out.writeShort(1);
+		int str = addString(field);
+		byte[] code = {
+				0x2A, 
+				0x13, (byte) (str >> 8), (byte) str, 
+				(byte) 0xB6, (byte) (activateWrite >> 8), (byte) activateWrite, 
+				0x2A, 
+				(byte) loadOpcode(desc), 
+				(byte) PUTFIELD, (byte) (fieldRef >> 8), (byte) fieldRef,
+				(byte) 0xB1};
+		int size = desc.equals("J") || desc.equals("D") ? 2 : 1;
+		writeCode(out, codeName, 1 + size, 1 + size, code);
+	}
+
+	private static void writeCode(DataOutputStream out, int codeName, int maxStack, 
+			int maxLocals, byte[] code) throws IOException {
+		out.writeShort(codeName);
+		out.writeInt(12 + code.length);
+		out.writeShort(Math.max(2, maxStack));
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(0); //exception table
+		out.writeShort(0); //attributes
+	}
+	
+	private static int returnOpcode(String desc) {
+		switch (desc.charAt(0)) {
+		case 'J': return 0xAD; //lreturn
+		case 'F': return 0xAE; //freturn
+		case 'D': return 0xAF; //dreturn
+		case 'L': 
+		case '[': return 0xB0; //areturn
+		default: return 0xAC; //ireturn
+		}
+	}
+
+	private static int loadOpcode(String desc) {
+		switch (desc.charAt(0)) {
+		case 'J': return 0x1F; //lload_1
+		case 'F': return 0x23; //fload_1
+		case 'D': return 0x27; //dload_1
+		case 'L': 
+		case '[': return 0x2B; //aload_1
+		default: return 0x1B; //iload_1
+		}
+	}
+
+	private int u1() {
+		return buf.get() & 0xFF;
+	}
+	
+	private int u2() {
+		return buf.getShort() & 0xFFFF;
+	}
+
+	private void skipAttributes() {
+		int n = u2();
+		for (int i = 0; i < n; i++) {
+			u2();
+			int len = buf.getInt();
+			buf.position(buf.position() + len);
+		}
+	}
+	
+	private int classNameIndex(int classIndex) {
+		return buf.getShort(cpPos[classIndex] + 1) & 0xFFFF;
+	}
+	
+	private String utf8(int index) {
+		int pos = cpPos[index];
+		int len = buf.getShort(pos + 1) & 0xFFFF;
+		try {
+			return new DataInputStream(new ByteArrayInputStream(in, pos + 1, len + 2)).readUTF();
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+	
+	private static String utf8Key(String s) {
+		return CP_UTF8 + ":" + s;
+	}
+	
+	private int addUtf8(String s) throws IOException {
+		Integer i = cpLookup.get(utf8Key(s));
+		if (i != null) {
+			return i;
+		}
+		cpNewOut.writeByte(CP_UTF8);
+		cpNewOut.writeUTF(s);
+		return addEntry(utf8Key(s));
+	}
+
+	private int addString(String s) throws IOException {
+		return addEntry(CP_STRING, addUtf8(s));
+	}
+
+	private int addClass(String internalName) throws IOException {
+		return addEntry(CP_CLASS, addUtf8(internalName));
+	}
+
+	private int addMethodRef(int cls, String name, String desc) throws IOException {
+		return addEntry(CP_METHODREF, cls, addNameAndType(name, desc));
+	}
+
+	private int addFieldRef(int cls, String name, String desc) throws IOException {
+		return addEntry(CP_FIELDREF, cls, addNameAndType(name, desc));
+	}
+
+	private int addNameAndType(String name, String desc) throws IOException {
+		return addEntry(CP_NAME_AND_TYPE, addUtf8(name), addUtf8(desc));
+	}
+
+	private int addEntry(int tag, int i1) throws IOException {
+		Integer i = cpLookup.get(tag + ":" + i1);
+		if (i != null) {
+			return i;
+		}
+		cpNewOut.writeByte(tag);
+		cpNewOut.writeShort(i1);
+		return addEntry(tag + ":" + i1);
+	}
+	
+	private int addEntry(int tag, int i1, int i2) throws IOException {
+		String key = tag + ":" + i1 + ":" + i2;
+		Integer i = cpLookup.get(key);
+		if (i != null) {
+			return i;
+		}
+		cpNewOut.writeByte(tag);
+		cpNewOut.writeShort(i1);
+		cpNewOut.writeShort(i2);
+		return addEntry(key);
+	}
+	
+	private int addEntry(String key) {
+		if (cpCount >= 0xFFFF) {
+			throw DBLogger.newUser("Constant pool too large: " + className);
+		}
+		cpLookup.put(key, cpCount);
+		return cpCount++;
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.jdo.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.zoodb.jdo.spi.PersistenceCapableImpl;
+
+/**
+ * Persistent class with all kinds of fields, none of them is final. 
+ */
+public class ClassAccessorTestClass extends PersistenceCapableImpl {
+
+	public static enum ENUM {
+		A, B, C;
+	}
+	
+	private transient int _trans;
+	private static int _static;
+	
+	private boolean _bool;
+	private byte _byte;
+	private char _char;
+	private double _double;
+	private float _float;
+	private int _int;
+	private long _long;
+	private short _short;
+	private boolean[] _boolA;
+	private byte[] _byteA;
+	private char[] _charA;
+	private double[] _doubleA;
+	private float[] _floatA;
+	private int[] _intA;
+	private long[] _longA;
+	private short[] _shortA;
+	private int[][] _intAA;
+	private Integer _intObj;
+	private String _string;
+	private String[] _stringA;
+	private Date _date;
+	private ENUM _enum;
+	private Object _object;
+	private ClassAccessorTestClass _ref;
+	private ClassAccessorTestClass[] _refA;
+	private ArrayList<Object> _list;
+	
+	public void init(int i, ClassAccessorTestClass ref) {
+		zooActivateWrite();
+		_trans = i;
+		_static = i;
+		_bool = i % 2 == 0;
+		_byte = (byte) i;
+		_char = (char) ('a' + i);
+		_double = i * 1.5;
+		_float = i * 2.5f;
+		_int = i;
+		_long = i * 10000000000L;
+		_short = (short) (-i);
+		_boolA = new boolean[]{true, _bool};
+		_byteA = new byte[]{1, _byte};
+		_charA = new char[]{'x', _char};
+		_doubleA = new double[]{0.5, _double};
+		_floatA = new float[]{0.25f, _float};
+		_intA = new int[]{-1, _int};
+		_longA = new long[]{Long.MIN_VALUE, _long};
+		_shortA = new short[]{};
+		_intAA = new int[][]{{i}, {}, {i, i}};
+		_intObj = i;
+		_string = "str" + i;
+		_stringA = new String[]{"a", null, _string};
+		_date = new Date(i * 1000L);
+		_enum = ENUM.values()[i % 3];
+		_object = Integer.valueOf(i);
+		_ref = ref;
+		_refA = ref == null ? null : new ClassAccessorTestClass[]{ref, null};
+		_list = new ArrayList<Object>();
+		_list.add(_string);
+		_list.add(ref);
+	}
+	
+	public void check(int i, ClassAccessorTestClass ref) {
+		zooActivateRead();
+		Assert.assertEquals(_bool, i % 2 == 0);
+		Assert.assertEquals((byte) i, _byte);
+		Assert.assertEquals((char) ('a' + i), _char);
+		Assert.assertEquals(i * 1.5, _double, 0.0);
+		Assert.assertEquals(i * 2.5f, _float, 0.0f);
+		Assert.assertEquals(i, _int);
+		Assert.assertEquals(i * 10000000000L, _long);
+		Assert.assertEquals((short) (-i), _short);
+		Assert.assertTrue(Arrays.equals(new boolean[]{true, _bool}, _boolA));
+		Assert.assertArrayEquals(new byte[]{1, _byte}, _byteA);
+		Assert.assertArrayEquals(new char[]{'x', _char}, _charA);
+		Assert.assertTrue(Arrays.equals(new double[]{0.5, _double}, _doubleA));
+		Assert.assertTrue(Arrays.equals(new float[]{0.25f, _float}, _floatA));
+		Assert.assertArrayEquals(new int[]{-1, _int}, _intA);
+		Assert.assertArrayEquals(new long[]{Long.MIN_VALUE, _long}, _longA);
+		Assert.assertArrayEquals(new short[]{}, _shortA);
+		Assert.assertTrue(Arrays.deepEquals(new int[][]{{i}, {}, {i, i}}, _intAA));
+		Assert.assertEquals(Integer.valueOf(i), _intObj);
+		Assert.assertEquals("str" + i, _string);
+		Assert.assertArrayEquals(new String[]{"a", null, _string}, _stringA);
+		Assert.assertEquals(new Date(i * 1000L), _date);
+		Assert.assertEquals(ENUM.values()[i % 3], _enum);
+		Assert.assertEquals(Integer.valueOf(i), _object);
+		Assert.assertSame(ref, _ref);
+		if (ref == null) {
+			Assert.assertNull(_refA);
+		} else {
+			Assert.assertArrayEquals(new ClassAccessorTestClass[]{ref, null}, _refA);
+		}
+		Assert.assertEquals(2, _list.size());
+		Assert.assertEquals(_string, _list.get(0));
+		Assert.assertSame(ref, _list.get(1));
+	}
+	
+	public int getTrans() {
+		return _trans;
+	}
+	
+	public static int getStatic() {
+		return _static;
+	}
+	
+	public ClassAccessorTestClass getRef() {
+		zooActivateRead();
+		return _ref;
+	}
+	
+	public int getInt() {
+		zooActivateRead();
+		return _int;
+	}
+	
+	public long getLong() {
+		zooActivateRead();
+		return _long;
+	}
+	
+	public void setLong(long l) {
+		zooActivateWrite();
+		_long = l;
+	}
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.jdo.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Iterator;
+
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.internal.ClassAccessor;
+import org.zoodb.internal.ClassAccessor.FieldAccessor;
+import org.zoodb.internal.ZooClassDef;
+import org.zoodb.internal.ZooClassProxy;
+import org.zoodb.internal.ZooFieldDef;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.schema.ZooClass;
+import org.zoodb.schema.ZooHandle;
+import org.zoodb.test.api.TestSerializer;
+import org.zoodb.test.api.TestSuper;
+import org.zoodb.test.testutil.TestTools;
+
+/**
+ * Tests for the method handle based field access of the (de-)serializer and for the
+ * reflective fallback.
+ */
+public class TestClassAccessor {
+
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(ClassAccessorTestClass.class);
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+		TestTools.removeDb();
+	}
+
+	private static ZooClassDef getDef(PersistenceManager pm, Class<?> cls) {
+		ZooClass clsZ = ZooJdoHelper.schema(pm).getClass(cls);
+		return ((ZooClassProxy)clsZ).getSchemaDef();
+	}
+
+	private static FieldAccessor getField(ZooClassDef def, String name) {
+		ZooFieldDef[] fds = def.getAllFields();
+		for (int i = 0; i < fds.length; i++) {
+			if (fds[i].getName().equals(name)) {
+				return def.getAccessor().getFields()[i];
+			}
+		}
+		throw new IllegalArgumentException(name);
+	}
+
+	/**
+	 * Writes two objects with the accessor and reads them back.
+	 * @return The OID of the first object, it references the second object.
+	 */
+	private static Object createObjects() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ClassAccessorTestClass t1 = new ClassAccessorTestClass();
+		ClassAccessorTestClass t2 = new ClassAccessorTestClass();
+		t1.init(3, t2);
+		t2.init(4, null);
+		pm.makePersistent(t1);
+		Object oid = pm.getObjectId(t1);
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+		return oid;
+	}
+
+	private static void checkObjects(PersistenceManager pm, Object oid) {
+		ClassAccessorTestClass t1 = (ClassAccessorTestClass) pm.getObjectById(oid);
+		ClassAccessorTestClass t2 = t1.getRef();
+		assertNotNull(t2);
+		t1.check(3, t2);
+		t2.check(4, null);
+	}
+
+	@Test
+	public void testAccessorAvailable() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ZooClassDef def = getDef(pm, ClassAccessorTestClass.class);
+		ClassAccessor acc = def.getAccessor();
+		assertNotNull(acc);
+		//transient and static fields are not persistent
+		assertEquals(def.getAllFields().length, acc.getFields().length);
+		assertTrue(acc.newInstance() instanceof ClassAccessorTestClass);
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testAllFieldKinds() {
+		Object oid = createObjects();
+
+		//read
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		checkObjects(pm, oid);
+		
+		//update
+		ClassAccessorTestClass t1 = (ClassAccessorTestClass) pm.getObjectById(oid);
+		t1.setLong(-5);
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		t1 = (ClassAccessorTestClass) pm.getObjectById(oid);
+		assertEquals(-5, t1.getLong());
+		assertEquals(3, t1.getInt());
+		//neither transient nor static fields are set when loading
+		assertEquals(0, t1.getTrans());
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testEvolvedSchema() {
+		//Evolving objects with arrays of persistent objects is not supported, so there is no
+		//reference to another object. Writing evolved objects is not supported either, so
+		//they are only loaded in transactions that are rolled back.
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ClassAccessorTestClass t0 = new ClassAccessorTestClass();
+		t0.init(3, null);
+		pm.makePersistent(t0);
+		Object oid = pm.getObjectId(t0);
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+		ZooClass c = ZooJdoHelper.schema(pm).getClass(ClassAccessorTestClass.class);
+		c.removeField("_long");
+		c.addField("_long", Long.TYPE);
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		//the new schema version is associated with the Java class when it is loaded
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ZooClassDef def = getDef(pm, ClassAccessorTestClass.class);
+		assertNotNull(def.getAccessor());
+		//outdated versions use reflection
+		assertNull(def.getPreviousVersion().getAccessor());
+
+		//new objects
+		ClassAccessorTestClass t3 = new ClassAccessorTestClass();
+		ClassAccessorTestClass t4 = new ClassAccessorTestClass();
+		t3.init(5, t4);
+		t4.init(6, null);
+		pm.makePersistent(t3);
+		Object oid3 = pm.getObjectId(t3);
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		t3 = (ClassAccessorTestClass) pm.getObjectById(oid3);
+		t3.check(5, t3.getRef());
+		t3.getRef().check(6, null);
+		//the old object is evolved, the new field is empty
+		ClassAccessorTestClass t1 = (ClassAccessorTestClass) pm.getObjectById(oid);
+		assertEquals(0, t1.getLong());
+		assertEquals(3, t1.getInt());
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testGenericObjects() {
+		Object oid = createObjects();
+
+		//generic objects of a class with accessor
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ZooHandle h = ZooJdoHelper.schema(pm).getHandle((Long) oid);
+		assertEquals(3, h.getAttrInt("_int"));
+		assertEquals("str3", h.getAttrString("_string"));
+		h.setValue("_int", 33);
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ClassAccessorTestClass t1 = (ClassAccessorTestClass) pm.getObjectById(oid);
+		assertEquals(33, t1.getInt());
+		assertEquals(3 * 10000000000L, t1.getLong());
+
+		//classes without Java class use reflection
+		ZooClass c = ZooJdoHelper.schema(pm).defineEmptyClass("org.zoodb.jdo.internal.NoClass");
+		c.addField("_int", Integer.TYPE);
+		c.addField("_string", String.class);
+		ZooHandle h2 = c.newInstance();
+		h2.setValue("_int", 12);
+		h2.setValue("_string", "12");
+		assertNull(((ZooClassProxy)c).getSchemaDef().getAccessor());
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Iterator<ZooHandle> it = 
+				ZooJdoHelper.schema(pm).getClass("org.zoodb.jdo.internal.NoClass").getHandleIterator(false);
+		h2 = it.next();
+		assertEquals(12, h2.getAttrInt("_int"));
+		assertEquals("12", h2.getAttrString("_string"));
+		assertTrue(!it.hasNext());
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testFinalFields() {
+		//TestSerializer has final fields, which cannot be set with method handles
+		TestTools.defineSchema(TestSuper.class, TestSerializer.class);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertNull(getDef(pm, TestSerializer.class).getAccessor());
+		assertNotNull(getDef(pm, TestSuper.class).getAccessor());
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testUnsupportedAccess() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ZooClassDef def = getDef(pm, ClassAccessorTestClass.class);
+		ClassAccessorTestClass t = new ClassAccessorTestClass();
+		
+		//primitives are read and written as stream values, not as objects
+		String[] primitives = {"_bool", "_byte", "_char", "_double", "_float", "_int", 
+				"_long", "_short"};
+		for (String name: primitives) {
+			FieldAccessor fa = getField(def, name);
+			try {
+				fa.get(t);
+				fail(name);
+			} catch (UnsupportedOperationException e) {
+				assertTrue(e.getMessage().contains(name));
+			}
+			try {
+				fa.set(t, null);
+				fail(name);
+			} catch (UnsupportedOperationException e) {
+				assertTrue(e.getMessage().contains(name));
+			}
+		}
+		
+		//references are only returned and set
+		String[] refs = {"_intA", "_string", "_date", "_ref", "_list"};
+		for (String name: refs) {
+			FieldAccessor fa = getField(def, name);
+			try {
+				fa.write(t, null);
+				fail(name);
+			} catch (UnsupportedOperationException e) {
+				assertTrue(e.getMessage().contains(name));
+			}
+			try {
+				fa.read(t, null);
+				fail(name);
+			} catch (UnsupportedOperationException e) {
+				assertTrue(e.getMessage().contains(name));
+			}
+		}
+		pm.currentTransaction().rollback();
+	}
+}
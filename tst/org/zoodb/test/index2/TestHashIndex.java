@@ -0,0 +1,259 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.index2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+import org.zoodb.internal.server.DiskIO.PAGE_TYPE;
+import org.zoodb.internal.server.StorageChannel;
+import org.zoodb.internal.server.StorageRootInMemory;
+import org.zoodb.internal.server.index.LongLongIndex.LLEntry;
+import org.zoodb.internal.server.index.LongLongIndex.LLEntryIterator;
+import org.zoodb.internal.server.index.LongLongIndex.LongLongIterator;
+import org.zoodb.internal.server.index.PagedHashLongLong;
+import org.zoodb.tools.ZooConfig;
+
+public class TestHashIndex {
+
+	private static final int N = 100000;
+
+	private StorageChannel createPageAccessFile() {
+		return new StorageRootInMemory(ZooConfig.getFilePageSize());
+	}
+
+	@Test
+	public void testEmpty() {
+		PagedHashLongLong ind = new PagedHashLongLong(PAGE_TYPE.FIELD_INDEX,
+				createPageAccessFile());
+		assertEquals(0, ind.size());
+		assertFalse(ind.iterator().hasNext());
+		assertFalse(ind.iterator(5, 5).hasNext());
+		assertNull(ind.findValue(5));
+		assertEquals(Long.MIN_VALUE, ind.getMaxKey());
+		try {
+			ind.removeLong(5, 5);
+			fail();
+		} catch (NoSuchElementException e) {
+			//good
+		}
+	}
+
+	@Test
+	public void testInsertAndLookup() {
+		PagedHashLongLong ind = new PagedHashLongLong(PAGE_TYPE.FIELD_INDEX,
+				createPageAccessFile());
+		for (int i = 0; i < N; i++) {
+			ind.insertLong(i * 3, i);
+		}
+		assertEquals(N, ind.size());
+		assertTrue(ind.statsGetLeavesN() > 1);
+		for (int i = 0; i < N; i++) {
+			assertEquals(i, ind.findValue(i * 3).getValue());
+			assertNull(ind.findValue(i * 3 + 1));
+			LLEntryIterator it = ind.iterator(i * 3, i * 3);
+			assertTrue(it.hasNext());
+			assertEquals(i, it.next().getValue());
+			assertFalse(it.hasNext());
+		}
+
+		//unique: overwrite
+		ind.insertLong(30, -1);
+		assertEquals(-1, ind.findValue(30).getValue());
+		assertFalse(ind.insertLongIfNotSet(30, -2));
+		assertEquals(-1, ind.findValue(30).getValue());
+		assertTrue(ind.insertLongIfNotSet(31, -2));
+		assertEquals(N + 1, ind.size());
+		assertEquals(0, ind.getMinKey());
+		assertEquals((N - 1) * 3, ind.getMaxKey());
+	}
+
+	@Test
+	public void testRange() {
+		PagedHashLongLong ind = new PagedHashLongLong(PAGE_TYPE.FIELD_INDEX,
+				createPageAccessFile());
+		for (int i = -1000; i < 1000; i++) {
+			ind.insertLong(i, i * 10);
+		}
+		LLEntryIterator it = ind.iterator(-10, 9);
+		for (int i = -10; i < 10; i++) {
+			LLEntry e = it.next();
+			assertEquals(i, e.getKey());
+			assertEquals(i * 10, e.getValue());
+		}
+		assertFalse(it.hasNext());
+		LongLongIterator<LLEntry> dit = ind.descendingIterator(9, -10);
+		for (int i = 9; i >= -10; i--) {
+			assertEquals(i, dit.next().getKey());
+		}
+		assertFalse(dit.hasNext());
+
+		int n = 0;
+		it = ind.iterator();
+		while (it.hasNext()) {
+			assertEquals(n - 1000, it.next().getKey());
+			n++;
+		}
+		assertEquals(2000, n);
+	}
+
+	@Test
+	public void testRemove() {
+		PagedHashLongLong ind = new PagedHashLongLong(PAGE_TYPE.FIELD_INDEX,
+				createPageAccessFile());
+		for (int i = 0; i < N; i++) {
+			ind.insertLong(i, i + 1);
+		}
+		ind.write();
+		for (int i = 0; i < N; i += 2) {
+			assertEquals(i + 1, ind.removeLong(i, 0));
+		}
+		assertEquals(N / 2, ind.size());
+		for (int i = 0; i < N; i++) {
+			if (i % 2 == 0) {
+				assertNull(ind.findValue(i));
+			} else {
+				assertEquals(i + 1, ind.findValue(i).getValue());
+			}
+		}
+		for (int i = 1; i < N; i += 2) {
+			ind.removeLong(i, 0);
+		}
+		assertEquals(0, ind.size());
+		assertFalse(ind.iterator().hasNext());
+	}
+
+	@Test
+	public void testWriteAndRead() {
+		StorageChannel file = createPageAccessFile();
+		PagedHashLongLong ind = new PagedHashLongLong(PAGE_TYPE.FIELD_INDEX, file);
+		for (int i = 0; i < N; i++) {
+			ind.insertLong(i, -i);
+		}
+		int root = ind.write();
+		assertFalse(ind.isDirty());
+		assertEquals(root, ind.write());
+
+		PagedHashLongLong ind2 = new PagedHashLongLong(PAGE_TYPE.FIELD_INDEX, file, root);
+		assertEquals(N, ind2.size());
+		assertEquals(ind.debugPageIds(), ind2.debugPageIds());
+		for (int i = 0; i < N; i += 7) {
+			assertEquals(-i, ind2.findValue(i).getValue());
+		}
+
+		//update after reading
+		for (int i = N; i < 3 * N; i++) {
+			ind2.insertLong(i, -i);
+		}
+		ind2.removeLong(5, 0);
+		int root2 = ind2.write();
+		List<Integer> pages = ind2.debugPageIds();
+		assertEquals(pages.size(), new HashSet<Integer>(pages).size());
+
+		PagedHashLongLong ind3 = new PagedHashLongLong(PAGE_TYPE.FIELD_INDEX, file, root2);
+		assertEquals(3 * N - 1, ind3.size());
+		//directory spans several pages
+		assertTrue(ind3.statsGetInnerN() > 1);
+		assertNull(ind3.findValue(5));
+		for (int i = 0; i < 3 * N; i += 7) {
+			if (i != 5) {
+				assertEquals(-i, ind3.findValue(i).getValue());
+			}
+		}
+	}
+
+	@Test
+	public void testClear() {
+		StorageChannel file = createPageAccessFile();
+		PagedHashLongLong ind = new PagedHashLongLong(PAGE_TYPE.FIELD_INDEX, file);
+		for (int i = 0; i < N; i++) {
+			ind.insertLong(i, i);
+		}
+		ind.write();
+		ind.clear();
+		assertEquals(0, ind.size());
+		assertNull(ind.findValue(5));
+		ind.insertLong(5, 5);
+		int root = ind.write();
+		PagedHashLongLong ind2 = new PagedHashLongLong(PAGE_TYPE.FIELD_INDEX, file, root);
+		assertEquals(1, ind2.size());
+		assertEquals(5, ind2.findValue(5).getValue());
+	}
+
+	@Test
+	public void testWriteOnlyModifiedDirectoryPages() {
+		StorageChannel file = createPageAccessFile();
+		PagedHashLongLong ind = new PagedHashLongLong(PAGE_TYPE.FIELD_INDEX, file);
+		for (int i = 0; i < 5 * N; i++) {
+			ind.insertLong(i, i);
+		}
+		ind.write();
+		assertTrue(ind.statsGetInnerN() > 3);
+		
+		//modify a single bucket
+		ind.insertLong(12345, -1);
+		int n0 = ind.statsGetWrittenPagesN();
+		int root = ind.write();
+		//the bucket, its directory page and the root page
+		assertEquals(3, ind.statsGetWrittenPagesN() - n0);
+		
+		PagedHashLongLong ind2 = new PagedHashLongLong(PAGE_TYPE.FIELD_INDEX, file, root);
+		assertEquals(ind.debugPageIds(), ind2.debugPageIds());
+		for (int i = 0; i < 5 * N; i += 7) {
+			assertEquals(i == 12345 ? -1 : i, ind2.findValue(i).getValue());
+		}
+	}
+
+	@Test
+	public void testPageBudget() {
+		ZooConfig.setIndexPageBudget(50);
+		try {
+			StorageChannel file = createPageAccessFile();
+			PagedHashLongLong ind = new PagedHashLongLong(PAGE_TYPE.FIELD_INDEX, file);
+			for (int i = 0; i < N; i++) {
+				ind.insertLong(i, -i);
+			}
+			//modified buckets are not evicted
+			assertEquals(0, file.getIndexPageBudget().statsGetEvictionCount());
+			int root = ind.write();
+			
+			PagedHashLongLong ind2 = new PagedHashLongLong(PAGE_TYPE.FIELD_INDEX, file, root);
+			for (PagedHashLongLong i2: new PagedHashLongLong[]{ind, ind2}) {
+				for (int i = 0; i < N; i++) {
+					assertEquals(-i, i2.findValue(i).getValue());
+				}
+			}
+			assertTrue(file.getIndexPageBudget().statsGetEvictionCount() > 0);
+			assertTrue("" + file.getIndexPageBudget().statsGetPageCount(), 
+					file.getIndexPageBudget().statsGetPageCount() <= 60);
+		} finally {
+			ZooConfig.setIndexPageBudget(ZooConfig.INDEX_PAGE_BUDGET_DEFAULT);
+		}
+	}
+}
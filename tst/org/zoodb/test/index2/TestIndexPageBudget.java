@@ -0,0 +1,176 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.index2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.internal.server.DiskIO.PAGE_TYPE;
+import org.zoodb.internal.server.StorageChannel;
+import org.zoodb.internal.server.StorageRootInMemory;
+import org.zoodb.internal.server.index.IndexFactory;
+import org.zoodb.internal.server.index.IndexPageBudget;
+import org.zoodb.internal.server.index.LongLongIndex;
+import org.zoodb.internal.server.index.LongLongIndex.LLEntry;
+import org.zoodb.internal.server.index.LongLongIndex.LLEntryIterator;
+import org.zoodb.internal.server.index.LongLongIndex.LongLongUIndex;
+import org.zoodb.tools.ZooConfig;
+
+/**
+ * Tests for the eviction of index pages.
+ */
+public class TestIndexPageBudget {
+
+	private static final int N = 100000;
+	private static final int BUDGET = 50;
+
+	@Before
+	public void before() {
+		ZooConfig.setIndexPageBudget(BUDGET);
+	}
+
+	@After
+	public void after() {
+		ZooConfig.setIndexPageBudget(ZooConfig.INDEX_PAGE_BUDGET_DEFAULT);
+	}
+
+	private StorageChannel createPageAccessFile() {
+		return new StorageRootInMemory(ZooConfig.getFilePageSize());
+	}
+
+	private static void checkBudget(IndexPageBudget budget) {
+		//one sweep may leave some pages above the budget, plus the pages of one operation
+		assertTrue("" + budget.statsGetPageCount(),
+				budget.statsGetPageCount() <= BUDGET + 10);
+	}
+
+	@Test
+	public void testFind() {
+		StorageChannel file = createPageAccessFile();
+		LongLongUIndex ind = IndexFactory.createUniqueIndex(PAGE_TYPE.GENERIC_INDEX, file);
+		for (int i = 0; i < N; i++) {
+			ind.insertLong(i, 32 + i);
+		}
+		//modified pages are not evicted
+		assertEquals(0, file.getIndexPageBudget().statsGetEvictionCount());
+		int root = ind.write();
+
+		Random r = new Random(0);
+		for (int i = 0; i < N; i++) {
+			int k = r.nextInt(N);
+			assertEquals(32 + k, ind.findValue(k).getValue());
+		}
+		assertNull(ind.findValue(N));
+		assertTrue(file.getIndexPageBudget().statsGetEvictionCount() > 0);
+		checkBudget(file.getIndexPageBudget());
+
+		//load again
+		ind = IndexFactory.loadUniqueIndex(PAGE_TYPE.GENERIC_INDEX, file, root);
+		for (int i = 0; i < N; i++) {
+			assertEquals(32 + i, ind.findValue(i).getValue());
+		}
+		checkBudget(file.getIndexPageBudget());
+	}
+
+	@Test
+	public void testModify() {
+		StorageChannel file = createPageAccessFile();
+		LongLongIndex ind = IndexFactory.createIndex(PAGE_TYPE.FIELD_INDEX, file);
+		long[] values = new long[N];
+		for (int i = 0; i < N; i++) {
+			values[i] = i;
+			ind.insertLong(i % 1000, i);
+		}
+		ind.write();
+
+		//modify the index in several transactions, pages are evicted in between
+		Random r = new Random(0);
+		for (int tx = 0; tx < 10; tx++) {
+			for (int j = 0; j < 1000; j++) {
+				int i = r.nextInt(N);
+				ind.removeLong(i % 1000, values[i]);
+				values[i] += N;
+				ind.insertLong(i % 1000, values[i]);
+			}
+			ind.write();
+		}
+		assertTrue(file.getIndexPageBudget().statsGetEvictionCount() > 0);
+
+		for (int i = 0; i < 1000; i++) {
+			LLEntryIterator it = ind.iterator(i, i);
+			int n = 0;
+			while (it.hasNext()) {
+				LLEntry e = it.next();
+				assertEquals(i, e.getKey());
+				assertEquals(i, e.getValue() % N % 1000);
+				n++;
+			}
+			assertEquals(N / 1000, n);
+		}
+		checkBudget(file.getIndexPageBudget());
+	}
+
+	@Test
+	public void testIteratorOnEvictedPages() {
+		StorageChannel file = createPageAccessFile();
+		LongLongUIndex ind = IndexFactory.createUniqueIndex(PAGE_TYPE.OID_INDEX, file);
+		LongLongUIndex ind2 = IndexFactory.createUniqueIndex(PAGE_TYPE.POS_INDEX, file);
+		for (int i = 0; i < N; i++) {
+			ind.insertLong(i, i);
+			ind2.insertLong(i, i);
+		}
+		ind.write();
+		ind2.write();
+
+		//the pages held by the iterator are evicted by the other index
+		LLEntryIterator it = ind.iterator();
+		for (int i = 0; i < N; i++) {
+			assertTrue(it.hasNext());
+			assertEquals(i, it.next().getKey());
+			assertEquals(N - i - 1, ind2.findValue(N - i - 1).getValue());
+		}
+		assertFalse(it.hasNext());
+		assertTrue(file.getIndexPageBudget().statsGetEvictionCount() > 0);
+		checkBudget(file.getIndexPageBudget());
+	}
+
+	@Test
+	public void testNoBudget() {
+		ZooConfig.setIndexPageBudget(0);
+		StorageChannel file = createPageAccessFile();
+		LongLongUIndex ind = IndexFactory.createUniqueIndex(PAGE_TYPE.OID_INDEX, file);
+		for (int i = 0; i < N; i++) {
+			ind.insertLong(i, i);
+		}
+		ind.write();
+		for (int i = 0; i < N; i++) {
+			assertEquals(i, ind.findValue(i).getValue());
+		}
+		assertEquals(0, file.getIndexPageBudget().statsGetEvictionCount());
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.test.index2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.zoodb.internal.server.DiskIO.PAGE_TYPE;
+import org.zoodb.internal.server.StorageChannel;
+import org.zoodb.internal.server.StorageRootInMemory;
+import org.zoodb.internal.server.index.IndexFactory;
+import org.zoodb.internal.server.index.IndexStatistics;
+import org.zoodb.internal.server.index.LongLongIndex;
+import org.zoodb.tools.ZooConfig;
+
+public class TestIndexStatistics {
+
+	private static final int N = 10000;
+	
+	private StorageChannel createPageAccessFile() {
+		return new StorageRootInMemory(ZooConfig.getFilePageSize());
+	}
+	
+	private static void assertEstimate(long expected, long actual) {
+		long tolerance = Math.max(5, expected / 10);
+		assertTrue("expected=" + expected + " actual=" + actual, 
+				Math.abs(expected - actual) <= tolerance);
+	}
+
+	@Test
+	public void testEmpty() {
+		LongLongIndex ind = IndexFactory.createIndex(PAGE_TYPE.GENERIC_INDEX, 
+				createPageAccessFile());
+		IndexStatistics s = new IndexStatistics();
+		assertFalse(s.isInitialized());
+		s.build(ind);
+		assertTrue(s.isInitialized());
+		assertEquals(0, s.getEntryCount());
+		assertEquals(0, s.estimateRange(Long.MIN_VALUE, Long.MAX_VALUE));
+		assertEquals(0, s.estimateRange(5, 5));
+	}
+	
+	@Test
+	public void testUnique() {
+		LongLongIndex ind = IndexFactory.createUniqueIndex(PAGE_TYPE.GENERIC_INDEX, 
+				createPageAccessFile());
+		for (int i = 0; i < N; i++) {
+			ind.insertLong(i * 2, i);
+		}
+		IndexStatistics s = new IndexStatistics();
+		s.build(ind);
+		assertEquals(N, s.getEntryCount());
+		assertEquals(N, s.getDistinctKeyCount());
+		assertEquals(1, s.estimateRange(100, 100));
+		assertEquals(N, s.estimateRange(Long.MIN_VALUE, Long.MAX_VALUE));
+		assertEstimate(500, s.estimateRange(1000, 1999));
+		assertEquals(0, s.estimateRange(-100, -1));
+		assertEquals(0, s.estimateRange(3*N, 4*N));
+		assertEquals(0, s.estimateRange(10, 9));
+	}
+	
+	@Test
+	public void testSkewed() {
+		LongLongIndex ind = IndexFactory.createIndex(PAGE_TYPE.GENERIC_INDEX, 
+				createPageAccessFile());
+		//half of the entries have key 0, the others are distinct
+		for (int i = 0; i < N; i++) {
+			ind.insertLong(i % 2 == 0 ? 0 : i, i);
+		}
+		IndexStatistics s = new IndexStatistics();
+		s.build(ind);
+		assertEquals(N, s.getEntryCount());
+		assertEstimate(N/2 + 1, s.getDistinctKeyCount());
+		assertEstimate(N/2, s.estimateRange(0, 0));
+		assertTrue(s.estimateRange(1, 1) < 10);
+		assertEstimate(N/4, s.estimateRange(1, N/2));
+	}
+	
+	@Test
+	public void testIncremental() {
+		LongLongIndex ind = IndexFactory.createIndex(PAGE_TYPE.GENERIC_INDEX, 
+				createPageAccessFile());
+		for (int i = 0; i < N; i++) {
+			ind.insertLong(i, i);
+		}
+		IndexStatistics s = new IndexStatistics();
+		s.build(ind);
+		
+		//insert beyond the current maximum
+		for (int i = N; i < N + 1000; i++) {
+			s.insert(i);
+		}
+		assertEquals(N + 1000, s.getEntryCount());
+		assertEstimate(1000, s.estimateRange(N, N + 999));
+		
+		for (int i = 0; i < 1000; i++) {
+			s.remove(i);
+		}
+		assertEquals(N, s.getEntryCount());
+		assertEquals(0, s.estimateRange(0, 500));
+		assertTrue(s.estimateRange(0, 999) < 100);
+		
+		//The copy is independent
+		IndexStatistics s2 = s.copy();
+		s.insert(5);
+		assertEquals(N + 1, s.getEntryCount());
+		assertEquals(N, s2.getEntryCount());
+		
+		//After many updates the statistics need to be rebuilt
+		for (int i = 0; i < N; i++) {
+			s.insert(i);
+		}
+		assertFalse(s.isInitialized());
+		
+		s.invalidate();
+		s.build(ind);
+		assertTrue(s.isInitialized());
+		assertEquals(N, s.getEntryCount());
+	}
+}
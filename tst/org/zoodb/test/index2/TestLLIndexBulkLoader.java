@@ -0,0 +1,289 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.index2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Random;
+
+import org.junit.Test;
+import org.zoodb.internal.server.DiskIO.PAGE_TYPE;
+import org.zoodb.internal.server.StorageChannel;
+import org.zoodb.internal.server.StorageRootInMemory;
+import org.zoodb.internal.server.index.IndexFactory;
+import org.zoodb.internal.server.index.LLIndexBulkLoader;
+import org.zoodb.internal.server.index.LongLongIndex;
+import org.zoodb.internal.server.index.LongLongIndex.LLEntry;
+import org.zoodb.internal.server.index.LongLongIndex.LLEntryIterator;
+import org.zoodb.tools.ZooConfig;
+
+public class TestLLIndexBulkLoader {
+
+	private static final int N = 100000;
+
+	private StorageChannel createPageAccessFile() {
+		return new StorageRootInMemory(ZooConfig.getFilePageSize());
+	}
+
+	/**
+	 * @return a permutation of 0..n-1
+	 */
+	private static int[] shuffled(int n) {
+		int[] a = new int[n];
+		for (int i = 0; i < n; i++) {
+			a[i] = i;
+		}
+		Random r = new Random(0);
+		for (int i = n - 1; i > 0; i--) {
+			int j = r.nextInt(i + 1);
+			int x = a[i];
+			a[i] = a[j];
+			a[j] = x;
+		}
+		return a;
+	}
+
+	private static void load(LongLongIndex ind, int[] keys, int runSize) {
+		LLIndexBulkLoader bl = new LLIndexBulkLoader(ind, runSize);
+		try {
+			for (int k: keys) {
+				bl.add(k, k * 2L);
+			}
+			bl.finish();
+		} finally {
+			bl.close();
+		}
+	}
+
+	private static void check(LongLongIndex ind, int n) {
+		LLEntryIterator it = ind.iterator();
+		for (int i = 0; i < n; i++) {
+			assertTrue(it.hasNext());
+			LLEntry e = it.next();
+			assertEquals(i, e.getKey());
+			assertEquals(i * 2L, e.getValue());
+		}
+		assertFalse(it.hasNext());
+	}
+
+	@Test
+	public void testUnique() {
+		for (int n: new int[]{0, 1, 2, 100, 1000, N}) {
+			LongLongIndex.LongLongUIndex ind =
+					IndexFactory.createUniqueIndex(PAGE_TYPE.GENERIC_INDEX, createPageAccessFile());
+			load(ind, shuffled(n), LLIndexBulkLoader.DEFAULT_RUN_SIZE);
+			check(ind, n);
+			for (int i = 0; i < n; i += 7) {
+				assertEquals(i * 2L, ind.findValue(i).getValue());
+			}
+		}
+	}
+
+	@Test
+	public void testExternalSort() {
+		LongLongIndex ind = IndexFactory.createIndex(PAGE_TYPE.GENERIC_INDEX,
+				createPageAccessFile());
+		//many small runs
+		load(ind, shuffled(N), 1000);
+		check(ind, N);
+	}
+
+	@Test
+	public void testSortedRuns() {
+		LongLongIndex ind = IndexFactory.createUniqueIndex(PAGE_TYPE.GENERIC_INDEX,
+				createPageAccessFile());
+		LLIndexBulkLoader bl = new LLIndexBulkLoader(ind, 10000);
+		try {
+			//interleaved runs, some in memory, some in files
+			int nRuns = 37;
+			for (int r = 0; r < nRuns; r++) {
+				int n = (N - r + nRuns - 1) / nRuns;
+				long[] run = new long[2 * n];
+				for (int i = 0; i < n; i++) {
+					run[2 * i] = i * nRuns + r;
+					run[2 * i + 1] = run[2 * i] * 2;
+				}
+				bl.addSortedRun(run);
+			}
+			//and some unsorted pairs
+			bl.add(N + 1, (N + 1) * 2L);
+			bl.add(N, N * 2L);
+			bl.finish();
+		} finally {
+			bl.close();
+		}
+		check(ind, N + 2);
+	}
+
+	@Test
+	public void testNonUniqueDuplicateKeys() {
+		LongLongIndex ind = IndexFactory.createIndex(PAGE_TYPE.GENERIC_INDEX,
+				createPageAccessFile());
+		LLIndexBulkLoader bl = new LLIndexBulkLoader(ind, 1000);
+		int[] values = shuffled(N);
+		for (int v: values) {
+			bl.add(v % 10, v);
+		}
+		bl.finish();
+		bl.close();
+		for (int k = 0; k < 10; k++) {
+			LLEntryIterator it = ind.iterator(k, k);
+			long prev = -1;
+			int n = 0;
+			while (it.hasNext()) {
+				LLEntry e = it.next();
+				assertEquals(k, e.getValue() % 10);
+				assertTrue(e.getValue() > prev);
+				prev = e.getValue();
+				n++;
+			}
+			assertEquals(N / 10, n);
+		}
+	}
+
+	@Test
+	public void testUniqueDuplicateKeys() {
+		LongLongIndex ind = IndexFactory.createUniqueIndex(PAGE_TYPE.GENERIC_INDEX,
+				createPageAccessFile());
+		LLIndexBulkLoader bl = new LLIndexBulkLoader(ind, 1000);
+		for (int i = 0; i < N; i++) {
+			bl.add(i, i);
+		}
+		bl.add(N / 2, -1);
+		try {
+			bl.finish();
+			fail();
+		} catch (RuntimeException e) {
+			//good
+		} finally {
+			bl.close();
+		}
+	}
+
+	@Test
+	public void testUpdateAfterLoad() {
+		StorageChannel file = createPageAccessFile();
+		LongLongIndex.LongLongUIndex ind =
+				IndexFactory.createUniqueIndex(PAGE_TYPE.GENERIC_INDEX, file);
+		int[] keys = new int[N];
+		for (int i = 0; i < N; i++) {
+			keys[i] = i * 2;
+		}
+		load(ind, keys, LLIndexBulkLoader.DEFAULT_RUN_SIZE);
+
+		//write and reload
+		int root = ind.write();
+		ind = IndexFactory.loadUniqueIndex(PAGE_TYPE.GENERIC_INDEX, file, root);
+		assertEquals(N * 2 - 2, ind.getMaxKey());
+
+		//insert between the bulk loaded keys, this splits full pages
+		for (int i = 0; i < N; i++) {
+			ind.insertLong(i * 2 + 1, (i * 2 + 1) * 2L);
+		}
+		check(ind, 2 * N);
+		for (int i = 0; i < 2 * N; i += 2) {
+			ind.removeLong(i);
+		}
+		LLEntryIterator it = ind.iterator();
+		for (int i = 1; i < 2 * N; i += 2) {
+			assertEquals(i, it.next().getKey());
+		}
+		assertFalse(it.hasNext());
+		root = ind.write();
+		ind = IndexFactory.loadUniqueIndex(PAGE_TYPE.GENERIC_INDEX, file, root);
+		assertEquals(N, countEntries(ind));
+	}
+
+	@Test
+	public void testRebuild() {
+		StorageChannel file = createPageAccessFile();
+		LongLongIndex ind = IndexFactory.createIndex(PAGE_TYPE.GENERIC_INDEX, file);
+		for (int k: shuffled(N)) {
+			ind.insertLong(k, k * 2L);
+		}
+		int leavesBefore = countLeaves(file, ind.write());
+		try {
+			new LLIndexBulkLoader(ind);
+			fail();
+		} catch (IllegalStateException e) {
+			//good, index is not empty
+		}
+		ind.clear();
+		load(ind, shuffled(N), LLIndexBulkLoader.DEFAULT_RUN_SIZE);
+		check(ind, N);
+		//fully packed leaves
+		assertTrue(countLeaves(file, ind.write()) < leavesBefore);
+	}
+
+	/**
+	 * @return The number of leaves, every leaf is read exactly once
+	 */
+	private static int countLeaves(StorageChannel file, int root) {
+		LongLongIndex ind = IndexFactory.loadIndex(PAGE_TYPE.GENERIC_INDEX, file, root);
+		assertEquals(N, countEntries(ind));
+		return ind.statsGetLeavesN();
+	}
+
+	private static int countEntries(LongLongIndex ind) {
+		int n = 0;
+		LLEntryIterator it = ind.iterator();
+		while (it.hasNext()) {
+			it.next();
+			n++;
+		}
+		return n;
+	}
+
+	private static int countRunFiles() {
+		File tmp = new File(System.getProperty("java.io.tmpdir"));
+		return tmp.list(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith("zoodb-index-") && name.endsWith(".run");
+			}
+		}).length;
+	}
+	
+	@Test
+	public void testTempFilesDeleted() {
+		int n0 = countRunFiles();
+		LongLongIndex ind = IndexFactory.createIndex(PAGE_TYPE.GENERIC_INDEX,
+				createPageAccessFile());
+		LLIndexBulkLoader bl = new LLIndexBulkLoader(ind, 1000);
+		try {
+			for (int v: shuffled(N)) {
+				bl.add(v, v * 2L);
+			}
+			assertTrue(countRunFiles() > n0);
+			bl.finish();
+			//finish() deletes the runs
+			assertEquals(n0, countRunFiles());
+		} finally {
+			bl.close();
+		}
+		check(ind, N);
+	}
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.index2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.zoodb.internal.server.DiskIO.PAGE_TYPE;
+import org.zoodb.internal.server.StorageChannel;
+import org.zoodb.internal.server.StorageRootInMemory;
+import org.zoodb.internal.server.index.IndexFactory;
+import org.zoodb.internal.server.index.LLIndexBulkLoader;
+import org.zoodb.internal.server.index.LongLongIndex;
+import org.zoodb.internal.server.index.LongLongIndex.LLEntry;
+import org.zoodb.internal.server.index.LongLongIndex.LLEntryIterator;
+import org.zoodb.internal.server.index.LongLongIndex.LongLongUIndex;
+import org.zoodb.tools.ZooConfig;
+
+/**
+ * Tests for the compressed leaf pages of OID, POS and attribute indices.
+ */
+public class TestLLIndexCompression {
+
+	private static final int N = 100000;
+
+	private StorageChannel createPageAccessFile() {
+		return new StorageRootInMemory(ZooConfig.getFilePageSize());
+	}
+
+	/**
+	 * @return The number of leaves of the written index
+	 */
+	private static int countLeaves(LongLongIndex ind, int n) {
+		assertEquals(n, countEntries(ind));
+		return ind.statsGetLeavesN();
+	}
+
+	private static int countEntries(LongLongIndex ind) {
+		int n = 0;
+		LLEntryIterator it = ind.iterator();
+		while (it.hasNext()) {
+			it.next();
+			n++;
+		}
+		return n;
+	}
+
+	private static void check(LongLongIndex ind, long[] keys, long[] values, int n) {
+		LLEntryIterator it = ind.iterator();
+		for (int i = 0; i < n; i++) {
+			assertTrue(it.hasNext());
+			LLEntry e = it.next();
+			assertEquals(keys[i], e.getKey());
+			assertEquals(values[i], e.getValue());
+		}
+		assertFalse(it.hasNext());
+	}
+
+	@Test
+	public void testOidIndex() {
+		//OIDs with positions of objects, similar to PagedOidIndex
+		StorageChannel file = createPageAccessFile();
+		LongLongUIndex ind = IndexFactory.createUniqueIndex(PAGE_TYPE.OID_INDEX, file);
+		StorageChannel file2 = createPageAccessFile();
+		LongLongUIndex ind2 = IndexFactory.createUniqueIndex(PAGE_TYPE.GENERIC_INDEX, file2);
+		for (int i = 0; i < N; i++) {
+			long pos = ((long)(100 + i / 50) << 32) | (i % 50) * 80;
+			ind.insertLong(1000 + i, pos);
+			ind2.insertLong(1000 + i, pos);
+		}
+
+		int root = ind.write();
+		ind = IndexFactory.loadUniqueIndex(PAGE_TYPE.OID_INDEX, file, root);
+		for (int i = 0; i < N; i++) {
+			long pos = ((long)(100 + i / 50) << 32) | (i % 50) * 80;
+			assertEquals(pos, ind.findValue(1000 + i).getValue());
+		}
+		assertNull(ind.findValue(999));
+		assertNull(ind.findValue(1000 + N));
+
+		int leaves = countLeaves(IndexFactory.loadUniqueIndex(PAGE_TYPE.OID_INDEX, file, root), N);
+		int root2 = ind2.write();
+		int leaves2 = countLeaves(
+				IndexFactory.loadUniqueIndex(PAGE_TYPE.GENERIC_INDEX, file2, root2), N);
+		assertTrue(leaves + " / " + leaves2, leaves * 2 < leaves2);
+	}
+
+	@Test
+	public void testPosIndex() {
+		//4 byte values
+		StorageChannel file = createPageAccessFile();
+		LongLongUIndex ind = IndexFactory.createUniqueIndex(PAGE_TYPE.POS_INDEX, file, 8, 4);
+		for (int i = 0; i < N; i++) {
+			ind.insertLong(((long)i << 32) | (i % 4096), (i + 1) % 10 == 0 ? i + 1 : 0);
+		}
+		int root = ind.write();
+		ind = IndexFactory.loadUniqueIndex(PAGE_TYPE.POS_INDEX, file, root, 8, 4);
+		for (int i = 0; i < N; i++) {
+			long v = ind.findValue(((long)i << 32) | (i % 4096)).getValue();
+			assertEquals((i + 1) % 10 == 0 ? i + 1 : 0, v);
+		}
+		for (int i = 0; i < N; i += 2) {
+			ind.removeLong(((long)i << 32) | (i % 4096));
+		}
+		root = ind.write();
+		ind = IndexFactory.loadUniqueIndex(PAGE_TYPE.POS_INDEX, file, root, 8, 4);
+		assertEquals(N / 2, countEntries(ind));
+	}
+
+	@Test
+	public void testRandomKeys() {
+		//Random keys and values do not compress, the leaves are stored uncompressed.
+		//Small and large deltas are mixed, so some leaves are compressed and others not.
+		Random r = new Random(0);
+		long[] keys = new long[N];
+		long[] values = new long[N];
+		for (int i = 0; i < N; i++) {
+			keys[i] = (i % 3 == 0) ? r.nextLong() : r.nextInt(1000);
+			values[i] = (i % 5 == 0) ? r.nextLong() : i;
+		}
+
+		StorageChannel file = createPageAccessFile();
+		LongLongIndex ind = IndexFactory.createIndex(PAGE_TYPE.FIELD_INDEX, file);
+		for (int i = 0; i < N; i++) {
+			ind.insertLong(keys[i], values[i]);
+		}
+		//remove every 4th entry
+		for (int i = 0; i < N; i += 4) {
+			ind.removeLong(keys[i], values[i]);
+		}
+		int root = ind.write();
+		ind = IndexFactory.loadIndex(PAGE_TYPE.FIELD_INDEX, file, root);
+
+		long[][] expected = sortedPairs(keys, values, 4);
+		int n = expected[0].length;
+		check(ind, expected[0], expected[1], n);
+
+		//insert the removed entries again
+		for (int i = 0; i < N; i += 4) {
+			ind.insertLong(keys[i], values[i]);
+		}
+		root = ind.write();
+		ind = IndexFactory.loadIndex(PAGE_TYPE.FIELD_INDEX, file, root);
+		expected = sortedPairs(keys, values, 0);
+		check(ind, expected[0], expected[1], N);
+	}
+
+	@Test
+	public void testDescendingInsert() {
+		StorageChannel file = createPageAccessFile();
+		LongLongIndex ind = IndexFactory.createIndex(PAGE_TYPE.FIELD_INDEX, file);
+		for (int i = N - 1; i >= 0; i--) {
+			ind.insertLong(i / 10, i);
+		}
+		int root = ind.write();
+		ind = IndexFactory.loadIndex(PAGE_TYPE.FIELD_INDEX, file, root);
+		LLEntryIterator it = ind.iterator();
+		for (int i = 0; i < N; i++) {
+			LLEntry e = it.next();
+			assertEquals(i / 10, e.getKey());
+			assertEquals(i, e.getValue());
+		}
+		assertFalse(it.hasNext());
+		//pages are not split into almost empty pages
+		assertTrue(N / ind.statsGetLeavesN() > 250);
+	}
+
+	@Test
+	public void testBulkLoad() {
+		StorageChannel file = createPageAccessFile();
+		LongLongIndex ind = IndexFactory.createIndex(PAGE_TYPE.FIELD_INDEX, file);
+		LLIndexBulkLoader bl = new LLIndexBulkLoader(ind, 1000);
+		try {
+			for (int i = N - 1; i >= 0; i--) {
+				bl.add(i / 3, (long)i << 16);
+			}
+			bl.finish();
+		} finally {
+			bl.close();
+		}
+		int root = ind.write();
+		ind = IndexFactory.loadIndex(PAGE_TYPE.FIELD_INDEX, file, root);
+		LLEntryIterator it = ind.iterator();
+		for (int i = 0; i < N; i++) {
+			LLEntry e = it.next();
+			assertEquals(i / 3, e.getKey());
+			assertEquals((long)i << 16, e.getValue());
+		}
+		assertFalse(it.hasNext());
+
+		//update the full pages
+		for (int i = 0; i < N; i++) {
+			ind.insertLong(i / 3, ((long)i << 16) + 1);
+		}
+		for (int i = 0; i < N; i += 2) {
+			ind.removeLong(i / 3, (long)i << 16);
+		}
+		root = ind.write();
+		ind = IndexFactory.loadIndex(PAGE_TYPE.FIELD_INDEX, file, root);
+		assertEquals(N + N / 2, countEntries(ind));
+	}
+
+	/**
+	 * Overwriting values with values that compress worse must split full leaves.
+	 */
+	@Test
+	public void testOverwriteWithGrowingDeltas() {
+		StorageChannel file = createPageAccessFile();
+		LongLongUIndex ind = IndexFactory.createUniqueIndex(PAGE_TYPE.OID_INDEX, file);
+		for (int i = 0; i < N; i++) {
+			ind.insertLong(1000 + i, i);
+		}
+		int root = ind.write();
+		ind = IndexFactory.loadUniqueIndex(PAGE_TYPE.OID_INDEX, file, root);
+		int leaves = ind.statsGetLeavesN();
+
+		Random rnd = new Random(0);
+		long[] keys = new long[N];
+		long[] values = new long[N];
+		for (int i = 0; i < N; i++) {
+			keys[i] = 1000 + i;
+			values[i] = rnd.nextLong();
+			ind.insertLong(keys[i], values[i]);
+		}
+		root = ind.write();
+		ind = IndexFactory.loadUniqueIndex(PAGE_TYPE.OID_INDEX, file, root);
+		check(ind, keys, values, N);
+		assertTrue(leaves + " / " + ind.statsGetLeavesN(), leaves < ind.statsGetLeavesN());
+	}
+
+	/**
+	 * @param skip Skip every skip-th pair, or none if 0
+	 * @return The remaining pairs, sorted by key and value.
+	 */
+	private static long[][] sortedPairs(long[] keys, long[] values, int skip) {
+		long[] a = new long[2 * keys.length];
+		int n = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (skip > 0 && i % skip == 0) {
+				continue;
+			}
+			a[2 * n] = keys[i];
+			a[2 * n + 1] = values[i];
+			n++;
+		}
+		LLIndexBulkLoader.sort(a, 0, n);
+		long[] k = new long[n];
+		long[] v = new long[n];
+		for (int i = 0; i < n; i++) {
+			k[i] = a[2 * i];
+			v[i] = a[2 * i + 1];
+		}
+		return new long[][]{k, v};
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.index2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.internal.server.DiskIO.PAGE_TYPE;
+import org.zoodb.internal.server.StorageChannel;
+import org.zoodb.internal.server.StorageRootInMemory;
+import org.zoodb.internal.server.StorageRootSnapshot;
+import org.zoodb.internal.server.index.IndexFactory;
+import org.zoodb.internal.server.index.LongLongIndex.LongLongUIndex;
+import org.zoodb.tools.DBStatistics;
+import org.zoodb.tools.ZooConfig;
+
+/**
+ * Tests that the indices of a snapshot reuse the unmodified pages of the snapshot of the
+ * previous root page.
+ */
+public class TestSnapshotIndexPages {
+
+	private static final int N = 100000;
+
+	@Before
+	public void before() {
+		DBStatistics.enable(true);
+	}
+
+	@After
+	public void after() {
+		DBStatistics.enable(false);
+	}
+
+	private static void checkAll(LongLongUIndex ind, long modifiedKey, long modifiedValue) {
+		for (int i = 0; i < N; i++) {
+			long expected = i == modifiedKey ? modifiedValue : 32 + i;
+			assertEquals(expected, ind.findValue(i).getValue());
+		}
+	}
+
+	@Test
+	public void testReuseUnmodifiedPages() {
+		StorageChannel file = new StorageRootInMemory(ZooConfig.getFilePageSize());
+		LongLongUIndex ind = IndexFactory.createUniqueIndex(PAGE_TYPE.OID_INDEX, file);
+		for (int i = 0; i < N; i++) {
+			ind.insertLong(i, 32 + i);
+		}
+		int root1 = ind.write();
+
+		StorageRootSnapshot s1 = new StorageRootSnapshot(file, null);
+		LongLongUIndex view1 = IndexFactory.loadUniqueIndex(PAGE_TYPE.OID_INDEX, s1, root1);
+		int n0 = file.statsGetReadCount();
+		checkAll(view1, -1, -1);
+		int nLoadAll = file.statsGetReadCount() - n0;
+
+		//modify one leaf page
+		ind.insertLong(N/2, 12345);
+		int root2 = ind.write();
+
+		StorageRootSnapshot s2 = new StorageRootSnapshot(file, s1.getIndexPageRegistry());
+		n0 = file.statsGetReadCount();
+		LongLongUIndex view2 = IndexFactory.loadUniqueIndex(PAGE_TYPE.OID_INDEX, s2, root2);
+		checkAll(view2, N/2, 12345);
+		int nLoad = file.statsGetReadCount() - n0;
+		//only the modified leaf and its parents are loaded
+		assertTrue(nLoad + " / " + nLoadAll, nLoad > 0 && nLoad <= 4 && nLoadAll > 50);
+
+		//the previous snapshot is not affected
+		checkAll(view1, -1, -1);
+	}
+
+	@Test
+	public void testNoReuseWithoutPredecessor() {
+		StorageChannel file = new StorageRootInMemory(ZooConfig.getFilePageSize());
+		LongLongUIndex ind = IndexFactory.createUniqueIndex(PAGE_TYPE.OID_INDEX, file);
+		for (int i = 0; i < N; i++) {
+			ind.insertLong(i, 32 + i);
+		}
+		int root1 = ind.write();
+
+		StorageRootSnapshot s1 = new StorageRootSnapshot(file, null);
+		int n0 = file.statsGetReadCount();
+		LongLongUIndex view1 = IndexFactory.loadUniqueIndex(PAGE_TYPE.OID_INDEX, s1, root1);
+		checkAll(view1, -1, -1);
+		int nLoadAll = file.statsGetReadCount() - n0;
+
+		//The registry of s1 is dropped by s2, s3 cannot reuse the pages of s1
+		StorageRootSnapshot s2 = new StorageRootSnapshot(file, s1.getIndexPageRegistry());
+		StorageRootSnapshot s3 = new StorageRootSnapshot(file, s2.getIndexPageRegistry());
+		n0 = file.statsGetReadCount();
+		LongLongUIndex view3 = IndexFactory.loadUniqueIndex(PAGE_TYPE.OID_INDEX, s3, root1);
+		checkAll(view3, -1, -1);
+		assertEquals(nLoadAll, file.statsGetReadCount() - n0);
+	}
+}
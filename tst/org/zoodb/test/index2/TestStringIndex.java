@@ -0,0 +1,202 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.index2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.zoodb.internal.server.DiskIO.PAGE_TYPE;
+import org.zoodb.internal.server.StorageChannel;
+import org.zoodb.internal.server.StorageRootInMemory;
+import org.zoodb.internal.server.index.PagedStringIndex;
+import org.zoodb.internal.util.PrimLongArrayList;
+import org.zoodb.tools.ZooConfig;
+
+public class TestStringIndex {
+
+	private static final int N = 20000;
+
+	private StorageChannel createPageAccessFile() {
+		return new StorageRootInMemory(ZooConfig.getFilePageSize());
+	}
+
+	private static String key(int i) {
+		//common prefixes, not ordered by i
+		return "key-" + (i % 7) + "-" + i;
+	}
+
+	private static long[] sorted(PrimLongArrayList list) {
+		long[] a = list.toArray();
+		Arrays.sort(a);
+		return a;
+	}
+
+	@Test
+	public void testEmpty() {
+		PagedStringIndex ind = new PagedStringIndex(PAGE_TYPE.FIELD_INDEX,
+				createPageAccessFile());
+		assertEquals(0, ind.getValues(null, null).size());
+		assertEquals(0, ind.getValues("a", "b").size());
+		assertFalse(ind.remove("a", 1));
+	}
+
+	@Test
+	public void testInsertAndLookup() {
+		PagedStringIndex ind = new PagedStringIndex(PAGE_TYPE.FIELD_INDEX,
+				createPageAccessFile());
+		for (int i = 0; i < N; i++) {
+			ind.insert(key(i), i);
+		}
+		//duplicates are ignored
+		ind.insert(key(5), 5);
+		assertTrue(ind.debugPageIds().size() > 1);
+
+		assertEquals(N, ind.getValues(null, null).size());
+		for (int i = 0; i < N; i += 13) {
+			String k = key(i);
+			PrimLongArrayList r = ind.getValues(k, PagedStringIndex.successor(k));
+			assertEquals(1, r.size());
+			assertEquals(i, r.get(0));
+		}
+		assertEquals(0, ind.getValues("key-", "key-0").size());
+
+		//prefix
+		int n3 = 0;
+		for (int i = 0; i < N; i++) {
+			if (key(i).startsWith("key-3-1")) {
+				n3++;
+			}
+		}
+		assertEquals(n3, ind.getValues("key-3-1",
+				PagedStringIndex.prefixUpperBound("key-3-1")).size());
+		int n2 = 0;
+		for (int i = 0; i < N; i++) {
+			if (key(i).startsWith("key-2")) {
+				n2++;
+			}
+		}
+		assertEquals(n2, ind.getValues("key-2",
+				PagedStringIndex.prefixUpperBound("key-2")).size());
+	}
+
+	@Test
+	public void testSameKey() {
+		PagedStringIndex ind = new PagedStringIndex(PAGE_TYPE.FIELD_INDEX,
+				createPageAccessFile());
+		for (int i = 0; i < N; i++) {
+			ind.insert(i % 2 == 0 ? "even" : "odd", i);
+		}
+		assertEquals(N/2, ind.getValues("even", "even\u0000").size());
+		assertEquals(N/2, ind.getValues("odd", null).size());
+		for (int i = 0; i < N; i += 2) {
+			assertTrue(ind.remove("even", i));
+		}
+		assertEquals(0, ind.getValues("even", "even\u0000").size());
+		assertEquals(N/2, ind.getValues(null, null).size());
+	}
+
+	@Test
+	public void testRemove() {
+		PagedStringIndex ind = new PagedStringIndex(PAGE_TYPE.FIELD_INDEX,
+				createPageAccessFile());
+		for (int i = 0; i < N; i++) {
+			ind.insert(key(i), i);
+		}
+		ind.write();
+		for (int i = 0; i < N; i++) {
+			if (i % 3 != 0) {
+				assertTrue(ind.remove(key(i), i));
+			}
+		}
+		assertFalse(ind.remove(key(1), 1));
+		assertFalse(ind.remove(key(3), 4));
+		long[] r = sorted(ind.getValues(null, null));
+		assertEquals((N + 2) / 3, r.length);
+		for (int i = 0; i < r.length; i++) {
+			assertEquals(i * 3, r[i]);
+		}
+		for (int i = 0; i < N; i += 3) {
+			assertTrue(ind.remove(key(i), i));
+		}
+		assertEquals(0, ind.getValues(null, null).size());
+		assertEquals(1, ind.debugPageIds().size());
+		ind.insert("a", 1);
+		assertEquals(1, ind.getValues(null, null).size());
+	}
+
+	@Test
+	public void testWriteAndRead() {
+		StorageChannel file = createPageAccessFile();
+		PagedStringIndex ind = new PagedStringIndex(PAGE_TYPE.FIELD_INDEX, file);
+		for (int i = 0; i < N; i++) {
+			ind.insert(key(i), i);
+		}
+		int root = ind.write();
+
+		PagedStringIndex ind2 = new PagedStringIndex(PAGE_TYPE.FIELD_INDEX, file, root);
+		assertEquals(N, ind2.getValues(null, null).size());
+		assertEquals(ind.debugPageIds(), ind2.debugPageIds());
+		String k = key(1234);
+		assertEquals(1234, ind2.getValues(k, PagedStringIndex.successor(k)).get(0));
+
+		//update after reading
+		ind2.insert("zzz", -1);
+		assertTrue(ind2.remove(k, 1234));
+		int root2 = ind2.write();
+		PagedStringIndex ind3 = new PagedStringIndex(PAGE_TYPE.FIELD_INDEX, file, root2);
+		assertEquals(N, ind3.getValues(null, null).size());
+		assertEquals(0, ind3.getValues(k, PagedStringIndex.successor(k)).size());
+		assertEquals(-1, ind3.getValues("zzz", null).get(0));
+	}
+
+	@Test
+	public void testLongKeys() {
+		PagedStringIndex ind = new PagedStringIndex(PAGE_TYPE.FIELD_INDEX,
+				createPageAccessFile());
+		char[] ca = new char[ind.getMaxKeyLength() * 2];
+		Arrays.fill(ca, 'x');
+		String long1 = new String(ca) + "1";
+		String long2 = new String(ca) + "2";
+		assertFalse(ind.isExact(long1));
+		assertTrue(ind.isExact("x"));
+		ind.insert(long1, 1);
+		ind.insert(long2, 2);
+		ind.insert("x", 3);
+		//truncated keys return false positives, but no false negatives
+		assertEquals(2, ind.getValues(long1, PagedStringIndex.successor(long1)).size());
+		assertEquals(1, ind.getValues("x", "x\u0000").size());
+		assertTrue(ind.remove(long2, 2));
+		assertEquals(1, ind.getValues(long1, null).size());
+	}
+
+	@Test
+	public void testBounds() {
+		assertEquals("ab", PagedStringIndex.prefixUpperBound("aa"));
+		assertEquals("b", PagedStringIndex.prefixUpperBound("a\uffff"));
+		assertNull(PagedStringIndex.prefixUpperBound("\uffff"));
+		assertNull(PagedStringIndex.prefixUpperBound(""));
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.jdo;
+
+import org.zoodb.jdo.spi.PersistenceCapableImpl;
+
+/**
+ * A persistent class without calls to zooActivateRead() and zooActivateWrite(), see 
+ * {@link Test_183_Enhancer}.
+ */
+public class TestClassEnhanced extends PersistenceCapableImpl {
+
+	private int _int;
+	private long _long;
+	private String _string;
+	/** Accessed directly by {@link TestClassEnhancedSub} */
+	protected double _double;
+	
+	public TestClassEnhanced() {
+		// default constructor
+	}
+	
+	public TestClassEnhanced(int i, long l, String s) {
+		_int = i;
+		_long = l;
+		_string = s;
+	}
+
+	public void setInt(int i) {
+		_int = i;
+	}
+	
+	public void setString(String s) {
+		_string = s;
+	}
+	
+	public void incLong() {
+		_long++;
+	}
+	
+	public int getInt() {
+		return _int;
+	}
+
+	public long getLong() {
+		return _long;
+	}
+
+	public String getString() {
+		return _string;
+	}
+	
+	public boolean hasSameInt(TestClassEnhanced o) {
+		return _int == o._int;
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.jdo;
+
+/**
+ * A non-persistent class that accesses a field of a persistent class in the same package
+ * directly, see {@link Test_183_Enhancer}.
+ */
+public class TestClassEnhancedAccess {
+
+	private TestClassEnhancedAccess() {
+		// static methods only
+	}
+	
+	public static int getSub(TestClassEnhancedSub o) {
+		return o._sub;
+	}
+	
+	public static void setSub(TestClassEnhancedSub o, int sub) {
+		o._sub = sub;
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.jdo;
+
+/**
+ * A sub-class of {@link TestClassEnhanced} that accesses a field of the super-class 
+ * directly, see {@link Test_183_Enhancer}.
+ */
+public class TestClassEnhancedSub extends TestClassEnhanced {
+
+	/** Accessed directly by {@link TestClassEnhancedAccess} */
+	int _sub;
+	
+	public TestClassEnhancedSub() {
+		// default constructor
+	}
+	
+	public TestClassEnhancedSub(int i, long l, String s, int sub) {
+		super(i, l, s);
+		_sub = sub;
+		_double = sub;
+	}
+
+	public void setDouble(double d) {
+		_double = d;
+	}
+	
+	public double getDouble() {
+		return _double;
+	}
+}
@@ -21,6 +21,7 @@
 package org.zoodb.test.jdo;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -484,4 +485,40 @@ public class Test_024_MultiSessionConcurrency {
 			assertEquals(N, w.n);
 		}
 	}
+
+	/**
+	 * Readers must not be blocked by other sessions with active transactions. Only commits
+	 * are executed exclusively.
+	 * @throws InterruptedException 
+	 */
+	@Test
+	public void testReadDuringActiveWriteTx() throws InterruptedException {
+		Writer w = new Writer(0, N, COMMIT_INTERVAL);
+		w.start();
+		w.join();
+
+		PersistenceManager pm = ZooJdoHelper.openDB(TestTools.getDbName());
+		try {
+			pm.currentTransaction().begin();
+			for (int i = 0; i < N; i++) {
+				pm.makePersistent(new TestSuper(i, 1, new long[]{i}));
+			}
+
+			//readers see only committed objects
+			Reader r = new Reader(0, N);
+			r.start();
+			r.join(60000);
+			assertFalse(r.isAlive());
+			assertEquals(N, r.n);
+
+			pm.currentTransaction().commit();
+		} finally {
+			closePM(pm);
+		}
+		
+		Reader r = new Reader(1, N);
+		r.start();
+		r.join();
+		assertEquals(N, r.n);
+	}
 }
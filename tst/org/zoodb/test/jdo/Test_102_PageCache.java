@@ -0,0 +1,236 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.internal.server.PageCache;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.DBStatistics;
+import org.zoodb.tools.ZooConfig;
+
+public class Test_102_PageCache {
+
+	private static final int N = 10000;
+	
+	@Before
+	public void before() {
+		DBStatistics.enable(true);
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+		TestTools.removeDb();
+		ZooConfig.setPageCacheSize(ZooConfig.PAGE_CACHE_SIZE_DEFAULT);
+		ZooConfig.setReadAheadPages(ZooConfig.READ_AHEAD_PAGES_DEFAULT);
+	}
+	
+	@AfterClass
+	public static void tearDown() {
+		DBStatistics.enable(false);
+	}
+
+	private void createData() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClassTiny.class);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			pm.makePersistent(new TestClassTiny(i, i));
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+	
+	private int readAll(PersistenceManager pm) {
+		pm.currentTransaction().begin();
+		Query q = pm.newQuery(TestClassTiny.class);
+		Collection<?> c = (Collection<?>) q.execute();
+		int n = 0;
+		long sum = 0;
+		for (Object o: c) {
+			sum += ((TestClassTiny) o).getInt();
+			n++;
+		}
+		assertEquals((long)N*(N-1)/2, sum);
+		pm.currentTransaction().rollback();
+		return n;
+	}
+	
+	@Test
+	public void testCacheHits() {
+		createData();
+		PersistenceManager pm = TestTools.openPM();
+		DBStatistics dbs = ZooJdoHelper.getStatistics(pm);
+		
+		assertEquals(N, readAll(pm));
+		long miss1 = dbs.getStoragePageCacheMissCount();
+		long hit1 = dbs.getStoragePageCacheHitCount();
+		
+		//second read should be served from the cache
+		assertEquals(N, readAll(pm));
+		long miss2 = dbs.getStoragePageCacheMissCount();
+		long hit2 = dbs.getStoragePageCacheHitCount();
+		assertEquals(miss1, miss2);
+		assertTrue(hit2 > hit1);
+		assertEquals(0, dbs.getStoragePageCacheEvictionCount());
+	}
+	
+	@Test
+	public void testEviction() {
+		ZooConfig.setPageCacheSize(10);
+		createData();
+		PersistenceManager pm = TestTools.openPM();
+		DBStatistics dbs = ZooJdoHelper.getStatistics(pm);
+
+		assertEquals(N, readAll(pm));
+		assertEquals(N, readAll(pm));
+		assertTrue(dbs.getStoragePageCacheEvictionCount() > 0);
+	}
+	
+	@Test
+	public void testDisabled() {
+		ZooConfig.setPageCacheSize(0);
+		createData();
+		PersistenceManager pm = TestTools.openPM();
+		DBStatistics dbs = ZooJdoHelper.getStatistics(pm);
+
+		assertEquals(N, readAll(pm));
+		assertEquals(0, dbs.getStoragePageCacheHitCount());
+		assertEquals(0, dbs.getStoragePageCacheMissCount());
+	}
+	
+	@Test
+	public void testReadAhead() {
+		ZooConfig.setReadAheadPages(16);
+		createData();
+		PersistenceManager pm = TestTools.openPM();
+
+		assertEquals(N, readAll(pm));
+		
+		//modify and read again, read-ahead must not return stale pages
+		pm.currentTransaction().begin();
+		for (Object o: pm.getExtent(TestClassTiny.class)) {
+			pm.deletePersistent(o);
+		}
+		for (int i = 0; i < N; i++) {
+			pm.makePersistent(new TestClassTiny(i, i));
+		}
+		pm.currentTransaction().commit();
+		assertEquals(N, readAll(pm));
+	}
+	
+	@Test
+	public void testReadAheadSmallCache() {
+		ZooConfig.setPageCacheSize(10);
+		ZooConfig.setReadAheadPages(32);
+		createData();
+		PersistenceManager pm = TestTools.openPM();
+		assertEquals(N, readAll(pm));
+		assertEquals(N, readAll(pm));
+	}
+	
+	/**
+	 * Dirty pages that are evicted from a small cache must be written back.
+	 */
+	@Test
+	public void testWriteBackOnEviction() {
+		ZooConfig.setPageCacheSize(5);
+		createData();
+		
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (Object o: pm.getExtent(TestClassTiny.class)) {
+			TestClassTiny t = (TestClassTiny) o;
+			t.setInt(t.getInt() + 1);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		ZooConfig.setPageCacheSize(ZooConfig.PAGE_CACHE_SIZE_DEFAULT);
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		long sum = 0;
+		for (Object o: pm.getExtent(TestClassTiny.class)) {
+			sum += ((TestClassTiny) o).getInt();
+		}
+		assertEquals((long)N*(N-1)/2 + N, sum);
+		pm.currentTransaction().rollback();
+	}
+	
+	/**
+	 * Runs of consecutive dirty pages are written with gathering writes, gaps must remain
+	 * untouched.
+	 */
+	@Test
+	public void testRunWriteBack() throws IOException {
+		int pageSize = 64;
+		File f = File.createTempFile("zoodbPageCache", ".tmp");
+		f.deleteOnExit();
+		try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+			FileChannel fc = raf.getChannel();
+			PageCache cache = new PageCache(fc, pageSize, 8);
+			ByteBuffer buf = ByteBuffer.allocate(pageSize);
+			//two runs: 5..7 and 9..10, written in random order; eviction triggers write-back
+			long[] pages = {9, 6, 10, 5, 7, 20, 21, 22, 23, 24, 25, 26};
+			for (long pageId: pages) {
+				buf.clear();
+				while (buf.hasRemaining()) {
+					buf.put((byte) pageId);
+				}
+				buf.flip();
+				cache.write(buf, pageId);
+			}
+			cache.flush();
+			
+			assertEquals(27 * pageSize, fc.size());
+			ByteBuffer in = ByteBuffer.allocate(pageSize);
+			for (long pageId = 0; pageId < 27; pageId++) {
+				in.clear();
+				fc.read(in, pageId * pageSize);
+				boolean written = pageId == 5 || pageId == 6 || pageId == 7 || pageId == 9 
+						|| pageId == 10 || pageId >= 20;
+				for (int i = 0; i < pageSize; i++) {
+					assertEquals(written ? (byte) pageId : 0, in.get(i));
+				}
+			}
+		}
+		f.delete();
+	}
+}
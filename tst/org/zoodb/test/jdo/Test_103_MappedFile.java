@@ -0,0 +1,130 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.internal.server.StorageRootMapped;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.ZooConfig;
+
+public class Test_103_MappedFile {
+
+	private static final int N = 10000;
+
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClassTiny.class, TestClass.class);
+		ZooConfig.setFileProcessor(ZooConfig.FILE_PAF_MAPPED);
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+		ZooConfig.setFileProcessor(ZooConfig.FILE_PAF_BB);
+	}
+	
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+	private long sum(PersistenceManager pm) {
+		long sum = 0;
+		for (Object o: pm.getExtent(TestClassTiny.class)) {
+			sum += ((TestClassTiny) o).getInt();
+		}
+		return sum;
+	}
+	
+	@Test
+	public void testWriteAndRead() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			pm.makePersistent(new TestClassTiny(i, i));
+		}
+		pm.currentTransaction().commit();
+		
+		pm.currentTransaction().begin();
+		for (Object o: pm.getExtent(TestClassTiny.class)) {
+			TestClassTiny t = (TestClassTiny) o;
+			t.setInt(t.getInt() + 1);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		//file must not contain unused parts of the last mapped segment
+		long len = new File(TestTools.getDbFileName()).length();
+		assertEquals(0, len % ZooConfig.getFilePageSize());
+		assertTrue(len < StorageRootMapped.SEGMENT_SIZE);
+		
+		//read with mapped file
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertEquals((long)N*(N-1)/2 + N, sum(pm));
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+		
+		//read with normal file
+		ZooConfig.setFileProcessor(ZooConfig.FILE_PAF_BB);
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertEquals((long)N*(N-1)/2 + N, sum(pm));
+		pm.currentTransaction().rollback();
+	}
+	
+	@Test
+	public void testGrowBeyondSegment() {
+		int nPerTx = 20000;
+		PersistenceManager pm = TestTools.openPM();
+		for (int j = 0; j < 5; j++) {
+			pm.currentTransaction().begin();
+			for (int i = 0; i < nPerTx; i++) {
+				pm.makePersistent(new TestClass());
+			}
+			pm.currentTransaction().commit();
+		}
+		TestTools.closePM();
+		
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		int n = 0;
+		for (Object o: pm.getExtent(TestClass.class)) {
+			if (o != null) {
+				n++;
+			}
+		}
+		assertEquals(5 * nPerTx, n);
+		pm.currentTransaction().rollback();
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import javax.jdo.JDOHelper;
+import javax.jdo.JDOUserException;
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.jdo.ZooJdoProperties;
+import org.zoodb.test.testutil.TestTools;
+
+public class Test_104_ReadOnlySnapshot {
+
+	private static final int N = 1000;
+	
+	private PersistenceManager pmRO;
+
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClassTiny.class);
+	}
+
+	@After
+	public void after() {
+		if (pmRO != null) {
+			if (pmRO.currentTransaction().isActive()) {
+				pmRO.currentTransaction().rollback();
+			}
+			pmRO.close();
+			pmRO.getPersistenceManagerFactory().close();
+			pmRO = null;
+		}
+		TestTools.closePM();
+	}
+	
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+	private PersistenceManager openReadOnly() {
+		ZooJdoProperties props = new ZooJdoProperties(TestTools.getDbName());
+		props.setReadOnly(true);
+		return JDOHelper.getPersistenceManagerFactory(props).getPersistenceManager();
+	}
+	
+	private int count(PersistenceManager pm) {
+		int n = 0;
+		for (Object o: pm.getExtent(TestClassTiny.class)) {
+			n += o != null ? 1 : 0;
+		}
+		return n;
+	}
+	
+	private void insert(PersistenceManager pm) {
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			pm.makePersistent(new TestClassTiny(i, i));
+		}
+		pm.currentTransaction().commit();
+	}
+	
+	@Test
+	public void testSnapshotIsolation() {
+		PersistenceManager pm = TestTools.openPM();
+		insert(pm);
+		
+		pmRO = openReadOnly();
+		pmRO.currentTransaction().begin();
+		assertEquals(N, count(pmRO));
+		
+		//concurrent commit is not blocked by the read-only transaction
+		insert(pm);
+		
+		//the read-only transaction still sees its snapshot
+		assertEquals(N, count(pmRO));
+		pmRO.currentTransaction().commit();
+		
+		//a new transaction sees the new state
+		pmRO.currentTransaction().begin();
+		assertEquals(2*N, count(pmRO));
+		pmRO.currentTransaction().commit();
+		
+		//the pages of the snapshot can be reused now
+		pm.currentTransaction().begin();
+		for (Object o: pm.getExtent(TestClassTiny.class)) {
+			pm.deletePersistent(o);
+		}
+		pm.currentTransaction().commit();
+		insert(pm);
+		
+		pmRO.currentTransaction().begin();
+		assertEquals(N, count(pmRO));
+		pmRO.currentTransaction().rollback();
+	}
+	
+	@Test
+	public void testWriteFails() {
+		PersistenceManager pm = TestTools.openPM();
+		insert(pm);
+		
+		pmRO = openReadOnly();
+		pmRO.currentTransaction().begin();
+		try {
+			pmRO.makePersistent(new TestClassTiny(1, 1));
+			fail();
+		} catch (JDOUserException e) {
+			//good
+		}
+		
+		Object o = pmRO.getExtent(TestClassTiny.class).iterator().next();
+		try {
+			pmRO.deletePersistent(o);
+			fail();
+		} catch (JDOUserException e) {
+			//good
+		}
+		
+		((TestClassTiny)o).setInt(12345);
+		try {
+			pmRO.currentTransaction().commit();
+			fail();
+		} catch (JDOUserException e) {
+			//good
+		}
+		pmRO.currentTransaction().rollback();
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.ZooConfig;
+
+public class Test_105_GroupCommit {
+
+	private static final int N_THREADS = 8;
+	private static final int N_TX = 50;
+	private static final int N_OBJ = 10;
+
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClassTiny.class);
+		ZooConfig.setCommitGroupWindow(2);
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+		ZooConfig.setCommitGroupWindow(ZooConfig.COMMIT_GROUP_WINDOW_DEFAULT);
+	}
+	
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+	private int count(PersistenceManager pm) {
+		int n = 0;
+		for (Object o: pm.getExtent(TestClassTiny.class)) {
+			n += o != null ? 1 : 0;
+		}
+		return n;
+	}
+	
+	private static class Committer extends Thread {
+		
+		private final int id;
+		private Throwable error;
+		
+		Committer(int id) {
+			this.id = id;
+		}
+		
+		@Override
+		public void run() {
+			PersistenceManager pm = ZooJdoHelper.openDB(TestTools.getDbName());
+			try {
+				for (int i = 0; i < N_TX; i++) {
+					pm.currentTransaction().begin();
+					for (int j = 0; j < N_OBJ; j++) {
+						pm.makePersistent(new TestClassTiny(id, i));
+					}
+					pm.currentTransaction().commit();
+				}
+			} catch (Throwable t) {
+				error = t;
+			} finally {
+				if (pm.currentTransaction().isActive()) {
+					pm.currentTransaction().rollback();
+				}
+				pm.close();
+				pm.getPersistenceManagerFactory().close();
+			}
+		}
+	}
+	
+	@Test
+	public void testSingleSession() {
+		PersistenceManager pm = TestTools.openPM();
+		for (int i = 0; i < N_TX; i++) {
+			pm.currentTransaction().begin();
+			pm.makePersistent(new TestClassTiny(i, i));
+			pm.currentTransaction().commit();
+		}
+		TestTools.closePM();
+		
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertEquals(N_TX, count(pm));
+		pm.currentTransaction().rollback();
+	}
+	
+	@Test
+	public void testConcurrentCommits() throws InterruptedException {
+		//keep the file open
+		PersistenceManager pm = TestTools.openPM();
+		
+		Committer[] threads = new Committer[N_THREADS];
+		for (int i = 0; i < N_THREADS; i++) {
+			threads[i] = new Committer(i);
+			threads[i].start();
+		}
+		for (Committer c: threads) {
+			c.join();
+			assertNull(c.error);
+		}
+		
+		pm.currentTransaction().begin();
+		assertEquals(N_THREADS * N_TX * N_OBJ, count(pm));
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+
+		//reopen
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertEquals(N_THREADS * N_TX * N_OBJ, count(pm));
+		pm.currentTransaction().rollback();
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import javax.jdo.JDOException;
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.api.ZooConstants;
+import org.zoodb.jdo.ZooJdoProperties;
+import org.zoodb.test.testutil.TestTools;
+
+public class Test_106_Durability {
+
+	private static final int N = 100;
+
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClassTiny.class);
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+	}
+	
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+	private int count(PersistenceManager pm) {
+		int n = 0;
+		for (Object o: pm.getExtent(TestClassTiny.class)) {
+			n += o != null ? 1 : 0;
+		}
+		return n;
+	}
+	
+	private void commitAndReopen(String mode) {
+		ZooJdoProperties props = TestTools.getProps();
+		props.setZooDurability(mode);
+		PersistenceManager pm = TestTools.openPM(props);
+		for (int i = 0; i < N; i++) {
+			pm.currentTransaction().begin();
+			pm.makePersistent(new TestClassTiny(i, i));
+			pm.currentTransaction().commit();
+		}
+		
+		//update and delete to free pages
+		pm.currentTransaction().begin();
+		int i = 0;
+		for (Object o: pm.getExtent(TestClassTiny.class)) {
+			if (i++ % 2 == 0) {
+				pm.deletePersistent(o);
+			} else {
+				((TestClassTiny)o).setInt(-1);
+			}
+		}
+		pm.currentTransaction().commit();
+
+		pm.currentTransaction().begin();
+		assertEquals(N/2, count(pm));
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+		
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertEquals(N/2, count(pm));
+		for (Object o: pm.getExtent(TestClassTiny.class)) {
+			assertEquals(-1, ((TestClassTiny)o).getInt());
+		}
+		pm.currentTransaction().rollback();
+	}
+	
+	@Test
+	public void testSync() {
+		commitAndReopen(ZooConstants.DURABILITY_SYNC);
+	}
+	
+	@Test
+	public void testAsyncFsync() {
+		commitAndReopen(ZooConstants.DURABILITY_ASYNC_FSYNC);
+	}
+	
+	@Test
+	public void testNoFsync() {
+		commitAndReopen(ZooConstants.DURABILITY_NO_FSYNC);
+	}
+	
+	@Test
+	public void testIllegalMode() {
+		ZooJdoProperties props = TestTools.getProps();
+		props.setZooDurability("SOMETIMES");
+		try {
+			TestTools.openPM(props);
+			fail();
+		} catch (JDOException e) {
+			//good
+		}
+	}
+}
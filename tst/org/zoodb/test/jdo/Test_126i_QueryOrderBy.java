@@ -105,6 +105,37 @@ public class Test_126i_QueryOrderBy extends Test_126_QueryOrderBy {
 		
 		TestTools.closePM();
     }
-	
 
+    /**
+     * Without ordering, loading 40% of the objects via the index is more expensive than an 
+     * extent scan. With ordering, the index avoids sorting the result.
+     */
+    @Test
+    public void testOrderingInCostEstimate() {
+		TestTools.defineSchema(TestClassTiny.class);
+		TestTools.defineIndex(TestClassTiny.class, "_int", false);
+		DBStatistics.enable(true);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < 1000; i++) {
+			pm.makePersistent(new TestClassTiny(i, i));
+		}
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+
+		DBStatistics stats = ZooJdoHelper.getStatistics(pm);
+		long nQEWI = stats.getQueryExecutionWithoutIndexCount();
+		
+		Query q = pm.newQuery(TestClassTiny.class, "_int < 400");
+		assertEquals(400, ((Collection<?>)q.execute()).size());
+		assertEquals(nQEWI + 1, stats.getQueryExecutionWithoutIndexCount());
+		
+		q = pm.newQuery(TestClassTiny.class, "_int < 400 order by _int ascending");
+		assertEquals(400, ((Collection<?>)q.execute()).size());
+		assertEquals(nQEWI + 1, stats.getQueryExecutionWithoutIndexCount());
+		
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+		TestTools.removeSchema(TestClassTiny.class);
+    }
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.api.ZooConstants;
+import org.zoodb.jdo.ZooJdoProperties;
+import org.zoodb.test.testutil.TestTools;
+
+public class Test_173_QueryStreaming {
+
+	private static final int N = 1000;
+	
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClassTiny.class);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			pm.makePersistent(new TestClassTiny(i, i));
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+	}
+	
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+	private PersistenceManager openStreaming() {
+		ZooJdoProperties props = TestTools.getProps();
+		props.setZooStreamingQueries(true);
+		return TestTools.openPM(props);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void checkResult(Object result, int expected) {
+		int n = 0;
+		for (TestClassTiny t: (Collection<TestClassTiny>)result) {
+			assertTrue(t.getInt() >= 500);
+			n++;
+		}
+		assertEquals(expected, n);
+	}
+	
+	@Test
+	public void testStreaming() {
+		PersistenceManager pm = openStreaming();
+		pm.currentTransaction().begin();
+		Query q = pm.newQuery(TestClassTiny.class, "_int >= 500");
+		Object r = q.execute();
+		checkResult(r, 500);
+		//iterate again
+		checkResult(r, 500);
+		assertEquals(500, ((Collection<?>)r).size());
+		pm.currentTransaction().rollback();
+	}
+	
+	@Test
+	public void testIsEmpty() {
+		TestTools.defineIndex(TestClassTiny.class, "_int", false);
+		PersistenceManager pm = openStreaming();
+		pm.currentTransaction().begin();
+		Query q = pm.newQuery(TestClassTiny.class, "_int >= 500");
+		Collection<?> r = (Collection<?>) q.execute();
+		for (int i = 0; i < 10; i++) {
+			assertFalse(r.isEmpty());
+		}
+		checkResult(r, 500);
+		assertEquals(500, r.size());
+		assertFalse(r.isEmpty());
+		
+		q = pm.newQuery(TestClassTiny.class, "_int >= 5000");
+		r = (Collection<?>) q.execute();
+		assertTrue(r.isEmpty());
+		assertEquals(0, r.size());
+		assertTrue(r.isEmpty());
+		pm.currentTransaction().rollback();
+	}
+	
+	@Test
+	public void testStreamingIndex() {
+		TestTools.defineIndex(TestClassTiny.class, "_int", false);
+		PersistenceManager pm = openStreaming();
+		pm.currentTransaction().begin();
+		Query q = pm.newQuery(TestClassTiny.class, "_int >= 500");
+		checkResult(q.execute(), 500);
+		pm.currentTransaction().rollback();
+	}
+	
+	@Test
+	public void testStreamingRange() {
+		PersistenceManager pm = openStreaming();
+		pm.currentTransaction().begin();
+		Query q = pm.newQuery(TestClassTiny.class, "_int >= 500");
+		q.setRange(10, 20);
+		checkResult(q.execute(), 10);
+		
+		q = pm.newQuery(TestClassTiny.class, "_int >= 500 range 490, 600");
+		checkResult(q.execute(), 10);
+		pm.currentTransaction().rollback();
+	}
+	
+	@Test
+	public void testStreamingParameter() {
+		PersistenceManager pm = openStreaming();
+		pm.currentTransaction().begin();
+		Query q = pm.newQuery(TestClassTiny.class, "_int >= minI");
+		q.declareParameters("int minI");
+		checkResult(q.execute(500), 500);
+		Object r = q.execute(900);
+		checkResult(r, 100);
+		pm.currentTransaction().rollback();
+	}
+	
+	@Test
+	public void testReexecuteInvalidatesResult() {
+		PersistenceManager pm = openStreaming();
+		pm.currentTransaction().begin();
+		Query q = pm.newQuery(TestClassTiny.class, "_int >= 500");
+		Object r1 = q.execute();
+		Object r2 = q.execute();
+		assertFalse(((Collection<?>)r1).iterator().hasNext());
+		checkResult(r2, 500);
+		pm.currentTransaction().rollback();
+	}
+	
+	@Test
+	public void testExtension() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Query q = pm.newQuery(TestClassTiny.class, "_int >= 500");
+		q.addExtension(ZooConstants.PROPERTY_STREAMING_QUERIES, true);
+		Object r = q.execute();
+		Iterator<?> it = ((Collection<?>)r).iterator();
+		assertTrue(it.hasNext());
+		checkResult(r, 500);
+		pm.currentTransaction().rollback();
+	}
+	
+	@Test
+	public void testOrderingIsNotStreamed() {
+		PersistenceManager pm = openStreaming();
+		pm.currentTransaction().begin();
+		Query q = pm.newQuery(TestClassTiny.class, "_int >= 500 order by _int desc");
+		Object r = q.execute();
+		checkResult(r, 500);
+		TestClassTiny first = (TestClassTiny) ((Collection<?>)r).iterator().next();
+		assertEquals(N - 1, first.getInt());
+		pm.currentTransaction().rollback();
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.test.testutil.TestTools;
+
+public class Test_174_QueryTopK {
+
+	private static final int N = 1000;
+	
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClassTiny.class);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			//insert in 'random' order
+			int v = (i * 7919) % N;
+			pm.makePersistent(new TestClassTiny(v, v % 10));
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+	}
+	
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void checkResult(Object result, int ... expected) {
+		List<TestClassTiny> list = new ArrayList<TestClassTiny>((Collection<TestClassTiny>)result);
+		assertEquals(expected.length, list.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], list.get(i).getInt());
+		}
+	}
+	
+	private void checkTopK() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		
+		Query q = pm.newQuery(TestClassTiny.class);
+		q.setOrdering("_int ascending");
+		q.setRange(0, 5);
+		checkResult(q.execute(), 0, 1, 2, 3, 4);
+		
+		q = pm.newQuery(TestClassTiny.class);
+		q.setOrdering("_int descending");
+		q.setRange(0, 5);
+		checkResult(q.execute(), 999, 998, 997, 996, 995);
+		
+		q = pm.newQuery(TestClassTiny.class, "_int >= 500");
+		q.setOrdering("_int ascending");
+		q.setRange(3, 6);
+		checkResult(q.execute(), 503, 504, 505);
+
+		q = pm.newQuery(TestClassTiny.class, "_int < 500 && _long == 3");
+		q.setOrdering("_int descending");
+		q.setRange(0, 3);
+		checkResult(q.execute(), 493, 483, 473);
+
+		q = pm.newQuery(TestClassTiny.class, 
+				"_int < 500 order by _int descending range :min, :max");
+		checkResult(q.execute(1, 4), 498, 497, 496);
+
+		//range exceeds result
+		q = pm.newQuery(TestClassTiny.class, "_int > 996");
+		q.setOrdering("_int descending");
+		q.setRange(0, 10);
+		checkResult(q.execute(), 999, 998, 997);
+
+		q = pm.newQuery(TestClassTiny.class);
+		q.setOrdering("_int ascending");
+		q.setRange(0, 0);
+		checkResult(q.execute());
+
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+	
+	@Test
+	public void testTopK() {
+		checkTopK();
+	}
+	
+	@Test
+	public void testTopKIndex() {
+		TestTools.defineIndex(TestClassTiny.class, "_int", false);
+		checkTopK();
+	}
+	
+	@Test
+	public void testTopKIndexUnique() {
+		TestTools.defineIndex(TestClassTiny.class, "_int", true);
+		checkTopK();
+	}
+	
+	/**
+	 * Modified objects are not yet in the index.
+	 */
+	@Test
+	public void testTopKIndexDirty() {
+		TestTools.defineIndex(TestClassTiny.class, "_int", false);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Query q = pm.newQuery(TestClassTiny.class, "_int == 0");
+		Collection<?> c = (Collection<?>) q.execute();
+		TestClassTiny t = (TestClassTiny) c.iterator().next();
+		t.setInt(2000);
+		
+		q = pm.newQuery(TestClassTiny.class);
+		q.setIgnoreCache(false);
+		q.setOrdering("_int ascending");
+		q.setRange(0, 3);
+		checkResult(q.execute(), 1, 2, 3);
+
+		q = pm.newQuery(TestClassTiny.class);
+		q.setIgnoreCache(false);
+		q.setOrdering("_int descending");
+		q.setRange(0, 2);
+		checkResult(q.execute(), 2000, 999);
+		
+		pm.currentTransaction().rollback();
+	}
+	
+	/**
+	 * The top-K result must be the same as the beginning of the fully sorted result, also
+	 * for objects with equal values.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testTopKStable() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		
+		Query q = pm.newQuery(TestClassTiny.class);
+		q.setOrdering("_long descending");
+		List<TestClassTiny> all = 
+				new ArrayList<TestClassTiny>((Collection<TestClassTiny>) q.execute());
+		assertEquals(N, all.size());
+		
+		for (int k: new int[]{1, 5, 99, 100, 101, 150}) {
+			q = pm.newQuery(TestClassTiny.class);
+			q.setOrdering("_long descending");
+			q.setRange(0, k);
+			List<TestClassTiny> top = 
+					new ArrayList<TestClassTiny>((Collection<TestClassTiny>) q.execute());
+			assertEquals(k, top.size());
+			for (int i = 0; i < k; i++) {
+				assertTrue(all.get(i) == top.get(i));
+			}
+		}
+		
+		pm.currentTransaction().rollback();
+	}
+	
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.test.testutil.TestTools;
+
+public class Test_175_QueryIndexIntersection {
+
+	private static final int N = 1000;
+	
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClassTiny.class);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			pm.makePersistent(new TestClassTiny(i, i % 10));
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+	}
+	
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+	private Set<Integer> query(String filter) {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Query q = pm.newQuery(TestClassTiny.class, filter);
+		Collection<?> c = (Collection<?>) q.execute();
+		Set<Integer> ret = new HashSet<Integer>();
+		for (Object o: c) {
+			//no duplicates
+			assertTrue(ret.add(((TestClassTiny)o).getInt()));
+		}
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+		return ret;
+	}
+	
+	private void checkQueries(String ... filters) {
+		Set<Integer>[] expected = runQueries(filters);
+		TestTools.defineIndex(TestClassTiny.class, "_int", false);
+		TestTools.defineIndex(TestClassTiny.class, "_long", false);
+		Set<Integer>[] actual = runQueries(filters);
+		for (int i = 0; i < filters.length; i++) {
+			assertEquals(filters[i], expected[i], actual[i]);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private Set<Integer>[] runQueries(String ... filters) {
+		Set<Integer>[] ret = new Set[filters.length];
+		for (int i = 0; i < filters.length; i++) {
+			ret[i] = query(filters[i]);
+		}
+		return ret;
+	}
+	
+	@Test
+	public void testIntersection() {
+		checkQueries(
+				"_int >= 100 && _int < 200 && _long == 5",
+				"_long == 5 && _int >= 100 && _int < 200",
+				"_long > 7 && _int < 50",
+				"_long >= 3 && _long <= 4 && _int > 990",
+				"_long == 11 && _int > 10",
+				"_int == 123 && _long == 3");
+		assertEquals(10, query("_int >= 100 && _int < 200 && _long == 5").size());
+		assertEquals(1, query("_int == 123 && _long == 3").size());
+		assertEquals(0, query("_int == 123 && _long == 4").size());
+	}
+	
+	@Test
+	public void testUnion() {
+		checkQueries(
+				"_int < 10 || _long == 5",
+				"_int < 10 || _int > 990",
+				"_int < 100 || _int < 50",
+				"(_int < 100 && _long == 1) || (_int > 900 && _long == 2)",
+				"_int < 10 || _int == 5 || _long == 0");
+		assertEquals(109, query("_int < 10 || _long == 5").size());
+		assertEquals(20, query("(_int < 100 && _long == 1) || (_int > 900 && _long == 2)").size());
+	}
+	
+	@Test
+	public void testNewObjects() {
+		TestTools.defineIndex(TestClassTiny.class, "_int", false);
+		TestTools.defineIndex(TestClassTiny.class, "_long", false);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		pm.makePersistent(new TestClassTiny(150, 5));
+		pm.makePersistent(new TestClassTiny(5000, 5));
+
+		Query q = pm.newQuery(TestClassTiny.class, "_int >= 100 && _int < 200 && _long == 5");
+		q.setIgnoreCache(false);
+		assertEquals(11, ((Collection<?>)q.execute()).size());
+		
+		q = pm.newQuery(TestClassTiny.class, "_int < 10 || _int > 4000");
+		q.setIgnoreCache(false);
+		assertEquals(11, ((Collection<?>)q.execute()).size());
+		
+		pm.currentTransaction().rollback();
+	}
+	
+}
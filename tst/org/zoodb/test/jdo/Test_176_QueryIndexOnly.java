@@ -0,0 +1,132 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.DBStatistics;
+
+public class Test_176_QueryIndexOnly {
+
+	private static final int N = 1000;
+
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClassTiny.class);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			pm.makePersistent(new TestClassTiny(i, i % 10));
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+		TestTools.defineIndex(TestClassTiny.class, "_int", false);
+		DBStatistics.enable(true);
+	}
+
+	@After
+	public void after() {
+		DBStatistics.enable(false);
+		TestTools.closePM();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+	/**
+	 * Executes the query and checks that no data pages were read.
+	 */
+	private Object queryIndexOnly(String filter, String result) {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		DBStatistics stats = ZooJdoHelper.getStatistics(pm);
+		Query q = filter == null ?
+				pm.newQuery(TestClassTiny.class) : pm.newQuery(TestClassTiny.class, filter);
+		q.setResult(result);
+		long nRead = stats.getStorageDataPageReadCount();
+		Object ret = q.execute();
+		assertEquals(nRead, stats.getStorageDataPageReadCount());
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+		return ret;
+	}
+
+	@Test
+	public void testCount() {
+		assertEquals(100L, queryIndexOnly("_int >= 100 && _int < 200", "count(this)"));
+		assertEquals(20L, queryIndexOnly("_int < 10 || _int >= 990", "count(_long)"));
+		assertEquals(999L, queryIndexOnly("_int != 500", "count(this)"));
+		assertEquals(0L, queryIndexOnly("_int > 500 && _int < 400", "count(this)"));
+		assertEquals((long)N, queryIndexOnly(null, "count(this)"));
+	}
+
+	@Test
+	public void testAggregates() {
+		Object[] r = (Object[]) queryIndexOnly("_int < 10 || _int >= 990",
+				"min(_int), max(_int), sum(_int), avg(_int)");
+		assertEquals(0, r[0]);
+		assertEquals(999, r[1]);
+		assertEquals(9990L, r[2]);
+		assertEquals(499, r[3]);
+
+		assertEquals(N - 1, queryIndexOnly(null, "max(_int)"));
+		assertEquals(5, queryIndexOnly("_int > 4.5 && _int < 100", "min(_int)"));
+	}
+
+	@Test
+	public void testFallback() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+
+		//aggregate of a field that is not indexed
+		Query q = pm.newQuery(TestClassTiny.class, "_int < 10");
+		q.setResult("sum(_long)");
+		assertEquals(45L, q.execute());
+
+		//filter on a field that is not indexed
+		q = pm.newQuery(TestClassTiny.class, "_int < 100 && _long == 5");
+		q.setResult("count(this)");
+		assertEquals(10L, q.execute());
+
+		//new objects are not in the index yet
+		pm.makePersistent(new TestClassTiny(5, 5));
+		q = pm.newQuery(TestClassTiny.class, "_int < 10");
+		q.setIgnoreCache(false);
+		q.setResult("count(this)");
+		assertEquals(11L, q.execute());
+
+		pm.currentTransaction().rollback();
+	}
+
+}
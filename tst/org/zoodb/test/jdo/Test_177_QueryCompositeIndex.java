@@ -0,0 +1,196 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+
+import javax.jdo.JDOUserException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.schema.ZooClass;
+import org.zoodb.test.testutil.TestTools;
+
+/**
+ * Composite index on (_int, _long). _int serves as tenant ID and _long as time stamp.
+ */
+public class Test_177_QueryCompositeIndex {
+
+	private static final int N = 1000;
+
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClassTiny.class);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			pm.makePersistent(new TestClassTiny(i % 10, i));
+		}
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+		ZooJdoHelper.schema(pm).getClass(TestClassTiny.class).createCompositeIndex(
+				"_int", "_long");
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+	private static int count(PersistenceManager pm, String filter, Object ... params) {
+		Query q = pm.newQuery(TestClassTiny.class, filter);
+		Collection<?> c = (Collection<?>) q.executeWithArray(params);
+		int n = c.size();
+		q.closeAll();
+		return n;
+	}
+
+	@Test
+	public void testQuery() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+
+		assertEquals(50, count(pm, "_int == 3 && _long > 500"));
+		assertEquals(10, count(pm, "_int == 3 && _long >= 503 && _long < 600"));
+		assertEquals(1, count(pm, "_int == 3 && _long == 503"));
+		assertEquals(0, count(pm, "_int == 3 && _long == 504"));
+		assertEquals(0, count(pm, "_int == 3 && _long > 600 && _long < 500"));
+		assertEquals(100, count(pm, "_int == 3"));
+		assertEquals(9, count(pm, "_long > 990"));
+		assertEquals(20, count(pm, "(_int == 3 || _int == 4) && _long < 100"));
+		assertEquals(5, count(pm, "_int == t && _long > x", 7, 950L));
+
+		pm.currentTransaction().rollback();
+	}
+
+	/**
+	 * The (int, long) key keeps only the highest 32 bits of the long, the query still has
+	 * to return exact results.
+	 */
+	@Test
+	public void testTruncatedKey() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		long l = 1L << 40;
+		pm.makePersistent(new TestClassTiny(5, l));
+		pm.makePersistent(new TestClassTiny(5, l + 1));
+		pm.makePersistent(new TestClassTiny(5, -l));
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+
+		assertEquals(1, count(pm, "_int == 5 && _long == x", l + 1));
+		assertEquals(1, count(pm, "_int == 5 && _long > x", l));
+		assertEquals(2, count(pm, "_int == 5 && _long >= x", l));
+		assertEquals(30, count(pm, "_int == 5 && _long >= 0 && _long < 300"));
+		assertEquals(31, count(pm, "_int == 5 && _long < 300"));
+		assertEquals(0, count(pm, "_int == 6 && _long > x", l));
+
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testUpdateAndDelete() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Query q = pm.newQuery(TestClassTiny.class, "_int == 3 && _long < 100");
+		for (Object o: (Collection<?>) q.execute()) {
+			TestClassTiny t = (TestClassTiny) o;
+			if (t.getLong() < 50) {
+				t.setLong(t.getLong() + 1000);
+			} else {
+				pm.deletePersistent(t);
+			}
+		}
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+
+		assertEquals(0, count(pm, "_int == 3 && _long < 100"));
+		assertEquals(5, count(pm, "_int == 3 && _long >= 1000"));
+		assertEquals(95, count(pm, "_int == 3"));
+
+		//new objects
+		pm.makePersistent(new TestClassTiny(3, 2000));
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+		assertEquals(6, count(pm, "_int == 3 && _long >= 1000"));
+
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+
+		//check that the index was stored
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertEquals(6, count(pm, "_int == 3 && _long >= 1000"));
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testSchema() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ZooClass c = ZooJdoHelper.schema(pm).getClass(TestClassTiny.class);
+		assertTrue(c.hasCompositeIndex("_int", "_long"));
+		assertFalse(c.hasCompositeIndex("_long", "_int"));
+		try {
+			c.createCompositeIndex("_int", "_long");
+			fail();
+		} catch (JDOUserException e) {
+			//already defined
+		}
+		try {
+			c.createCompositeIndex("_int");
+			fail();
+		} catch (JDOUserException e) {
+			//too few fields
+		}
+		assertTrue(c.removeCompositeIndex("_int", "_long"));
+		assertFalse(c.removeCompositeIndex("_int", "_long"));
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		c = ZooJdoHelper.schema(pm).getClass(TestClassTiny.class);
+		assertFalse(c.hasCompositeIndex("_int", "_long"));
+		assertEquals(50, count(pm, "_int == 3 && _long > 500"));
+		pm.currentTransaction().rollback();
+	}
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+
+import javax.jdo.JDOUserException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.test.testutil.TestTools;
+
+/**
+ * Queries on String indices with full keys. All Strings share a long prefix, so their
+ * hashed index keys are very similar.
+ */
+public class Test_178_QueryStringIndex {
+
+	private static final int N = 1000;
+	private static final String PREFIX = "customer-name-";
+
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+	private static void createData() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			TestClass tc = new TestClass();
+			tc.setString(PREFIX + (i % 100) + "-" + i);
+			tc.setInt(i);
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	private static int count(PersistenceManager pm, String filter, Object ... params) {
+		Query q = pm.newQuery(TestClass.class, filter);
+		Collection<?> c = (Collection<?>) q.executeWithArray(params);
+		int n = c.size();
+		q.closeAll();
+		return n;
+	}
+
+	private static void checkQueries() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertEquals(1, count(pm, "_string == '" + PREFIX + "5-105'"));
+		assertEquals(0, count(pm, "_string == '" + PREFIX + "5-106'"));
+		assertEquals(1, count(pm, "_string == s", PREFIX + "99-999"));
+		assertEquals(10, count(pm, "_string.startsWith('" + PREFIX + "7-')"));
+		assertEquals(110, count(pm, "_string.startsWith('" + PREFIX + "1')"));
+		assertEquals(10, count(pm, "_string.matches('" + PREFIX + "7-.*')"));
+		assertEquals(N, count(pm, "_string >= '" + PREFIX + "'"));
+		assertEquals(10, count(pm, "_string >= '" + PREFIX + "98' && _string < '"
+				+ PREFIX + "99-'"));
+		assertEquals(19, count(pm, "_string > '" + PREFIX + "98-198' && _string <= '"
+				+ PREFIX + "99-999'"));
+		assertEquals(2, count(pm, "_string == '" + PREFIX + "1-1' || _string == '"
+				+ PREFIX + "2-2'"));
+		assertEquals(9, count(pm, "_string.startsWith('" + PREFIX + "7-') && _int > 7"));
+		assertEquals(N - 1, count(pm, "!(_string == '" + PREFIX + "5-105')"));
+		assertEquals(0, count(pm, "_string == null"));
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testIndexOnExistingData() {
+		createData();
+		TestTools.defineIndex(TestClass.class, "_string", false);
+		checkQueries();
+	}
+
+	@Test
+	public void testIndexOnNewData() {
+		TestTools.defineIndex(TestClass.class, "_string", true);
+		createData();
+		checkQueries();
+	}
+
+	@Test
+	public void testUpdateAndDelete() {
+		TestTools.defineIndex(TestClass.class, "_string", true);
+		createData();
+
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Query q = pm.newQuery(TestClass.class, "_string.startsWith('" + PREFIX + "7-')");
+		for (Object o: (Collection<?>) q.execute()) {
+			TestClass tc = (TestClass) o;
+			if (tc.getInt() < 500) {
+				tc.setString("x" + tc.getString());
+			} else {
+				pm.deletePersistent(tc);
+			}
+		}
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+
+		assertEquals(0, count(pm, "_string.startsWith('" + PREFIX + "7-')"));
+		assertEquals(5, count(pm, "_string.startsWith('x" + PREFIX + "7-')"));
+		assertEquals(1, count(pm, "_string == 'x" + PREFIX + "7-7'"));
+		assertEquals(N - 5, count(pm, "_string >= ''"));
+
+		//reuse values of deleted and modified objects
+		TestClass tc = new TestClass();
+		tc.setString(PREFIX + "7-7");
+		pm.makePersistent(tc);
+		tc = new TestClass();
+		tc.setString(PREFIX + "7-507");
+		pm.makePersistent(tc);
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertEquals(2, count(pm, "_string.startsWith('" + PREFIX + "7-')"));
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testUniqueCollision() {
+		TestTools.defineIndex(TestClass.class, "_string", true);
+		createData();
+
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		//same hash prefix, but different value
+		TestClass tc = new TestClass();
+		tc.setString(PREFIX + "5-105x");
+		pm.makePersistent(tc);
+		pm.currentTransaction().commit();
+
+		pm.currentTransaction().begin();
+		tc = new TestClass();
+		tc.setString(PREFIX + "5-105");
+		pm.makePersistent(tc);
+		try {
+			pm.currentTransaction().commit();
+			fail();
+		} catch (JDOUserException e) {
+			//good
+		}
+		pm.currentTransaction().begin();
+		assertEquals(1, count(pm, "_string == '" + PREFIX + "5-105'"));
+		assertEquals(N + 1, count(pm, "_string.startsWith('" + PREFIX + "')"));
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testLongStrings() {
+		TestTools.defineIndex(TestClass.class, "_string", true);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append('x');
+		}
+		String s = sb.toString();
+
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < 10; i++) {
+			TestClass tc = new TestClass();
+			tc.setString(s + i);
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+
+		assertEquals(1, count(pm, "_string == '" + s + "5'"));
+		assertEquals(10, count(pm, "_string.startsWith('" + s + "')"));
+		TestClass tc = new TestClass();
+		tc.setString(s + 5);
+		pm.makePersistent(tc);
+		try {
+			pm.currentTransaction().commit();
+			fail();
+		} catch (JDOUserException e) {
+			//good
+		}
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import javax.jdo.JDOUserException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.schema.ZooClass;
+import org.zoodb.test.testutil.TestTools;
+
+/**
+ * Queries on unique hash indices.
+ */
+public class Test_179_QueryHashIndex {
+
+	private static final int N = 10000;
+
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+	private static void createHashIndex(String fieldName) {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ZooJdoHelper.schema(pm).getClass(TestClass.class).createHashIndex(fieldName);
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	private static void createData() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			TestClass tc = new TestClass();
+			tc.setLong(i * 7L);
+			tc.setInt(i);
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	private static int count(PersistenceManager pm, String filter, Object ... params) {
+		Query q = pm.newQuery(TestClass.class, filter);
+		Collection<?> c = (Collection<?>) q.executeWithArray(params);
+		int n = c.size();
+		q.closeAll();
+		return n;
+	}
+
+	private static void checkQueries() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertEquals(1, count(pm, "_long == 700"));
+		assertEquals(0, count(pm, "_long == 701"));
+		assertEquals(1, count(pm, "_long == l", 7L * (N - 1)));
+		assertEquals(2, count(pm, "_long == 7 || _long == 14"));
+		assertEquals(0, count(pm, "_long == 7 && _int == 2"));
+		//ranges are evaluated without the index
+		assertEquals(10, count(pm, "_long >= 700 && _long < 770"));
+		assertEquals(N - 1, count(pm, "_long != 700"));
+
+		Query q = pm.newQuery(TestClass.class);
+		q.setOrdering("_long descending");
+		q.setRange(0, 3);
+		Collection<?> c = (Collection<?>) q.execute();
+		assertEquals(3, c.size());
+		Iterator<?> it = c.iterator();
+		assertEquals(7L * (N - 1), ((TestClass) it.next()).getLong());
+		assertEquals(7L * (N - 2), ((TestClass) it.next()).getLong());
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testSchema() {
+		createHashIndex("_long");
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ZooClass c = ZooJdoHelper.schema(pm).getClass(TestClass.class);
+		assertTrue(c.hasIndex("_long"));
+		assertTrue(c.isIndexUnique("_long"));
+		assertTrue(c.isIndexHashed("_long"));
+		try {
+			c.createHashIndex("_string");
+			fail();
+		} catch (JDOUserException e) {
+			//good, Strings are not supported
+		}
+		assertFalse(c.hasIndex("_string"));
+		assertTrue(c.removeIndex("_long"));
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		c = ZooJdoHelper.schema(pm).getClass(TestClass.class);
+		assertFalse(c.hasIndex("_long"));
+		c.createIndex("_long", true);
+		assertFalse(c.isIndexHashed("_long"));
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testIndexOnExistingData() {
+		createData();
+		createHashIndex("_long");
+		checkQueries();
+	}
+
+	@Test
+	public void testIndexOnNewData() {
+		createHashIndex("_long");
+		createData();
+		checkQueries();
+	}
+
+	@Test
+	public void testUpdateAndDelete() {
+		createHashIndex("_long");
+		createData();
+
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Query q = pm.newQuery(TestClass.class, "_int < 100");
+		for (Object o: (Collection<?>) q.execute()) {
+			TestClass tc = (TestClass) o;
+			if (tc.getInt() % 2 == 0) {
+				tc.setLong(-tc.getLong() - 1);
+			} else {
+				pm.deletePersistent(tc);
+			}
+		}
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+
+		assertEquals(0, count(pm, "_long == 14"));
+		assertEquals(1, count(pm, "_long == -15"));
+		assertEquals(0, count(pm, "_long == 7"));
+		assertEquals(N - 50, count(pm, "_long != 0"));
+
+		//reuse values of deleted and modified objects
+		TestClass tc = new TestClass();
+		tc.setLong(7);
+		pm.makePersistent(tc);
+		tc = new TestClass();
+		tc.setLong(14);
+		pm.makePersistent(tc);
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertEquals(1, count(pm, "_long == 7"));
+		assertEquals(1, count(pm, "_long == 14"));
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testUniqueCollision() {
+		createHashIndex("_long");
+		createData();
+
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		TestClass tc = new TestClass();
+		tc.setLong(700);
+		pm.makePersistent(tc);
+		try {
+			pm.currentTransaction().commit();
+			fail();
+		} catch (JDOUserException e) {
+			//good
+		}
+		pm.currentTransaction().begin();
+		assertEquals(1, count(pm, "_long == 700"));
+		pm.currentTransaction().rollback();
+	}
+}
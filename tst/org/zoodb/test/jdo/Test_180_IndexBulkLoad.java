@@ -0,0 +1,236 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import javax.jdo.JDOUserException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.schema.ZooClass;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.DBStatistics;
+import org.zoodb.tools.ZooConfig;
+import org.zoodb.tools.ZooQuery;
+import org.zoodb.tools.ZooRebuildIndices;
+
+/**
+ * Creating indices on existing data and rebuilding indices.
+ */
+public class Test_180_IndexBulkLoad {
+
+	private static final int N = 20000;
+
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+		DBStatistics.enable(true);
+	}
+
+	@After
+	public void after() {
+		DBStatistics.enable(false);
+		TestTools.closePM();
+		ZooConfig.setIndexBuildThreads(ZooConfig.INDEX_BUILD_THREADS_DEFAULT);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+	private static void createData() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			TestClass tc = new TestClass();
+			//not sorted
+			tc.setInt((i * 7919) % N);
+			tc.setLong(i % 100);
+			tc.setString("str" + i);
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	private static int count(PersistenceManager pm, String filter) {
+		Query q = pm.newQuery(TestClass.class, filter);
+		Collection<?> c = (Collection<?>) q.execute();
+		int n = c.size();
+		q.closeAll();
+		return n;
+	}
+
+	private static void checkQueries() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		DBStatistics stats = ZooJdoHelper.getStatistics(pm);
+		long nQEWI = stats.getQueryExecutionWithoutIndexCount();
+		assertEquals(1, count(pm, "_int == 700"));
+		assertEquals(100, count(pm, "_int >= 100 && _int < 200"));
+		assertEquals(N / 100, count(pm, "_long == 5"));
+		assertEquals(1, count(pm, "_string == 'str123'"));
+		//all of them used the new indices
+		assertEquals(nQEWI, stats.getQueryExecutionWithoutIndexCount());
+
+		Query q = pm.newQuery(TestClass.class);
+		q.setOrdering("_int descending");
+		q.setRange(0, 3);
+		Collection<?> c = (Collection<?>) q.execute();
+		assertEquals(3, c.size());
+		Iterator<?> it = c.iterator();
+		assertEquals(N - 1, ((TestClass) it.next()).getInt());
+		assertEquals(N - 2, ((TestClass) it.next()).getInt());
+		assertEquals(N - 3, ((TestClass) it.next()).getInt());
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	private static void createIndices() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ZooClass c = ZooJdoHelper.schema(pm).getClass(TestClass.class);
+		c.createIndex("_int", true);
+		c.createIndex("_long", false);
+		c.createIndex("_string", true);
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testIndexOnExistingData() {
+		createData();
+		createIndices();
+		checkQueries();
+	}
+
+	@Test
+	public void testIndexOnExistingDataSingleThread() {
+		ZooConfig.setIndexBuildThreads(1);
+		createData();
+		createIndices();
+		checkQueries();
+	}
+
+	@Test
+	public void testUniqueCollision() {
+		createData();
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ZooJdoHelper.schema(pm).getClass(TestClass.class).createIndex("_long", true);
+		try {
+			pm.currentTransaction().commit();
+			fail();
+		} catch (JDOUserException e) {
+			//good
+		}
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertFalse(ZooJdoHelper.schema(pm).getClass(TestClass.class).hasIndex("_long"));
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+
+		createIndices();
+		checkQueries();
+	}
+
+	@Test
+	public void testRebuild() {
+		createIndices();
+		createData();
+
+		//modify data
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Query q = pm.newQuery(TestClass.class, "_int >= 1000 && _int < 2000");
+		for (Object o: (Collection<?>) q.execute()) {
+			TestClass tc = (TestClass) o;
+			tc.setInt(tc.getInt() + N);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ZooClass c = ZooJdoHelper.schema(pm).getClass(TestClass.class);
+		c.rebuildIndex("_int");
+		c.rebuildIndex("_long");
+		c.rebuildIndex("_string");
+		try {
+			c.rebuildIndex("_short");
+			fail();
+		} catch (JDOUserException e) {
+			//good, no index
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertEquals(0, count(pm, "_int >= 1000 && _int < 2000"));
+		assertEquals(1000, count(pm, "_int >= " + N));
+		assertEquals(N / 100, count(pm, "_long == 5"));
+		assertEquals(1, count(pm, "_string == 'str123'"));
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testRebuildTool() {
+		createIndices();
+		createData();
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ZooJdoHelper.schema(pm).getClass(TestClass.class).createCompositeIndex("_long", "_int");
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		ZooQuery.resetStringOutput();
+		ZooRebuildIndices.enableStringOutput();
+		ZooRebuildIndices.main(new String[]{TestTools.getDbName(), TestClass.class.getName()});
+		String out = ZooQuery.getStringOutput();
+		assertTrue(out, out.contains("Rebuilding indices done"));
+
+		checkQueries();
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertEquals(N / 200, count(pm, "_long == 5 && _int < " + (N / 2)));
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+}
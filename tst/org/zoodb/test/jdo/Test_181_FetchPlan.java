@@ -0,0 +1,280 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+
+import javax.jdo.FetchGroup;
+import javax.jdo.FetchPlan;
+import javax.jdo.JDOHelper;
+import javax.jdo.JDOUserException;
+import javax.jdo.ObjectState;
+import javax.jdo.PersistenceManager;
+import javax.jdo.PersistenceManagerFactory;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.test.testutil.TestTools;
+
+/**
+ * Fetch plans and fetch groups.
+ */
+public class Test_181_FetchPlan {
+
+	/** Length of the chains of references */
+	private static final int DEPTH = 5;
+	/** Number of chains */
+	private static final int N = 100;
+
+	private Object oid0;
+
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+		//Queries on the extent would load all objects, the index loads only the roots.
+		TestTools.defineIndex(TestClass.class, "_int", false);
+
+		//N chains: root -> ref2 -> ref2 -> ..., and root -> ref1
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			TestClass root = new TestClass();
+			root.setInt(0);
+			TestClass tc = root;
+			for (int d = 1; d < DEPTH; d++) {
+				TestClass tc2 = new TestClass();
+				tc2.setInt(d);
+				tc.setRef2(tc2);
+				tc = tc2;
+			}
+			TestClass other = new TestClass();
+			other.setInt(-1);
+			root.setRef1(other);
+			pm.makePersistent(root);
+			if (i == 0) {
+				oid0 = pm.getObjectId(root);
+			}
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+	private static boolean isHollow(Object o) {
+		return JDOHelper.getObjectState(o) == ObjectState.HOLLOW_PERSISTENT_NONTRANSACTIONAL;
+	}
+
+	/**
+	 * @return The number of loaded objects in the chain, including the root.
+	 */
+	private static int countLoaded(TestClass root) {
+		int n = 0;
+		TestClass tc = root;
+		while (tc != null && !isHollow(tc)) {
+			n++;
+			tc = tc.getRef2();
+		}
+		return n;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Collection<TestClass> queryRoots(PersistenceManager pm) {
+		Query q = pm.newQuery(TestClass.class, "_int == 0");
+		Collection<TestClass> c = (Collection<TestClass>) q.execute();
+		assertEquals(N, c.size());
+		return c;
+	}
+
+	@Test
+	public void testDefault() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		FetchPlan fp = pm.getFetchPlan();
+		assertEquals(1, fp.getGroups().size());
+		assertTrue(fp.getGroups().contains(FetchPlan.DEFAULT));
+		assertEquals(1, fp.getMaxFetchDepth());
+
+		for (TestClass tc: queryRoots(pm)) {
+			assertEquals(1, countLoaded(tc));
+			assertTrue(isHollow(tc.getRef1()));
+		}
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testAll() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		pm.getFetchPlan().addGroup(FetchPlan.ALL);
+
+		for (TestClass tc: queryRoots(pm)) {
+			assertEquals(2, countLoaded(tc));
+			assertFalse(isHollow(tc.getRef1()));
+		}
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testMaxFetchDepth() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		pm.getFetchPlan().setGroup(FetchPlan.ALL).setMaxFetchDepth(3);
+		for (TestClass tc: queryRoots(pm)) {
+			assertEquals(4, countLoaded(tc));
+		}
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		pm.getFetchPlan().setGroup(FetchPlan.ALL).setMaxFetchDepth(-1);
+		for (TestClass tc: queryRoots(pm)) {
+			assertEquals(DEPTH, countLoaded(tc));
+		}
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testFetchGroup() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		FetchGroup fg = pm.getFetchGroup(TestClass.class, "chain");
+		fg.addMember("_ref2");
+		assertTrue(fg == pm.getFetchGroup(TestClass.class, "chain"));
+		pm.getFetchPlan().addGroup("chain").setMaxFetchDepth(2);
+
+		for (TestClass tc: queryRoots(pm)) {
+			assertEquals(3, countLoaded(tc));
+			assertTrue(isHollow(tc.getRef1()));
+		}
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testFetchGroupCategory() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		FetchGroup fg = pm.getFetchGroup(TestClass.class, "rel");
+		fg.addCategory(FetchGroup.RELATIONSHIP);
+		assertTrue(fg.getMembers().contains("_ref1"));
+		assertTrue(fg.getMembers().contains("_ref2"));
+		assertFalse(fg.getMembers().contains("_int"));
+		pm.getFetchPlan().setGroup("rel");
+
+		for (TestClass tc: queryRoots(pm)) {
+			assertEquals(2, countLoaded(tc));
+			assertFalse(isHollow(tc.getRef1()));
+		}
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testFactoryFetchGroup() {
+		PersistenceManager pm = TestTools.openPM();
+		PersistenceManagerFactory pmf = pm.getPersistenceManagerFactory();
+		FetchGroup fg = pmf.getFetchGroup(TestClass.class, "r1");
+		fg.addMember("_ref1");
+		pmf.addFetchGroups(fg);
+		assertTrue(fg.isUnmodifiable());
+		assertEquals(1, pmf.getFetchGroups().size());
+		try {
+			fg.addMember("_ref2");
+			fail();
+		} catch (JDOUserException e) {
+			//good, unmodifiable
+		}
+
+		//groups of the factory are used by open PMs
+		pm.currentTransaction().begin();
+		pm.getFetchPlan().setGroup("r1");
+		for (TestClass tc: queryRoots(pm)) {
+			assertEquals(1, countLoaded(tc));
+			assertFalse(isHollow(tc.getRef1()));
+		}
+		pm.currentTransaction().rollback();
+
+		pmf.removeAllFetchGroups();
+		assertEquals(0, pmf.getFetchGroups().size());
+	}
+
+	@Test
+	public void testGetObjectById() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		pm.getFetchPlan().setGroup(FetchPlan.ALL).setMaxFetchDepth(2);
+		TestClass tc = (TestClass) pm.getObjectById(oid0);
+		assertEquals(3, countLoaded(tc));
+		assertFalse(isHollow(tc.getRef1()));
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testQueryFetchPlan() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		pm.getFetchPlan().setGroup(FetchPlan.ALL);
+		Query q = pm.newQuery(TestClass.class, "_int == 0");
+		//changes of the PM's plan do not affect existing queries
+		pm.getFetchPlan().setGroup(FetchPlan.DEFAULT);
+		q.getFetchPlan().setMaxFetchDepth(2);
+		Collection<?> c = (Collection<?>) q.execute();
+		for (Object o: c) {
+			assertEquals(3, countLoaded((TestClass) o));
+		}
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testIllegalFetchDepth() {
+		PersistenceManager pm = TestTools.openPM();
+		try {
+			pm.getFetchPlan().setMaxFetchDepth(0);
+			fail();
+		} catch (JDOUserException e) {
+			//good
+		}
+		try {
+			pm.getFetchGroup(TestClass.class, "x").addMember("noSuchField");
+			fail();
+		} catch (JDOUserException e) {
+			//good
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import javax.jdo.FetchPlan;
+import javax.jdo.JDOHelper;
+import javax.jdo.JDOObjectNotFoundException;
+import javax.jdo.ObjectState;
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.test.testutil.TestTools;
+
+/**
+ * Loading several objects with getObjectsById().
+ */
+public class Test_182_GetObjectsById {
+
+	private static final int N = 2000;
+
+	private final List<Object> oids = new ArrayList<Object>();
+
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			TestClass tc = new TestClass();
+			tc.setInt(i);
+			tc.setString("str" + i);
+			TestClass ref = new TestClass();
+			ref.setInt(-i);
+			tc.setRef2(ref);
+			pm.makePersistent(tc);
+			oids.add(pm.getObjectId(tc));
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+	private static void check(Collection<?> c, List<Object> oids, PersistenceManager pm) {
+		assertEquals(oids.size(), c.size());
+		Iterator<?> it = c.iterator();
+		for (Object oid: oids) {
+			TestClass tc = (TestClass) it.next();
+			assertEquals(oid, pm.getObjectId(tc));
+			assertEquals("str" + tc.getInt(), tc.getString());
+		}
+	}
+
+	@Test
+	public void testUnsorted() {
+		List<Object> oids2 = new ArrayList<Object>(oids);
+		Collections.shuffle(oids2, new Random(0));
+
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Collection<?> c = pm.getObjectsById(oids2);
+		check(c, oids2, pm);
+		for (Object o: c) {
+			assertEquals(ObjectState.PERSISTENT_CLEAN, JDOHelper.getObjectState(o));
+		}
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testCachedAndHollow() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		//load every third object, make every sixth object hollow
+		for (int i = 0; i < N; i += 3) {
+			Object o = pm.getObjectById(oids.get(i));
+			if (i % 2 == 0) {
+				pm.evict(o);
+			}
+		}
+		//duplicates are allowed
+		List<Object> oids2 = new ArrayList<Object>(oids);
+		oids2.addAll(oids.subList(0, 10));
+		Object[] a = pm.getObjectsById(oids2.toArray());
+		check(Arrays.asList(a), oids2, pm);
+		assertTrue(a[0] == a[N]);
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testNotFound() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		pm.deletePersistent(pm.getObjectById(oids.get(5)));
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		try {
+			pm.getObjectsById(oids);
+			fail();
+		} catch (JDOObjectNotFoundException e) {
+			//good
+		}
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testFetchPlan() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		pm.getFetchPlan().setGroup(FetchPlan.ALL);
+		Collection<?> c = pm.getObjectsById(oids);
+		check(c, oids, pm);
+		for (Object o: c) {
+			TestClass ref = ((TestClass) o).getRef2();
+			assertEquals(ObjectState.PERSISTENT_CLEAN, JDOHelper.getObjectState(ref));
+		}
+		pm.currentTransaction().rollback();
+	}
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashMap;
+
+import javax.jdo.JDOHelper;
+import javax.jdo.ObjectState;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.api.impl.ZooPC;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.ZooEnhancer;
+import org.zoodb.tools.internal.ClassFileEnhancer;
+
+/**
+ * Enhancement of persistent classes and field-level dirty tracking.
+ */
+public class Test_183_Enhancer {
+
+	private static final String NAME = TestClassEnhanced.class.getName();
+	
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+	private static byte[] readClassFile(Class<?> cls) throws IOException {
+		InputStream is = cls.getResourceAsStream(cls.getSimpleName() + ".class");
+		ByteArrayOutputStream ba = new ByteArrayOutputStream();
+		try {
+			byte[] b = new byte[1024];
+			int n;
+			while ((n = is.read(b)) > 0) {
+				ba.write(b, 0, n);
+			}
+		} finally {
+			is.close();
+		}
+		return ba.toByteArray();
+	}
+	
+	/**
+	 * Loads the enhanced version of {@link TestClassEnhanced}. 
+	 */
+	private static Class<?> loadEnhanced() throws IOException, ClassNotFoundException {
+		ClassFileEnhancer e = new ClassFileEnhancer(readClassFile(TestClassEnhanced.class));
+		assertEquals(NAME.replace('.', '/'), e.getClassName());
+		assertFalse(e.isEnhanced());
+		final byte[] enhanced = e.enhance(true, null);
+		assertNotNull(enhanced);
+		//enhancing twice has no effect
+		assertNull(new ClassFileEnhancer(enhanced).enhance(true, null));
+		
+		ClassLoader cl = new ClassLoader(Test_183_Enhancer.class.getClassLoader()) {
+			@Override
+			protected synchronized Class<?> loadClass(String name, boolean resolve) 
+					throws ClassNotFoundException {
+				if (!name.equals(NAME)) {
+					return super.loadClass(name, resolve);
+				}
+				Class<?> c = findLoadedClass(name);
+				if (c == null) {
+					c = defineClass(name, enhanced, 0, enhanced.length);
+				}
+				return c;
+			}
+		};
+		return cl.loadClass(NAME);
+	}
+	
+	/**
+	 * Enhances the classes with {@link ZooEnhancer#enhance(File, ClassLoader)}.
+	 * @return A class loader for the enhanced classes 
+	 */
+	private static ClassLoader loadEnhanced(Class<?> ... classes) throws IOException {
+		File dir = Files.createTempDirectory("zoodb").toFile();
+		final HashMap<String, byte[]> enhanced = new HashMap<String, byte[]>();
+		try {
+			for (Class<?> cls: classes) {
+				File f = new File(dir, cls.getSimpleName() + ".class");
+				Files.write(f.toPath(), readClassFile(cls));
+			}
+			ClassLoader parent = Test_183_Enhancer.class.getClassLoader();
+			assertEquals(classes.length, ZooEnhancer.enhance(dir, parent));
+			for (Class<?> cls: classes) {
+				File f = new File(dir, cls.getSimpleName() + ".class");
+				enhanced.put(cls.getName(), Files.readAllBytes(f.toPath()));
+			}
+		} finally {
+			for (File f: dir.listFiles()) {
+				f.delete();
+			}
+			dir.delete();
+		}
+		return new ClassLoader(Test_183_Enhancer.class.getClassLoader()) {
+			@Override
+			protected synchronized Class<?> loadClass(String name, boolean resolve) 
+					throws ClassNotFoundException {
+				byte[] ba = enhanced.get(name);
+				if (ba == null) {
+					return super.loadClass(name, resolve);
+				}
+				Class<?> c = findLoadedClass(name);
+				if (c == null) {
+					c = defineClass(name, ba, 0, ba.length);
+				}
+				return c;
+			}
+		};
+	}
+	
+	private static Object callStatic(Class<?> cls, String name, Object ... args) {
+		try {
+			for (Method m: cls.getMethods()) {
+				if (m.getName().equals(name) && m.getParameterTypes().length == args.length) {
+					return m.invoke(null, args);
+				}
+			}
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		throw new IllegalArgumentException(name);
+	}
+	
+	private static Object call(Object o, String name, Object ... args) {
+		try {
+			for (Method m: o.getClass().getMethods()) {
+				if (m.getName().equals(name) && m.getParameterTypes().length == args.length) {
+					return m.invoke(o, args);
+				}
+			}
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		throw new IllegalArgumentException(name);
+	}
+	
+	@Test
+	public void testEnhancedClass() throws Exception {
+		Class<?> cls = loadEnhanced();
+		assertTrue(ZooPC.class.isAssignableFrom(cls));
+		
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ZooJdoHelper.schema(pm).addClass(cls);
+		Object o1 = cls.getConstructor(Integer.TYPE, Long.TYPE, String.class).newInstance(
+				1, 11L, "1");
+		Object o2 = cls.getConstructor(Integer.TYPE, Long.TYPE, String.class).newInstance(
+				2, 22L, "2");
+		pm.makePersistent(o1);
+		pm.makePersistent(o2);
+		pm.currentTransaction().commit();
+		
+		//reading fields of hollow objects loads them
+		pm.currentTransaction().begin();
+		pm.evictAll();
+		assertEquals(ObjectState.HOLLOW_PERSISTENT_NONTRANSACTIONAL, 
+				JDOHelper.getObjectState(o1));
+		assertEquals(1, call(o1, "getInt"));
+		assertEquals(ObjectState.PERSISTENT_CLEAN, JDOHelper.getObjectState(o1));
+		assertEquals("1", call(o1, "getString"));
+		
+		//fields of other instances
+		assertFalse((Boolean) call(o1, "hasSameInt", o2));
+		assertEquals(ObjectState.PERSISTENT_CLEAN, JDOHelper.getObjectState(o2));
+
+		//writing fields makes objects dirty
+		call(o1, "incLong");
+		assertEquals(ObjectState.PERSISTENT_DIRTY, JDOHelper.getObjectState(o1));
+		call(o2, "setString", "22");
+		assertEquals(ObjectState.PERSISTENT_DIRTY, JDOHelper.getObjectState(o2));
+		pm.currentTransaction().commit();
+		
+		pm.currentTransaction().begin();
+		pm.evictAll();
+		assertEquals(12L, call(o1, "getLong"));
+		assertEquals("22", call(o2, "getString"));
+		pm.currentTransaction().rollback();
+	}
+	
+	@Test
+	public void testSubClassAndOtherClassAccess() throws Exception {
+		ClassLoader cl = loadEnhanced(TestClassEnhanced.class, TestClassEnhancedSub.class, 
+				TestClassEnhancedAccess.class);
+		Class<?> cls = cl.loadClass(TestClassEnhancedSub.class.getName());
+		Class<?> access = cl.loadClass(TestClassEnhancedAccess.class.getName());
+		
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ZooJdoHelper.schema(pm).addClass(cls.getSuperclass());
+		ZooJdoHelper.schema(pm).addClass(cls);
+		Object o = cls.getConstructor(Integer.TYPE, Long.TYPE, String.class, Integer.TYPE)
+				.newInstance(1, 11L, "1", 5);
+		pm.makePersistent(o);
+		pm.currentTransaction().commit();
+		
+		//reading fields of hollow objects in other classes and sub-classes loads them
+		pm.currentTransaction().begin();
+		pm.evictAll();
+		assertEquals(5, callStatic(access, "getSub", o));
+		assertEquals(ObjectState.PERSISTENT_CLEAN, JDOHelper.getObjectState(o));
+		pm.evictAll();
+		assertEquals(5.0, call(o, "getDouble"));
+		assertEquals(ObjectState.PERSISTENT_CLEAN, JDOHelper.getObjectState(o));
+		
+		//writing fields in other classes and sub-classes makes objects dirty
+		callStatic(access, "setSub", o, 6);
+		assertEquals(ObjectState.PERSISTENT_DIRTY, JDOHelper.getObjectState(o));
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+		call(o, "setDouble", 7.5);
+		assertEquals(ObjectState.PERSISTENT_DIRTY, JDOHelper.getObjectState(o));
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+		
+		//the values are stored
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClassEnhancedSub.class).execute();
+		assertEquals(1, c.size());
+		TestClassEnhancedSub s = (TestClassEnhancedSub) c.iterator().next();
+		s.zooActivateRead();
+		assertEquals(1, s.getInt());
+		assertEquals(6, TestClassEnhancedAccess.getSub(s));
+		assertEquals(7.5, s.getDouble(), 0.0);
+		pm.currentTransaction().rollback();
+	}
+	
+	@Test
+	public void testIndexUpdates() throws Exception {
+		Class<?> cls = loadEnhanced();
+		
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ZooJdoHelper.schema(pm).addClass(cls).createIndex("_int", false);
+		Object[] objs = new Object[10];
+		for (int i = 0; i < objs.length; i++) {
+			objs[i] = cls.getConstructor(Integer.TYPE, Long.TYPE, String.class).newInstance(
+					i, (long) i, "" + i);
+			pm.makePersistent(objs[i]);
+		}
+		pm.currentTransaction().commit();
+
+		//non-indexed fields do not require a backup
+		pm.currentTransaction().begin();
+		ZooPC o3 = (ZooPC) objs[3];
+		call(o3, "setString", "x");
+		assertTrue(JDOHelper.isDirty(o3));
+		assertNull(o3.jdoZooGetBackup());
+		pm.currentTransaction().commit();
+		checkQuery(pm, cls, 3, 1);
+
+		//indexed fields do
+		pm.currentTransaction().begin();
+		call(o3, "incLong");
+		assertNull(o3.jdoZooGetBackup());
+		call(o3, "setInt", 33);
+		assertNotNull(o3.jdoZooGetBackup());
+		call(o3, "setInt", 34);
+		pm.currentTransaction().commit();
+		checkQuery(pm, cls, 3, 0);
+		checkQuery(pm, cls, 33, 0);
+		checkQuery(pm, cls, 34, 1);
+		
+		//deleting objects with only non-indexed changes
+		pm.currentTransaction().begin();
+		ZooPC o5 = (ZooPC) objs[5];
+		call(o5, "setString", "y");
+		pm.deletePersistent(o5);
+		pm.currentTransaction().commit();
+		checkQuery(pm, cls, 5, 0);
+	}
+
+	private static void checkQuery(PersistenceManager pm, Class<?> cls, int i, int n) {
+		pm.currentTransaction().begin();
+		Query q = pm.newQuery(cls, "_int == " + i);
+		Collection<?> c = (Collection<?>) q.execute();
+		assertEquals(n, c.size());
+		for (Object o: c) {
+			assertEquals(i, call(o, "getInt"));
+		}
+		q.closeAll();
+		pm.currentTransaction().rollback();
+	}
+	
+	@Test
+	public void testManualFieldWrite() {
+		//zooActivateWrite(String) can also be called by hand
+		TestTools.defineSchema(TestClassTiny.class);
+		TestTools.defineIndex(TestClassTiny.class, TestClassTiny.INT, false);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		TestClassTiny t = new TestClassTiny(1, 1);
+		pm.makePersistent(t);
+		pm.currentTransaction().commit();
+		
+		pm.currentTransaction().begin();
+		t.zooActivateWrite("_long");
+		assertTrue(JDOHelper.isDirty(t));
+		assertNull(t.jdoZooGetBackup());
+		//unspecified fields require a backup
+		t.setLong(2);
+		assertNotNull(t.jdoZooGetBackup());
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+}
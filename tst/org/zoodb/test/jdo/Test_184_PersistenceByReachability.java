@@ -0,0 +1,210 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import javax.jdo.JDOHelper;
+import javax.jdo.JDOUserException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.jdo.ZooJdoProperties;
+import org.zoodb.test.testutil.TestTools;
+
+/**
+ * Incremental persistence by reachability.
+ */
+public class Test_184_PersistenceByReachability {
+
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+	/**
+	 * Queries trigger the traversal. 
+	 */
+	private static int countPersistent(PersistenceManager pm) {
+		Query q = pm.newQuery(TestClass.class);
+		Collection<?> c = (Collection<?>) q.execute();
+		int n = c.size();
+		q.closeAll();
+		return n;
+	}
+	
+	@Test
+	public void testWriteAfterTraversal() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		TestClass t1 = new TestClass();
+		pm.makePersistent(t1);
+		assertEquals(1, countPersistent(pm));
+
+		//new reference of an object that has already been traversed
+		TestClass t2 = new TestClass();
+		t1.setRef2(t2);
+		assertEquals(2, countPersistent(pm));
+		assertTrue(JDOHelper.isPersistent(t2));
+		
+		//reference of a new object of a new object
+		TestClass t3 = new TestClass();
+		t2.setRef2(t3);
+		pm.currentTransaction().commit();
+		assertTrue(JDOHelper.isPersistent(t3));
+		
+		//existing objects
+		pm.currentTransaction().begin();
+		t1.setInt(5);
+		assertEquals(3, countPersistent(pm));
+		TestClass t4 = new TestClass();
+		t1.setRef2(t4);
+		pm.currentTransaction().commit();
+		assertTrue(JDOHelper.isPersistent(t4));
+		
+		pm.currentTransaction().begin();
+		assertEquals(4, countPersistent(pm));
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testCollectionsAfterTraversal() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		TestClass t1 = new TestClass();
+		ArrayList<Object> list = new ArrayList<Object>();
+		t1.setRef1(list);
+		pm.makePersistent(t1);
+		assertEquals(1, countPersistent(pm));
+		
+		//the content of the list changes without a write to t1
+		TestClass t2 = new TestClass();
+		list.add(t2);
+		assertEquals(2, countPersistent(pm));
+		TestClass t3 = new TestClass();
+		list.add(t3);
+		pm.currentTransaction().commit();
+		assertTrue(JDOHelper.isPersistent(t3));
+		
+		pm.currentTransaction().begin();
+		assertEquals(3, countPersistent(pm));
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testRollback() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		TestClass t1 = new TestClass();
+		pm.makePersistent(t1);
+		assertEquals(1, countPersistent(pm));
+		pm.currentTransaction().rollback();
+		
+		pm.currentTransaction().begin();
+		TestClass t2 = new TestClass();
+		pm.makePersistent(t2);
+		TestClass t3 = new TestClass();
+		t2.setRef2(t3);
+		assertEquals(2, countPersistent(pm));
+		pm.currentTransaction().commit();
+		assertTrue(JDOHelper.isPersistent(t3));
+	}
+	
+	@Test
+	public void testDisabled() {
+		PersistenceManager pm = TestTools.openPM();
+		ZooJdoHelper.setPersistenceByReachability(pm, false);
+		pm.currentTransaction().begin();
+		TestClass t1 = new TestClass();
+		TestClass t2 = new TestClass();
+		t1.setRef2(t2);
+		pm.makePersistent(t1);
+		assertEquals(1, countPersistent(pm));
+		assertFalse(JDOHelper.isPersistent(t2));
+		try {
+			pm.currentTransaction().commit();
+			fail();
+		} catch (JDOUserException e) {
+			//good, t2 is not persistent
+		}
+		if (pm.currentTransaction().isActive()) {
+			pm.currentTransaction().rollback();
+		}
+		
+		//explicit makePersistent()
+		pm.currentTransaction().begin();
+		t1 = new TestClass();
+		t2 = new TestClass();
+		t1.setRef2(t2);
+		pm.makePersistent(t1);
+		pm.makePersistent(t2);
+		pm.currentTransaction().commit();
+		
+		pm.currentTransaction().begin();
+		assertEquals(2, countPersistent(pm));
+		pm.currentTransaction().rollback();
+		
+		//enabling it again
+		ZooJdoHelper.setPersistenceByReachability(pm, true);
+		pm.currentTransaction().begin();
+		t2.setRef2(new TestClass());
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+		assertEquals(3, countPersistent(pm));
+		pm.currentTransaction().rollback();
+	}
+	
+	@Test
+	public void testDisabledByProperty() {
+		ZooJdoProperties props = TestTools.getProps();
+		props.setZooPersistenceByReachability(false);
+		PersistenceManager pm = TestTools.openPM(props);
+		pm.currentTransaction().begin();
+		TestClass t1 = new TestClass();
+		t1.setRef2(new TestClass());
+		pm.makePersistent(t1);
+		assertEquals(1, countPersistent(pm));
+		pm.currentTransaction().rollback();
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.internal.Node;
+import org.zoodb.internal.Session;
+import org.zoodb.internal.ZooFieldDef;
+import org.zoodb.internal.server.index.IndexStatistics;
+import org.zoodb.jdo.impl.PersistenceManagerImpl;
+import org.zoodb.test.testutil.TestTools;
+
+/**
+ * Tests that the index statistics survive commits and are updated incrementally instead of
+ * being rebuilt for every new snapshot.
+ */
+public class Test_185_IndexStatistics {
+
+	private static final int N = 1000;
+	
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClassTiny.class);
+		TestTools.defineIndex(TestClassTiny.class, "_int", false);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			pm.makePersistent(new TestClassTiny(i, i));
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+	}
+	
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+	private static IndexStatistics getStats(PersistenceManager pm) {
+		Session s = ((PersistenceManagerImpl)pm).getSession();
+		Node node = s.getPrimaryNode();
+		ZooFieldDef f = s.getSchemaManager().locateSchema(TestClassTiny.class, node)
+				.getSchemaDef().getField("_int");
+		return node.getIndexStatistics(f);
+	}
+	
+	@Test
+	public void testNoRebuildAfterCommit() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		IndexStatistics s = getStats(pm);
+		assertEquals(N, s.getEntryCount());
+		assertEquals(0, s.getUpdateCount());
+		for (int i = 0; i < 10; i++) {
+			pm.makePersistent(new TestClassTiny(N + i, i));
+		}
+		pm.currentTransaction().commit();
+		
+		//a new snapshot sees the updated statistics
+		pm.currentTransaction().begin();
+		s = getStats(pm);
+		assertEquals(N + 10, s.getEntryCount());
+		assertEquals(10, s.getUpdateCount());
+		for (Object o: pm.getExtent(TestClassTiny.class)) {
+			if (((TestClassTiny)o).getInt() < 5) {
+				pm.deletePersistent(o);
+			}
+		}
+		pm.currentTransaction().commit();
+		
+		pm.currentTransaction().begin();
+		s = getStats(pm);
+		assertEquals(N + 5, s.getEntryCount());
+		assertEquals(15, s.getUpdateCount());
+		pm.currentTransaction().rollback();
+		
+		//other sessions share the statistics
+		PersistenceManager pm2 = TestTools.openPM();
+		pm2.currentTransaction().begin();
+		s = getStats(pm2);
+		assertEquals(N + 5, s.getEntryCount());
+		assertEquals(15, s.getUpdateCount());
+		pm2.currentTransaction().rollback();
+		pm.close();
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2009-2016 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collection;
+
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.internal.server.DiskIO;
+import org.zoodb.test.testutil.TestTools;
+
+/**
+ * Tests that files of an older compatible version can be opened and that their header is 
+ * upgraded with the first commit.
+ */
+public class Test_186_FileVersion {
+
+	/** Position of the minor version in the file header, after file ID and major version */
+	private static final int POS_MIN_VERSION = 8;
+	private static final int N = 100;
+	
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClassTiny.class);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			pm.makePersistent(new TestClassTiny(i, i));
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+	}
+	
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+	private static int readMinVersion() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(TestTools.getDbFileName(), "r");
+		try {
+			raf.seek(POS_MIN_VERSION);
+			return raf.readInt();
+		} finally {
+			raf.close();
+		}
+	}
+	
+	private static void writeMinVersion(int min) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(TestTools.getDbFileName(), "rw");
+		try {
+			raf.seek(POS_MIN_VERSION);
+			raf.writeInt(min);
+		} finally {
+			raf.close();
+		}
+	}
+	
+	private static int countInstances(PersistenceManager pm) {
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClassTiny.class).execute();
+		return c.size();
+	}
+	
+	@Test
+	public void testOpenVersion15() throws IOException {
+		assertEquals(DiskIO.DB_FILE_VERSION_MIN, readMinVersion());
+		writeMinVersion(5);
+		
+		//reading does not change the header
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertEquals(N, countInstances(pm));
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+		assertEquals(5, readMinVersion());
+		
+		//the first commit upgrades the header
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		pm.makePersistent(new TestClassTiny(N, N));
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+		assertEquals(DiskIO.DB_FILE_VERSION_MIN, readMinVersion());
+		
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertEquals(N + 1, countInstances(pm));
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+}
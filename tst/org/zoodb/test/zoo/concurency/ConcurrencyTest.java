@@ -32,6 +32,7 @@ import java.util.List;
 
 import javax.jdo.Extent;
 import javax.jdo.JDOHelper;
+import javax.jdo.JDOOptimisticVerificationException;
 import javax.jdo.PersistenceManager;
 import javax.jdo.PersistenceManagerFactory;
 import javax.jdo.Query;
@@ -237,10 +238,29 @@ public class ConcurrencyTest {
                     lock.notifyAll();
                 }
 
-                pm.currentTransaction().begin();
-                Transfer t = (Transfer) pm.getObjectById(transferId, true);
-
-                performTransfer(t);
+                try
+                {
+                    // Transactions are optimistic, retry if the other transfer committed first
+                    while (true)
+                    {
+                        pm.currentTransaction().begin();
+                        pm.refreshAll();
+                        Transfer t = (Transfer) pm.getObjectById(transferId, true);
+                        try
+                        {
+                            performTransfer(t);
+                            break;
+                        }
+                        catch (JDOOptimisticVerificationException e)
+                        {
+                            LOG.debug(">> Retrying thread " + transferId + " in pm=" + pm);
+                        }
+                    }
+                }
+                finally
+                {
+                    closePm(pm);
+                }
                 LOG.debug(">> Completed thread " + transferId + " in pm=" + pm);
             }
         };
@@ -303,7 +323,6 @@ public class ConcurrencyTest {
             {
                 tx.rollback();
             }
-            closePm(pm);
         }
     }
 